@@ -29,6 +29,21 @@ android {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
     }
+    testOptions {
+        unitTests {
+            isIncludeAndroidResources = true
+            all {
+                // Tests in the Benchmark category compare timings, so they only run when asked for.
+                if (project.hasProperty("benchmarks")) {
+                    it.useJUnit { includeCategories("com.example.passwordencryptionapp.Benchmark") }
+                    // The 100k-entry fixtures in VaultScalingTest need more than the default heap.
+                    it.maxHeapSize = "2g"
+                } else {
+                    it.useJUnit { excludeCategories("com.example.passwordencryptionapp.Benchmark") }
+                }
+            }
+        }
+    }
 }
 
 dependencies {
@@ -37,6 +52,11 @@ dependencies {
     implementation(libs.material)
     implementation(libs.biometric)
     implementation(libs.security.crypto)
+    implementation(libs.sqlcipher.android)
+    implementation(libs.androidx.sqlite)
+    testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
+    testImplementation(libs.androidx.sqlite.framework)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.example.passwordencryptionapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares loading and decrypting the full vault list in column mode and page mode.
+ * Both databases hold the same entries; the timings are written to logcat under "DatabaseBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseBenchmarkTest {
+    private static final String COLUMN_DATABASE = "benchmark_column.db";
+    private static final String PAGE_DATABASE = "benchmark_page.db";
+    private static final int ENTRY_COUNT = 1000;
+    private static final int ROUNDS = 5;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(COLUMN_DATABASE);
+        context.deleteDatabase(PAGE_DATABASE);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(COLUMN_DATABASE);
+        context.deleteDatabase(PAGE_DATABASE);
+    }
+
+    @Test
+    public void fullListLoad() throws Exception {
+        VaultConfig vault = new VaultConfig("benchmark", "Benchmark");
+        Database columnDatabase = new Database(context, vault, COLUMN_DATABASE, false, new Encryption(context, vault));
+        Database pageDatabase = new Database(context, vault, PAGE_DATABASE, true, new Encryption(context, vault));
+        seed(columnDatabase);
+        seed(pageDatabase);
+
+        long columnNanos = timeFullListLoad(columnDatabase);
+        long pageNanos = timeFullListLoad(pageDatabase);
+        columnDatabase.close();
+        pageDatabase.close();
+        Log.i("DatabaseBenchmark", ENTRY_COUNT + " entries, full list load and decrypt: column mode "
+                + columnNanos / 1000000.0 + " ms, page mode " + pageNanos / 1000000.0 + " ms");
+    }
+
+    private void seed(Database database) {
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            PasswordEntry entry = new PasswordEntry(0, "service" + i + ".example.com", "user" + i, null);
+            entry.setFolder(i % 3 == 0 ? "Work" : "");
+            database.addPasswordEntry(entry, "password-" + i);
+        }
+    }
+
+    /**
+     * This method returns the best time of a few rounds of what Vault does to show the passwords:
+     * load every entry, then read and decrypt their passwords in one batch.
+     */
+    private long timeFullListLoad(Database database) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            List<PasswordEntry> entries = database.getAllPasswordEntries();
+            List<String> passwords = database.decryptPasswords(entries);
+            for (int i = 0; i < entries.size(); i++) {
+                entries.get(i).showPassword(passwords.get(i));
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            assertEquals(ENTRY_COUNT, entries.size());
+            assertEquals("password-0", findPassword(entries, "service0.example.com"));
+        }
+        return best;
+    }
+
+    private static String findPassword(List<PasswordEntry> entries, String serviceName) {
+        for (PasswordEntry entry : entries) {
+            if (entry.getServiceName().equals(serviceName)) {
+                return entry.getPassword();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.passwordencryptionapp;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stops the page encryption migration after each of its steps, the way a crash would, and checks that the
+ * vault still opens with every password, then that running the migration again completes it.
+ * It needs SQLCipher's native library, so it runs on a device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PageEncryptionMigrationTest {
+    private static final int ENTRY_COUNT = 50;
+
+    private Context context;
+    private VaultConfig vault;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        vault = new VaultConfig("migration_test", "Migration test");
+        deleteVault();
+    }
+
+    @After
+    public void tearDown() {
+        deleteVault();
+    }
+
+    @Test
+    public void interruptedMigrationLeavesAWorkingVaultAtEveryStep() throws Exception {
+        for (Database.MigrationStep interruptedAt : Database.MigrationStep.values()) {
+            deleteVault();
+            Map<String, String> passwords = seed();
+
+            try {
+                Database.enablePageEncryption(context, vault, new Encryption(context, vault), step -> {
+                    if (step == interruptedAt) {
+                        throw new IOException("Interrupted after " + step);
+                    }
+                });
+                fail("Expected the migration to stop after " + interruptedAt);
+            } catch (IOException expected) {
+                // Interrupted.
+            }
+
+            // Only moving the copy into place switches the vault to page mode.
+            assertEquals(interruptedAt.name(), interruptedAt == Database.MigrationStep.COPY_MOVED,
+                    Database.isPageEncryptionEnabled(context, vault));
+            assertVaultOpens(passwords);
+
+            Database.enablePageEncryption(context, vault, new Encryption(context, vault));
+            assertTrue(interruptedAt.name(), Database.isPageEncryptionEnabled(context, vault));
+            assertFalse(interruptedAt.name(), encryptedCopy().exists());
+            assertVaultOpens(passwords);
+        }
+    }
+
+    @Test
+    public void leftoverCopyIsReplaced() throws Exception {
+        Map<String, String> passwords = seed();
+        try (FileOutputStream out = new FileOutputStream(encryptedCopy())) {
+            out.write("half of an encrypted database".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        Database.enablePageEncryption(context, vault, new Encryption(context, vault));
+
+        assertTrue(Database.isPageEncryptionEnabled(context, vault));
+        assertVaultOpens(passwords);
+    }
+
+    @Test
+    public void modeIsReadFromTheFile() throws Exception {
+        assertFalse(Database.isPageEncryptionEnabled(context, vault));
+        seed();
+        assertFalse(Database.isPageEncryptionEnabled(context, vault));
+
+        Database.enablePageEncryption(context, vault, new Encryption(context, vault));
+        assertTrue(Database.isPageEncryptionEnabled(context, vault));
+
+        // A second run finds the file already encrypted and leaves it alone.
+        long length = context.getDatabasePath(vault.getDatabaseName()).length();
+        Database.enablePageEncryption(context, vault, new Encryption(context, vault));
+        assertEquals(length, context.getDatabasePath(vault.getDatabaseName()).length());
+    }
+
+    /**
+     * This method fills the vault in column mode and returns each password by service name.
+     */
+    private Map<String, String> seed() {
+        Map<String, String> passwords = new HashMap<>();
+        Database database = new Database(context, vault, new Encryption(context, vault));
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            PasswordEntry entry = new PasswordEntry(0, "service" + i + ".example.com", "user" + i, null);
+            database.addPasswordEntry(entry, "password-" + i);
+            passwords.put(entry.getServiceName(), "password-" + i);
+        }
+        database.close();
+        return passwords;
+    }
+
+    /**
+     * This method opens the vault the way the app does, in the mode its file is in, and checks every entry.
+     */
+    private void assertVaultOpens(Map<String, String> passwords) throws Exception {
+        Database database = new Database(context, vault, new Encryption(context, vault));
+        try {
+            List<PasswordEntry> entries = database.getAllPasswordEntries();
+            assertEquals(passwords.size(), entries.size());
+            for (PasswordEntry entry : entries) {
+                assertEquals(passwords.get(entry.getServiceName()), database.decryptPassword(entry));
+            }
+            assertTrue(database.verifyIntegrity());
+        } finally {
+            database.close();
+        }
+    }
+
+    private File encryptedCopy() {
+        return context.getDatabasePath(vault.getDatabaseName() + ".encrypted");
+    }
+
+    private void deleteVault() {
+        context.deleteDatabase(vault.getDatabaseName());
+        context.deleteDatabase(vault.getDatabaseName() + ".encrypted");
+        context.getSharedPreferences(vault.getDatabasePrefsName(), Context.MODE_PRIVATE).edit().clear().commit();
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.passwordencryptionapp;
+
+/**
+ * An app the user has chosen to fill an entry into, identified by its package name and the SHA-256 digest
+ * of its signing certificates. Another app reusing the package name is signed differently, so it never
+ * matches the link.
+ */
+public class AppLink {
+    private final int entryId;
+    private final String packageName;
+    private final String certDigest;
+
+    public AppLink(int entryId, String packageName, String certDigest) {
+        this.entryId = entryId;
+        this.packageName = packageName;
+        this.certDigest = certDigest;
+    }
+
+    public int getEntryId() { return entryId; }
+
+    public String getPackageName() { return packageName; }
+
+    public String getCertDigest() { return certDigest; }
+}
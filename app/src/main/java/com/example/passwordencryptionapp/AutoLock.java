@@ -0,0 +1,74 @@
+package com.example.passwordencryptionapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+/**
+ * Drives an {@link AutoLockScheduler} from a screen's lifecycle and the screen-off broadcast.
+ *
+ * Once added to a screen's lifecycle it reports the screen stopping and starting as the app moving to the
+ * background and foreground, listens for the screen turning off while the screen exists, and runs the idle
+ * check on the main thread. The screen reports user interaction and showing or hiding passwords itself.
+ */
+public class AutoLock implements DefaultLifecycleObserver {
+    private final Context context;
+    private final AutoLockScheduler scheduler;
+    private final BroadcastReceiver screenOffReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            scheduler.screenOff();
+        }
+    };
+
+    /**
+     * Constructor for the AutoLock class.
+     * @param context The screen; it is kept until the screen is destroyed.
+     * @param listener What to do when passwords are purged or the vault is locked.
+     */
+    public AutoLock(Context context, AutoLockScheduler.Listener listener) {
+        this.context = context;
+        Handler handler = new Handler(Looper.getMainLooper());
+        this.scheduler = new AutoLockScheduler(SystemClock::elapsedRealtime, new AutoLockScheduler.Timer() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                handler.postDelayed(task, delayMillis);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                handler.removeCallbacks(task);
+            }
+        }, listener);
+    }
+
+    public AutoLockScheduler getScheduler() { return scheduler; }
+
+    @Override
+    public void onCreate(@NonNull LifecycleOwner owner) {
+        context.registerReceiver(screenOffReceiver, new IntentFilter(Intent.ACTION_SCREEN_OFF));
+    }
+
+    @Override
+    public void onStart(@NonNull LifecycleOwner owner) {
+        scheduler.movedToForeground();
+    }
+
+    @Override
+    public void onStop(@NonNull LifecycleOwner owner) {
+        scheduler.movedToBackground();
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        context.unregisterReceiver(screenOffReceiver);
+        scheduler.stop();
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.passwordencryptionapp;
+
+/**
+ * Decides when decrypted passwords are hidden again and when the vault locks.
+ *
+ * Decrypted passwords are purged after a period without user interaction, as soon as the app goes to the
+ * background, and when the screen turns off. The vault itself is locked when the screen turns off, or when
+ * the app comes back after being in the background for longer than the lock timeout.
+ *
+ * Interactions only record the time, so they cost nothing however often they come. A single idle check is
+ * scheduled while passwords are shown; when it runs early because of later interactions, it schedules itself
+ * again for the rest of the timeout. Time comes from an injectable monotonic {@link Clock} and the check runs
+ * on an injectable {@link Timer}. All methods must be called on the thread the timer runs tasks on.
+ */
+public class AutoLockScheduler {
+    public static final long IDLE_PURGE_MILLIS = 60_000;
+    public static final long BACKGROUND_LOCK_MILLIS = 30_000;
+
+    /**
+     * The source of the current time, in milliseconds since some fixed point. It must not go backwards.
+     */
+    public interface Clock {
+        long elapsedMillis();
+    }
+
+    /**
+     * Runs a task once after a delay, on the thread the scheduler is used from.
+     */
+    public interface Timer {
+        void schedule(Runnable task, long delayMillis);
+
+        void cancel(Runnable task);
+    }
+
+    /**
+     * What happens when the scheduler decides to purge or lock.
+     */
+    public interface Listener {
+        /**
+         * Hides every decrypted password.
+         */
+        void onPurgePlaintext();
+
+        /**
+         * Locks the vault, so that the PIN must be entered again.
+         */
+        void onLockVault();
+    }
+
+    private final Clock clock;
+    private final Timer timer;
+    private final Listener listener;
+    private final long idlePurgeMillis;
+    private final long backgroundLockMillis;
+    private final Runnable idleCheck = this::checkIdle;
+    private boolean plaintextShown;
+    private boolean idleCheckScheduled;
+    private long lastInteraction;
+    private long backgroundedAt = -1;
+
+    /**
+     * Constructor for the AutoLockScheduler class, with the default timeouts.
+     * @param clock The source of the current time.
+     * @param timer The timer for the idle check.
+     * @param listener What to do when passwords are purged or the vault is locked.
+     */
+    public AutoLockScheduler(Clock clock, Timer timer, Listener listener) {
+        this(clock, timer, listener, IDLE_PURGE_MILLIS, BACKGROUND_LOCK_MILLIS);
+    }
+
+    /**
+     * Constructor for the AutoLockScheduler class.
+     * @param clock The source of the current time.
+     * @param timer The timer for the idle check.
+     * @param listener What to do when passwords are purged or the vault is locked.
+     * @param idlePurgeMillis How long decrypted passwords stay shown without user interaction.
+     * @param backgroundLockMillis How long the app may stay in the background before the vault locks.
+     */
+    public AutoLockScheduler(Clock clock, Timer timer, Listener listener, long idlePurgeMillis,
+                             long backgroundLockMillis) {
+        this.clock = clock;
+        this.timer = timer;
+        this.listener = listener;
+        this.idlePurgeMillis = idlePurgeMillis;
+        this.backgroundLockMillis = backgroundLockMillis;
+    }
+
+    public boolean isPlaintextShown() { return plaintextShown; }
+
+    /**
+     * This method starts the idle timeout, to be called once decrypted passwords are shown.
+     */
+    public void plaintextShown() {
+        plaintextShown = true;
+        lastInteraction = clock.elapsedMillis();
+        scheduleIdleCheck(idlePurgeMillis);
+    }
+
+    /**
+     * This method stops the idle timeout, to be called when the user hides the passwords.
+     */
+    public void plaintextHidden() {
+        plaintextShown = false;
+        cancelIdleCheck();
+    }
+
+    /**
+     * This method restarts the idle timeout. It only records the time.
+     */
+    public void userInteraction() {
+        lastInteraction = clock.elapsedMillis();
+    }
+
+    /**
+     * This method purges decrypted passwords straight away, to be called when the app leaves the screen.
+     */
+    public void movedToBackground() {
+        backgroundedAt = clock.elapsedMillis();
+        purge();
+    }
+
+    /**
+     * This method locks the vault if the app was in the background for longer than the lock timeout.
+     */
+    public void movedToForeground() {
+        boolean expired = backgroundedAt >= 0 && clock.elapsedMillis() - backgroundedAt >= backgroundLockMillis;
+        backgroundedAt = -1;
+        if (expired) {
+            listener.onLockVault();
+        }
+    }
+
+    /**
+     * This method purges decrypted passwords and locks the vault, to be called when the screen turns off.
+     */
+    public void screenOff() {
+        purge();
+        listener.onLockVault();
+    }
+
+    /**
+     * This method stops the idle check for good, to be called when the screen it belongs to goes away.
+     */
+    public void stop() {
+        plaintextShown = false;
+        backgroundedAt = -1;
+        cancelIdleCheck();
+    }
+
+    private void checkIdle() {
+        idleCheckScheduled = false;
+        if (!plaintextShown) {
+            return;
+        }
+        long idle = clock.elapsedMillis() - lastInteraction;
+        if (idle >= idlePurgeMillis) {
+            purge();
+        } else {
+            scheduleIdleCheck(idlePurgeMillis - idle);
+        }
+    }
+
+    private void purge() {
+        cancelIdleCheck();
+        if (plaintextShown) {
+            plaintextShown = false;
+            listener.onPurgePlaintext();
+        }
+    }
+
+    private void scheduleIdleCheck(long delayMillis) {
+        if (idleCheckScheduled) {
+            timer.cancel(idleCheck);
+        }
+        timer.schedule(idleCheck, delayMillis);
+        idleCheckScheduled = true;
+    }
+
+    private void cancelIdleCheck() {
+        if (idleCheckScheduled) {
+            timer.cancel(idleCheck);
+            idleCheckScheduled = false;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.passwordencryptionapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lookup index from web domains and linked apps to the ids of matching vault entries.
+ *
+ * Only verified associations match. A web domain is only taken from a known browser, which reports the
+ * domain of the page it shows; any other app can put any domain in its view structure. It matches entries
+ * whose service name is a domain, such as "https://accounts.google.com/login", on the host and the
+ * registrable domain ("accounts.google.com", "google.com"). An app matches only the entries the user has
+ * linked to it, keyed by its package name and the digest of its signing certificates, so an app named or
+ * packaged after a service ("com.evil.github") gets nothing. Service names that are not domains are
+ * never matched by name.
+ *
+ * Each entry is reduced once to its lookup keys, so a lookup is a handful of hash probes and never
+ * touches the database. The index is updated one entry at a time through {@link #put}, {@link #link}
+ * and {@link #remove}, which is how it stays in sync with {@link Database} mutations. All methods are
+ * thread-safe.
+ */
+public class AutofillIndex {
+    private static final Set<String> SECOND_LEVEL_SUFFIXES = new HashSet<>(Arrays.asList(
+            "co", "com", "net", "org", "gov", "edu", "ac", "or", "ne", "go"));
+    private static final Set<String> BROWSERS = new HashSet<>(Arrays.asList(
+            "com.android.chrome", "com.chrome.beta", "com.chrome.dev", "org.chromium.chrome",
+            "org.mozilla.firefox", "org.mozilla.firefox_beta", "org.mozilla.focus",
+            "com.sec.android.app.sbrowser", "com.microsoft.emmx", "com.brave.browser",
+            "com.opera.browser", "com.vivaldi.browser", "com.duckduckgo.mobile.android"));
+
+    private final Map<String, Set<Integer>> idsByKey = new HashMap<>();
+    private final Map<Integer, List<String>> domainKeysById = new HashMap<>();
+    private final Map<Integer, List<String>> appKeysById = new HashMap<>();
+
+    /**
+     * This method builds an index from every entry's service name and every app link.
+     * @param serviceNames The service name of each entry, by entry id.
+     * @param appLinks The apps linked to entries.
+     * @return The populated index.
+     */
+    public static AutofillIndex build(Map<Integer, String> serviceNames, List<AppLink> appLinks) {
+        AutofillIndex index = new AutofillIndex();
+        for (Map.Entry<Integer, String> entry : serviceNames.entrySet()) {
+            index.put(entry.getKey(), entry.getValue());
+        }
+        for (AppLink appLink : appLinks) {
+            index.link(appLink.getEntryId(), appLink.getPackageName(), appLink.getCertDigest());
+        }
+        return index;
+    }
+
+    /**
+     * This method adds an entry, or re-indexes it if its service name changed. Its app links are kept.
+     * @param entryId The entry id.
+     * @param serviceName The entry's service name.
+     */
+    public synchronized void put(int entryId, String serviceName) {
+        removeKeys(domainKeysById, entryId);
+        List<String> keys = keysForServiceName(serviceName);
+        if (!keys.isEmpty()) {
+            addKeys(domainKeysById, entryId, keys);
+        }
+    }
+
+    /**
+     * This method links an app to an entry, so the app is offered that entry from now on.
+     * @param entryId The entry id.
+     * @param packageName The app's package name.
+     * @param certDigest The digest of the app's signing certificates.
+     */
+    public synchronized void link(int entryId, String packageName, String certDigest) {
+        addKeys(appKeysById, entryId, Collections.singletonList(appKey(packageName, certDigest)));
+    }
+
+    /**
+     * This method removes an entry and its app links from the index. Removing an unknown id does nothing.
+     * @param entryId The entry id.
+     */
+    public synchronized void remove(int entryId) {
+        removeKeys(domainKeysById, entryId);
+        removeKeys(appKeysById, entryId);
+    }
+
+    /**
+     * This method returns the number of indexed entries.
+     */
+    public synchronized int size() {
+        Set<Integer> ids = new HashSet<>(domainKeysById.keySet());
+        ids.addAll(appKeysById.keySet());
+        return ids.size();
+    }
+
+    /**
+     * This method finds the entries for a request, best match first.
+     * A known browser is matched on the web domain of the page it shows; any other app only on its links.
+     * @param packageName The package of the app being filled, or null.
+     * @param certDigest The digest of that app's signing certificates, or null if it could not be read.
+     * @param webDomain The web domain of the page being filled, or null.
+     * @return The matching entry ids, most specific match first, without duplicates.
+     */
+    public synchronized List<Integer> find(String packageName, String certDigest, String webDomain) {
+        Set<Integer> matches = new LinkedHashSet<>();
+        if (isBrowser(packageName)) {
+            if (webDomain != null) {
+                addMatches(matches, keysForDomain(webDomain));
+            }
+        } else if (packageName != null && certDigest != null) {
+            addMatches(matches, Collections.singletonList(appKey(packageName, certDigest)));
+        }
+        return new ArrayList<>(matches);
+    }
+
+    /**
+     * This method tells whether a package is a browser whose reported web domains are trusted.
+     * Browsers are matched by domain only, so they are never linked to entries themselves.
+     */
+    static boolean isBrowser(String packageName) {
+        return packageName != null && BROWSERS.contains(packageName);
+    }
+
+    private void addKeys(Map<Integer, List<String>> keysById, int entryId, List<String> keys) {
+        List<String> entryKeys = keysById.get(entryId);
+        if (entryKeys == null) {
+            entryKeys = new ArrayList<>(keys.size());
+            keysById.put(entryId, entryKeys);
+        }
+        for (String key : keys) {
+            if (entryKeys.contains(key)) {
+                continue;
+            }
+            entryKeys.add(key);
+            Set<Integer> ids = idsByKey.get(key);
+            if (ids == null) {
+                ids = new LinkedHashSet<>();
+                idsByKey.put(key, ids);
+            }
+            ids.add(entryId);
+        }
+    }
+
+    private void removeKeys(Map<Integer, List<String>> keysById, int entryId) {
+        List<String> keys = keysById.remove(entryId);
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            Set<Integer> ids = idsByKey.get(key);
+            ids.remove(entryId);
+            if (ids.isEmpty()) {
+                idsByKey.remove(key);
+            }
+        }
+    }
+
+    private void addMatches(Set<Integer> matches, List<String> keys) {
+        for (String key : keys) {
+            Set<Integer> ids = idsByKey.get(key);
+            if (ids != null) {
+                matches.addAll(ids);
+            }
+        }
+    }
+
+    /**
+     * This method derives the lookup keys for a service name, most specific first.
+     * Only service names that are domains have keys.
+     */
+    static List<String> keysForServiceName(String serviceName) {
+        if (serviceName == null) {
+            return Collections.emptyList();
+        }
+        String host = normalizeHost(serviceName);
+        if (host.indexOf('.') > 0 && host.indexOf(' ') < 0) {
+            return keysForDomain(host);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * This method derives the lookup keys for a web domain: the host and its registrable domain.
+     */
+    static List<String> keysForDomain(String domain) {
+        String host = normalizeHost(domain);
+        List<String> keys = new ArrayList<>(2);
+        if (host.isEmpty()) {
+            return keys;
+        }
+        keys.add(host);
+        String[] labels = host.split("\\.");
+        int siteLabel = labels.length - 2;
+        if (labels.length >= 3 && SECOND_LEVEL_SUFFIXES.contains(labels[labels.length - 2])
+                && labels[labels.length - 1].length() == 2) {
+            siteLabel = labels.length - 3;
+        }
+        if (siteLabel >= 0) {
+            StringBuilder registrable = new StringBuilder(labels[siteLabel]);
+            for (int i = siteLabel + 1; i < labels.length; i++) {
+                registrable.append('.').append(labels[i]);
+            }
+            if (!keys.contains(registrable.toString())) {
+                keys.add(registrable.toString());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * This method returns the lookup key of a linked app. It contains "://", which a host never does.
+     */
+    private static String appKey(String packageName, String certDigest) {
+        return "android://" + certDigest + "@" + packageName;
+    }
+
+    private static String normalizeHost(String value) {
+        String host = value.trim().toLowerCase(Locale.ROOT);
+        int scheme = host.indexOf("://");
+        if (scheme >= 0) {
+            host = host.substring(scheme + 3);
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c == '/' || c == ':' || c == '?' || c == '#') {
+                host = host.substring(0, i);
+                break;
+            }
+        }
+        if (host.startsWith("www.")) {
+            host = host.substring(4);
+        }
+        while (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        return host;
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.passwordencryptionapp;
+
+import android.app.AlertDialog;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentSender;
+import android.os.Build;
+import android.os.Bundle;
+import android.service.autofill.Dataset;
+import android.view.autofill.AutofillId;
+import android.view.autofill.AutofillManager;
+import android.view.autofill.AutofillValue;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.RemoteViews;
+import android.widget.Toast;
+import androidx.appcompat.app.AppCompatActivity;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class AutofillUnlockActivity extends AppCompatActivity {
+    private static final String EXTRA_VAULT_ID = "vault_id";
+    private static final String EXTRA_ENTRY_ID = "entry_id";
+    private static final String EXTRA_USERNAME_ID = "username_autofill_id";
+    private static final String EXTRA_PASSWORD_ID = "password_autofill_id";
+    private static final String EXTRA_PACKAGE_NAME = "package_name";
+    private static final int CHOOSE_ENTRY = -1;
+
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    private EditText pinEditText;
+    private Button loginButton;
+    private VaultConfig vault;
+    private VaultHandle vaultHandle;
+
+    /**
+     * This method creates the IntentSender that autofill launches when the user picks a suggestion.
+     * Each entry gets its own request code so the pending intents do not replace each other.
+     * @param context The service context.
+     * @param vault The vault the entry belongs to.
+     * @param entryId The ID of the suggested password entry.
+     * @param usernameId The username field to fill, or null.
+     * @param passwordId The password field to fill, or null.
+     * @return The IntentSender for the suggestion's authentication.
+     */
+    static IntentSender createIntentSender(Context context, VaultConfig vault, int entryId,
+                                           AutofillId usernameId, AutofillId passwordId) {
+        return createIntentSender(context, vault, entryId, null, usernameId, passwordId);
+    }
+
+    /**
+     * This method creates the IntentSender for the suggestion that lets the user choose any entry.
+     * Filling an app this way links the chosen entry to it, so the app is offered that entry from then on.
+     * @param context The service context.
+     * @param vault The vault to choose from.
+     * @param packageName The package of the app being filled.
+     * @param usernameId The username field to fill, or null.
+     * @param passwordId The password field to fill, or null.
+     * @return The IntentSender for the suggestion's authentication.
+     */
+    static IntentSender createChooserIntentSender(Context context, VaultConfig vault, String packageName,
+                                                  AutofillId usernameId, AutofillId passwordId) {
+        return createIntentSender(context, vault, CHOOSE_ENTRY, packageName, usernameId, passwordId);
+    }
+
+    private static IntentSender createIntentSender(Context context, VaultConfig vault, int entryId, String packageName,
+                                                   AutofillId usernameId, AutofillId passwordId) {
+        Intent intent = new Intent(context, AutofillUnlockActivity.class)
+                .putExtra(EXTRA_VAULT_ID, vault.getId())
+                .putExtra(EXTRA_ENTRY_ID, entryId)
+                .putExtra(EXTRA_PACKAGE_NAME, packageName)
+                .putExtra(EXTRA_USERNAME_ID, usernameId)
+                .putExtra(EXTRA_PASSWORD_ID, passwordId);
+        int flags = PendingIntent.FLAG_CANCEL_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            // Autofill adds the assist structure to the intent, so it has to stay mutable.
+            flags |= PendingIntent.FLAG_MUTABLE;
+        }
+        return PendingIntent.getActivity(context, entryId, intent, flags).getIntentSender();
+    }
+
+    /**
+     * This method is called when the activity is first created.
+     * It reuses the login screen so the user confirms the PIN of the entry's vault before a password is filled in.
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        vault = VaultManager.getInstance(this).getVault(getIntent().getStringExtra(EXTRA_VAULT_ID));
+        if (vault == null) {
+            setResult(RESULT_CANCELED);
+            finish();
+            return;
+        }
+        setContentView(R.layout.activity_main);
+        setTitle(vault.getName());
+        pinEditText = findViewById(R.id.pinEditText);
+        loginButton = findViewById(R.id.loginButton);
+        loginButton.setText("Unlock and Fill");
+        loginButton.setOnClickListener(view -> unlockAndFill());
+    }
+
+    /**
+     * This method is called when the activity is destroyed.
+     * It releases the vault, if it was opened, once the background work on it has finished.
+     */
+    @Override
+    protected void onDestroy() {
+        backgroundExecutor.shutdown();
+        if (vaultHandle != null) {
+            VaultManager.getInstance(this).releaseAfter(backgroundExecutor, vaultHandle);
+            vaultHandle = null;
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * This method checks the PIN and, if it is correct, fills the chosen entry, or first lets the user choose one.
+     * The button stays disabled from then on, so a second tap cannot fill twice.
+     */
+    private void unlockAndFill() {
+        if (!PinLock.checkPin(this, vault, pinEditText.getText().toString())) {
+            return;
+        }
+        loginButton.setEnabled(false);
+        if (vaultHandle == null) {
+            vaultHandle = VaultManager.getInstance(this).acquire(vault);
+        }
+        Database database = vaultHandle.getDatabase();
+        int entryId = getIntent().getIntExtra(EXTRA_ENTRY_ID, CHOOSE_ENTRY);
+        if (entryId == CHOOSE_ENTRY) {
+            chooseEntry(database);
+        } else {
+            fill(database, entryId, false);
+        }
+    }
+
+    /**
+     * This method lists every entry of the vault by service name and username and fills the one the user picks.
+     * Only those two columns are read, in the background, and the list is shown once they are loaded.
+     */
+    private void chooseEntry(Database database) {
+        backgroundExecutor.execute(() -> {
+            List<PasswordEntry> entries = database.getEntryLabels();
+            runOnUiThread(() -> showChooser(database, entries));
+        });
+    }
+
+    /**
+     * This method shows the loaded entries to choose from.
+     */
+    private void showChooser(Database database, List<PasswordEntry> entries) {
+        if (isFinishing()) {
+            return;
+        }
+        if (entries.isEmpty()) {
+            Toast.makeText(this, "This vault has no entries", Toast.LENGTH_SHORT).show();
+            setResult(RESULT_CANCELED);
+            finish();
+            return;
+        }
+        String[] labels = new String[entries.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = entries.get(i).getServiceName() + "\n" + entries.get(i).getUsername();
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Choose an entry")
+                .setItems(labels, (dialog, which) -> fill(database, entries.get(which).getId(), true))
+                .setOnCancelListener(dialog -> {
+                    setResult(RESULT_CANCELED);
+                    finish();
+                })
+                .show();
+    }
+
+    /**
+     * This method decrypts an entry in the background and hands it to autofill.
+     * Only this one entry is read, checked against the vault's integrity root and decrypted. An entry the user
+     * chose for an app is linked to that app, by its package name and signing certificate digest; browsers are
+     * matched by the page's domain instead, so they are never linked.
+     * @param database The vault's database.
+     * @param entryId The ID of the entry to fill.
+     * @param chosen Whether the user chose the entry from the whole vault rather than from the suggestions.
+     */
+    private void fill(Database database, int entryId, boolean chosen) {
+        backgroundExecutor.execute(() -> {
+            Intent result = null;
+            String error = null;
+            try {
+                PasswordEntry entry = database.getPasswordEntry(entryId);
+                if (entry == null) {
+                    error = "Password entry no longer exists";
+                } else if (!database.verifyEntry(entryId)) {
+                    error = "This entry failed its integrity check";
+                } else {
+                    result = createFillResult(database, entry, chosen);
+                }
+            } catch (GeneralSecurityException | IOException e) {
+                e.printStackTrace();
+                error = "Failed to decrypt password";
+            }
+            final Intent filled = result;
+            final String message = error;
+            runOnUiThread(() -> finishFill(filled, message));
+        });
+    }
+
+    /**
+     * This method builds the autofill result for a verified entry, links the app if the user chose the entry,
+     * and records the use. This runs blocking I/O, so call it off the main thread.
+     */
+    private Intent createFillResult(Database database, PasswordEntry entry, boolean chosen)
+            throws GeneralSecurityException, IOException {
+        Intent intent = getIntent();
+        AutofillId usernameId = intent.getParcelableExtra(EXTRA_USERNAME_ID);
+        AutofillId passwordId = intent.getParcelableExtra(EXTRA_PASSWORD_ID);
+
+        String password = database.decryptPassword(entry);
+        RemoteViews presentation = VaultAutofillService.createPresentation(this, entry.getServiceName(),
+                entry.getUsername());
+        Dataset.Builder dataset = new Dataset.Builder(presentation);
+        if (usernameId != null) {
+            dataset.setValue(usernameId, AutofillValue.forText(entry.getUsername()));
+        }
+        if (passwordId != null) {
+            dataset.setValue(passwordId, AutofillValue.forText(password));
+        }
+        String packageName = intent.getStringExtra(EXTRA_PACKAGE_NAME);
+        if (chosen && packageName != null && !AutofillIndex.isBrowser(packageName)) {
+            String certDigest = VaultAutofillService.getCertDigest(this, packageName);
+            if (certDigest != null) {
+                database.linkApp(entry.getId(), packageName, certDigest);
+            }
+        }
+        database.recordEntryUse(entry.getId(), System.currentTimeMillis());
+        return new Intent().putExtra(AutofillManager.EXTRA_AUTHENTICATION_RESULT, dataset.build());
+    }
+
+    /**
+     * This method hands the result to autofill, or shows why there is none, and closes the activity.
+     * @param result The autofill result, or null if the entry could not be filled.
+     * @param error The message to show when there is no result.
+     */
+    private void finishFill(Intent result, String error) {
+        if (result != null) {
+            setResult(RESULT_OK, result);
+        } else {
+            Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
+            setResult(RESULT_CANCELED);
+        }
+        finish();
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.passwordencryptionapp;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks vault entries against a {@link BreachIndex} without any network access.
+ * Entries are split into batches that are decrypted and looked up in parallel on a worker pool.
+ */
+public class BreachChecker {
+    private static final int BATCH_SIZE = 64;
+
+    private final Database database;
+    private final BreachIndex breachIndex;
+
+    public BreachChecker(Database database, BreachIndex breachIndex) {
+        this.database = database;
+        this.breachIndex = breachIndex;
+    }
+
+    /**
+     * An entry's id and service name with its password as stored, captured on the thread that owns the entry.
+     * The fields are final, so a snapshot can be handed to worker threads while the entry itself keeps changing.
+     */
+    public static final class StoredPassword {
+        private final int id;
+        private final String serviceName;
+        private final String storedPassword;
+
+        StoredPassword(int id, String serviceName, String storedPassword) {
+            this.id = id;
+            this.serviceName = serviceName;
+            this.storedPassword = storedPassword;
+        }
+
+        public int getId() { return id; }
+
+        public String getServiceName() { return serviceName; }
+
+        public String getStoredPassword() { return storedPassword; }
+    }
+
+    /**
+     * This method copies what the breach check needs out of the entries.
+     * Call it on the thread that modifies the entries, and pass only the result to the background thread.
+     * A password shown in plaintext is captured in its stored form. Entries of the vault list hold no password;
+     * theirs is read from the database when their batch is checked.
+     * @param entries The entries to check.
+     * @return One immutable snapshot per entry, in the same order.
+     */
+    public static List<StoredPassword> snapshot(List<PasswordEntry> entries) {
+        List<StoredPassword> snapshot = new ArrayList<>(entries.size());
+        for (PasswordEntry entry : entries) {
+            snapshot.add(new StoredPassword(entry.getId(), entry.getServiceName(), entry.getStoredPassword()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * This method finds the entries whose passwords appear in the breach index.
+     * It should be called from a background thread, since it blocks until every batch is checked.
+     * @param snapshot The entries to check, as returned by {@link #snapshot(List)}.
+     * @return The ids of the breached entries.
+     * @throws GeneralSecurityException If a password cannot be decrypted.
+     * @throws IOException If the secret key cannot be loaded.
+     */
+    public Set<Integer> findBreachedEntries(final List<StoredPassword> snapshot)
+            throws GeneralSecurityException, IOException {
+        int size = snapshot.size();
+        if (size == 0) {
+            return Collections.emptySet();
+        }
+
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), (size + BATCH_SIZE - 1) / BATCH_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Integer>>> batches = new ArrayList<>();
+            for (int start = 0; start < size; start += BATCH_SIZE) {
+                final int from = start;
+                final int to = Math.min(start + BATCH_SIZE, size);
+                batches.add(executor.submit(() -> checkBatch(snapshot.subList(from, to))));
+            }
+
+            Set<Integer> breachedIds = new HashSet<>();
+            for (Future<List<Integer>> batch : batches) {
+                breachedIds.addAll(batch.get());
+            }
+            return breachedIds;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Breach check interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Integer> checkBatch(List<StoredPassword> batch) throws GeneralSecurityException, IOException {
+        // The entries built here never leave this thread.
+        List<PasswordEntry> entries = new ArrayList<>(batch.size());
+        for (StoredPassword stored : batch) {
+            entries.add(new PasswordEntry(stored.getId(), stored.getServiceName(), null, stored.getStoredPassword()));
+        }
+        List<String> plaintexts = database.decryptPasswords(entries);
+        List<Integer> breached = new ArrayList<>();
+        for (int i = 0; i < plaintexts.size(); i++) {
+            if (breachIndex.containsPassword(plaintexts.get(i))) {
+                breached.add(batch.get(i).getId());
+            }
+        }
+        return breached;
+    }
+}
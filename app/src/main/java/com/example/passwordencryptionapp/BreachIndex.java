@@ -0,0 +1,253 @@
+package com.example.passwordencryptionapp;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Read-only index of breached SHA-1 password hashes, stored in a compact memory-mapped file.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   header   : magic "BRIX" | int version | long record count
+ *   fan-out  : 65537 longs, where fanOut[p] is the index of the first record whose hash starts with p
+ *   records  : sorted 8-byte keys, being bytes 2..9 of each SHA-1 hash
+ * </pre>
+ * The first two hash bytes are implied by the fan-out bucket, so every record carries an 80-bit
+ * prefix in 8 bytes. A lookup reads one fan-out slot and binary searches a bucket of roughly
+ * count / 65536 records, touching only a handful of pages. The records are mapped in 1 GB
+ * segments, so resident memory is bounded by the page cache no matter how large the dataset is.
+ */
+public class BreachIndex implements Closeable {
+    private static final int MAGIC = 0x42524958; // "BRIX"
+    private static final int VERSION = 1;
+    private static final int BUCKETS = 1 << 16;
+    private static final int RECORD_SIZE = 8;
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    private static final int FAN_OUT_SIZE = (BUCKETS + 1) * 8;
+    private static final long RECORDS_OFFSET = HEADER_SIZE + FAN_OUT_SIZE;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private final RandomAccessFile file;
+    private final long[] fanOut;
+    private final MappedByteBuffer[] segments;
+
+    private BreachIndex(RandomAccessFile file, long[] fanOut, MappedByteBuffer[] segments) {
+        this.file = file;
+        this.fanOut = fanOut;
+        this.segments = segments;
+    }
+
+    /**
+     * This method opens an index file previously written by {@link #build(InputStream, File)}.
+     * Only the fan-out table is read onto the heap; the records are memory-mapped.
+     * @param indexFile The index file.
+     * @return The opened index.
+     * @throws IOException If the file cannot be read or is not a valid index.
+     */
+    public static BreachIndex open(File indexFile) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + FAN_OUT_SIZE).order(ByteOrder.BIG_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Truncated breach index header");
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Unsupported breach index format");
+            }
+            long count = header.getLong();
+            long[] fanOut = new long[BUCKETS + 1];
+            for (int i = 0; i <= BUCKETS; i++) {
+                fanOut[i] = header.getLong();
+            }
+            if (fanOut[BUCKETS] != count || channel.size() < RECORDS_OFFSET + count * RECORD_SIZE) {
+                throw new IOException("Corrupt breach index");
+            }
+
+            long recordBytes = count * RECORD_SIZE;
+            int segmentCount = (int) ((recordBytes + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                long length = Math.min(SEGMENT_SIZE, recordBytes - start);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, RECORDS_OFFSET + start, length);
+            }
+            return new BreachIndex(raf, fanOut, segments);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * This method converts a breached-hash dump into the binary index format.
+     * Each input line holds a 40-character hex SHA-1 hash, optionally followed by ":count",
+     * and the lines must be sorted by hash, as in the "ordered by hash" downloads.
+     * The input is streamed, so building never holds the dataset in memory.
+     * @param hashList The sorted hash list.
+     * @param indexFile The file to write the index to.
+     * @throws IOException If reading or writing fails, or the input is malformed or unsorted.
+     */
+    public static void build(InputStream hashList, File indexFile) throws IOException {
+        long[] fanOut = new long[BUCKETS + 1];
+        long count = 0;
+        int previousBucket = -1;
+        long previousKey = 0;
+
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+             BufferedReader reader = new BufferedReader(new InputStreamReader(hashList, StandardCharsets.US_ASCII))) {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            channel.position(RECORDS_OFFSET);
+            ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.BIG_ENDIAN);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.length() < 40) {
+                    throw new IOException("Malformed hash line: " + line);
+                }
+                int bucket = (int) parseHex(line, 0, 4);
+                long key = parseHex(line, 4, 20);
+                if (bucket < previousBucket
+                        || (bucket == previousBucket && Long.compareUnsigned(key, previousKey) < 0)) {
+                    throw new IOException("Hash list is not sorted at line " + (count + 1));
+                }
+                if (bucket == previousBucket && key == previousKey) {
+                    continue;
+                }
+                while (previousBucket < bucket) {
+                    fanOut[++previousBucket] = count;
+                }
+                previousKey = key;
+
+                if (!out.hasRemaining()) {
+                    flush(channel, out);
+                }
+                out.putLong(key);
+                count++;
+            }
+            flush(channel, out);
+            while (previousBucket < BUCKETS) {
+                fanOut[++previousBucket] = count;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + FAN_OUT_SIZE).order(ByteOrder.BIG_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(count);
+            for (long offset : fanOut) {
+                header.putLong(offset);
+            }
+            header.flip();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * This method returns the number of hashes in the index.
+     */
+    public long size() {
+        return fanOut[BUCKETS];
+    }
+
+    /**
+     * This method checks whether a plaintext password appears in the index.
+     * @param password The plaintext password.
+     * @return true if the password's SHA-1 hash is in the breached set.
+     */
+    public boolean containsPassword(String password) {
+        return containsHash(sha1(password));
+    }
+
+    /**
+     * This method checks whether a raw SHA-1 hash appears in the index.
+     * Lookups allocate nothing and are safe to run from several threads at once.
+     * @param sha1 The 20-byte SHA-1 hash.
+     * @return true if the hash is in the breached set.
+     */
+    public boolean containsHash(byte[] sha1) {
+        int bucket = ((sha1[0] & 0xFF) << 8) | (sha1[1] & 0xFF);
+        long key = 0;
+        for (int i = 2; i < 10; i++) {
+            key = (key << 8) | (sha1[i] & 0xFF);
+        }
+
+        long low = fanOut[bucket];
+        long high = fanOut[bucket + 1] - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int comparison = Long.compareUnsigned(recordAt(mid), key);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method hashes a password with SHA-1, the hash used by public breach datasets.
+     */
+    public static byte[] sha1(String password) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 algorithm not found", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private long recordAt(long index) {
+        long offset = index * RECORD_SIZE;
+        // Absolute reads keep the shared buffers free of position state between threads.
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].getLong((int) (offset & (SEGMENT_SIZE - 1)));
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private static long parseHex(String line, int start, int end) throws IOException {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(line.charAt(i), 16);
+            if (digit < 0) {
+                throw new IOException("Malformed hash line: " + line);
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+}
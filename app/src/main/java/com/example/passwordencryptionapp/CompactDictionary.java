@@ -0,0 +1,255 @@
+package com.example.passwordencryptionapp;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A sorted, memory-mapped word list with a popularity rank per word.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   header  : magic "DICT" | int word count | int longest word length
+ *   offsets : (count + 1) ints, the start of each word in the data section
+ *   ranks   : count ints, the 1-based line number of each word in the source list
+ *   data    : the lowercase ASCII words, concatenated in sorted order
+ * </pre>
+ * Lookups binary search the offsets and compare bytes in place, so they allocate nothing
+ * and only touch the pages they need.
+ */
+public class CompactDictionary {
+    private static final int MAGIC = 0x44494354; // "DICT"
+    private static final int HEADER_SIZE = 12;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int maxLength;
+    private final int ranksOffset;
+    private final int dataOffset;
+
+    private CompactDictionary(MappedByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a dictionary file");
+        }
+        this.buffer = buffer;
+        this.count = buffer.getInt(4);
+        this.maxLength = buffer.getInt(8);
+        this.ranksOffset = HEADER_SIZE + (count + 1) * 4;
+        this.dataOffset = ranksOffset + count * 4;
+    }
+
+    /**
+     * This method opens a dictionary that ships as a text asset.
+     * The first call converts the asset into the binary format in the app's files directory;
+     * later calls, including those after a process restart, only map the existing file.
+     * The file is rebuilt when the app is updated, in case the bundled list changed.
+     * @param context The application context.
+     * @param assetName The asset holding one word per line, most common first.
+     * @return The mapped dictionary.
+     * @throws IOException If the asset cannot be read or the dictionary cannot be written.
+     */
+    public static synchronized CompactDictionary fromAsset(Context context, String assetName) throws IOException {
+        File dictionaryFile = new File(context.getFilesDir(), assetName + ".dict");
+        long installedAt;
+        try {
+            installedAt = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            installedAt = Long.MAX_VALUE;
+        }
+        if (!dictionaryFile.exists() || dictionaryFile.lastModified() < installedAt) {
+            File tempFile = new File(context.getFilesDir(), assetName + ".dict.tmp");
+            try (InputStream words = context.getAssets().open(assetName)) {
+                build(words, tempFile);
+            }
+            if (!tempFile.renameTo(dictionaryFile)) {
+                throw new IOException("Could not move dictionary into place");
+            }
+        }
+        return open(dictionaryFile);
+    }
+
+    /**
+     * This method maps a dictionary file written by {@link #build(InputStream, File)}.
+     */
+    public static CompactDictionary open(File dictionaryFile) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(dictionaryFile, "r")) {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return new CompactDictionary(buffer);
+        }
+    }
+
+    /**
+     * This method converts a word list with one word per line into the binary format.
+     * Words are lowercased, and a word that appears twice keeps the rank of its first line.
+     * @param words The word list, most common first.
+     * @param dictionaryFile The file to write the dictionary to.
+     * @throws IOException If reading or writing fails.
+     */
+    public static void build(InputStream words, File dictionaryFile) throws IOException {
+        final List<String> entries = new ArrayList<>();
+        final List<Integer> lineNumbers = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(words, StandardCharsets.US_ASCII))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String word = line.trim().toLowerCase(Locale.ROOT);
+                if (!word.isEmpty() && seen.add(word)) {
+                    entries.add(word);
+                    lineNumbers.add(lineNumber);
+                }
+            }
+        }
+        List<Integer> order = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, (a, b) -> entries.get(a).compareTo(entries.get(b)));
+
+        List<byte[]> wordBytes = new ArrayList<>(order.size());
+        int dataSize = 0;
+        int maxLength = 0;
+        for (int index : order) {
+            byte[] bytes = entries.get(index).getBytes(StandardCharsets.US_ASCII);
+            wordBytes.add(bytes);
+            dataSize += bytes.length;
+            maxLength = Math.max(maxLength, bytes.length);
+        }
+
+        int count = wordBytes.size();
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + (count + 1) * 4 + count * 4 + dataSize)
+                .order(ByteOrder.BIG_ENDIAN);
+        out.putInt(MAGIC).putInt(count).putInt(maxLength);
+        int offset = 0;
+        for (byte[] bytes : wordBytes) {
+            out.putInt(offset);
+            offset += bytes.length;
+        }
+        out.putInt(offset);
+        for (int index : order) {
+            out.putInt(lineNumbers.get(index));
+        }
+        for (byte[] bytes : wordBytes) {
+            out.put(bytes);
+        }
+        out.flip();
+
+        try (RandomAccessFile raf = new RandomAccessFile(dictionaryFile, "rw")) {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    /**
+     * This method returns the number of words in the dictionary.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * This method returns the length of the longest word, which bounds substring searches.
+     */
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * This method returns the word at a position in sorted order.
+     * @param index A position between 0 and size() - 1.
+     */
+    public String wordAt(int index) {
+        int start = buffer.getInt(HEADER_SIZE + index * 4);
+        int end = buffer.getInt(HEADER_SIZE + (index + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(dataOffset + start + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * This method looks up a slice of text, ignoring case.
+     * Callers scanning substrings can stop extending a slice once this returns -1,
+     * because no longer slice with the same start can match either.
+     * @param text The text to search in.
+     * @param start The first character of the slice.
+     * @param end One past the last character of the slice.
+     * @return The 1-based popularity rank of the word, 0 if the slice is only the start of longer words,
+     *         or -1 if no word starts with the slice.
+     */
+    public int rank(CharSequence text, int start, int end) {
+        if (end - start > maxLength) {
+            return -1;
+        }
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = compare(mid, text, start, end);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return buffer.getInt(ranksOffset + mid * 4);
+            }
+        }
+        return low < count && startsWith(low, text, start, end) ? 0 : -1;
+    }
+
+    private boolean startsWith(int index, CharSequence text, int start, int end) {
+        int wordStart = dataOffset + buffer.getInt(HEADER_SIZE + index * 4);
+        int wordEnd = dataOffset + buffer.getInt(HEADER_SIZE + (index + 1) * 4);
+        if (wordEnd - wordStart < end - start) {
+            return false;
+        }
+        for (int j = start; j < end; j++) {
+            if ((buffer.get(wordStart + j - start) & 0xFF) != Character.toLowerCase(text.charAt(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int compare(int index, CharSequence text, int start, int end) {
+        int wordStart = dataOffset + buffer.getInt(HEADER_SIZE + index * 4);
+        int wordEnd = dataOffset + buffer.getInt(HEADER_SIZE + (index + 1) * 4);
+        int i = wordStart;
+        int j = start;
+        while (i < wordEnd && j < end) {
+            int a = buffer.get(i) & 0xFF;
+            int b = Character.toLowerCase(text.charAt(j));
+            if (a != b) {
+                return a - b;
+            }
+            i++;
+            j++;
+        }
+        return (wordEnd - i) - (end - j);
+    }
+}
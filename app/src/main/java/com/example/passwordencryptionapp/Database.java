@@ -3,44 +3,551 @@ package com.example.passwordencryptionapp;
 import android.annotation.SuppressLint;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
-import android.util.Log;
+import android.util.SparseArray;
 
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.SupportSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQueryBuilder;
+
+import net.zetetic.database.sqlcipher.SupportOpenHelperFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-public class Database extends SQLiteOpenHelper {
-    private static final String DATABASE_NAME = "passwords.db";
-    private static final int DATABASE_VERSION = 1;
+/**
+ * Stores the password entries of one vault in SQLite, through SQLCipher so the whole file can be encrypted.
+ * Instances are normally owned by a {@link VaultHandle}, which keeps the connection open between
+ * queries and closes it when the vault is evicted.
+ *
+ * A vault starts in column mode: the file is plain SQLite and only the password column is encrypted,
+ * one AES-GCM value per row. After {@link #enablePageEncryption} it is in page mode: every page of the
+ * file, including service names, usernames, folders, tags and indexes, is encrypted with a key kept in
+ * the keystore-backed preferences, and passwords are stored without their own encryption. Loading the
+ * list then costs one page decrypt per few dozen rows instead of one cipher init per row.
+ *
+ * In column mode each password is encrypted bound to its row id and service name. In both modes every
+ * mutation also updates an {@link IntegrityTree} over the entries in the same transaction, and its root is
+ * authenticated with a key from the keystore-backed preferences, so rows deleted, swapped or edited outside
+ * the app are detected by {@link #verifyIntegrity} or, for one entry, by {@link #verifyEntry}.
+ *
+ * The file is opened through the androidx SupportSQLite interfaces. The app always gets SQLCipher's
+ * implementation; the JVM tests pass in the platform one so the same code runs without the native library.
+ */
+public class Database implements SyncStore {
+    private static final byte[] PLAIN_HEADER = "SQLite format 3\0".getBytes(StandardCharsets.US_ASCII);
+    private static final int DATABASE_VERSION = 7;
     private static final String TABLE_NAME = "password_entries";
     private static final String COLUMN_ID = "id";
     private static final String COLUMN_SERVICE_NAME = "service_name";
     private static final String COLUMN_USERNAME = "username";
     private static final String COLUMN_PASSWORD = "password";
+    private static final String COLUMN_FOLDER = "folder";
+    private static final String COLUMN_LAST_USED = "last_used";
+    private static final String COLUMN_USE_COUNT = "use_count";
+    private static final String TAGS_TABLE_NAME = "entry_tags";
+    private static final String COLUMN_ENTRY_ID = "entry_id";
+    private static final String COLUMN_TAG = "tag";
+    private static final String HISTORY_TABLE_NAME = "entry_history";
+    private static final String COLUMN_REPLACED_AT = "replaced_at";
+    private static final int COMPACTION_BATCH_SIZE = 500;
+    private static final String COLUMN_SYNC_ID = "sync_id";
+    private static final String COLUMN_CHANGE_SEQ = "change_seq";
+    private static final String COLUMN_MODIFIED_AT = "modified_at";
+    private static final String COLUMN_ORIGIN = "origin";
+    private static final String TOMBSTONES_TABLE_NAME = "sync_tombstones";
+    private static final String PEERS_TABLE_NAME = "sync_peers";
+    private static final String COLUMN_PEER_ID = "peer_id";
+    private static final String COLUMN_RECEIVED_SEQ = "received_seq";
+    private static final String CONFLICTS_TABLE_NAME = "sync_conflicts";
+    private static final String COLUMN_PAYLOAD = "payload";
+    private static final String COLUMN_RECORDED_AT = "recorded_at";
+    private static final String PREF_DEVICE_ID = "device_id";
+    private static final String INTEGRITY_NODES_TABLE_NAME = "integrity_nodes";
+    private static final String INTEGRITY_ROOT_TABLE_NAME = "integrity_root";
+    private static final String COLUMN_LEVEL = "level";
+    private static final String COLUMN_POSITION = "position";
+    private static final String COLUMN_HASH = "hash";
+    private static final String COLUMN_DEPTH = "depth";
+    private static final String COLUMN_MAC = "mac";
+    private static final String APP_LINKS_TABLE_NAME = "app_links";
+    private static final String COLUMN_PACKAGE_NAME = "package_name";
+    private static final String COLUMN_CERT_DIGEST = "cert_digest";
+    private static final String[] LEAF_COLUMNS = {COLUMN_SYNC_ID, COLUMN_SERVICE_NAME, COLUMN_USERNAME, COLUMN_PASSWORD, COLUMN_FOLDER};
+
+    /**
+     * The default history retention: the newest versions kept per entry, and the age after which any version is dropped.
+     */
+    public static final int HISTORY_KEEP_VERSIONS = 10;
+    public static final long HISTORY_MAX_AGE_MILLIS = 365L * 24 * 60 * 60 * 1000;
+
+    /**
+     * The orders the vault list can be shown in.
+     * Each order is backed by an index, with and without the folder as a leading column,
+     * so SQLite walks the index instead of sorting.
+     */
+    public enum SortMode {
+        NAME(COLUMN_SERVICE_NAME + " COLLATE NOCASE, " + COLUMN_ID),
+        RECENTLY_USED(COLUMN_LAST_USED + " DESC, " + COLUMN_ID),
+        MOST_USED(COLUMN_USE_COUNT + " DESC, " + COLUMN_ID);
 
+        private final String orderBy;
+
+        SortMode(String orderBy) {
+            this.orderBy = orderBy;
+        }
+    }
+
+    private static final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    private final VaultConfig vault;
     private final Encryption encryption;
+    private final boolean pageEncrypted;
+    private final byte[] password;
+    private final String deviceId;
+    private final SupportSQLiteOpenHelper helper;
+
+    /**
+     * Interface for components that keep derived data in step with the password entries table.
+     * Listeners are process-wide, so they hear about changes made through any Database instance, in any vault.
+     */
+    public interface ChangeListener {
+        void onEntrySaved(VaultConfig vault, int entryId, String serviceName);
+
+        void onEntryDeleted(VaultConfig vault, int entryId);
+
+        void onAppLinked(VaultConfig vault, int entryId, String packageName, String certDigest);
+    }
+
+    /**
+     * This method registers a listener for entry changes.
+     * @param listener The listener to add.
+     */
+    public static void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * This method unregisters a listener added with addChangeListener.
+     * @param listener The listener to remove.
+     */
+    public static void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
 
     /**
      * Constructor for the Database helper class.
-     * Initializes the database and the encryption helper for managing encrypted password entries.
+     * Initializes the database of a vault with the encryption helper holding that vault's keys.
+     * @param context The application context.
+     * @param vault The vault whose database file to use.
+     * @param encryption The encryption helper for the same vault.
+     */
+    public Database(Context context, VaultConfig vault, Encryption encryption) {
+        this(context, vault, vault.getDatabaseName(), isPageEncryptionEnabled(context, vault), encryption);
+    }
+
+    /**
+     * Constructor for a database with an explicit file name and storage mode, used by the migration and benchmarks.
+     * @param context The application context.
+     * @param vault The vault the database belongs to.
+     * @param databaseName The database file name.
+     * @param pageEncrypted Whether the file is encrypted page by page rather than per password.
+     * @param encryption The encryption helper for the same vault.
+     */
+    Database(Context context, VaultConfig vault, String databaseName, boolean pageEncrypted, Encryption encryption) {
+        this(context, vault, databaseName, pageEncrypted, encryption, databasePassword(encryption, pageEncrypted));
+    }
+
+    private Database(Context context, VaultConfig vault, String databaseName, boolean pageEncrypted,
+                     Encryption encryption, byte[] password) {
+        this(context, vault, databaseName, pageEncrypted, encryption, password, cipherFactory(password));
+    }
+
+    /**
+     * Constructor for a column-mode database opened through another SQLite implementation.
+     * The JVM tests use it with the platform SQLite, which needs no native SQLCipher library.
+     * @param context The application context.
+     * @param vault The vault the database belongs to.
+     * @param databaseName The database file name.
+     * @param encryption The encryption helper for the same vault.
+     * @param factory The SQLite implementation to open the file with.
+     */
+    Database(Context context, VaultConfig vault, String databaseName, Encryption encryption,
+             SupportSQLiteOpenHelper.Factory factory) {
+        this(context, vault, databaseName, false, encryption, new byte[0], factory);
+    }
+
+    /**
+     * Constructor for a database that stores passwords the way page mode does, opened through another SQLite
+     * implementation. With the platform SQLite the file itself is not encrypted, so the JVM tests use it only
+     * to check what page mode keeps in memory.
+     * @param context The application context.
+     * @param vault The vault the database belongs to.
+     * @param databaseName The database file name.
+     * @param pageEncrypted Whether to store passwords as page mode does.
+     * @param encryption The encryption helper for the same vault.
+     * @param factory The SQLite implementation to open the file with.
+     */
+    Database(Context context, VaultConfig vault, String databaseName, boolean pageEncrypted, Encryption encryption,
+             SupportSQLiteOpenHelper.Factory factory) {
+        this(context, vault, databaseName, pageEncrypted, encryption, new byte[0], factory);
+    }
+
+    private Database(Context context, VaultConfig vault, String databaseName, boolean pageEncrypted,
+                     Encryption encryption, byte[] password, SupportSQLiteOpenHelper.Factory factory) {
+        this.vault = vault;
+        this.encryption = encryption;
+        this.pageEncrypted = pageEncrypted;
+        this.password = password;
+        this.deviceId = getOrCreateDeviceId(context, vault);
+        this.helper = factory.create(SupportSQLiteOpenHelper.Configuration.builder(context)
+                .name(databaseName)
+                .callback(new Callback())
+                .build());
+    }
+
+    /**
+     * This method returns the SQLCipher implementation, opening files with the given key.
+     * The native library is loaded here rather than when the class loads, so tests that pass in
+     * another implementation never need it.
+     */
+    private static SupportSQLiteOpenHelper.Factory cipherFactory(byte[] password) {
+        System.loadLibrary("sqlcipher");
+        return new SupportOpenHelperFactory(password);
+    }
+
+    /**
+     * These methods return the open connection, opening and if needed creating or upgrading the file first.
+     */
+    SupportSQLiteDatabase getWritableDatabase() { return helper.getWritableDatabase(); }
+
+    SupportSQLiteDatabase getReadableDatabase() { return helper.getReadableDatabase(); }
+
+    /**
+     * This method closes the connection and overwrites the database key held for reopening it.
+     * A page-encrypted database cannot be opened again through this instance afterwards.
+     */
+    public synchronized void close() {
+        helper.close();
+        Arrays.fill(password, (byte) 0);
+    }
+
+    /**
+     * The points the page encryption migration passes, in order. Tests stop it at each one to check that
+     * an interrupted migration leaves a vault that opens in one mode or the other.
+     */
+    enum MigrationStep { COPY_EXPORTED, PASSWORDS_STORED, TREE_REBUILT, COPY_MOVED }
+
+    /**
+     * Interface for tests that interrupt the page encryption migration by throwing from a step.
+     */
+    interface MigrationObserver {
+        void onStep(MigrationStep step) throws IOException;
+    }
+
+    /**
+     * This method returns whether a vault's database has been moved to page encryption.
+     * The mode is read from the file itself, so it can never disagree with the file after a crash.
      * @param context The application context.
+     * @param vault The vault to check.
+     * @return true if the database file is encrypted page by page.
+     */
+    public static boolean isPageEncryptionEnabled(Context context, VaultConfig vault) {
+        return isPageEncrypted(context.getDatabasePath(vault.getDatabaseName()));
+    }
+
+    /**
+     * This method tells a page-encrypted file from a plain one by its first 16 bytes. A plain SQLite file
+     * starts with "SQLite format 3" and a NUL; SQLCipher writes its random salt there instead.
+     * A missing or empty file is a new vault, which starts in column mode.
+     * @param databaseFile The database file.
+     * @return true if the file exists and is not plain SQLite.
+     */
+    static boolean isPageEncrypted(File databaseFile) {
+        byte[] header = new byte[PLAIN_HEADER.length];
+        int length = 0;
+        try (InputStream in = new FileInputStream(databaseFile)) {
+            int read;
+            while (length < header.length && (read = in.read(header, length, header.length - length)) != -1) {
+                length += read;
+            }
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read database header", e);
+        }
+        return length > 0 && !Arrays.equals(header, PLAIN_HEADER);
+    }
+
+    /**
+     * This method converts the vault database to page encryption.
+     * @see #enablePageEncryption(Context, VaultConfig, Encryption, MigrationObserver)
+     */
+    static void enablePageEncryption(Context context, VaultConfig vault, Encryption encryption)
+            throws GeneralSecurityException, IOException {
+        enablePageEncryption(context, vault, encryption, null);
+    }
+
+    /**
+     * This method converts the vault database to page encryption.
+     * The plain database is exported into an encrypted copy next to it with sqlcipher_export, which carries
+     * over the schema, indexes and user version. Passwords are then decrypted inside the copy in one
+     * transaction, since the page encryption now covers them, and the copy's integrity tree is rebuilt over
+     * the new stored values. The database key is stored before the copy is made.
+     *
+     * Nothing is deleted until the copy is complete: the copy is then renamed over the original, which
+     * replaces it in one step, and the mode is read from the file's header rather than recorded separately.
+     * A crash at any point leaves either the complete plain file or the complete encrypted one, and the
+     * vault opens in the matching mode. A copy left behind by an interrupted run is discarded by the next.
+     * This runs blocking I/O and every password decrypt, so call it off the main thread, with no other
+     * Database instance of the vault open; {@link VaultManager#enablePageEncryption} takes care of that.
+     * @param context The application context.
+     * @param vault The vault to convert.
+     * @param encryption The encryption helper for the same vault.
+     * @param observer Told about each step as it completes, or null.
+     * @throws GeneralSecurityException If the database key or a password cannot be decrypted.
+     * @throws IOException If the key cannot be stored or the file cannot be replaced.
+     */
+    static synchronized void enablePageEncryption(Context context, VaultConfig vault, Encryption encryption,
+                                                  MigrationObserver observer)
+            throws GeneralSecurityException, IOException {
+        File databaseFile = context.getDatabasePath(vault.getDatabaseName());
+        File encryptedFile = context.getDatabasePath(vault.getDatabaseName() + ".encrypted");
+        SQLiteDatabase.deleteDatabase(encryptedFile);
+        if (isPageEncrypted(databaseFile)) {
+            return;
+        }
+
+        Database plainDatabase = new Database(context, vault, vault.getDatabaseName(), false, encryption);
+        SupportSQLiteDatabase db = plainDatabase.getWritableDatabase();
+        try {
+            db.execSQL("ATTACH DATABASE ? AS encrypted KEY ?", new Object[]{
+                    encryptedFile.getAbsolutePath(),
+                    new String(encryption.getDatabaseKey(), StandardCharsets.US_ASCII)});
+            Cursor export = db.query("SELECT sqlcipher_export('encrypted')");
+            export.moveToFirst();
+            export.close();
+            db.execSQL("PRAGMA encrypted.user_version = " + DATABASE_VERSION);
+            step(observer, MigrationStep.COPY_EXPORTED);
+
+            List<PasswordEntry> entries = new ArrayList<>();
+            Cursor cursor = query(db, TABLE_NAME, new String[]{COLUMN_ID, COLUMN_SERVICE_NAME, COLUMN_PASSWORD},
+                    null, null, null);
+            while (cursor.moveToNext()) {
+                entries.add(new PasswordEntry(cursor.getInt(0), cursor.getString(1), null, cursor.getString(2)));
+            }
+            cursor.close();
+            List<String> plainPasswords = encryption.decryptPasswords(entries);
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < entries.size(); i++) {
+                    db.execSQL("UPDATE encrypted." + TABLE_NAME + " SET " + COLUMN_PASSWORD + " = ? WHERE " + COLUMN_ID + " = ?",
+                            new Object[]{plainPasswords.get(i), entries.get(i).getId()});
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            db.execSQL("DETACH DATABASE encrypted");
+            step(observer, MigrationStep.PASSWORDS_STORED);
+        } finally {
+            plainDatabase.close();
+        }
+
+        Database encryptedDatabase = new Database(context, vault, encryptedFile.getName(), true, encryption);
+        try {
+            encryptedDatabase.rebuildIntegrityTree();
+        } finally {
+            encryptedDatabase.close();
+        }
+        step(observer, MigrationStep.TREE_REBUILT);
+
+        // A journal left next to either file would be replayed into the wrong one after the rename.
+        for (File file : new File[]{databaseFile, encryptedFile}) {
+            if (new File(file.getPath() + "-journal").exists() || new File(file.getPath() + "-wal").exists()) {
+                throw new IOException("Database " + file.getName() + " was not closed cleanly");
+            }
+        }
+        if (!encryptedFile.renameTo(databaseFile)) {
+            throw new IOException("Could not move encrypted database into place");
+        }
+        step(observer, MigrationStep.COPY_MOVED);
+    }
+
+    private static void step(MigrationObserver observer, MigrationStep step) throws IOException {
+        if (observer != null) {
+            observer.onStep(step);
+        }
+    }
+
+    private static SharedPreferences getPreferences(Context context, VaultConfig vault) {
+        return context.getSharedPreferences(vault.getDatabasePrefsName(), Context.MODE_PRIVATE);
+    }
+
+    /**
+     * This method returns the random id this install uses as the origin of its changes to a vault.
+     */
+    private static synchronized String getOrCreateDeviceId(Context context, VaultConfig vault) {
+        SharedPreferences preferences = getPreferences(context, vault);
+        String deviceId = preferences.getString(PREF_DEVICE_ID, null);
+        if (deviceId == null) {
+            deviceId = UUID.randomUUID().toString();
+            preferences.edit().putString(PREF_DEVICE_ID, deviceId).commit();
+        }
+        return deviceId;
+    }
+
+    /**
+     * This method returns the key the database file is opened with. SQLCipher treats an empty key as a plain file.
+     */
+    private static byte[] databasePassword(Encryption encryption, boolean pageEncrypted) {
+        if (!pageEncrypted) {
+            return new byte[0];
+        }
+        try {
+            return encryption.getDatabaseKey();
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Could not load database key", e);
+        }
+    }
+
+    /**
+     * This method returns the form a password is stored in for this database's mode.
+     * Column mode stores it encrypted on its own, bound to the row; page mode stores it as plaintext
+     * inside the encrypted pages.
+     */
+    private String passwordForStorage(int rowId, String serviceName, String plaintext)
+            throws GeneralSecurityException, IOException {
+        return pageEncrypted ? plaintext : encryption.encryptForRow(plaintext, rowId, serviceName);
+    }
+
+    /**
+     * This method returns the plaintext of a password stored by passwordForStorage.
+     * Column mode only accepts values bound to the row, so a value from the history, an older unbound value or
+     * plaintext written into the file is rejected instead of being taken for the row's password.
+     */
+    private String passwordFromStorage(int rowId, String serviceName, String stored)
+            throws GeneralSecurityException, IOException {
+        return pageEncrypted ? stored : encryption.decryptForRow(stored, rowId, serviceName);
+    }
+
+    /**
+     * This method decrypts the stored password of an entry in the form this database's mode keeps it.
+     * An entry loaded without its password, such as one from getAllPasswordEntries, has it read from its row.
+     * @param entry The entry, holding its password as read from the database, or none.
+     * @return The plaintext password.
+     * @throws GeneralSecurityException If the password is not bound to the entry, was tampered with,
+     * or the entry no longer exists.
+     * @throws IOException If an error occurs when retrieving the secret key.
+     */
+    public String decryptPassword(PasswordEntry entry) throws GeneralSecurityException, IOException {
+        if (entry.getStoredPassword() == null) {
+            entry = withStoredPassword(this.getReadableDatabase(), entry);
+        }
+        return passwordFromStorage(entry.getId(), entry.getServiceName(), entry.getStoredPassword());
+    }
+
+    /**
+     * This method decrypts the stored passwords of a batch of entries with a single key lookup.
+     * Entries loaded without their passwords have them read from their rows first.
+     * @param entries The entries, holding their passwords as read from the database, or none.
+     * @return The plaintext passwords, in the same order as the entries.
+     * @throws GeneralSecurityException If a password is not bound to its entry, was tampered with,
+     * or its entry no longer exists.
+     * @throws IOException If an error occurs when retrieving the secret key.
+     */
+    public List<String> decryptPasswords(List<PasswordEntry> entries) throws GeneralSecurityException, IOException {
+        SupportSQLiteDatabase db = null;
+        List<PasswordEntry> stored = new ArrayList<>(entries.size());
+        for (PasswordEntry entry : entries) {
+            if (entry.getStoredPassword() == null) {
+                if (db == null) {
+                    db = this.getReadableDatabase();
+                }
+                entry = withStoredPassword(db, entry);
+            }
+            stored.add(entry);
+        }
+        entries = stored;
+        if (!pageEncrypted) {
+            return encryption.decryptPasswords(entries);
+        }
+        List<String> passwords = new ArrayList<>(entries.size());
+        for (PasswordEntry entry : entries) {
+            passwords.add(entry.getStoredPassword());
+        }
+        return passwords;
+    }
+
+    /**
+     * This method runs a query on one table, with the arguments of the platform's query minus grouping.
+     */
+    private static Cursor query(SupportSQLiteDatabase db, String table, String[] columns, String selection,
+                                String[] selectionArgs, String orderBy) {
+        return db.query(SupportSQLiteQueryBuilder.builder(table)
+                .columns(columns)
+                .selection(selection, selectionArgs)
+                .orderBy(orderBy)
+                .create());
+    }
+
+    /**
+     * Forwards the open helper's lifecycle calls to this database.
      */
-    public Database(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
-        encryption = new Encryption(context);
+    private class Callback extends SupportSQLiteOpenHelper.Callback {
+        Callback() {
+            super(DATABASE_VERSION);
+        }
+
+        @Override
+        public void onConfigure(SupportSQLiteDatabase db) {
+            Database.this.onConfigure(db);
+        }
+
+        @Override
+        public void onCreate(SupportSQLiteDatabase db) {
+            Database.this.onCreate(db);
+        }
+
+        @Override
+        public void onUpgrade(SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+            Database.this.onUpgrade(db, oldVersion, newVersion);
+        }
+    }
+
+    /**
+     * This method is called when the database connection is being configured.
+     * It enables foreign keys so tags are removed together with their entry.
+     * @param db The database instance.
+     */
+    private void onConfigure(SupportSQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
     }
 
     /**
      * This method is called when the database is first created.
-     * It creates the password entries table with columns for ID, service name, username, and password.
+     * It creates the original password entries table and then runs every migration,
+     * so new and upgraded installs always end up with the same schema.
      * @param db The database instance.
      */
-    @Override
-    public void onCreate(SQLiteDatabase db) {
+    private void onCreate(SupportSQLiteDatabase db) {
         String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + "("
                 + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                 + COLUMN_SERVICE_NAME + " TEXT, "
@@ -48,39 +555,236 @@ public class Database extends SQLiteOpenHelper {
                 + COLUMN_PASSWORD + " TEXT, "
                 + "salt TEXT" + ")";
         db.execSQL(CREATE_TABLE);
+        onUpgrade(db, 1, DATABASE_VERSION);
     }
 
     /**
      * This method is called when the database version is upgraded.
-     * It drops the existing password entries table and creates a new one.
+     * It applies each migration between the old and new version in order, keeping existing entries.
      * @param db The database instance.
      * @param oldVersion The old version number of the database.
      * @param newVersion The new version number of the database.
      */
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
-        onCreate(db);
+    private void onUpgrade(SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            migrateToVersion2(db);
+        }
+        if (oldVersion < 3) {
+            migrateToVersion3(db);
+        }
+        if (oldVersion < 4) {
+            migrateToVersion4(db);
+        }
+        if (oldVersion < 5) {
+            migrateToVersion5(db);
+        }
+        if (oldVersion < 6) {
+            migrateToVersion6(db);
+        }
+        if (oldVersion < 7) {
+            migrateToVersion7(db);
+        }
+    }
+
+    /**
+     * Version 2 adds folders, tags and usage statistics.
+     * Every sort order gets an index on its own and one led by the folder for the grouped view.
+     * Since id is the rowid, every index also carries it, which makes the list queries covering.
+     */
+    private void migrateToVersion2(SupportSQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_FOLDER + " TEXT NOT NULL DEFAULT ''");
+        db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_LAST_USED + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_USE_COUNT + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("CREATE TABLE " + TAGS_TABLE_NAME + "("
+                + COLUMN_TAG + " TEXT NOT NULL, "
+                + COLUMN_ENTRY_ID + " INTEGER NOT NULL REFERENCES " + TABLE_NAME + "(" + COLUMN_ID + ") ON DELETE CASCADE, "
+                + "PRIMARY KEY (" + COLUMN_TAG + ", " + COLUMN_ENTRY_ID + ")) WITHOUT ROWID");
+        db.execSQL("CREATE INDEX idx_tags_entry ON " + TAGS_TABLE_NAME + "(" + COLUMN_ENTRY_ID + ")");
+
+        db.execSQL("CREATE INDEX idx_entries_name ON " + TABLE_NAME
+                + "(" + COLUMN_SERVICE_NAME + " COLLATE NOCASE)");
+        db.execSQL("CREATE INDEX idx_entries_recent ON " + TABLE_NAME + "(" + COLUMN_LAST_USED + " DESC)");
+        db.execSQL("CREATE INDEX idx_entries_usage ON " + TABLE_NAME + "(" + COLUMN_USE_COUNT + " DESC)");
+        db.execSQL("CREATE INDEX idx_entries_folder_name ON " + TABLE_NAME
+                + "(" + COLUMN_FOLDER + ", " + COLUMN_SERVICE_NAME + " COLLATE NOCASE)");
+        db.execSQL("CREATE INDEX idx_entries_folder_recent ON " + TABLE_NAME
+                + "(" + COLUMN_FOLDER + ", " + COLUMN_LAST_USED + " DESC)");
+        db.execSQL("CREATE INDEX idx_entries_folder_usage ON " + TABLE_NAME
+                + "(" + COLUMN_FOLDER + ", " + COLUMN_USE_COUNT + " DESC)");
+    }
+
+    /**
+     * Version 3 adds the password history. Rows are only ever inserted, by updates, and deleted, by compaction
+     * or together with their entry. The current password stays in the entries table, so list and entry reads
+     * never touch the history. The history index is ordered by entry and then by id, which is the version order.
+     */
+    private void migrateToVersion3(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + HISTORY_TABLE_NAME + "("
+                + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_ENTRY_ID + " INTEGER NOT NULL REFERENCES " + TABLE_NAME + "(" + COLUMN_ID + ") ON DELETE CASCADE, "
+                + COLUMN_PASSWORD + " TEXT NOT NULL, "
+                + COLUMN_REPLACED_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX idx_history_entry ON " + HISTORY_TABLE_NAME + "(" + COLUMN_ENTRY_ID + ")");
+        db.execSQL("CREATE INDEX idx_history_age ON " + HISTORY_TABLE_NAME + "(" + COLUMN_REPLACED_AT + ")");
+    }
+
+    /**
+     * Version 4 adds what peer sync needs: a sync id that names an entry on every device, a per-device change
+     * sequence number bumped by every change, and the time and device of the last change for last-writer-wins.
+     * Deletions leave a tombstone with their own sequence number so they sync too. Existing entries count as
+     * changed by this device, in id order, so the first sync with a new device sends all of them.
+     */
+    private void migrateToVersion4(SupportSQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_SYNC_ID + " TEXT");
+        db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_CHANGE_SEQ + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_MODIFIED_AT + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_ORIGIN + " TEXT NOT NULL DEFAULT ''");
+        db.execSQL("UPDATE " + TABLE_NAME + " SET " + COLUMN_SYNC_ID + " = lower(hex(randomblob(16))), "
+                + COLUMN_CHANGE_SEQ + " = " + COLUMN_ID + ", " + COLUMN_MODIFIED_AT + " = ?, " + COLUMN_ORIGIN + " = ?",
+                new Object[]{System.currentTimeMillis(), deviceId});
+        db.execSQL("CREATE UNIQUE INDEX idx_entries_sync_id ON " + TABLE_NAME + "(" + COLUMN_SYNC_ID + ")");
+        db.execSQL("CREATE INDEX idx_entries_change_seq ON " + TABLE_NAME + "(" + COLUMN_CHANGE_SEQ + ")");
+        db.execSQL("CREATE TABLE " + TOMBSTONES_TABLE_NAME + "("
+                + COLUMN_SYNC_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_CHANGE_SEQ + " INTEGER NOT NULL, "
+                + COLUMN_MODIFIED_AT + " INTEGER NOT NULL, "
+                + COLUMN_ORIGIN + " TEXT NOT NULL) WITHOUT ROWID");
+        db.execSQL("CREATE INDEX idx_tombstones_change_seq ON " + TOMBSTONES_TABLE_NAME + "(" + COLUMN_CHANGE_SEQ + ")");
+        db.execSQL("CREATE TABLE " + PEERS_TABLE_NAME + "("
+                + COLUMN_PEER_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_RECEIVED_SEQ + " INTEGER NOT NULL) WITHOUT ROWID");
+        db.execSQL("CREATE TABLE " + CONFLICTS_TABLE_NAME + "("
+                + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_SYNC_ID + " TEXT NOT NULL, "
+                + COLUMN_MODIFIED_AT + " INTEGER NOT NULL, "
+                + COLUMN_ORIGIN + " TEXT NOT NULL, "
+                + COLUMN_PAYLOAD + " BLOB NOT NULL, "
+                + COLUMN_RECORDED_AT + " INTEGER NOT NULL)");
+    }
+
+    /**
+     * Version 5 adds the integrity tree: its non-empty nodes, keyed by level and position, and a single row
+     * with the tree's depth and the MAC of its root. In column mode existing passwords are re-encrypted
+     * bound to their rows, then the tree is built over the stored values.
+     */
+    private void migrateToVersion5(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + INTEGRITY_NODES_TABLE_NAME + "("
+                + COLUMN_LEVEL + " INTEGER NOT NULL, "
+                + COLUMN_POSITION + " INTEGER NOT NULL, "
+                + COLUMN_HASH + " BLOB NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_LEVEL + ", " + COLUMN_POSITION + ")) WITHOUT ROWID");
+        db.execSQL("CREATE TABLE " + INTEGRITY_ROOT_TABLE_NAME + "("
+                + COLUMN_ID + " INTEGER PRIMARY KEY CHECK (" + COLUMN_ID + " = 0), "
+                + COLUMN_DEPTH + " INTEGER NOT NULL, "
+                + COLUMN_MAC + " BLOB)");
+        db.execSQL("INSERT INTO " + INTEGRITY_ROOT_TABLE_NAME + " VALUES (0, 0, NULL)");
+        try {
+            if (!pageEncrypted) {
+                List<PasswordEntry> entries = new ArrayList<>();
+                List<String> storedPasswords = new ArrayList<>();
+                Cursor cursor = query(db, TABLE_NAME, new String[]{COLUMN_ID, COLUMN_SERVICE_NAME, COLUMN_PASSWORD},
+                        null, null, null);
+                while (cursor.moveToNext()) {
+                    entries.add(new PasswordEntry(cursor.getInt(0), cursor.getString(1), null, null));
+                    storedPasswords.add(cursor.getString(2));
+                }
+                cursor.close();
+                // Passwords written before this version are unbound or plaintext; this is the last time they are read.
+                List<String> plainPasswords = encryption.decryptBatch(storedPasswords);
+                ContentValues values = new ContentValues();
+                for (int i = 0; i < entries.size(); i++) {
+                    PasswordEntry entry = entries.get(i);
+                    values.put(COLUMN_PASSWORD, passwordForStorage(entry.getId(), entry.getServiceName(), plainPasswords.get(i)));
+                    db.update(TABLE_NAME, SQLiteDatabase.CONFLICT_NONE, values, COLUMN_ID + "=?", new String[]{String.valueOf(entry.getId())});
+                }
+            }
+            rebuildIntegrityTree(db);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Could not bind passwords to their rows", e);
+        }
+    }
+
+    /**
+     * Version 6 binds the password history. Versions were encrypted on their own, so one copied into an entry's
+     * password or into another entry's history still decrypted; each is re-encrypted bound to its entry and
+     * its own id. From this version on, only bound values are read back from the entries and the history.
+     */
+    private void migrateToVersion6(SupportSQLiteDatabase db) {
+        try {
+            List<PasswordVersion> versions = new ArrayList<>();
+            List<String> storedPasswords = new ArrayList<>();
+            Cursor cursor = query(db, HISTORY_TABLE_NAME, new String[]{COLUMN_ID, COLUMN_ENTRY_ID, COLUMN_PASSWORD},
+                    null, null, null);
+            while (cursor.moveToNext()) {
+                versions.add(new PasswordVersion(cursor.getLong(0), cursor.getInt(1), null, 0));
+                storedPasswords.add(cursor.getString(2));
+            }
+            cursor.close();
+            List<String> plainPasswords = encryption.decryptBatch(storedPasswords);
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < versions.size(); i++) {
+                PasswordVersion version = versions.get(i);
+                values.put(COLUMN_PASSWORD, encryption.encryptForHistory(plainPasswords.get(i), version.getEntryId(), version.getId()));
+                db.update(HISTORY_TABLE_NAME, SQLiteDatabase.CONFLICT_NONE, values, COLUMN_ID + "=?",
+                        new String[]{String.valueOf(version.getId())});
+            }
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Could not bind password history", e);
+        }
+    }
+
+    /**
+     * Version 7 adds app links: the apps the user has chosen to fill an entry into, by package name and
+     * signing certificate digest. Autofill offers an app only the entries linked to it. Links are removed
+     * together with their entry and are not synced, since they record choices made on this device.
+     */
+    private void migrateToVersion7(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + APP_LINKS_TABLE_NAME + "("
+                + COLUMN_PACKAGE_NAME + " TEXT NOT NULL, "
+                + COLUMN_CERT_DIGEST + " TEXT NOT NULL, "
+                + COLUMN_ENTRY_ID + " INTEGER NOT NULL REFERENCES " + TABLE_NAME + "(" + COLUMN_ID + ") ON DELETE CASCADE, "
+                + "PRIMARY KEY (" + COLUMN_PACKAGE_NAME + ", " + COLUMN_CERT_DIGEST + ", " + COLUMN_ENTRY_ID + ")) WITHOUT ROWID");
+        db.execSQL("CREATE INDEX idx_app_links_entry ON " + APP_LINKS_TABLE_NAME + "(" + COLUMN_ENTRY_ID + ")");
     }
 
     /**
      * This method adds a new password entry to the database.
-     * It encrypts the password before saving and returns the ID of the newly created row.
-     * @param entry The password entry to add.
+     * It stores the password in the form the database mode requires and returns the ID of the newly created row.
+     * The row is inserted first so the password can be bound to its id. The entry is then given its new id and
+     * its password as stored, or no password in page mode where the stored form is plaintext, so it can be
+     * used like an entry read from the database.
+     * @param entry The password entry to add; its password field is not read.
+     * @param password The plaintext password.
      * @return The ID of the new row or -1 if an error occurs.
      */
-    public long addPasswordEntry(PasswordEntry entry) {
+    public long addPasswordEntry(PasswordEntry entry, String password) {
         try {
-            SQLiteDatabase db = this.getWritableDatabase();
+            SupportSQLiteDatabase db = this.getWritableDatabase();
             ContentValues values = new ContentValues();
             values.put(COLUMN_SERVICE_NAME, entry.getServiceName());
             values.put(COLUMN_USERNAME, entry.getUsername());
-
-            String encryptedPassword = encryption.encrypt(entry.getPassword());
+            values.put(COLUMN_FOLDER, entry.getFolder());
+            values.put(COLUMN_SYNC_ID, UUID.randomUUID().toString());
+            long newRowId;
+            db.beginTransaction();
+            try {
+                stampChange(db, values);
+                newRowId = insertEntry(db, values, password, entry.getTags());
+                if (newRowId != -1) {
+                    signIntegrityRoot(db);
+                    entry.setId((int) newRowId);
+                    entry.setPassword(pageEncrypted ? null : readEntry(db, (int) newRowId).getPassword());
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
             entry.setEncrypted(true);
-            values.put(COLUMN_PASSWORD, encryptedPassword);
-            long newRowId = db.insert(TABLE_NAME, null, values);
-            db.close();
+            if (newRowId != -1) {
+                for (ChangeListener listener : changeListeners) {
+                    listener.onEntrySaved(vault, (int) newRowId, entry.getServiceName());
+                }
+            }
             return newRowId;
         } catch (GeneralSecurityException | IOException e) {
             e.printStackTrace();
@@ -89,54 +793,94 @@ public class Database extends SQLiteOpenHelper {
     }
 
     /**
-     * This method retrieves all password entries from the database.
+     * This method retrieves all password entries from the database, together with their tags.
      * It creates a list of PasswordEntry objects, initializing each one as encrypted.
-     * @return A list of all password entries in the database.
+     * Passwords are not read: in page mode the column holds plaintext, which a list kept for as long
+     * as a screen is open must not hold. decryptPassword reads an entry's password when it is shown.
+     * The list is in no particular order; use getEntryOrder to arrange it for display.
+     * @return A list of all password entries in the database, without their passwords.
      */
     public List<PasswordEntry> getAllPasswordEntries() {
         List<PasswordEntry> entries = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_NAME, null, null, null, null, null, null);
+        SparseArray<PasswordEntry> entriesById = new SparseArray<>();
+        SupportSQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = query(db, TABLE_NAME, new String[]{COLUMN_ID, COLUMN_SERVICE_NAME, COLUMN_USERNAME,
+                COLUMN_FOLDER, COLUMN_LAST_USED, COLUMN_USE_COUNT}, null, null, null);
 
         if (cursor.moveToFirst()) {
             do {
                 @SuppressLint("Range") int id = cursor.getInt(cursor.getColumnIndex(COLUMN_ID));
                 @SuppressLint("Range") String serviceName = cursor.getString(cursor.getColumnIndex(COLUMN_SERVICE_NAME));
                 @SuppressLint("Range") String username = cursor.getString(cursor.getColumnIndex(COLUMN_USERNAME));
-                @SuppressLint("Range") String encryptedPassword = cursor.getString(cursor.getColumnIndex(COLUMN_PASSWORD));
-                PasswordEntry entry = new PasswordEntry(id, serviceName, username, encryptedPassword);
+                PasswordEntry entry = new PasswordEntry(id, serviceName, username, null);
                 entry.setEncrypted(true);
-                Log.d("EncryptionDebug", "Loaded entry with encrypted password: " + encryptedPassword + ", isEncrypted: " + entry.isEncrypted());
+                @SuppressLint("Range") String folder = cursor.getString(cursor.getColumnIndex(COLUMN_FOLDER));
+                @SuppressLint("Range") long lastUsed = cursor.getLong(cursor.getColumnIndex(COLUMN_LAST_USED));
+                @SuppressLint("Range") int useCount = cursor.getInt(cursor.getColumnIndex(COLUMN_USE_COUNT));
+                entry.setFolder(folder);
+                entry.setLastUsed(lastUsed);
+                entry.setUseCount(useCount);
 
                 entries.add(entry);
+                entriesById.put(id, entry);
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
+
+        Cursor tagCursor = query(db, TAGS_TABLE_NAME, new String[]{COLUMN_ENTRY_ID, COLUMN_TAG},
+                null, null, null);
+        while (tagCursor.moveToNext()) {
+            PasswordEntry entry = entriesById.get(tagCursor.getInt(0));
+            if (entry != null) {
+                entry.getTags().add(tagCursor.getString(1));
+            }
+        }
+        tagCursor.close();
 
         return entries;
     }
 
     /**
      * This method updates an existing password entry in the database.
-     * If the password is not encrypted, it encrypts it before saving.
-     * @param entry The password entry to update.
+     * The password is stored in the form the database mode requires, bound again if the service was renamed.
+     * If the password changed, the previous one is appended to the entry's history in the same transaction.
+     * The entry is then given its password as stored, or no password in page mode.
+     * @param entry The password entry to update; its password field is not read.
+     * @param newPassword The new plaintext password, or null to keep the current one.
      */
-    public void updatePasswordEntry(PasswordEntry entry) {
+    public void updatePasswordEntry(PasswordEntry entry, String newPassword) {
         try {
-            SQLiteDatabase db = this.getWritableDatabase();
-            ContentValues values = new ContentValues();
-            values.put(COLUMN_SERVICE_NAME, entry.getServiceName());
-            values.put(COLUMN_USERNAME, entry.getUsername());
-            String passwordToSave = entry.getPassword();
-            if (!entry.isEncrypted()) {
-                passwordToSave = encryption.encrypt(entry.getPassword());
-                entry.setEncrypted(true);
-                Log.d("EncryptionDebug", "Re-encrypting password on update: " + passwordToSave);
+            SupportSQLiteDatabase db = this.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                PasswordEntry stored = readEntry(db, entry.getId());
+                if (stored == null) {
+                    return;
+                }
+                String plaintext = newPassword != null ? newPassword
+                        : passwordFromStorage(entry.getId(), stored.getServiceName(), stored.getPassword());
+                String storedPassword = passwordForStorage(entry.getId(), entry.getServiceName(), plaintext);
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_SERVICE_NAME, entry.getServiceName());
+                values.put(COLUMN_USERNAME, entry.getUsername());
+                values.put(COLUMN_PASSWORD, storedPassword);
+                values.put(COLUMN_FOLDER, entry.getFolder());
+                stampChange(db, values);
+                archivePassword(db, stored, plaintext);
+                db.update(TABLE_NAME, SQLiteDatabase.CONFLICT_NONE, values, COLUMN_ID + "=?", new String[]{String.valueOf(entry.getId())});
+                db.delete(TAGS_TABLE_NAME, COLUMN_ENTRY_ID + "=?", new String[]{String.valueOf(entry.getId())});
+                writeTags(db, entry.getId(), entry.getTags());
+                updateIntegrityLeaf(db, entry.getId());
+                signIntegrityRoot(db);
+                db.setTransactionSuccessful();
+                entry.setPassword(pageEncrypted ? null : storedPassword);
+            } finally {
+                db.endTransaction();
+            }
+            entry.setEncrypted(true);
+            for (ChangeListener listener : changeListeners) {
+                listener.onEntrySaved(vault, entry.getId(), entry.getServiceName());
             }
-            values.put(COLUMN_PASSWORD, passwordToSave);
-            db.update(TABLE_NAME, values, COLUMN_ID + "=?", new String[]{String.valueOf(entry.getId())});
-            db.close();
         } catch (GeneralSecurityException | IOException e) {
             e.printStackTrace();
         }
@@ -144,11 +888,830 @@ public class Database extends SQLiteOpenHelper {
 
     /**
      * This method deletes a password entry from the database.
+     * A tombstone is left in its place so the deletion reaches paired devices.
      * @param entryId The ID of the password entry to delete.
      */
     public void deletePasswordEntry(int entryId) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_NAME, COLUMN_ID + "=?", new String[]{String.valueOf(entryId)});
-        db.close();
+        SupportSQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            boolean deleted;
+            Cursor cursor = query(db, TABLE_NAME, new String[]{COLUMN_SYNC_ID},
+                    COLUMN_ID + "=?", new String[]{String.valueOf(entryId)}, null);
+            String syncId = cursor.moveToFirst() ? cursor.getString(0) : null;
+            cursor.close();
+            deleted = db.delete(TABLE_NAME, COLUMN_ID + "=?", new String[]{String.valueOf(entryId)}) > 0;
+            if (syncId != null) {
+                ContentValues tombstone = new ContentValues();
+                tombstone.put(COLUMN_SYNC_ID, syncId);
+                stampChange(db, tombstone);
+                db.insert(TOMBSTONES_TABLE_NAME, SQLiteDatabase.CONFLICT_REPLACE, tombstone);
+            }
+            if (deleted) {
+                updateIntegrityLeaf(db, entryId);
+                signIntegrityRoot(db);
+            }
+            db.setTransactionSuccessful();
+        } catch (GeneralSecurityException | IOException e) {
+            e.printStackTrace();
+            return;
+        } finally {
+            db.endTransaction();
+        }
+        for (ChangeListener listener : changeListeners) {
+            listener.onEntryDeleted(vault, entryId);
+        }
+    }
+
+    /**
+     * This method returns the display order of the entries, optionally grouped by folder and filtered by tag.
+     * Only ids and folders are read, and every combination has a matching index that already holds them,
+     * so SQLite answers with an index-only scan and never sorts. The caller maps the ids back to entries
+     * it has loaded, which makes switching sort or grouping linear in the vault size.
+     * See entryOrderQuery for how the tag filter keeps to that plan.
+     * This runs blocking I/O, so call it off the main thread.
+     * @param sortMode The order within each group.
+     * @param groupByFolder Whether to group entries by folder, in folder name order.
+     * @param tag Only include entries with this tag, or null for all entries.
+     * @return The ordered ids, with the folder of each id when grouped.
+     */
+    public EntryOrder getEntryOrder(SortMode sortMode, boolean groupByFolder, String tag) {
+        SupportSQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(entryOrderQuery(sortMode, groupByFolder, tag));
+        int[] ids = new int[cursor.getCount()];
+        String[] folders = groupByFolder ? new String[ids.length] : null;
+        int row = 0;
+        while (cursor.moveToNext()) {
+            ids[row] = cursor.getInt(0);
+            if (folders != null) {
+                folders[row] = cursor.getString(1);
+            }
+            row++;
+        }
+        cursor.close();
+        return new EntryOrder(ids, folders);
+    }
+
+    /**
+     * This method builds the query behind getEntryOrder.
+     * Filtered on a plain id, SQLite would rather look up the tagged rows by primary key and sort them in a
+     * temporary b-tree. The unary plus stops the id filter from choosing the index, so the scan stays on the
+     * covering sort index and each row is checked against the tag's ids, which are read once.
+     */
+    static SupportSQLiteQuery entryOrderQuery(SortMode sortMode, boolean groupByFolder, String tag) {
+        String[] columns = groupByFolder ? new String[]{COLUMN_ID, COLUMN_FOLDER} : new String[]{COLUMN_ID};
+        String orderBy = groupByFolder ? COLUMN_FOLDER + ", " + sortMode.orderBy : sortMode.orderBy;
+        String selection = null;
+        String[] selectionArgs = null;
+        if (tag != null) {
+            selection = "+" + COLUMN_ID + " IN (SELECT " + COLUMN_ENTRY_ID + " FROM " + TAGS_TABLE_NAME
+                    + " WHERE " + COLUMN_TAG + " = ?)";
+            selectionArgs = new String[]{tag};
+        }
+        return SupportSQLiteQueryBuilder.builder(TABLE_NAME)
+                .columns(columns)
+                .selection(selection, selectionArgs)
+                .orderBy(orderBy)
+                .create();
+    }
+
+    /**
+     * This method retrieves a single password entry, with its password still encrypted.
+     * @param entryId The ID of the password entry.
+     * @return The entry, or null if there is no entry with that ID.
+     */
+    public PasswordEntry getPasswordEntry(int entryId) {
+        return readEntry(this.getReadableDatabase(), entryId);
+    }
+
+    /**
+     * This method reads the row of an entry that was loaded without its password, for decrypting it.
+     * The returned entry is not handed out, so in page mode the plaintext goes no further than the caller.
+     */
+    private static PasswordEntry withStoredPassword(SupportSQLiteDatabase db, PasswordEntry entry)
+            throws GeneralSecurityException {
+        PasswordEntry stored = readEntry(db, entry.getId());
+        if (stored == null) {
+            throw new GeneralSecurityException("No entry with id " + entry.getId());
+        }
+        return stored;
+    }
+
+    private static PasswordEntry readEntry(SupportSQLiteDatabase db, int entryId) {
+        Cursor cursor = query(db, TABLE_NAME,
+                new String[]{COLUMN_SERVICE_NAME, COLUMN_USERNAME, COLUMN_PASSWORD, COLUMN_FOLDER},
+                COLUMN_ID + "=?", new String[]{String.valueOf(entryId)}, null);
+        PasswordEntry entry = null;
+        if (cursor.moveToFirst()) {
+            entry = new PasswordEntry(entryId, cursor.getString(0), cursor.getString(1), cursor.getString(2));
+            entry.setFolder(cursor.getString(3));
+        }
+        cursor.close();
+        return entry;
+    }
+
+    /**
+     * This method returns every entry with only its id, service name and username, in name order,
+     * for listing the vault where nothing else is shown.
+     * This runs blocking I/O, so call it off the main thread.
+     * @return The entries, without passwords, folders, tags or usage.
+     */
+    public List<PasswordEntry> getEntryLabels() {
+        List<PasswordEntry> entries = new ArrayList<>();
+        SupportSQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = query(db, TABLE_NAME, new String[]{COLUMN_ID, COLUMN_SERVICE_NAME, COLUMN_USERNAME},
+                null, null, SortMode.NAME.orderBy);
+        while (cursor.moveToNext()) {
+            entries.add(new PasswordEntry(cursor.getInt(0), cursor.getString(1), cursor.getString(2), null));
+        }
+        cursor.close();
+        return entries;
+    }
+
+    /**
+     * This method returns the service name of every entry, without reading usernames or passwords.
+     * SQLite can answer it from the service name index alone, which is much smaller than the table.
+     * @return The service names, by entry id.
+     */
+    public Map<Integer, String> getServiceNames() {
+        Map<Integer, String> serviceNames = new HashMap<>();
+        SupportSQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = query(db, TABLE_NAME, new String[]{COLUMN_ID, COLUMN_SERVICE_NAME},
+                null, null, null);
+        while (cursor.moveToNext()) {
+            serviceNames.put(cursor.getInt(0), cursor.getString(1));
+        }
+        cursor.close();
+        return serviceNames;
+    }
+
+    /**
+     * This method links an app to an entry, after the user chose that entry to fill into the app.
+     * Linking an app that is already linked does nothing.
+     * @param entryId The ID of the password entry.
+     * @param packageName The app's package name.
+     * @param certDigest The digest of the app's signing certificates.
+     */
+    public void linkApp(int entryId, String packageName, String certDigest) {
+        SupportSQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_PACKAGE_NAME, packageName);
+        values.put(COLUMN_CERT_DIGEST, certDigest);
+        values.put(COLUMN_ENTRY_ID, entryId);
+        if (db.insert(APP_LINKS_TABLE_NAME, SQLiteDatabase.CONFLICT_IGNORE, values) == -1) {
+            return;
+        }
+        for (ChangeListener listener : changeListeners) {
+            listener.onAppLinked(vault, entryId, packageName, certDigest);
+        }
+    }
+
+    /**
+     * This method returns every app link in the vault.
+     * @return The app links.
+     */
+    public List<AppLink> getAppLinks() {
+        List<AppLink> appLinks = new ArrayList<>();
+        SupportSQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = query(db, APP_LINKS_TABLE_NAME,
+                new String[]{COLUMN_ENTRY_ID, COLUMN_PACKAGE_NAME, COLUMN_CERT_DIGEST}, null, null, null);
+        while (cursor.moveToNext()) {
+            appLinks.add(new AppLink(cursor.getInt(0), cursor.getString(1), cursor.getString(2)));
+        }
+        cursor.close();
+        return appLinks;
+    }
+
+    /**
+     * This method returns every tag in use, in alphabetical order.
+     * @return The distinct tags.
+     */
+    public List<String> getAllTags() {
+        List<String> tags = new ArrayList<>();
+        SupportSQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(SupportSQLiteQueryBuilder.builder(TAGS_TABLE_NAME)
+                .distinct().columns(new String[]{COLUMN_TAG}).orderBy(COLUMN_TAG).create());
+        while (cursor.moveToNext()) {
+            tags.add(cursor.getString(0));
+        }
+        cursor.close();
+        return tags;
+    }
+
+    /**
+     * This method records that an entry was used, for the "recently used" and "most used" orders.
+     * It only writes the database; callers update their loaded entry on their own thread.
+     * This runs blocking I/O, so call it off the main thread.
+     * @param entryId The ID of the password entry that was used.
+     * @param usedAt When the entry was used, in milliseconds since the epoch.
+     */
+    public void recordEntryUse(int entryId, long usedAt) {
+        SupportSQLiteDatabase db = this.getWritableDatabase();
+        db.execSQL("UPDATE " + TABLE_NAME + " SET " + COLUMN_LAST_USED + " = ?, "
+                        + COLUMN_USE_COUNT + " = " + COLUMN_USE_COUNT + " + 1 WHERE " + COLUMN_ID + " = ?",
+                new Object[]{usedAt, entryId});
+    }
+
+    /**
+     * This method returns the previous passwords of an entry, newest first, still encrypted.
+     * Decrypt them with {@link Encryption#decryptHistory}.
+     * Only the entry's range of the history index is read.
+     * @param entryId The ID of the password entry.
+     * @return The entry's earlier versions.
+     */
+    public List<PasswordVersion> getPasswordHistory(int entryId) {
+        List<PasswordVersion> versions = new ArrayList<>();
+        SupportSQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = query(db, HISTORY_TABLE_NAME, new String[]{COLUMN_ID, COLUMN_PASSWORD, COLUMN_REPLACED_AT},
+                COLUMN_ENTRY_ID + "=?", new String[]{String.valueOf(entryId)}, COLUMN_ID + " DESC");
+        while (cursor.moveToNext()) {
+            versions.add(new PasswordVersion(cursor.getLong(0), entryId, cursor.getString(1), cursor.getLong(2)));
+        }
+        cursor.close();
+        return versions;
+    }
+
+    /**
+     * This method prunes the password history to a retention policy.
+     * A version is dropped when it is older than the maximum age or when the entry has at least
+     * keepVersions newer ones, that is, when it is no newer than the entry's version keepVersions places
+     * below the newest. That version is found by walking the entry's end of the history index, so each
+     * candidate costs keepVersions steps however long the entry's history is. Candidates are found in
+     * id order, one batch at a time, and each batch is deleted in its own short transaction so saves
+     * from the UI are never held up for long.
+     * This runs blocking I/O, so call it off the main thread.
+     * @param keepVersions The number of newest versions to keep per entry.
+     * @param maxAgeMillis The age after which a version is dropped regardless of count.
+     * @return The number of versions deleted.
+     */
+    public int compactHistory(int keepVersions, long maxAgeMillis) {
+        SupportSQLiteDatabase db = this.getWritableDatabase();
+        String cutoff = String.valueOf(System.currentTimeMillis() - maxAgeMillis);
+        String query = "SELECT h." + COLUMN_ID + " FROM " + HISTORY_TABLE_NAME + " AS h"
+                + " WHERE h." + COLUMN_ID + " > ? AND (h." + COLUMN_REPLACED_AT + " < ?"
+                + " OR h." + COLUMN_ID + " <= (SELECT newer." + COLUMN_ID + " FROM " + HISTORY_TABLE_NAME + " AS newer"
+                + " WHERE newer." + COLUMN_ENTRY_ID + " = h." + COLUMN_ENTRY_ID
+                + " ORDER BY newer." + COLUMN_ID + " DESC LIMIT 1 OFFSET ?))"
+                + " ORDER BY h." + COLUMN_ID + " LIMIT " + COMPACTION_BATCH_SIZE;
+        int deleted = 0;
+        long lastId = 0;
+        while (true) {
+            Cursor cursor = db.query(query,
+                    new String[]{String.valueOf(lastId), cutoff, String.valueOf(keepVersions)});
+            StringBuilder ids = new StringBuilder();
+            int count = 0;
+            while (cursor.moveToNext()) {
+                lastId = cursor.getLong(0);
+                ids.append(count == 0 ? "" : ",").append(lastId);
+                count++;
+            }
+            cursor.close();
+            if (count == 0) {
+                break;
+            }
+            db.beginTransaction();
+            try {
+                deleted += db.delete(HISTORY_TABLE_NAME, COLUMN_ID + " IN (" + ids + ")", null);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (count < COMPACTION_BATCH_SIZE) {
+                break;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * This method appends the current password of an entry to its history if the new one differs.
+     * Passwords are compared in plaintext, because re-encrypting the same password gives a different value.
+     * History values are always encrypted with the column key, including in page mode,
+     * so old passwords stay protected even while the vault file is open. Each one is bound to its entry and
+     * its own id, so the id is taken up front, after the highest in use, and the row inserted once.
+     * Callers hold a write transaction, so no other insert can take the same id.
+     * @param stored The entry as currently stored, before the update.
+     * @param newPlaintext The password replacing it.
+     */
+    private void archivePassword(SupportSQLiteDatabase db, PasswordEntry stored, String newPlaintext)
+            throws GeneralSecurityException, IOException {
+        String oldPlaintext = passwordFromStorage(stored.getId(), stored.getServiceName(), stored.getPassword());
+        if (oldPlaintext.equals(newPlaintext)) {
+            return;
+        }
+        Cursor cursor = db.query("SELECT IFNULL(MAX(" + COLUMN_ID + "), 0) + 1 FROM " + HISTORY_TABLE_NAME);
+        long historyId = cursor.moveToFirst() ? cursor.getLong(0) : 1;
+        cursor.close();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ID, historyId);
+        values.put(COLUMN_ENTRY_ID, stored.getId());
+        values.put(COLUMN_PASSWORD, encryption.encryptForHistory(oldPlaintext, stored.getId(), historyId));
+        values.put(COLUMN_REPLACED_AT, System.currentTimeMillis());
+        db.insert(HISTORY_TABLE_NAME, SQLiteDatabase.CONFLICT_NONE, values);
+    }
+
+    @Override
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    @Override
+    public byte[] signSyncMessage(byte[] message) throws IOException {
+        try {
+            return encryption.signSyncMessage(message);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not load sync key", e);
+        }
+    }
+
+    @Override
+    public long getLastReceivedSeq(String peerId) {
+        SupportSQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = query(db, PEERS_TABLE_NAME, new String[]{COLUMN_RECEIVED_SEQ},
+                COLUMN_PEER_ID + "=?", new String[]{peerId}, null);
+        long receivedSeq = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        cursor.close();
+        return receivedSeq;
+    }
+
+    @Override
+    public long getMaxSeq() {
+        return maxChangeSeq(this.getReadableDatabase());
+    }
+
+    /**
+     * This method streams the entries and deletions changed in a sequence range, with each entry sealed for sync.
+     * Both lookups are range scans of a change sequence index, so only changed rows are read and decrypted,
+     * and each record is handed over as soon as it is sealed rather than after the whole range.
+     */
+    @Override
+    public void forEachChange(long afterSeq, long upToSeq, ChangeVisitor visitor) throws IOException {
+        SupportSQLiteDatabase db = this.getReadableDatabase();
+        String selection = COLUMN_CHANGE_SEQ + " > ? AND " + COLUMN_CHANGE_SEQ + " <= ?";
+        String[] selectionArgs = {String.valueOf(afterSeq), String.valueOf(upToSeq)};
+        readEntryRecords(db, selection, selectionArgs, visitor);
+        readTombstones(db, selection, selectionArgs, visitor);
+    }
+
+    @Override
+    public SyncRecord getRecord(String syncId) throws IOException {
+        SupportSQLiteDatabase db = this.getReadableDatabase();
+        String selection = COLUMN_SYNC_ID + "=?";
+        String[] selectionArgs = {syncId};
+        List<SyncRecord> records = new ArrayList<>();
+        readEntryRecords(db, selection, selectionArgs, records::add);
+        if (records.isEmpty()) {
+            readTombstones(db, selection, selectionArgs, records::add);
+        }
+        return records.isEmpty() ? null : records.get(0);
+    }
+
+    /**
+     * This method applies the changes a peer won with, keeps the losing versions of conflicts, and records
+     * the peer's sequence number, all in one transaction. Applied changes get new local sequence numbers
+     * but keep their original time and device, so they travel on to other paired devices unchanged.
+     */
+    @Override
+    public void applyChanges(String peerId, long peerMaxSeq, List<SyncRecord> accepted, List<SyncRecord> conflicts)
+            throws IOException {
+        SparseArray<String> savedEntries = new SparseArray<>();
+        List<Integer> deletedIds = new ArrayList<>();
+        SupportSQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long seq = maxChangeSeq(db);
+            for (SyncRecord record : accepted) {
+                applySyncRecord(db, record, ++seq, savedEntries, deletedIds);
+            }
+            if (!accepted.isEmpty()) {
+                signIntegrityRoot(db);
+            }
+            long now = System.currentTimeMillis();
+            for (SyncRecord conflict : conflicts) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_SYNC_ID, conflict.getSyncId());
+                values.put(COLUMN_MODIFIED_AT, conflict.getModifiedAt());
+                values.put(COLUMN_ORIGIN, conflict.getOrigin());
+                values.put(COLUMN_PAYLOAD, conflict.getPayload());
+                values.put(COLUMN_RECORDED_AT, now);
+                db.insert(CONFLICTS_TABLE_NAME, SQLiteDatabase.CONFLICT_NONE, values);
+            }
+            ContentValues peer = new ContentValues();
+            peer.put(COLUMN_PEER_ID, peerId);
+            peer.put(COLUMN_RECEIVED_SEQ, peerMaxSeq);
+            db.insert(PEERS_TABLE_NAME, SQLiteDatabase.CONFLICT_REPLACE, peer);
+            db.setTransactionSuccessful();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not apply synced entry", e);
+        } finally {
+            db.endTransaction();
+        }
+        for (ChangeListener listener : changeListeners) {
+            for (int i = 0; i < savedEntries.size(); i++) {
+                listener.onEntrySaved(vault, savedEntries.keyAt(i), savedEntries.valueAt(i));
+            }
+            for (int entryId : deletedIds) {
+                listener.onEntryDeleted(vault, entryId);
+            }
+        }
+    }
+
+    /**
+     * This method returns the number of conflict records kept from syncs.
+     */
+    public int getSyncConflictCount() {
+        SupportSQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query("SELECT COUNT(*) FROM " + CONFLICTS_TABLE_NAME);
+        int count = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        cursor.close();
+        return count;
+    }
+
+    private void applySyncRecord(SupportSQLiteDatabase db, SyncRecord record, long seq, SparseArray<String> savedEntries,
+                                 List<Integer> deletedIds) throws GeneralSecurityException, IOException {
+        String[] syncIdArgs = {record.getSyncId()};
+        Cursor cursor = query(db, TABLE_NAME, new String[]{COLUMN_ID}, COLUMN_SYNC_ID + "=?", syncIdArgs, null);
+        int localId = cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        cursor.close();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_CHANGE_SEQ, seq);
+        values.put(COLUMN_MODIFIED_AT, record.getModifiedAt());
+        values.put(COLUMN_ORIGIN, record.getOrigin());
+
+        if (record.isDeleted()) {
+            if (localId != -1) {
+                db.delete(TABLE_NAME, COLUMN_ID + "=?", new String[]{String.valueOf(localId)});
+                updateIntegrityLeaf(db, localId);
+                deletedIds.add(localId);
+            }
+            values.put(COLUMN_SYNC_ID, record.getSyncId());
+            db.insert(TOMBSTONES_TABLE_NAME, SQLiteDatabase.CONFLICT_REPLACE, values);
+            return;
+        }
+
+        PasswordEntry entry = SyncRecord.decodeEntry(encryption.openSyncPayload(record.getPayload(), record.getSyncId()));
+        values.put(COLUMN_SERVICE_NAME, entry.getServiceName());
+        values.put(COLUMN_USERNAME, entry.getUsername());
+        values.put(COLUMN_FOLDER, entry.getFolder());
+        if (localId != -1) {
+            values.put(COLUMN_PASSWORD, passwordForStorage(localId, entry.getServiceName(), entry.getPassword()));
+            archivePassword(db, readEntry(db, localId), entry.getPassword());
+            db.update(TABLE_NAME, SQLiteDatabase.CONFLICT_NONE, values, COLUMN_ID + "=?", new String[]{String.valueOf(localId)});
+            db.delete(TAGS_TABLE_NAME, COLUMN_ENTRY_ID + "=?", new String[]{String.valueOf(localId)});
+            writeTags(db, localId, entry.getTags());
+            updateIntegrityLeaf(db, localId);
+        } else {
+            values.put(COLUMN_SYNC_ID, record.getSyncId());
+            localId = (int) insertEntry(db, values, entry.getPassword(), entry.getTags());
+        }
+        db.delete(TOMBSTONES_TABLE_NAME, COLUMN_SYNC_ID + "=?", syncIdArgs);
+        savedEntries.put(localId, entry.getServiceName());
+    }
+
+    /**
+     * This method reads entries for sync with their tags in one joined query, in change order, and seals each
+     * one with the sync key as soon as its last tag is read. Only one entry's plaintext password is held at a
+     * time, and its serialized form is overwritten once sealed.
+     * The selection may only name columns of the entries table.
+     */
+    private void readEntryRecords(SupportSQLiteDatabase db, String selection, String[] selectionArgs,
+                                  ChangeVisitor visitor) throws IOException {
+        Cursor cursor = db.query("SELECT e." + COLUMN_ID + ", e." + COLUMN_SERVICE_NAME + ", e." + COLUMN_USERNAME
+                + ", e." + COLUMN_PASSWORD + ", e." + COLUMN_FOLDER + ", e." + COLUMN_SYNC_ID
+                + ", e." + COLUMN_CHANGE_SEQ + ", e." + COLUMN_MODIFIED_AT + ", e." + COLUMN_ORIGIN + ", t." + COLUMN_TAG
+                + " FROM " + TABLE_NAME + " e LEFT JOIN " + TAGS_TABLE_NAME + " t ON t." + COLUMN_ENTRY_ID + " = e." + COLUMN_ID
+                + " WHERE " + selection
+                + " ORDER BY e." + COLUMN_CHANGE_SEQ + ", t." + COLUMN_TAG, selectionArgs);
+        try {
+            PasswordEntry entry = null;
+            SyncRecord version = null;
+            while (cursor.moveToNext()) {
+                int id = cursor.getInt(0);
+                if (entry == null || entry.getId() != id) {
+                    if (entry != null) {
+                        sealEntryRecord(entry, version, visitor);
+                    }
+                    entry = new PasswordEntry(id, cursor.getString(1), cursor.getString(2), cursor.getString(3));
+                    entry.setFolder(cursor.getString(4));
+                    version = new SyncRecord(cursor.getString(5), cursor.getLong(6), cursor.getLong(7),
+                            cursor.getString(8), false, null);
+                }
+                if (!cursor.isNull(9)) {
+                    entry.getTags().add(cursor.getString(9));
+                }
+            }
+            if (entry != null) {
+                sealEntryRecord(entry, version, visitor);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not seal entry for sync", e);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * This method decrypts one entry's stored password, seals the entry for sync and hands the record over.
+     * The entry is left without a password either way.
+     */
+    private void sealEntryRecord(PasswordEntry entry, SyncRecord version, ChangeVisitor visitor)
+            throws GeneralSecurityException, IOException {
+        byte[] encoded;
+        try {
+            entry.setPassword(passwordFromStorage(entry.getId(), entry.getServiceName(), entry.getPassword()));
+            encoded = SyncRecord.encodeEntry(entry);
+        } finally {
+            entry.setPassword(null);
+        }
+        byte[] payload;
+        try {
+            payload = encryption.sealSyncPayload(encoded, version.getSyncId());
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+        visitor.visit(new SyncRecord(version.getSyncId(), version.getSeq(), version.getModifiedAt(),
+                version.getOrigin(), false, payload));
+    }
+
+    private void readTombstones(SupportSQLiteDatabase db, String selection, String[] selectionArgs,
+                                ChangeVisitor visitor) throws IOException {
+        Cursor cursor = query(db, TOMBSTONES_TABLE_NAME,
+                new String[]{COLUMN_SYNC_ID, COLUMN_CHANGE_SEQ, COLUMN_MODIFIED_AT, COLUMN_ORIGIN},
+                selection, selectionArgs, null);
+        try {
+            while (cursor.moveToNext()) {
+                visitor.visit(new SyncRecord(cursor.getString(0), cursor.getLong(1), cursor.getLong(2),
+                        cursor.getString(3), true, null));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * This method marks a row as changed by this device: the next sequence number, the current time and this device.
+     * It must run inside the transaction that writes the row, so two changes never share a sequence number.
+     */
+    private void stampChange(SupportSQLiteDatabase db, ContentValues values) {
+        values.put(COLUMN_CHANGE_SEQ, maxChangeSeq(db) + 1);
+        values.put(COLUMN_MODIFIED_AT, System.currentTimeMillis());
+        values.put(COLUMN_ORIGIN, deviceId);
+    }
+
+    /**
+     * This method returns the highest change sequence number in use; both lookups read one end of an index.
+     */
+    private static long maxChangeSeq(SupportSQLiteDatabase db) {
+        Cursor cursor = db.query("SELECT MAX((SELECT IFNULL(MAX(" + COLUMN_CHANGE_SEQ + "), 0) FROM " + TABLE_NAME + "), "
+                + "(SELECT IFNULL(MAX(" + COLUMN_CHANGE_SEQ + "), 0) FROM " + TOMBSTONES_TABLE_NAME + "))");
+        long maxSeq = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        cursor.close();
+        return maxSeq;
+    }
+
+    /**
+     * This method inserts an entry row, then stores its password bound to the new id, its tags and its integrity leaf.
+     * It must run inside the caller's transaction.
+     * @return The new row id, or -1 if the insert failed.
+     */
+    private long insertEntry(SupportSQLiteDatabase db, ContentValues values, String plaintext, List<String> tags)
+            throws GeneralSecurityException, IOException {
+        long rowId = db.insert(TABLE_NAME, SQLiteDatabase.CONFLICT_NONE, values);
+        if (rowId == -1) {
+            return -1;
+        }
+        ContentValues password = new ContentValues();
+        password.put(COLUMN_PASSWORD, passwordForStorage((int) rowId, values.getAsString(COLUMN_SERVICE_NAME), plaintext));
+        db.update(TABLE_NAME, SQLiteDatabase.CONFLICT_NONE, password, COLUMN_ID + "=?", new String[]{String.valueOf(rowId)});
+        writeTags(db, rowId, tags);
+        updateIntegrityLeaf(db, (int) rowId);
+        return rowId;
+    }
+
+    /**
+     * This method checks one entry against the authenticated integrity root, reading only that entry,
+     * its tags and the tree nodes on its path, and decrypting nothing. Checking an id with no entry
+     * succeeds only if the tree agrees that it was deleted through the app.
+     * The reads share one transaction so a save on another thread cannot be seen half applied.
+     * @param entryId The ID of the password entry.
+     * @return true if the entry is exactly as the app last wrote it.
+     * @throws GeneralSecurityException If the integrity key cannot be loaded.
+     * @throws IOException If the integrity key cannot be stored.
+     */
+    public boolean verifyEntry(int entryId) throws GeneralSecurityException, IOException {
+        SupportSQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            IntegrityTree tree = new IntegrityTree(new TreeNodes(db));
+            byte[] root = tree.getRoot();
+            return isIntegrityRootAuthentic(db, tree.getDepth(), root) && tree.verify(entryId, readLeaf(db, entryId), root);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * This method checks the whole vault against the authenticated integrity root.
+     * Every entry is hashed from its stored values and the root is recomputed from those leaves alone, so any
+     * entry added, removed, swapped or edited outside the app shows up, as does a tampered tree. Passwords are
+     * hashed as stored and never decrypted. This reads every entry, so call it off the main thread.
+     * @return true if the vault is exactly as the app last wrote it.
+     * @throws GeneralSecurityException If the integrity key cannot be loaded.
+     * @throws IOException If the integrity key cannot be stored.
+     */
+    public boolean verifyIntegrity() throws GeneralSecurityException, IOException {
+        SupportSQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            IntegrityTree tree = new IntegrityTree(new TreeNodes(db));
+            int depth = tree.getDepth();
+            byte[] root = tree.getRoot();
+            if (!isIntegrityRootAuthentic(db, depth, root)) {
+                return false;
+            }
+            Map<Long, byte[]> leaves = readLeaves(db);
+            for (long entryId : leaves.keySet()) {
+                if (IntegrityTree.depthFor(entryId) > depth) {
+                    return false;
+                }
+            }
+            return MessageDigest.isEqual(IntegrityTree.buildRoot(leaves, depth, null), root);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * This method rebuilds the integrity tree from the stored entries, for after the stored values were rewritten wholesale.
+     */
+    void rebuildIntegrityTree() throws GeneralSecurityException, IOException {
+        SupportSQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            rebuildIntegrityTree(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void rebuildIntegrityTree(SupportSQLiteDatabase db) throws GeneralSecurityException, IOException {
+        db.delete(INTEGRITY_NODES_TABLE_NAME, null, null);
+        Map<Long, byte[]> leaves = readLeaves(db);
+        long maxId = 0;
+        for (long entryId : leaves.keySet()) {
+            maxId = Math.max(maxId, entryId);
+        }
+        IntegrityTree.buildRoot(leaves, IntegrityTree.depthFor(maxId), new TreeNodes(db));
+        signIntegrityRoot(db);
+    }
+
+    /**
+     * This method rehashes one entry's leaf and its path to the root. It must run inside the transaction that
+     * changed the entry, followed by signIntegrityRoot once all of the transaction's entries are updated.
+     */
+    private static void updateIntegrityLeaf(SupportSQLiteDatabase db, int entryId) {
+        new IntegrityTree(new TreeNodes(db)).update(entryId, readLeaf(db, entryId));
+    }
+
+    private void signIntegrityRoot(SupportSQLiteDatabase db) throws GeneralSecurityException, IOException {
+        IntegrityTree tree = new IntegrityTree(new TreeNodes(db));
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_MAC, encryption.signIntegrityRoot(integrityRootState(tree.getDepth(), tree.getRoot())));
+        db.update(INTEGRITY_ROOT_TABLE_NAME, SQLiteDatabase.CONFLICT_NONE, values, COLUMN_ID + " = 0", null);
+    }
+
+    private boolean isIntegrityRootAuthentic(SupportSQLiteDatabase db, int depth, byte[] root)
+            throws GeneralSecurityException, IOException {
+        Cursor cursor = query(db, INTEGRITY_ROOT_TABLE_NAME, new String[]{COLUMN_MAC}, COLUMN_ID + " = 0",
+                null, null);
+        byte[] mac = cursor.moveToFirst() ? cursor.getBlob(0) : null;
+        cursor.close();
+        return mac != null && MessageDigest.isEqual(mac, encryption.signIntegrityRoot(integrityRootState(depth, root)));
+    }
+
+    /**
+     * This method serializes what the root MAC covers. The depth is included so the tree cannot be cut short.
+     */
+    private static byte[] integrityRootState(int depth, byte[] root) {
+        return ByteBuffer.allocate(4 + root.length).putInt(depth).put(root).array();
+    }
+
+    /**
+     * This method hashes one entry as stored, or returns null if there is no entry with that id.
+     * The leaf covers the sync id, the fields the user sees, the stored password and the tags in order;
+     * usage statistics and sync bookkeeping are left out so recording a use does not touch the tree.
+     */
+    private static byte[] readLeaf(SupportSQLiteDatabase db, int entryId) {
+        String[] idArgs = {String.valueOf(entryId)};
+        Cursor cursor = query(db, TABLE_NAME, LEAF_COLUMNS, COLUMN_ID + "=?", idArgs, null);
+        List<String> fields = cursor.moveToFirst() ? leafFields(cursor, 0) : null;
+        cursor.close();
+        if (fields == null) {
+            return null;
+        }
+        Cursor tagCursor = query(db, TAGS_TABLE_NAME, new String[]{COLUMN_TAG}, COLUMN_ENTRY_ID + "=?", idArgs, COLUMN_TAG);
+        while (tagCursor.moveToNext()) {
+            fields.add(tagCursor.getString(0));
+        }
+        tagCursor.close();
+        return IntegrityTree.hashLeaf(entryId, fields);
+    }
+
+    /**
+     * This method hashes every entry as stored, in two scans: one of the entries and one of the tags.
+     */
+    private static Map<Long, byte[]> readLeaves(SupportSQLiteDatabase db) {
+        SparseArray<List<String>> fieldsById = new SparseArray<>();
+        String[] columns = new String[LEAF_COLUMNS.length + 1];
+        columns[0] = COLUMN_ID;
+        System.arraycopy(LEAF_COLUMNS, 0, columns, 1, LEAF_COLUMNS.length);
+        Cursor cursor = query(db, TABLE_NAME, columns, null, null, null);
+        while (cursor.moveToNext()) {
+            fieldsById.put(cursor.getInt(0), leafFields(cursor, 1));
+        }
+        cursor.close();
+        Cursor tagCursor = query(db, TAGS_TABLE_NAME, new String[]{COLUMN_ENTRY_ID, COLUMN_TAG},
+                null, null, COLUMN_ENTRY_ID + ", " + COLUMN_TAG);
+        while (tagCursor.moveToNext()) {
+            List<String> fields = fieldsById.get(tagCursor.getInt(0));
+            if (fields != null) {
+                fields.add(tagCursor.getString(1));
+            }
+        }
+        tagCursor.close();
+        Map<Long, byte[]> leaves = new HashMap<>();
+        for (int i = 0; i < fieldsById.size(); i++) {
+            leaves.put((long) fieldsById.keyAt(i), IntegrityTree.hashLeaf(fieldsById.keyAt(i), fieldsById.valueAt(i)));
+        }
+        return leaves;
+    }
+
+    private static List<String> leafFields(Cursor cursor, int firstColumn) {
+        List<String> fields = new ArrayList<>();
+        for (int i = 0; i < LEAF_COLUMNS.length; i++) {
+            fields.add(cursor.getString(firstColumn + i));
+        }
+        return fields;
+    }
+
+    /**
+     * The integrity tree's nodes and depth, read and written through the caller's connection and transaction.
+     */
+    private static class TreeNodes implements IntegrityTree.NodeStore {
+        private final SupportSQLiteDatabase db;
+
+        TreeNodes(SupportSQLiteDatabase db) {
+            this.db = db;
+        }
+
+        @Override
+        public byte[] getNode(int level, long position) {
+            Cursor cursor = query(db, INTEGRITY_NODES_TABLE_NAME, new String[]{COLUMN_HASH},
+                    COLUMN_LEVEL + "=? AND " + COLUMN_POSITION + "=?",
+                    new String[]{String.valueOf(level), String.valueOf(position)}, null);
+            byte[] hash = cursor.moveToFirst() ? cursor.getBlob(0) : null;
+            cursor.close();
+            return hash;
+        }
+
+        @Override
+        public void putNode(int level, long position, byte[] hash) {
+            if (hash == null) {
+                db.delete(INTEGRITY_NODES_TABLE_NAME, COLUMN_LEVEL + "=? AND " + COLUMN_POSITION + "=?",
+                        new String[]{String.valueOf(level), String.valueOf(position)});
+                return;
+            }
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_LEVEL, level);
+            values.put(COLUMN_POSITION, position);
+            values.put(COLUMN_HASH, hash);
+            db.insert(INTEGRITY_NODES_TABLE_NAME, SQLiteDatabase.CONFLICT_REPLACE, values);
+        }
+
+        @Override
+        public int getDepth() {
+            Cursor cursor = query(db, INTEGRITY_ROOT_TABLE_NAME, new String[]{COLUMN_DEPTH}, COLUMN_ID + " = 0",
+                    null, null);
+            int depth = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+            cursor.close();
+            return depth;
+        }
+
+        @Override
+        public void setDepth(int depth) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_DEPTH, depth);
+            db.update(INTEGRITY_ROOT_TABLE_NAME, SQLiteDatabase.CONFLICT_NONE, values, COLUMN_ID + " = 0", null);
+        }
+    }
+
+    private void writeTags(SupportSQLiteDatabase db, long entryId, List<String> tags) {
+        ContentValues values = new ContentValues();
+        for (String tag : tags) {
+            values.put(COLUMN_TAG, tag);
+            values.put(COLUMN_ENTRY_ID, entryId);
+            db.insert(TAGS_TABLE_NAME, SQLiteDatabase.CONFLICT_IGNORE, values);
+        }
     }
 }
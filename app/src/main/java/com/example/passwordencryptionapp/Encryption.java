@@ -7,11 +7,17 @@ import androidx.security.crypto.EncryptedSharedPreferences;
 import androidx.security.crypto.MasterKeys;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -20,59 +26,280 @@ public class Encryption {
     private static final String ALGORITHM = "AES";
     private static final String TRANSFORMATION = "AES/GCM/NoPadding";
     private static final String KEY_ALIAS = "encryption_key";
+    private static final String DATABASE_KEY_ALIAS = "database_key";
+    private static final int DATABASE_KEY_LENGTH = 32;
+    private static final String SYNC_KEY_ALIAS = "sync_key";
     private static final int IV_LENGTH = 12;
     private static final int GCM_TAG_LENGTH = 128;
     private static final String ENCRYPTION_PREFIX = "[ENC]";
+    private static final String ROW_ENCRYPTION_PREFIX = "[ENC2]";
+    private static final byte[] HISTORY_AAD_LABEL = "history".getBytes(StandardCharsets.US_ASCII);
+    private static final String INTEGRITY_KEY_ALIAS = "integrity_key";
+    private static final String INTEGRITY_MAC_ALGORITHM = "HmacSHA256";
+    private static final byte[] SYNC_AUTHENTICATION_LABEL = "sync authentication".getBytes(StandardCharsets.US_ASCII);
 
     private final Context context;
+    private final String prefsName;
+    private final SharedPreferences keyPreferences;
+    private byte[] secretKey;
+    private byte[] databaseKey;
+    private byte[] syncKey;
+    private byte[] integrityKey;
 
     /**
      * Constructor for the Encryption class.
      * Initializes the context which is used for accessing secure shared preferences.
      * @param context The application context.
+     * @param vault The vault whose keys this instance uses.
      */
-    public Encryption(Context context) {
+    public Encryption(Context context, VaultConfig vault) {
         this.context = context;
+        this.prefsName = vault.getKeyPrefsName();
+        this.keyPreferences = null;
+    }
+
+    /**
+     * Constructor for an Encryption instance that keeps its keys in the given preferences instead of the
+     * keystore-backed ones. The JVM tests use it, since Android Keystore is only available on a device.
+     * @param keyPreferences The preferences to store the keys in.
+     */
+    Encryption(SharedPreferences keyPreferences) {
+        this.context = null;
+        this.prefsName = null;
+        this.keyPreferences = keyPreferences;
     }
 
     /**
      * This method retrieves or generates the secret key used for encryption and decryption.
      * If the key does not already exist, it is generated and stored in encrypted shared preferences.
+     * The key bytes are kept after the first call so later calls skip the preferences, until wipeKeys.
      * @return The secret key used for AES encryption and decryption.
      * @throws GeneralSecurityException If a security error occurs during key generation or retrieval.
      * @throws IOException If an I/O error occurs during key storage.
      */
-    private Key getSecretKey() throws GeneralSecurityException, IOException {
-        SharedPreferences sharedPreferences = EncryptedSharedPreferences.create(
-                "encryption_prefs",
+    private synchronized Key getSecretKey() throws GeneralSecurityException, IOException {
+        if (secretKey == null) {
+            SharedPreferences sharedPreferences = getKeyPreferences();
+            String encodedKey = sharedPreferences.getString(KEY_ALIAS, null);
+            if (encodedKey == null) {
+                KeyGenerator keyGenerator = KeyGenerator.getInstance(ALGORITHM);
+                keyGenerator.init(256);
+                SecretKey generatedKey = keyGenerator.generateKey();
+                encodedKey = Base64.encodeToString(generatedKey.getEncoded(), Base64.DEFAULT);
+                sharedPreferences.edit().putString(KEY_ALIAS, encodedKey).apply();
+            }
+            secretKey = Base64.decode(encodedKey, Base64.DEFAULT);
+        }
+        return new SecretKeySpec(secretKey, 0, secretKey.length, ALGORITHM);
+    }
+
+    /**
+     * This method overwrites the cached key bytes with zeros and forgets them.
+     * The next operation reads the keys from the encrypted shared preferences again.
+     */
+    public synchronized void wipeKeys() {
+        if (secretKey != null) {
+            Arrays.fill(secretKey, (byte) 0);
+            secretKey = null;
+        }
+        if (databaseKey != null) {
+            Arrays.fill(databaseKey, (byte) 0);
+            databaseKey = null;
+        }
+        if (syncKey != null) {
+            Arrays.fill(syncKey, (byte) 0);
+            syncKey = null;
+        }
+        if (integrityKey != null) {
+            Arrays.fill(integrityKey, (byte) 0);
+            integrityKey = null;
+        }
+    }
+
+    /**
+     * This method returns whether any key is held in memory, that is, whether wipeKeys has something to wipe.
+     */
+    synchronized boolean holdsKeys() {
+        return secretKey != null || databaseKey != null || syncKey != null || integrityKey != null;
+    }
+
+    /**
+     * This method returns the code another device enters to join this vault's sync group.
+     * The code is the vault's sync key, generated on first use, so it must only be shown to the user.
+     * @return The pairing code.
+     * @throws GeneralSecurityException If a security error occurs during key generation or retrieval.
+     * @throws IOException If an I/O error occurs during key storage.
+     */
+    public String getSyncPairingCode() throws GeneralSecurityException, IOException {
+        return Base64.encodeToString(getSyncKey(), Base64.NO_WRAP);
+    }
+
+    /**
+     * This method joins the sync group of another device by adopting its sync key.
+     * @param pairingCode The code shown on the other device.
+     * @throws GeneralSecurityException If the code is not a valid key.
+     * @throws IOException If an I/O error occurs during key storage.
+     */
+    public synchronized void setSyncPairingCode(String pairingCode) throws GeneralSecurityException, IOException {
+        byte[] key;
+        try {
+            key = Base64.decode(pairingCode.trim(), Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Invalid pairing code", e);
+        }
+        if (key.length != DATABASE_KEY_LENGTH) {
+            throw new GeneralSecurityException("Invalid pairing code");
+        }
+        if (!getKeyPreferences().edit().putString(SYNC_KEY_ALIAS, pairingCode.trim()).commit()) {
+            throw new IOException("Could not store sync key");
+        }
+        if (syncKey != null) {
+            Arrays.fill(syncKey, (byte) 0);
+        }
+        syncKey = key;
+    }
+
+    /**
+     * This method authenticates a sync protocol message with a key derived from the sync key, so only
+     * paired devices can produce or check it. The derived key is never used for encryption.
+     * @param message The message bytes.
+     * @return The HMAC-SHA256 of the message.
+     * @throws GeneralSecurityException If a security error occurs during key generation or retrieval.
+     * @throws IOException If an I/O error occurs during key storage.
+     */
+    public byte[] signSyncMessage(byte[] message) throws GeneralSecurityException, IOException {
+        Mac mac = Mac.getInstance(INTEGRITY_MAC_ALGORITHM);
+        mac.init(new SecretKeySpec(getSyncKey(), INTEGRITY_MAC_ALGORITHM));
+        byte[] authenticationKey = mac.doFinal(SYNC_AUTHENTICATION_LABEL);
+        try {
+            mac.init(new SecretKeySpec(authenticationKey, INTEGRITY_MAC_ALGORITHM));
+            return mac.doFinal(message);
+        } finally {
+            Arrays.fill(authenticationKey, (byte) 0);
+        }
+    }
+
+    /**
+     * This method encrypts a serialized entry for sync with the sync key shared by paired devices.
+     * The entry's sync id is bound in as associated data, so a payload cannot be replayed as another entry.
+     * @param payload The serialized entry.
+     * @param syncId The entry's sync id.
+     * @return The IV followed by the ciphertext.
+     * @throws GeneralSecurityException If an error occurs during the encryption process.
+     * @throws IOException If an error occurs when retrieving the sync key.
+     */
+    public byte[] sealSyncPayload(byte[] payload, String syncId) throws GeneralSecurityException, IOException {
+        byte[] iv = new byte[IV_LENGTH];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(getSyncKey(), ALGORITHM), new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+        cipher.updateAAD(syncId.getBytes(StandardCharsets.UTF_8));
+        byte[] encryptedBytes = cipher.doFinal(payload);
+        byte[] combined = new byte[iv.length + encryptedBytes.length];
+        System.arraycopy(iv, 0, combined, 0, iv.length);
+        System.arraycopy(encryptedBytes, 0, combined, iv.length, encryptedBytes.length);
+        return combined;
+    }
+
+    /**
+     * This method decrypts a payload sealed by sealSyncPayload on any device in the sync group.
+     * @param sealed The IV followed by the ciphertext.
+     * @param syncId The sync id the payload claims to belong to.
+     * @return The serialized entry.
+     * @throws GeneralSecurityException If the payload was not sealed for this sync id with this group's key.
+     * @throws IOException If an error occurs when retrieving the sync key.
+     */
+    public byte[] openSyncPayload(byte[] sealed, String syncId) throws GeneralSecurityException, IOException {
+        if (sealed.length < IV_LENGTH) {
+            throw new GeneralSecurityException("Sync payload too short");
+        }
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(getSyncKey(), ALGORITHM),
+                new GCMParameterSpec(GCM_TAG_LENGTH, sealed, 0, IV_LENGTH));
+        cipher.updateAAD(syncId.getBytes(StandardCharsets.UTF_8));
+        return cipher.doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH);
+    }
+
+    private synchronized byte[] getSyncKey() throws GeneralSecurityException, IOException {
+        if (syncKey == null) {
+            SharedPreferences sharedPreferences = getKeyPreferences();
+            String encodedKey = sharedPreferences.getString(SYNC_KEY_ALIAS, null);
+            if (encodedKey == null) {
+                byte[] key = new byte[DATABASE_KEY_LENGTH];
+                new SecureRandom().nextBytes(key);
+                encodedKey = Base64.encodeToString(key, Base64.NO_WRAP);
+                Arrays.fill(key, (byte) 0);
+                if (!sharedPreferences.edit().putString(SYNC_KEY_ALIAS, encodedKey).commit()) {
+                    throw new IOException("Could not store sync key");
+                }
+            }
+            syncKey = Base64.decode(encodedKey, Base64.NO_WRAP);
+        }
+        return syncKey;
+    }
+
+    private SharedPreferences getKeyPreferences() throws GeneralSecurityException, IOException {
+        if (keyPreferences != null) {
+            return keyPreferences;
+        }
+        return EncryptedSharedPreferences.create(
+                prefsName,
                 MasterKeys.getOrCreate(MasterKeys.AES256_GCM_SPEC),
                 context,
                 EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
                 EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
         );
-        String encodedKey = sharedPreferences.getString(KEY_ALIAS, null);
-        if (encodedKey == null) {
-            KeyGenerator keyGenerator = KeyGenerator.getInstance(ALGORITHM);
-            keyGenerator.init(256);
-            SecretKey secretKey = keyGenerator.generateKey();
-            encodedKey = Base64.encodeToString(secretKey.getEncoded(), Base64.DEFAULT);
-            sharedPreferences.edit().putString(KEY_ALIAS, encodedKey).apply();
+    }
+
+    /**
+     * This method retrieves or generates the raw 256-bit key for a page-encrypted database.
+     * It is kept apart from the column key in the same encrypted shared preferences, and is written
+     * synchronously on creation because losing it would make the database unreadable.
+     * The key is returned in SQLCipher's raw key form, x'hex', which skips passphrase derivation on open.
+     * The caller owns the returned array and may wipe it once the database is closed.
+     * @return The database key as ASCII bytes.
+     * @throws GeneralSecurityException If a security error occurs during key generation or retrieval.
+     * @throws IOException If an I/O error occurs during key storage.
+     */
+    public synchronized byte[] getDatabaseKey() throws GeneralSecurityException, IOException {
+        if (databaseKey == null) {
+            SharedPreferences sharedPreferences = getKeyPreferences();
+            String encodedKey = sharedPreferences.getString(DATABASE_KEY_ALIAS, null);
+            if (encodedKey == null) {
+                byte[] key = new byte[DATABASE_KEY_LENGTH];
+                new SecureRandom().nextBytes(key);
+                encodedKey = Base64.encodeToString(key, Base64.NO_WRAP);
+                Arrays.fill(key, (byte) 0);
+                if (!sharedPreferences.edit().putString(DATABASE_KEY_ALIAS, encodedKey).commit()) {
+                    throw new IOException("Could not store database key");
+                }
+            }
+            databaseKey = Base64.decode(encodedKey, Base64.NO_WRAP);
+        }
+        byte[] rawKey = new byte[databaseKey.length * 2 + 3];
+        rawKey[0] = 'x';
+        rawKey[1] = '\'';
+        for (int i = 0; i < databaseKey.length; i++) {
+            rawKey[2 + i * 2] = (byte) Character.forDigit((databaseKey[i] >> 4) & 0xF, 16);
+            rawKey[3 + i * 2] = (byte) Character.forDigit(databaseKey[i] & 0xF, 16);
         }
-        byte[] decodedKey = Base64.decode(encodedKey, Base64.DEFAULT);
-        return new SecretKeySpec(decodedKey, 0, decodedKey.length, ALGORITHM);
+        rawKey[rawKey.length - 1] = '\'';
+        return rawKey;
     }
 
     /**
      * This method encrypts a given piece of data using AES-GCM.
      * It generates a new IV (initialization vector) for each encryption to ensure uniqueness.
      * The IV is prepended to the encrypted data to allow decryption.
+     * Values in this form are not bound to where they are stored, so the database only reads them when
+     * migrating older files; passwords and history are stored with encryptForRow and encryptForHistory.
      * @param data The plaintext data to be encrypted.
      * @return The encrypted data as a base64-encoded string, prefixed with an encryption identifier.
      * @throws GeneralSecurityException If an error occurs during the encryption process.
      * @throws IOException If an error occurs when retrieving the secret key.
      */
     public String encrypt(String data) throws GeneralSecurityException, IOException {
-        if (data.startsWith(ENCRYPTION_PREFIX)) {
+        if (data.startsWith(ENCRYPTION_PREFIX) || data.startsWith(ROW_ENCRYPTION_PREFIX)) {
             return data;
         }
         byte[] iv = new byte[IV_LENGTH];
@@ -91,16 +318,217 @@ public class Encryption {
     /**
      * This method decrypts a given encrypted string that was previously encrypted using AES-GCM.
      * It extracts the IV from the beginning of the encrypted data before proceeding with decryption.
+     * Plaintext is returned as it is, so this is only for values written before passwords were bound.
      * @param encryptedData The encrypted data as a base64-encoded string, prefixed with an encryption identifier.
      * @return The original plaintext data.
      * @throws GeneralSecurityException If an error occurs during the decryption process.
      * @throws IOException If an error occurs when retrieving the secret key.
      */
     public String decrypt(String encryptedData) throws GeneralSecurityException, IOException {
+        checkNotRowBound(encryptedData);
         if (!encryptedData.startsWith(ENCRYPTION_PREFIX)) {
             return encryptedData;
         }
-        encryptedData = encryptedData.substring(ENCRYPTION_PREFIX.length());
+        return decrypt(encryptedData, getSecretKey());
+    }
+
+    /**
+     * This method decrypts a batch of encrypted strings with a single key lookup.
+     * Like decrypt, it accepts plaintext and is only for values written before passwords were bound,
+     * which the database migrations read in bulk.
+     * @param encryptedValues The encrypted values, each prefixed with an encryption identifier.
+     * @return The plaintext values, in the same order as the input.
+     * @throws GeneralSecurityException If an error occurs during the decryption process.
+     * @throws IOException If an error occurs when retrieving the secret key.
+     */
+    public List<String> decryptBatch(List<String> encryptedValues) throws GeneralSecurityException, IOException {
+        List<String> decryptedValues = new ArrayList<>(encryptedValues.size());
+        Key key = null;
+        for (String encryptedData : encryptedValues) {
+            checkNotRowBound(encryptedData);
+            if (!encryptedData.startsWith(ENCRYPTION_PREFIX)) {
+                decryptedValues.add(encryptedData);
+                continue;
+            }
+            if (key == null) {
+                key = getSecretKey();
+            }
+            decryptedValues.add(decrypt(encryptedData, key));
+        }
+        return decryptedValues;
+    }
+
+    /**
+     * This method encrypts an entry's password bound to its row.
+     * The row id and service name are authenticated as associated data, so the value only decrypts in the
+     * row it was written for: moving it to another id, or renaming the service behind the app's back,
+     * makes decryption fail instead of showing the password under the wrong entry.
+     * @param data The plaintext password.
+     * @param rowId The entry's id.
+     * @param serviceName The entry's service name.
+     * @return The encrypted password, with the row-bound prefix.
+     * @throws GeneralSecurityException If an error occurs during the encryption process.
+     * @throws IOException If an error occurs when retrieving the secret key.
+     */
+    public String encryptForRow(String data, int rowId, String serviceName) throws GeneralSecurityException, IOException {
+        return encryptBound(data, rowAad(rowId, serviceName));
+    }
+
+    /**
+     * This method decrypts a password stored for a row.
+     * Only row-bound values are accepted, and only for the row they were written for. Unbound values and
+     * plaintext are rejected, so a value copied in from the history or written into the file directly
+     * cannot pass for the row's password.
+     * @param encryptedData The stored password.
+     * @param rowId The id the value claims to belong to.
+     * @param serviceName The service name the value claims to belong to.
+     * @return The plaintext password.
+     * @throws GeneralSecurityException If the value is not bound, was tampered with or belongs to another row.
+     * @throws IOException If an error occurs when retrieving the secret key.
+     */
+    public String decryptForRow(String encryptedData, int rowId, String serviceName)
+            throws GeneralSecurityException, IOException {
+        checkBound(encryptedData);
+        return decrypt(encryptedData, getSecretKey(), rowAad(rowId, serviceName));
+    }
+
+    /**
+     * This method decrypts the passwords of a batch of entries with a single key lookup,
+     * each one checked against its entry's id and service name like decryptForRow.
+     * @param entries The entries, holding their stored passwords.
+     * @return The plaintext passwords, in the same order as the entries.
+     * @throws GeneralSecurityException If a password is not bound, was tampered with or belongs to another row.
+     * @throws IOException If an error occurs when retrieving the secret key.
+     */
+    public List<String> decryptPasswords(List<PasswordEntry> entries) throws GeneralSecurityException, IOException {
+        List<String> decryptedValues = new ArrayList<>(entries.size());
+        if (entries.isEmpty()) {
+            return decryptedValues;
+        }
+        Key key = getSecretKey();
+        for (PasswordEntry entry : entries) {
+            String encryptedData = entry.getStoredPassword();
+            checkBound(encryptedData);
+            decryptedValues.add(decrypt(encryptedData, key, rowAad(entry.getId(), entry.getServiceName())));
+        }
+        return decryptedValues;
+    }
+
+    /**
+     * This method encrypts a previous password of an entry bound to its place in the history.
+     * The entry id and the history row id are authenticated as associated data, so the value neither decrypts
+     * as a current password nor as a version of another entry, or another version of the same entry.
+     * @param data The plaintext password.
+     * @param entryId The id of the entry the version belongs to.
+     * @param historyId The id of the history row.
+     * @return The encrypted password, with the bound prefix.
+     * @throws GeneralSecurityException If an error occurs during the encryption process.
+     * @throws IOException If an error occurs when retrieving the secret key.
+     */
+    public String encryptForHistory(String data, int entryId, long historyId) throws GeneralSecurityException, IOException {
+        return encryptBound(data, historyAad(entryId, historyId));
+    }
+
+    /**
+     * This method decrypts the versions of an entry's history with a single key lookup,
+     * each one checked against the entry and history row it was written for.
+     * @param versions The versions, as read from the history.
+     * @return The plaintext passwords, in the same order as the versions.
+     * @throws GeneralSecurityException If a version is not bound, was tampered with or was moved.
+     * @throws IOException If an error occurs when retrieving the secret key.
+     */
+    public List<String> decryptHistory(List<PasswordVersion> versions) throws GeneralSecurityException, IOException {
+        List<String> decryptedValues = new ArrayList<>(versions.size());
+        if (versions.isEmpty()) {
+            return decryptedValues;
+        }
+        Key key = getSecretKey();
+        for (PasswordVersion version : versions) {
+            String encryptedData = version.getEncryptedPassword();
+            checkBound(encryptedData);
+            decryptedValues.add(decrypt(encryptedData, key, historyAad(version.getEntryId(), version.getId())));
+        }
+        return decryptedValues;
+    }
+
+    /**
+     * This method authenticates the root of a vault's integrity tree with a key that never leaves the
+     * keystore-backed preferences, so someone who edits the database file cannot recompute a valid root.
+     * @param root The serialized root state.
+     * @return The HMAC-SHA256 of the root.
+     * @throws GeneralSecurityException If a security error occurs during key generation or retrieval.
+     * @throws IOException If the key cannot be stored.
+     */
+    public byte[] signIntegrityRoot(byte[] root) throws GeneralSecurityException, IOException {
+        Mac mac = Mac.getInstance(INTEGRITY_MAC_ALGORITHM);
+        mac.init(new SecretKeySpec(getIntegrityKey(), INTEGRITY_MAC_ALGORITHM));
+        return mac.doFinal(root);
+    }
+
+    private synchronized byte[] getIntegrityKey() throws GeneralSecurityException, IOException {
+        if (integrityKey == null) {
+            SharedPreferences sharedPreferences = getKeyPreferences();
+            String encodedKey = sharedPreferences.getString(INTEGRITY_KEY_ALIAS, null);
+            if (encodedKey == null) {
+                byte[] key = new byte[DATABASE_KEY_LENGTH];
+                new SecureRandom().nextBytes(key);
+                encodedKey = Base64.encodeToString(key, Base64.NO_WRAP);
+                Arrays.fill(key, (byte) 0);
+                if (!sharedPreferences.edit().putString(INTEGRITY_KEY_ALIAS, encodedKey).commit()) {
+                    throw new IOException("Could not store integrity key");
+                }
+            }
+            integrityKey = Base64.decode(encodedKey, Base64.NO_WRAP);
+        }
+        return integrityKey;
+    }
+
+    private String encryptBound(String data, byte[] aad) throws GeneralSecurityException, IOException {
+        byte[] iv = new byte[IV_LENGTH];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, getSecretKey(), new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+        cipher.updateAAD(aad);
+        byte[] encryptedBytes = cipher.doFinal(data.getBytes());
+        byte[] combined = new byte[iv.length + encryptedBytes.length];
+        System.arraycopy(iv, 0, combined, 0, iv.length);
+        System.arraycopy(encryptedBytes, 0, combined, iv.length, encryptedBytes.length);
+        return ROW_ENCRYPTION_PREFIX + Base64.encodeToString(combined, Base64.DEFAULT);
+    }
+
+    private static byte[] rowAad(int rowId, String serviceName) {
+        byte[] name = (serviceName == null ? "" : serviceName).getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(4 + name.length).putInt(rowId).put(name).array();
+    }
+
+    /**
+     * This method returns the associated data of a history version. The label keeps it apart from row data,
+     * which starts with the row id instead.
+     */
+    private static byte[] historyAad(int entryId, long historyId) {
+        return ByteBuffer.allocate(HISTORY_AAD_LABEL.length + 4 + 8)
+                .put(HISTORY_AAD_LABEL).putInt(entryId).putLong(historyId).array();
+    }
+
+    private static void checkBound(String encryptedData) throws GeneralSecurityException {
+        if (!encryptedData.startsWith(ROW_ENCRYPTION_PREFIX)) {
+            throw new GeneralSecurityException("Stored value is not bound to its place");
+        }
+    }
+
+    private static void checkNotRowBound(String encryptedData) throws GeneralSecurityException {
+        if (encryptedData.startsWith(ROW_ENCRYPTION_PREFIX)) {
+            throw new GeneralSecurityException("Value is bound to a row; use decryptForRow");
+        }
+    }
+
+    private String decrypt(String encryptedData, Key key) throws GeneralSecurityException {
+        return decrypt(encryptedData, key, null);
+    }
+
+    private String decrypt(String encryptedData, Key key, byte[] aad) throws GeneralSecurityException {
+        String prefix = aad == null ? ENCRYPTION_PREFIX : ROW_ENCRYPTION_PREFIX;
+        encryptedData = encryptedData.substring(prefix.length());
         byte[] combined = Base64.decode(encryptedData, Base64.DEFAULT);
         byte[] iv = new byte[IV_LENGTH];
         byte[] encryptedBytes = new byte[combined.length - IV_LENGTH];
@@ -108,7 +536,10 @@ public class Encryption {
         System.arraycopy(combined, IV_LENGTH, encryptedBytes, 0, encryptedBytes.length);
         Cipher cipher = Cipher.getInstance(TRANSFORMATION);
         GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-        cipher.init(Cipher.DECRYPT_MODE, getSecretKey(), gcmParameterSpec);
+        cipher.init(Cipher.DECRYPT_MODE, key, gcmParameterSpec);
+        if (aad != null) {
+            cipher.updateAAD(aad);
+        }
         byte[] decryptedBytes = cipher.doFinal(encryptedBytes);
         return new String(decryptedBytes);
     }
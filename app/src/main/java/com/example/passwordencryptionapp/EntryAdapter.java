@@ -1,5 +1,7 @@
 package com.example.passwordencryptionapp;
 
+import android.annotation.SuppressLint;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -7,43 +9,90 @@ import android.widget.Button;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
+import java.util.ArrayList;
 import java.util.List;
 
-public class EntryAdapter extends RecyclerView.Adapter<EntryAdapter.ViewHolder> {
+public class EntryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+    private static final int VIEW_TYPE_ENTRY = 0;
+    private static final int VIEW_TYPE_FOLDER_HEADER = 1;
 
-    private final List<PasswordEntry> passwordEntries;
+    private final List<Object> rows = new ArrayList<>();
     private final OnEditClickListener editClickListener;
 
     /**
      * Constructor for EntryAdapter.
-     * This takes a list of PasswordEntry objects and a listener for edit actions.
-     * The list represents the password entries that will be displayed in the RecyclerView.
+     * This takes a listener for edit actions; the entries to show are supplied with setEntries.
      * The OnEditClickListener allows actions when the edit button is clicked.
      */
-    public EntryAdapter(List<PasswordEntry> passwordEntries, OnEditClickListener editClickListener) {
-        this.passwordEntries = passwordEntries;
+    public EntryAdapter(OnEditClickListener editClickListener) {
         this.editClickListener = editClickListener;
     }
 
+    /**
+     * This method replaces the rows shown by the RecyclerView.
+     * The entries are laid out in the given order, and when the order is grouped a folder header
+     * is inserted wherever the folder changes. This is a single pass with no sorting.
+     * @param order The display order from the database.
+     * @param entriesById The loaded entries, looked up by id.
+     */
+    @SuppressLint("NotifyDataSetChanged")
+    public void setEntries(EntryOrder order, SparseArray<PasswordEntry> entriesById) {
+        rows.clear();
+        String currentFolder = null;
+        for (int position = 0; position < order.size(); position++) {
+            PasswordEntry entry = entriesById.get(order.getId(position));
+            if (entry == null) {
+                continue;
+            }
+            if (order.isGrouped() && !order.getFolder(position).equals(currentFolder)) {
+                currentFolder = order.getFolder(position);
+                rows.add(currentFolder);
+            }
+            rows.add(entry);
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * This method tells the RecyclerView whether a row is a folder header or a password entry.
+     */
+    @Override
+    public int getItemViewType(int position) {
+        return rows.get(position) instanceof PasswordEntry ? VIEW_TYPE_ENTRY : VIEW_TYPE_FOLDER_HEADER;
+    }
+
     /**
      * This method is called when a new ViewHolder needs to be created.
-     * It inflates the layout for a single password entry item.
+     * It inflates the layout for a single password entry item or a folder header.
      */
     @NonNull
     @Override
-    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_password_entry, parent, false);
+    public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        if (viewType == VIEW_TYPE_FOLDER_HEADER) {
+            return new FolderHeaderViewHolder(inflater.inflate(R.layout.item_folder_header, parent, false));
+        }
+        View view = inflater.inflate(R.layout.item_password_entry, parent, false);
         return new ViewHolder(view);
     }
 
     /**
      * This method binds the data to the ViewHolder.
-     * It sets the service name, username, and password text fields, and sets the click listener for the edit button.
+     * For entries, it sets the service name, username, and password text fields, and sets the click listener
+     * for the edit button. For headers, it shows the folder name.
      */
     @Override
-    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        PasswordEntry entry = passwordEntries.get(position);
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder viewHolder, int position) {
+        Object row = rows.get(position);
+        if (viewHolder instanceof FolderHeaderViewHolder) {
+            String folder = (String) row;
+            ((FolderHeaderViewHolder) viewHolder).folderNameText.setText(folder.isEmpty() ? "No folder" : folder);
+            return;
+        }
+        ViewHolder holder = (ViewHolder) viewHolder;
+        PasswordEntry entry = (PasswordEntry) row;
         holder.serviceNameText.setText(entry.getServiceName());
+        holder.breachWarningText.setVisibility(entry.isBreached() ? View.VISIBLE : View.GONE);
         if (entry.isEncrypted()) {
             holder.usernameText.setVisibility(View.GONE);
             holder.passwordText.setVisibility(View.GONE);
@@ -58,11 +107,11 @@ public class EntryAdapter extends RecyclerView.Adapter<EntryAdapter.ViewHolder>
 
     /**
      * This method returns the number of items in the list.
-     * It tells the RecyclerView how many password entries need to be displayed.
+     * It tells the RecyclerView how many password entries and folder headers need to be displayed.
      */
     @Override
     public int getItemCount() {
-        return passwordEntries.size();
+        return rows.size();
     }
 
     /**
@@ -71,7 +120,7 @@ public class EntryAdapter extends RecyclerView.Adapter<EntryAdapter.ViewHolder>
      * as well as the button for editing the entry.
      */
     public static class ViewHolder extends RecyclerView.ViewHolder {
-        TextView serviceNameText, usernameText, passwordText;
+        TextView serviceNameText, usernameText, passwordText, breachWarningText;
         Button editButton;
 
         public ViewHolder(@NonNull View itemView) {
@@ -79,10 +128,23 @@ public class EntryAdapter extends RecyclerView.Adapter<EntryAdapter.ViewHolder>
             serviceNameText = itemView.findViewById(R.id.serviceNameText);
             usernameText = itemView.findViewById(R.id.usernameText);
             passwordText = itemView.findViewById(R.id.passwordText);
+            breachWarningText = itemView.findViewById(R.id.breachWarningText);
             editButton = itemView.findViewById(R.id.editButton);
         }
     }
 
+    /**
+     * ViewHolder class for a folder header in the grouped view.
+     */
+    public static class FolderHeaderViewHolder extends RecyclerView.ViewHolder {
+        TextView folderNameText;
+
+        public FolderHeaderViewHolder(@NonNull View itemView) {
+            super(itemView);
+            folderNameText = itemView.findViewById(R.id.folderNameText);
+        }
+    }
+
     /**
      * Interface for handling edit button clicks.
      * This allows the adapter to communicate edit actions to the activity or fragment that is using it.
@@ -0,0 +1,23 @@
+package com.example.passwordencryptionapp;
+
+/**
+ * The display order of the vault list, as returned by {@link Database#getEntryOrder}.
+ * Holds the entry ids in order and, when the list is grouped, the folder of each id.
+ */
+public class EntryOrder {
+    private final int[] ids;
+    private final String[] folders;
+
+    public EntryOrder(int[] ids, String[] folders) {
+        this.ids = ids;
+        this.folders = folders;
+    }
+
+    public int size() { return ids.length; }
+
+    public int getId(int position) { return ids[position]; }
+
+    public boolean isGrouped() { return folders != null; }
+
+    public String getFolder(int position) { return folders[position]; }
+}
@@ -0,0 +1,232 @@
+package com.example.passwordencryptionapp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sparse Merkle tree with one leaf per entry id, used to detect changes made to the database behind the app's back.
+ *
+ * Leaf i holds the hash of entry i, or a fixed empty hash if there is no such entry. The tree is just deep enough
+ * for the highest id and grows by one level whenever an id passes the current capacity. Only nodes that differ
+ * from the empty hash of their level are stored, so the tree takes space in proportion to the entries. Changing
+ * one leaf rewrites only its path to the root, and checking one leaf reads only its siblings on that path; both
+ * are O(log n) node lookups. Leaves and inner nodes are hashed with different prefixes so one cannot pass for
+ * the other.
+ */
+public class IntegrityTree {
+    public static final int HASH_LENGTH = 32;
+    private static final int MAX_DEPTH = 63;
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+    private static final byte[][] EMPTY_HASHES = new byte[MAX_DEPTH + 1][];
+
+    static {
+        EMPTY_HASHES[0] = new byte[HASH_LENGTH];
+        for (int level = 1; level <= MAX_DEPTH; level++) {
+            EMPTY_HASHES[level] = hashNode(EMPTY_HASHES[level - 1], EMPTY_HASHES[level - 1]);
+        }
+    }
+
+    /**
+     * Where the tree keeps its nodes and depth. Implementations only need point lookups by level and position.
+     */
+    public interface NodeStore {
+        /**
+         * @return The stored hash, or null if the node holds the empty hash of its level.
+         */
+        byte[] getNode(int level, long position);
+
+        /**
+         * @param hash The new hash, or null to drop the node because it is back to the empty hash.
+         */
+        void putNode(int level, long position, byte[] hash);
+
+        int getDepth();
+
+        void setDepth(int depth);
+    }
+
+    private final NodeStore store;
+
+    /**
+     * Constructor for the IntegrityTree class.
+     * @param store The storage holding the tree's nodes.
+     */
+    public IntegrityTree(NodeStore store) {
+        this.store = store;
+    }
+
+    /**
+     * This method returns the current root hash, which covers every leaf.
+     */
+    public byte[] getRoot() {
+        return node(store.getDepth(), 0);
+    }
+
+    public int getDepth() { return store.getDepth(); }
+
+    /**
+     * This method sets one leaf and updates its path up to the root, growing the tree first if the position
+     * is beyond its capacity.
+     * @param position The leaf position, which is the entry id.
+     * @param leafHash The leaf's hash, or null to empty the leaf.
+     * @return The new root hash.
+     */
+    public byte[] update(long position, byte[] leafHash) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Invalid leaf position " + position);
+        }
+        int depth = store.getDepth();
+        if (leafHash == null && position >>> depth != 0) {
+            return getRoot();
+        }
+        while (position >>> depth != 0) {
+            if (depth == MAX_DEPTH) {
+                throw new IllegalArgumentException("Leaf position " + position + " is out of range");
+            }
+            byte[] grown = hashNode(node(depth, 0), EMPTY_HASHES[depth]);
+            depth++;
+            putNode(depth, 0, grown);
+            store.setDepth(depth);
+        }
+        byte[] hash = leafHash == null ? EMPTY_HASHES[0] : leafHash;
+        putNode(0, position, hash);
+        long index = position;
+        for (int level = 0; level < depth; level++) {
+            byte[] sibling = node(level, index ^ 1);
+            hash = (index & 1) == 0 ? hashNode(hash, sibling) : hashNode(sibling, hash);
+            index >>>= 1;
+            putNode(level + 1, index, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * This method checks one leaf against a trusted root, using only the stored siblings on the leaf's path.
+     * Nothing is written. A match means the leaf is exactly what the tree was last updated with.
+     * @param position The leaf position, which is the entry id.
+     * @param leafHash The hash of what is there now, or null if there is nothing at that position.
+     * @param root The trusted root hash.
+     * @return true if the leaf matches the root.
+     */
+    public boolean verify(long position, byte[] leafHash, byte[] root) {
+        int depth = store.getDepth();
+        if (position < 0 || position >>> depth != 0) {
+            // The tree has never held this position, so only an empty leaf matches.
+            return leafHash == null && MessageDigest.isEqual(getRoot(), root);
+        }
+        byte[] hash = leafHash == null ? EMPTY_HASHES[0] : leafHash;
+        long index = position;
+        for (int level = 0; level < depth; level++) {
+            byte[] sibling = node(level, index ^ 1);
+            hash = (index & 1) == 0 ? hashNode(hash, sibling) : hashNode(sibling, hash);
+            index >>>= 1;
+        }
+        return MessageDigest.isEqual(hash, root);
+    }
+
+    /**
+     * This method computes the root of a tree of the given depth over a complete set of leaves, bottom up,
+     * without reading or writing any stored nodes. It is used to check or rebuild the whole tree.
+     * @param leaves Every non-empty leaf, by position.
+     * @param depth The depth of the tree; every position must fit in it.
+     * @param target If not null, receives every non-empty node, for rebuilding the stored tree.
+     * @return The root hash.
+     */
+    public static byte[] buildRoot(Map<Long, byte[]> leaves, int depth, NodeStore target) {
+        Map<Long, byte[]> level = leaves;
+        for (int height = 0; height < depth; height++) {
+            Map<Long, byte[]> parents = new HashMap<>();
+            for (Map.Entry<Long, byte[]> node : level.entrySet()) {
+                long index = node.getKey();
+                if (index >>> (depth - height) != 0) {
+                    throw new IllegalArgumentException("Leaf position out of range");
+                }
+                if (target != null) {
+                    target.putNode(height, index, node.getValue());
+                }
+                long parent = index >>> 1;
+                if (parents.containsKey(parent)) {
+                    continue;
+                }
+                byte[] sibling = level.get(index ^ 1);
+                if (sibling == null) {
+                    sibling = EMPTY_HASHES[height];
+                }
+                parents.put(parent, (index & 1) == 0 ? hashNode(node.getValue(), sibling) : hashNode(sibling, node.getValue()));
+            }
+            level = parents;
+        }
+        byte[] root = level.isEmpty() ? EMPTY_HASHES[depth] : level.get(0L);
+        if (target != null) {
+            if (!level.isEmpty()) {
+                target.putNode(depth, 0, root);
+            }
+            target.setDepth(depth);
+        }
+        return root;
+    }
+
+    /**
+     * This method returns the smallest depth whose tree has room for a position.
+     */
+    public static int depthFor(long maxPosition) {
+        return maxPosition <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(maxPosition);
+    }
+
+    /**
+     * This method hashes the fields of one entry into a leaf hash. Each field is length-prefixed,
+     * so moving text from one field to the next changes the hash.
+     * @param position The leaf position, which is the entry id.
+     * @param fields The entry's fields, in a fixed order; null counts as empty.
+     * @return The leaf hash.
+     */
+    public static byte[] hashLeaf(long position, List<String> fields) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(LEAF_PREFIX);
+            out.writeLong(position);
+            out.writeInt(fields.size());
+            for (String field : fields) {
+                out.writeUTF(field == null ? "" : field);
+            }
+            out.flush();
+            return sha256().digest(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Field too long to hash", e);
+        }
+    }
+
+    private byte[] node(int level, long position) {
+        byte[] hash = store.getNode(level, position);
+        return hash == null ? EMPTY_HASHES[level] : hash;
+    }
+
+    private void putNode(int level, long position, byte[] hash) {
+        store.putNode(level, position, Arrays.equals(hash, EMPTY_HASHES[level]) ? null : hash);
+    }
+
+    private static byte[] hashNode(byte[] left, byte[] right) {
+        MessageDigest digest = sha256();
+        digest.update(NODE_PREFIX);
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -9,7 +9,6 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.security.crypto.EncryptedSharedPreferences;
 import androidx.security.crypto.MasterKeys;
-import static com.example.passwordencryptionapp.SecurityUtils.hashPin;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 
@@ -17,6 +16,7 @@ public class Main extends AppCompatActivity {
 
     private EditText pinEditText;
     private Button loginButton;
+    private VaultConfig vault;
 
     /**
      * This method is called when the activity is first created.
@@ -26,8 +26,10 @@ public class Main extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        vault = VaultManager.getInstance(this).getActiveVault();
         if (isPinSet()) {
             setContentView(R.layout.activity_main);
+            setTitle(vault.getName());
             pinEditText = findViewById(R.id.pinEditText);
             loginButton = findViewById(R.id.loginButton);
             setupPinLogin();
@@ -39,7 +41,7 @@ public class Main extends AppCompatActivity {
     }
 
     /**
-     * This method checks if the user has already set a PIN.
+     * This method checks if the user has already set a PIN for the active vault.
      * It accesses the encrypted shared preferences to see if a PIN value exists.
      * If an error occurs during this process, it displays an error message.
      * @return true if a PIN is set, false otherwise.
@@ -48,7 +50,7 @@ public class Main extends AppCompatActivity {
         try {
             String masterKeyAlias = MasterKeys.getOrCreate(MasterKeys.AES256_GCM_SPEC);
             SharedPreferences encryptedPrefs = EncryptedSharedPreferences.create(
-                    "secure_prefs",
+                    vault.getPinPrefsName(),
                     masterKeyAlias,
                     this,
                     EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
@@ -64,45 +66,28 @@ public class Main extends AppCompatActivity {
 
     /**
      * This method sets up the login functionality.
-     * When the login button is clicked, it checks if the entered PIN matches the stored PIN.
-     * If the PIN is correct, it navigates to the Vault activity. Otherwise, it displays an error message.
+     * When the login button is clicked, it checks the entered PIN through the vault's attempt limiter.
+     * If the PIN is correct, it navigates to the Vault activity. Otherwise the limiter's message is shown,
+     * and repeated wrong PINs lock the login for increasing periods.
      */
     private void setupPinLogin() {
         loginButton.setOnClickListener(view -> {
-            String enteredPin = pinEditText.getText().toString();
-            try {
-                String masterKeyAlias = MasterKeys.getOrCreate(MasterKeys.AES256_GCM_SPEC);
-                SharedPreferences encryptedPrefs = EncryptedSharedPreferences.create(
-                        "secure_prefs",
-                        masterKeyAlias,
-                        this,
-                        EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
-                        EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
-                );
-
-                String storedSalt = encryptedPrefs.getString("user_salt", "");
-                String storedHash = encryptedPrefs.getString("user_pin_hash", "");
-
-                String enteredHash = hashPin(enteredPin, storedSalt);
-
-                if (enteredHash.equals(storedHash)) {
-                    navigateToVault();
-                } else {
-                    Toast.makeText(Main.this, "Incorrect PIN", Toast.LENGTH_SHORT).show();
-                }
-            } catch (GeneralSecurityException | IOException e) {
-                e.printStackTrace();
-                Toast.makeText(Main.this, "Error accessing PIN", Toast.LENGTH_SHORT).show();
+            if (PinLock.checkPin(this, vault, pinEditText.getText().toString())) {
+                navigateToVault();
             }
         });
     }
 
 
     /**
-     * This method navigates the user to the Vault activity.
+     * This method marks the active vault as unlocked and navigates the user to the Vault activity.
      * The Vault activity is where the user can view and manage their stored passwords.
      */
     private void navigateToVault() {
+        VaultManager vaultManager = VaultManager.getInstance(this);
+        VaultHandle vaultHandle = vaultManager.acquire(vault);
+        vaultHandle.setUnlocked(true);
+        vaultManager.release(vaultHandle);
         Intent intent = new Intent(Main.this, Vault.class);
         startActivity(intent);
         finish();
@@ -1,11 +1,21 @@
 package com.example.passwordencryptionapp;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class PasswordEntry {
     private int id;
     private String serviceName;
     private String username;
     private String password;
+    private String storedPassword;
+    private boolean passwordShown;
     private boolean isEncrypted;
+    private boolean isBreached;
+    private String folder = "";
+    private List<String> tags = new ArrayList<>();
+    private long lastUsed;
+    private int useCount;
 
     public PasswordEntry(int id, String serviceName, String username, String encryptedPassword) {
         this.id = id;
@@ -25,9 +35,63 @@ public class PasswordEntry {
     public void setUsername(String username) { this.username = username; }
 
     public String getPassword() { return password; }
-    public void setPassword(String password) { this.password = password; }
+    public void setPassword(String password) {
+        this.password = password;
+        this.storedPassword = null;
+        this.passwordShown = false;
+    }
+
+    /**
+     * This method returns the password as it is stored, even while the decrypted one is shown.
+     * It is null for entries loaded without their password, such as the entries of a list.
+     */
+    public String getStoredPassword() { return passwordShown ? storedPassword : password; }
 
     public boolean isEncrypted() { return isEncrypted; }
     public void setEncrypted(boolean encrypted) { isEncrypted = encrypted; }
 
+    public boolean isBreached() { return isBreached; }
+    public void setBreached(boolean breached) { isBreached = breached; }
+
+    public String getFolder() { return folder; }
+    public void setFolder(String folder) { this.folder = folder == null ? "" : folder; }
+
+    public List<String> getTags() { return tags; }
+    public void setTags(List<String> tags) { this.tags = tags; }
+
+    public long getLastUsed() { return lastUsed; }
+    public void setLastUsed(long lastUsed) { this.lastUsed = lastUsed; }
+
+    public int getUseCount() { return useCount; }
+    public void setUseCount(int useCount) { this.useCount = useCount; }
+
+    /**
+     * This method shows a decrypted password in place of the encrypted one, which is kept so that
+     * {@link #hidePassword()} can put it back. It does nothing if the password is already shown.
+     * @param plainPassword The decrypted password.
+     */
+    public void showPassword(String plainPassword) {
+        if (isEncrypted) {
+            storedPassword = password;
+            password = plainPassword;
+            passwordShown = true;
+            isEncrypted = false;
+        }
+    }
+
+    /**
+     * This method puts the encrypted password kept by {@link #showPassword(String)} back in place of the
+     * decrypted one, or no password if the entry was loaded without one, and drops the reference to the
+     * plaintext. Nothing is encrypted, so this costs the same whatever the password. It does nothing if
+     * the password is not shown, or was replaced while shown.
+     */
+    public void hidePassword() {
+        if (passwordShown) {
+            password = storedPassword;
+            storedPassword = null;
+            passwordShown = false;
+            isEncrypted = true;
+        }
+    }
+
 }
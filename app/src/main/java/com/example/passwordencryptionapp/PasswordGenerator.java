@@ -0,0 +1,89 @@
+package com.example.passwordencryptionapp;
+
+import java.security.SecureRandom;
+
+/**
+ * Generates random passwords from a configurable character set, or passphrases from a word list.
+ */
+public class PasswordGenerator {
+    public static final String LOWERCASE = "abcdefghijklmnopqrstuvwxyz";
+    public static final String UPPERCASE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    public static final String DIGITS = "0123456789";
+    public static final String SYMBOLS = "!@#$%^&*()-_=+[]{};:,.?/";
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * This method generates a random password from the selected character groups.
+     * Every selected group is guaranteed to appear at least once, and the result is shuffled
+     * so those guaranteed characters do not sit in predictable positions.
+     * @param length The number of characters, at least the number of selected groups.
+     * @param lowercase Whether to include lowercase letters.
+     * @param uppercase Whether to include uppercase letters.
+     * @param digits Whether to include digits.
+     * @param symbols Whether to include symbols.
+     * @return The generated password.
+     * @throws IllegalArgumentException If no group is selected or the length is too short.
+     */
+    public String generate(int length, boolean lowercase, boolean uppercase, boolean digits, boolean symbols) {
+        StringBuilder charset = new StringBuilder();
+        StringBuilder password = new StringBuilder(length);
+        if (lowercase) {
+            charset.append(LOWERCASE);
+            password.append(pick(LOWERCASE));
+        }
+        if (uppercase) {
+            charset.append(UPPERCASE);
+            password.append(pick(UPPERCASE));
+        }
+        if (digits) {
+            charset.append(DIGITS);
+            password.append(pick(DIGITS));
+        }
+        if (symbols) {
+            charset.append(SYMBOLS);
+            password.append(pick(SYMBOLS));
+        }
+        if (charset.length() == 0) {
+            throw new IllegalArgumentException("Select at least one character group");
+        }
+        if (length < password.length()) {
+            throw new IllegalArgumentException("Length must be at least " + password.length());
+        }
+        while (password.length() < length) {
+            password.append(pick(charset));
+        }
+        for (int i = password.length() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            char swap = password.charAt(i);
+            password.setCharAt(i, password.charAt(j));
+            password.setCharAt(j, swap);
+        }
+        return password.toString();
+    }
+
+    /**
+     * This method generates a passphrase of random words drawn uniformly from a word list.
+     * @param words The word list to draw from.
+     * @param wordCount The number of words, at least one.
+     * @param separator The text placed between words.
+     * @return The generated passphrase.
+     */
+    public String generatePassphrase(CompactDictionary words, int wordCount, String separator) {
+        if (wordCount < 1) {
+            throw new IllegalArgumentException("Passphrase needs at least one word");
+        }
+        StringBuilder passphrase = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                passphrase.append(separator);
+            }
+            passphrase.append(words.wordAt(random.nextInt(words.size())));
+        }
+        return passphrase.toString();
+    }
+
+    private char pick(CharSequence charset) {
+        return charset.charAt(random.nextInt(charset.length()));
+    }
+}
@@ -0,0 +1,547 @@
+package com.example.passwordencryptionapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Estimates how many guesses an attacker needs for a password, in the style of zxcvbn.
+ *
+ * The password is covered left to right by the cheapest sequence of patterns: common passwords,
+ * dictionary words (also reversed or with l33t substitutions), keyboard walks, character sequences,
+ * repeats and dates, with brute force filling the gaps. Costs are kept in bits (log2 guesses).
+ * Dictionary lookups go through {@link CompactDictionary}, which binary searches a memory-mapped
+ * file in place, so an estimate takes well under a millisecond and can run on every keystroke.
+ * Estimates never wait for the dictionaries: until {@link #warmUp()} has loaded them, passwords are
+ * scored on their patterns alone.
+ */
+public class PasswordStrength {
+    public static final String COMMON_PASSWORDS_ASSET = "common_passwords.txt";
+    public static final String WORDLIST_ASSET = "wordlist.txt";
+
+    private static final String TAG = "PasswordStrength";
+
+    private static final int MAX_ANALYSED_LENGTH = 64;
+    private static final int MIN_MATCH_LENGTH = 3;
+    private static final double MATCH_OVERHEAD_BITS = 1.0;
+    private static final double KEYBOARD_START_BITS = log2(47);
+    private static final double KEYBOARD_TURN_BITS = log2(4.6);
+
+    private static final String[] KEYBOARD_ROWS = {"`1234567890-=", "qwertyuiop[]\\", "asdfghjkl;'", "zxcvbnm,./"};
+    private static final String[] SHIFTED_ROWS = {"~!@#$%^&*()_+", "QWERTYUIOP{}|", "ASDFGHJKL:\"", "ZXCVBNM<>?"};
+    // Key centres in quarter-key units, following the stagger of a standard QWERTY layout.
+    private static final int[] ROW_OFFSETS = {2, 8, 9, 11};
+    private static final int[] KEY_ROW = new int[128];
+    private static final int[] KEY_X = new int[128];
+    private static final char[] UNLEET = new char[128];
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            KEY_ROW[c] = -1;
+        }
+        for (int row = 0; row < KEYBOARD_ROWS.length; row++) {
+            for (int col = 0; col < KEYBOARD_ROWS[row].length(); col++) {
+                int x = ROW_OFFSETS[row] + col * 4;
+                KEY_ROW[KEYBOARD_ROWS[row].charAt(col)] = row;
+                KEY_X[KEYBOARD_ROWS[row].charAt(col)] = x;
+                KEY_ROW[SHIFTED_ROWS[row].charAt(col)] = row;
+                KEY_X[SHIFTED_ROWS[row].charAt(col)] = x;
+            }
+        }
+        UNLEET['4'] = 'a';
+        UNLEET['@'] = 'a';
+        UNLEET['8'] = 'b';
+        UNLEET['3'] = 'e';
+        UNLEET['1'] = 'i';
+        UNLEET['!'] = 'i';
+        UNLEET['0'] = 'o';
+        UNLEET['$'] = 's';
+        UNLEET['5'] = 's';
+        UNLEET['7'] = 't';
+        UNLEET['+'] = 't';
+    }
+
+    /**
+     * The kind of weakness that dominates a password.
+     */
+    public enum Pattern {
+        COMMON_PASSWORD, DICTIONARY_WORD, KEYBOARD_WALK, SEQUENCE, REPEAT, DATE, BRUTE_FORCE
+    }
+
+    /**
+     * The outcome of an estimate: a 0-4 score, the guess estimate in bits and the weakest pattern found.
+     */
+    public static class Result {
+        private final int score;
+        private final double guessesLog2;
+        private final Pattern weakestPattern;
+
+        Result(int score, double guessesLog2, Pattern weakestPattern) {
+            this.score = score;
+            this.guessesLog2 = guessesLog2;
+            this.weakestPattern = weakestPattern;
+        }
+
+        public int getScore() { return score; }
+
+        public double getGuessesLog2() { return guessesLog2; }
+
+        public Pattern getWeakestPattern() { return weakestPattern; }
+
+        /**
+         * This method returns a short hint about what makes the password weak, or null if it is strong.
+         */
+        public String getWarning() {
+            if (score >= 4) {
+                return null;
+            }
+            switch (weakestPattern) {
+                case COMMON_PASSWORD: return "This is a commonly used password";
+                case DICTIONARY_WORD: return "Words on their own are easy to guess";
+                case KEYBOARD_WALK: return "Keyboard patterns are easy to guess";
+                case SEQUENCE: return "Sequences like abc or 123 are easy to guess";
+                case REPEAT: return "Repeated characters are easy to guess";
+                case DATE: return "Dates and years are easy to guess";
+                default: return "Add more characters";
+            }
+        }
+    }
+
+    /**
+     * Dictionary matches grouped by end position, as linked lists in flat arrays.
+     */
+    private static class Matches {
+        final int[] head;
+        int[] start = new int[16];
+        int[] next = new int[16];
+        double[] bits = new double[16];
+        Pattern[] pattern = new Pattern[16];
+        int size;
+
+        Matches(int length) {
+            head = new int[length + 1];
+            Arrays.fill(head, -1);
+        }
+
+        void add(int matchStart, int matchEnd, double matchBits, Pattern matchPattern) {
+            if (size == start.length) {
+                start = Arrays.copyOf(start, size * 2);
+                next = Arrays.copyOf(next, size * 2);
+                bits = Arrays.copyOf(bits, size * 2);
+                pattern = Arrays.copyOf(pattern, size * 2);
+            }
+            start[size] = matchStart;
+            bits[size] = matchBits;
+            pattern[size] = matchPattern;
+            next[size] = head[matchEnd];
+            head[matchEnd] = size++;
+        }
+    }
+
+    /**
+     * The loaded dictionaries, published together so an estimate sees both or neither.
+     * Either may be null if its asset could not be opened.
+     */
+    private static class Dictionaries {
+        final CompactDictionary commonPasswords;
+        final CompactDictionary words;
+
+        Dictionaries(CompactDictionary commonPasswords, CompactDictionary words) {
+            this.commonPasswords = commonPasswords;
+            this.words = words;
+        }
+    }
+
+    private final Context context;
+    private volatile Dictionaries dictionaries;
+
+    /**
+     * Constructor for the PasswordStrength class.
+     * The bundled dictionaries are not loaded until {@link #warmUp()}.
+     * @param context The application context.
+     */
+    public PasswordStrength(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Constructor for using already opened dictionaries, which is mainly useful off-device.
+     */
+    public PasswordStrength(CompactDictionary commonPasswords, CompactDictionary words) {
+        this.context = null;
+        this.dictionaries = new Dictionaries(commonPasswords, words);
+    }
+
+    /**
+     * This method loads the dictionaries, which estimates use from then on. It reads the assets,
+     * so call it from a background thread; calls after the first return straight away.
+     */
+    public synchronized void warmUp() {
+        if (dictionaries != null) {
+            return;
+        }
+        CompactDictionary commonPasswords = null;
+        CompactDictionary words = null;
+        try {
+            commonPasswords = CompactDictionary.fromAsset(context, COMMON_PASSWORDS_ASSET);
+            words = CompactDictionary.fromAsset(context, WORDLIST_ASSET);
+        } catch (IOException e) {
+            // Scoring still works without dictionaries, it just cannot spot common words.
+            Log.w(TAG, "Could not load the password dictionaries", e);
+        }
+        dictionaries = new Dictionaries(commonPasswords, words);
+    }
+
+    /**
+     * This method returns the word list once it is loaded, so the passphrase generator can share it.
+     * It never loads the dictionaries itself and never blocks, so it is safe to call on the main thread.
+     * @return The word list, or null if it is not loaded yet or could not be loaded.
+     */
+    public CompactDictionary getWords() {
+        Dictionaries loaded = dictionaries;
+        return loaded == null ? null : loaded.words;
+    }
+
+    /**
+     * This method estimates the strength of a password.
+     * Only the first 64 characters are searched for patterns; the rest count as brute force.
+     * It never blocks: before the dictionaries are loaded, no dictionary words are matched.
+     * @param password The password to score.
+     * @return The estimate.
+     */
+    public Result estimate(CharSequence password) {
+        Dictionaries loaded = dictionaries;
+        int length = password.length();
+        int n = Math.min(length, MAX_ANALYSED_LENGTH);
+        double bruteForceBits = log2(cardinality(password));
+
+        char[] lower = new char[n];
+        char[] unleet = new char[n];
+        char[] reversed = new char[n];
+        int[] leetCount = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            char c = Character.toLowerCase(password.charAt(i));
+            lower[i] = c;
+            reversed[n - 1 - i] = c;
+            boolean substituted = c < 128 && UNLEET[c] != 0;
+            unleet[i] = substituted ? UNLEET[c] : c;
+            leetCount[i + 1] = leetCount[i] + (substituted ? 1 : 0);
+        }
+        Matches matches = new Matches(n);
+        if (loaded != null) {
+            collectDictionaryMatches(loaded, matches, CharBuffer.wrap(lower), password, leetCount, false, false);
+            if (leetCount[n] > 0) {
+                collectDictionaryMatches(loaded, matches, CharBuffer.wrap(unleet), password, leetCount, true, false);
+            }
+            collectDictionaryMatches(loaded, matches, CharBuffer.wrap(reversed), password, leetCount, false, true);
+        }
+
+        double[] best = new double[n + 1];
+        int[] bestStart = new int[n + 1];
+        Pattern[] bestPattern = new Pattern[n + 1];
+        for (int end = 1; end <= n; end++) {
+            best[end] = best[end - 1] + bruteForceBits;
+            bestStart[end] = end - 1;
+            bestPattern[end] = Pattern.BRUTE_FORCE;
+
+            for (int match = matches.head[end]; match >= 0; match = matches.next[match]) {
+                consider(best, bestStart, bestPattern, matches.start[match], end,
+                        matches.bits[match], matches.pattern[match]);
+            }
+
+            int walkStart = keyboardWalkStart(password, end);
+            if (end - walkStart >= MIN_MATCH_LENGTH) {
+                consider(best, bestStart, bestPattern, walkStart, end,
+                        keyboardWalkBits(password, walkStart, end), Pattern.KEYBOARD_WALK);
+            }
+            int sequenceStart = sequenceStart(lower, end);
+            if (end - sequenceStart >= MIN_MATCH_LENGTH) {
+                consider(best, bestStart, bestPattern, sequenceStart, end,
+                        sequenceBits(lower, sequenceStart, end), Pattern.SEQUENCE);
+            }
+            for (int blockLength = 1; blockLength * 2 <= end; blockLength++) {
+                int repeatStart = repeatStart(lower, end, blockLength);
+                int repeatLength = end - repeatStart;
+                if (repeatLength >= Math.max(MIN_MATCH_LENGTH, blockLength * 2)) {
+                    double blockBits = blockLength == 1
+                            ? bruteForceBits
+                            : Math.max(1, best[repeatStart + blockLength] - best[repeatStart]);
+                    consider(best, bestStart, bestPattern, repeatStart, end,
+                            blockBits + log2((double) repeatLength / blockLength), Pattern.REPEAT);
+                }
+            }
+            if (end >= 4) {
+                consider(best, bestStart, bestPattern, end - 4, end, yearBits(password, end - 4), Pattern.DATE);
+            }
+            if (end >= 6) {
+                consider(best, bestStart, bestPattern, end - 6, end, dateBits(password, end - 6, end), Pattern.DATE);
+            }
+            if (end >= 8) {
+                consider(best, bestStart, bestPattern, end - 8, end, dateBits(password, end - 8, end), Pattern.DATE);
+            }
+        }
+
+        double totalBits = best[n] + (length - n) * bruteForceBits;
+        return new Result(score(totalBits), totalBits, weakestPattern(bestStart, bestPattern, n));
+    }
+
+    /**
+     * This method relaxes the cheapest cover of the first {@code end} characters with one match.
+     */
+    private static void consider(double[] best, int[] bestStart, Pattern[] bestPattern,
+                                 int start, int end, double bits, Pattern pattern) {
+        if (Double.isInfinite(bits)) {
+            return;
+        }
+        double total = best[start] + bits + MATCH_OVERHEAD_BITS;
+        if (total < best[end]) {
+            best[end] = total;
+            bestStart[end] = start;
+            bestPattern[end] = pattern;
+        }
+    }
+
+    /**
+     * This method finds every dictionary word inside a copy of the password.
+     * For each start position the slice is extended only while some dictionary word still begins
+     * with it, so most positions stop after one or two lookups.
+     * @param dictionaries The dictionaries to search, as loaded when the estimate started.
+     * @param text The lowercased, unleeted or reversed copy to search.
+     * @param leet Whether the copy has l33t substitutions undone, which costs one bit per substitution.
+     * @param reversed Whether the copy is reversed, in which case matches are mapped back to the original.
+     */
+    private static void collectDictionaryMatches(Dictionaries dictionaries, Matches matches, CharSequence text,
+                                                 CharSequence password, int[] leetCount, boolean leet,
+                                                 boolean reversed) {
+        CompactDictionary commonPasswords = dictionaries.commonPasswords;
+        CompactDictionary words = dictionaries.words;
+        int n = text.length();
+        for (int textStart = 0; textStart + MIN_MATCH_LENGTH <= n; textStart++) {
+            boolean searchCommon = commonPasswords != null;
+            boolean searchWords = words != null;
+            for (int textEnd = textStart + 1; textEnd <= n && (searchCommon || searchWords); textEnd++) {
+                int commonRank = searchCommon ? commonPasswords.rank(text, textStart, textEnd) : -1;
+                int wordRank = searchWords ? words.rank(text, textStart, textEnd) : -1;
+                searchCommon = commonRank >= 0;
+                searchWords = wordRank >= 0;
+                if (textEnd - textStart < MIN_MATCH_LENGTH || (commonRank <= 0 && wordRank <= 0)) {
+                    continue;
+                }
+                int start = reversed ? n - textEnd : textStart;
+                int end = reversed ? n - textStart : textEnd;
+                int substitutions = leetCount[end] - leetCount[start];
+                if (leet && substitutions == 0) {
+                    continue;
+                }
+                double extraBits = caseBits(password, start, end) + (leet ? substitutions : 0) + (reversed ? 1 : 0);
+                if (commonRank > 0) {
+                    matches.add(start, end, log2(commonRank) + extraBits, Pattern.COMMON_PASSWORD);
+                }
+                if (wordRank > 0) {
+                    matches.add(start, end, log2(words.size()) + extraBits, Pattern.DICTIONARY_WORD);
+                }
+            }
+        }
+    }
+
+    private static double caseBits(CharSequence password, int start, int end) {
+        int upper = 0;
+        int letters = 0;
+        for (int i = start; i < end; i++) {
+            char c = password.charAt(i);
+            if (Character.isLetter(c)) {
+                letters++;
+                if (Character.isUpperCase(c)) {
+                    upper++;
+                }
+            }
+        }
+        if (upper == 0) {
+            return 0;
+        }
+        if (upper == letters || (upper == 1 && Character.isUpperCase(password.charAt(start)))) {
+            return 1;
+        }
+        return Math.min(upper, letters - upper) + 1;
+    }
+
+    private static int keyboardWalkStart(CharSequence password, int end) {
+        int start = end - 1;
+        while (start > 0 && adjacentKeys(password.charAt(start - 1), password.charAt(start))) {
+            start--;
+        }
+        return start;
+    }
+
+    private static boolean adjacentKeys(char a, char b) {
+        if (a >= 128 || b >= 128 || KEY_ROW[a] < 0 || KEY_ROW[b] < 0) {
+            return false;
+        }
+        int rowDelta = Math.abs(KEY_ROW[a] - KEY_ROW[b]);
+        int xDelta = Math.abs(KEY_X[a] - KEY_X[b]);
+        return (rowDelta == 0 && xDelta == 4) || (rowDelta == 1 && xDelta < 4);
+    }
+
+    private static double keyboardWalkBits(CharSequence password, int start, int end) {
+        int turns = 1;
+        boolean shifted = false;
+        for (int i = start + 1; i < end; i++) {
+            char c = password.charAt(i);
+            shifted |= Character.isUpperCase(c) || (!Character.isLetterOrDigit(c) && isShiftedSymbol(c));
+            if (i >= start + 2) {
+                char a = password.charAt(i - 2);
+                char b = password.charAt(i - 1);
+                if (KEY_ROW[b] - KEY_ROW[a] != KEY_ROW[c] - KEY_ROW[b] || KEY_X[b] - KEY_X[a] != KEY_X[c] - KEY_X[b]) {
+                    turns++;
+                }
+            }
+        }
+        return KEYBOARD_START_BITS + turns * KEYBOARD_TURN_BITS + log2(end - start) + (shifted ? 1 : 0);
+    }
+
+    private static boolean isShiftedSymbol(char c) {
+        for (String row : SHIFTED_ROWS) {
+            if (row.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int sequenceStart(char[] lower, int end) {
+        if (end < 2) {
+            return end - 1;
+        }
+        int delta = lower[end - 1] - lower[end - 2];
+        if (delta == 0 || Math.abs(delta) > 2) {
+            return end - 1;
+        }
+        int start = end - 2;
+        while (start > 0 && lower[start] - lower[start - 1] == delta) {
+            start--;
+        }
+        return start;
+    }
+
+    private static double sequenceBits(char[] lower, int start, int end) {
+        char first = lower[start];
+        double baseBits;
+        if (first == 'a' || first == 'z' || first == '0' || first == '1') {
+            baseBits = 2;
+        } else if (Character.isDigit(first)) {
+            baseBits = log2(10);
+        } else if (Character.isLetter(first)) {
+            baseBits = log2(26);
+        } else {
+            baseBits = log2(33);
+        }
+        int delta = lower[start + 1] - lower[start];
+        return baseBits + log2(end - start) + (delta < 0 ? 1 : 0) + (Math.abs(delta) == 2 ? 1 : 0);
+    }
+
+    private static int repeatStart(char[] lower, int end, int blockLength) {
+        int start = end - blockLength;
+        while (start > 0 && lower[start - 1] == lower[start - 1 + blockLength]) {
+            start--;
+        }
+        // Trim to whole blocks so the repeated unit is what the cost is based on.
+        return end - ((end - start) / blockLength) * blockLength;
+    }
+
+    private static double yearBits(CharSequence password, int start) {
+        int year = digits(password, start, start + 4);
+        return year >= 1900 && year <= 2039 ? log2(140) : Double.POSITIVE_INFINITY;
+    }
+
+    private static double dateBits(CharSequence password, int start, int end) {
+        int length = end - start;
+        int value = digits(password, start, end);
+        if (value < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (length == 8) {
+            int year = value % 10000;
+            int yearFirst = value / 10000;
+            boolean dayMonthYear = year >= 1900 && year <= 2039 && isDayMonth(value / 10000);
+            boolean yearMonthDay = yearFirst >= 1900 && yearFirst <= 2039 && isDayMonth(value % 10000);
+            return dayMonthYear || yearMonthDay ? log2(365 * 140) : Double.POSITIVE_INFINITY;
+        }
+        return isDayMonth(value / 100) ? log2(365 * 100) : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * This method checks whether four digits read as a day and month in either order.
+     */
+    private static boolean isDayMonth(int fourDigits) {
+        int first = fourDigits / 100;
+        int second = fourDigits % 100;
+        return (first >= 1 && first <= 31 && second >= 1 && second <= 12)
+                || (first >= 1 && first <= 12 && second >= 1 && second <= 31);
+    }
+
+    private static int digits(CharSequence password, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = password.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int cardinality(CharSequence password) {
+        boolean lower = false, upper = false, digit = false, symbol = false, other = false;
+        for (int i = 0; i < password.length(); i++) {
+            char c = password.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                lower = true;
+            } else if (c >= 'A' && c <= 'Z') {
+                upper = true;
+            } else if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if (c < 128) {
+                symbol = true;
+            } else {
+                other = true;
+            }
+        }
+        int cardinality = (lower ? 26 : 0) + (upper ? 26 : 0) + (digit ? 10 : 0) + (symbol ? 33 : 0) + (other ? 100 : 0);
+        return Math.max(cardinality, 10);
+    }
+
+    private static Pattern weakestPattern(int[] bestStart, Pattern[] bestPattern, int n) {
+        Pattern weakest = Pattern.BRUTE_FORCE;
+        int longest = 0;
+        for (int end = n; end > 0; end = bestStart[end]) {
+            int matchLength = end - bestStart[end];
+            if (bestPattern[end] != Pattern.BRUTE_FORCE && matchLength > longest) {
+                longest = matchLength;
+                weakest = bestPattern[end];
+            }
+        }
+        return weakest;
+    }
+
+    private static int score(double bits) {
+        double log10 = bits * Math.log10(2);
+        if (log10 < 3) {
+            return 0;
+        } else if (log10 < 6) {
+            return 1;
+        } else if (log10 < 8) {
+            return 2;
+        } else if (log10 < 10) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.passwordencryptionapp;
+
+/**
+ * A previous password of an entry, as kept in the entry's history.
+ * The password is bound to the entry id and the version's own id, which are needed to decrypt it.
+ */
+public class PasswordVersion {
+    private final long id;
+    private final int entryId;
+    private final String encryptedPassword;
+    private final long replacedAt;
+
+    public PasswordVersion(long id, int entryId, String encryptedPassword, long replacedAt) {
+        this.id = id;
+        this.entryId = entryId;
+        this.encryptedPassword = encryptedPassword;
+        this.replacedAt = replacedAt;
+    }
+
+    public long getId() { return id; }
+
+    public int getEntryId() { return entryId; }
+
+    public String getEncryptedPassword() { return encryptedPassword; }
+
+    public long getReplacedAt() { return replacedAt; }
+}
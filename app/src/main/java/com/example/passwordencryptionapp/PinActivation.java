@@ -38,7 +38,7 @@ public class PinActivation extends AppCompatActivity {
     /**
      * This method saves the new PIN entered by the user.
      * It checks that both the new PIN and confirm PIN fields are filled and that they match.
-     * If they match, it saves the PIN to encrypted shared preferences.
+     * If they match, it saves the PIN for the active vault to encrypted shared preferences.
      * If an error occurs during saving, an error message is displayed.
      */
     private void savePin() {
@@ -56,7 +56,7 @@ public class PinActivation extends AppCompatActivity {
         try {
             String masterKeyAlias = MasterKeys.getOrCreate(MasterKeys.AES256_GCM_SPEC);
             SharedPreferences encryptedPrefs = EncryptedSharedPreferences.create(
-                    "secure_prefs",
+                    VaultManager.getInstance(this).getActiveVault().getPinPrefsName(),
                     masterKeyAlias,
                     this,
                     EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
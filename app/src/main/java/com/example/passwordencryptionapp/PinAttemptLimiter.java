@@ -0,0 +1,161 @@
+package com.example.passwordencryptionapp;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * Limits PIN guesses with exponential backoff.
+ *
+ * The first few wrong PINs are free, to allow for typos. After that every wrong PIN locks the vault for
+ * twice as long as the one before, up to a maximum, and a correct PIN clears the count. While locked,
+ * attempts are refused without checking the PIN at all.
+ *
+ * The count and lockout are kept in memory, so checking whether an attempt is allowed costs nothing, and
+ * written through to a {@link Store} before a wrong PIN is reported, so killing the app to retry faster
+ * does not help. Nothing is written while attempts succeed. Time comes from an injectable {@link Clock}.
+ */
+public class PinAttemptLimiter {
+    public static final int FREE_ATTEMPTS = 4;
+    public static final long BASE_LOCKOUT_MILLIS = 30_000;
+    public static final long MAX_LOCKOUT_MILLIS = 60 * 60_000;
+
+    /**
+     * The source of the current time, in milliseconds since the epoch.
+     */
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    /**
+     * Where the count and lockout are persisted. Both values must be saved together, atomically.
+     */
+    public interface Store {
+        int getFailedAttempts() throws IOException;
+
+        long getLockedUntil() throws IOException;
+
+        void save(int failedAttempts, long lockedUntil) throws IOException;
+    }
+
+    /**
+     * The PIN comparison run for an attempt that is allowed.
+     */
+    public interface PinCheck {
+        boolean matches() throws GeneralSecurityException, IOException;
+    }
+
+    /**
+     * The outcome of an attempt.
+     */
+    public static class Result {
+        private final boolean correct;
+        private final boolean checked;
+        private final long retryAfterMillis;
+
+        Result(boolean correct, boolean checked, long retryAfterMillis) {
+            this.correct = correct;
+            this.checked = checked;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public boolean isCorrect() { return correct; }
+
+        /**
+         * @return false if the attempt was refused because of a lockout, without checking the PIN.
+         */
+        public boolean wasChecked() { return checked; }
+
+        /**
+         * @return How long until the next attempt is allowed, or 0 if it is allowed now.
+         */
+        public long getRetryAfterMillis() { return retryAfterMillis; }
+    }
+
+    private final Store store;
+    private final Clock clock;
+    private boolean loaded;
+    private int failedAttempts;
+    private long lockedUntil;
+
+    /**
+     * Constructor for the PinAttemptLimiter class. The store is read on the first attempt.
+     * @param store The storage for the count and lockout.
+     * @param clock The source of the current time.
+     */
+    public PinAttemptLimiter(Store store, Clock clock) {
+        this.store = store;
+        this.clock = clock;
+    }
+
+    /**
+     * This method returns how long until the next attempt is allowed, or 0 if it is allowed now.
+     * @throws IOException If the count has not been loaded yet and cannot be.
+     */
+    public synchronized long getRetryAfterMillis() throws IOException {
+        load();
+        return remainingLockout(clock.currentTimeMillis());
+    }
+
+    /**
+     * This method makes one attempt. If attempts are allowed, the check runs and a wrong PIN is counted and
+     * saved before this returns; if not, the check does not run. Attempts are serialized, so two screens
+     * checking at once cannot both slip in before a lockout.
+     * @param check The PIN comparison.
+     * @return The outcome, with how long to wait before the next attempt.
+     * @throws GeneralSecurityException If the check fails to run; this does not count as a wrong PIN.
+     * @throws IOException If the check fails to run, or a wrong PIN cannot be saved.
+     */
+    public synchronized Result attempt(PinCheck check) throws GeneralSecurityException, IOException {
+        load();
+        long now = clock.currentTimeMillis();
+        long remaining = remainingLockout(now);
+        if (remaining > 0) {
+            return new Result(false, false, remaining);
+        }
+        if (check.matches()) {
+            if (failedAttempts != 0) {
+                failedAttempts = 0;
+                lockedUntil = 0;
+                store.save(0, 0);
+            }
+            return new Result(true, true, 0);
+        }
+        failedAttempts++;
+        long lockout = lockoutFor(failedAttempts);
+        lockedUntil = lockout == 0 ? 0 : now + lockout;
+        store.save(failedAttempts, lockedUntil);
+        return new Result(false, true, lockout);
+    }
+
+    /**
+     * This method returns the lockout that follows a given number of consecutive wrong PINs:
+     * none for the free attempts, then the base lockout doubling with each further one, up to the maximum.
+     */
+    public static long lockoutFor(int failedAttempts) {
+        if (failedAttempts <= FREE_ATTEMPTS) {
+            return 0;
+        }
+        int doublings = failedAttempts - FREE_ATTEMPTS - 1;
+        if (doublings >= Long.numberOfLeadingZeros(BASE_LOCKOUT_MILLIS) - 1) {
+            return MAX_LOCKOUT_MILLIS;
+        }
+        return Math.min(BASE_LOCKOUT_MILLIS << doublings, MAX_LOCKOUT_MILLIS);
+    }
+
+    private void load() throws IOException {
+        if (!loaded) {
+            failedAttempts = store.getFailedAttempts();
+            lockedUntil = store.getLockedUntil();
+            loaded = true;
+        }
+    }
+
+    /**
+     * This method returns the rest of the current lockout. It is never more than the full lockout for the
+     * current count, so setting the clock back cannot stretch a lockout out indefinitely.
+     */
+    private long remainingLockout(long now) {
+        long remaining = lockedUntil - now;
+        return remaining <= 0 ? 0 : Math.min(remaining, lockoutFor(failedAttempts));
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.passwordencryptionapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.widget.Toast;
+import androidx.security.crypto.EncryptedSharedPreferences;
+import androidx.security.crypto.MasterKeys;
+
+import static com.example.passwordencryptionapp.SecurityUtils.hashPin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks a vault's PIN, with every attempt going through that vault's {@link PinAttemptLimiter}.
+ * There is one instance per vault for the whole process, so the login screen, the vault screen and
+ * autofill all share one count. The count is kept next to the PIN hash in the vault's encrypted PIN
+ * preferences, which only the keystore master key can change.
+ */
+public class PinLock {
+    private static final String PREF_SALT = "user_salt";
+    private static final String PREF_PIN_HASH = "user_pin_hash";
+    private static final String PREF_FAILED_ATTEMPTS = "failed_pin_attempts";
+    private static final String PREF_LOCKED_UNTIL = "pin_locked_until";
+
+    private static final Map<VaultConfig, PinLock> locks = new HashMap<>();
+
+    private final Context context;
+    private final VaultConfig vault;
+    private final PinAttemptLimiter limiter;
+    private SharedPreferences pinPreferences;
+
+    private PinLock(Context context, VaultConfig vault) {
+        this.context = context.getApplicationContext();
+        this.vault = vault;
+        this.limiter = new PinAttemptLimiter(new PreferencesStore(), System::currentTimeMillis);
+    }
+
+    /**
+     * This method returns the PIN lock of a vault, creating it on first use.
+     * @param context Any context; only the application context is kept.
+     * @param vault The vault whose PIN to check.
+     */
+    public static synchronized PinLock forVault(Context context, VaultConfig vault) {
+        PinLock lock = locks.get(vault);
+        if (lock == null) {
+            lock = new PinLock(context, vault);
+            locks.put(vault, lock);
+        }
+        return lock;
+    }
+
+    /**
+     * This method checks an entered PIN and tells the user if it was wrong, if the vault is locked,
+     * or if the check failed.
+     * @param context The screen to show messages on.
+     * @param vault The vault whose PIN to check.
+     * @param enteredPin The PIN entered by the user.
+     * @return true if the PIN is correct and the attempt was allowed.
+     */
+    public static boolean checkPin(Context context, VaultConfig vault, String enteredPin) {
+        try {
+            PinAttemptLimiter.Result result = forVault(context, vault).verify(enteredPin);
+            if (result.isCorrect()) {
+                return true;
+            }
+            String message = result.wasChecked() ? "Incorrect PIN" : "Too many incorrect PINs";
+            if (result.getRetryAfterMillis() > 0) {
+                message += ". Try again in " + describeWait(result.getRetryAfterMillis());
+            }
+            Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
+            return false;
+        } catch (GeneralSecurityException | IOException e) {
+            e.printStackTrace();
+            Toast.makeText(context, "Error verifying PIN", Toast.LENGTH_SHORT).show();
+            return false;
+        }
+    }
+
+    /**
+     * This method makes one attempt with an entered PIN. While the vault is locked the PIN is not hashed
+     * and the preferences are not read.
+     * @param enteredPin The PIN entered by the user.
+     * @return The outcome of the attempt.
+     * @throws GeneralSecurityException If the PIN preferences cannot be opened.
+     * @throws IOException If the PIN preferences cannot be opened or a wrong PIN cannot be recorded.
+     */
+    public PinAttemptLimiter.Result verify(String enteredPin) throws GeneralSecurityException, IOException {
+        return limiter.attempt(() -> {
+            SharedPreferences preferences = getPinPreferences();
+            String storedSalt = preferences.getString(PREF_SALT, null);
+            String storedPinHash = preferences.getString(PREF_PIN_HASH, null);
+            if (storedSalt == null || storedPinHash == null) {
+                return false;
+            }
+            return MessageDigest.isEqual(hashPin(enteredPin, storedSalt).getBytes(StandardCharsets.US_ASCII),
+                    storedPinHash.getBytes(StandardCharsets.US_ASCII));
+        });
+    }
+
+    /**
+     * This method describes a wait in whole seconds, minutes or hours, rounded up.
+     */
+    static String describeWait(long millis) {
+        long seconds = (millis + 999) / 1000;
+        if (seconds < 60) {
+            return seconds + (seconds == 1 ? " second" : " seconds");
+        }
+        long minutes = (seconds + 59) / 60;
+        if (minutes < 60) {
+            return minutes + (minutes == 1 ? " minute" : " minutes");
+        }
+        long hours = (minutes + 59) / 60;
+        return hours + (hours == 1 ? " hour" : " hours");
+    }
+
+    /**
+     * This method opens the vault's encrypted PIN preferences once and keeps them for later attempts.
+     */
+    private synchronized SharedPreferences getPinPreferences() throws GeneralSecurityException, IOException {
+        if (pinPreferences == null) {
+            pinPreferences = EncryptedSharedPreferences.create(
+                    vault.getPinPrefsName(),
+                    MasterKeys.getOrCreate(MasterKeys.AES256_GCM_SPEC),
+                    context,
+                    EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
+                    EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
+            );
+        }
+        return pinPreferences;
+    }
+
+    /**
+     * Keeps the count and lockout in the PIN preferences. Both are written in one synchronous commit,
+     * which SharedPreferences applies atomically by replacing the whole file.
+     */
+    private class PreferencesStore implements PinAttemptLimiter.Store {
+        @Override
+        public int getFailedAttempts() throws IOException {
+            return preferences().getInt(PREF_FAILED_ATTEMPTS, 0);
+        }
+
+        @Override
+        public long getLockedUntil() throws IOException {
+            return preferences().getLong(PREF_LOCKED_UNTIL, 0);
+        }
+
+        @Override
+        public void save(int failedAttempts, long lockedUntil) throws IOException {
+            boolean saved = preferences().edit()
+                    .putInt(PREF_FAILED_ATTEMPTS, failedAttempts)
+                    .putLong(PREF_LOCKED_UNTIL, lockedUntil)
+                    .commit();
+            if (!saved) {
+                throw new IOException("Could not save PIN attempts");
+            }
+        }
+
+        private SharedPreferences preferences() throws IOException {
+            try {
+                return getPinPreferences();
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not open PIN preferences", e);
+            }
+        }
+    }
+}
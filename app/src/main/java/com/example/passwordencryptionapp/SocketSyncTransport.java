@@ -0,0 +1,69 @@
+package com.example.passwordencryptionapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * A sync transport over a TCP socket on the local network.
+ * Entries sent over it are sealed and every message is authenticated with the vault's sync key, so the
+ * socket itself is not encrypted.
+ */
+public class SocketSyncTransport implements SyncTransport {
+    public static final int DEFAULT_PORT = 48123;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    private final Socket socket;
+
+    private SocketSyncTransport(Socket socket) throws IOException {
+        socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+        this.socket = socket;
+    }
+
+    /**
+     * This method waits for one peer to connect.
+     * @param serverSocket A bound server socket; it is left open for the caller to close.
+     * @return The transport for the connected peer.
+     * @throws IOException If accepting fails or the server socket is closed.
+     */
+    public static SocketSyncTransport accept(ServerSocket serverSocket) throws IOException {
+        return new SocketSyncTransport(serverSocket.accept());
+    }
+
+    /**
+     * This method connects to a peer that is waiting in accept.
+     * @param host The peer's address.
+     * @param port The peer's port.
+     * @return The transport for the peer.
+     * @throws IOException If the peer cannot be reached.
+     */
+    public static SocketSyncTransport connect(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            return new SocketSyncTransport(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return socket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.passwordencryptionapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Synchronizes a vault with one peer device over any {@link SyncTransport}.
+ *
+ * Both devices run the same symmetric protocol:
+ * <pre>
+ *   hello   : magic "PSYN" | int version | 32-byte random nonce | UTF device id
+ *   proof   : MAC(hello | own nonce | peer nonce | UTF own device id | UTF peer device id)
+ *   request : long highest sequence number already received from the peer | MAC
+ *   changes : (byte 1 | int length | record | MAC)* | byte 0 | long sequence number the changes are complete up to | MAC
+ *   record  : UTF sync id | long seq | long modified at | UTF origin | boolean deleted | int payload length | payload
+ * </pre>
+ * Every MAC is keyed by the sync key and covers the message type, the sender's nonce, the receiver's nonce
+ * and the message itself, so a message cannot be replayed into another session or reflected back to its
+ * sender. Record MACs also cover the record's position and the final MAC covers the count, so records cannot
+ * be reordered, repeated or dropped. Neither side sends anything but its hello and proof until the peer's
+ * proof checks out, and the pairing itself is never sent.
+ *
+ * Each side only sends the records above the sequence number its peer asked for, and skips records whose
+ * latest version came from that peer, so the work done is proportional to the changes since the last sync.
+ * Changes are merged last-writer-wins. When an entry changed on both sides since the last sync, the losing
+ * version is kept as a conflict record instead of being dropped. Payloads are encrypted by the store before
+ * they reach the engine, so neither the engine nor the transport ever handles plaintext.
+ */
+public class SyncEngine {
+    private static final int MAGIC = 0x5053594E; // "PSYN"
+    private static final int PROTOCOL_VERSION = 2;
+    private static final int NONCE_LENGTH = 32;
+    private static final int MAC_LENGTH = 32;
+    private static final int MAX_PAYLOAD_LENGTH = 1 << 20;
+    private static final int MAX_RECORD_LENGTH = MAX_PAYLOAD_LENGTH + (1 << 18);
+    private static final byte TYPE_HELLO = 1;
+    private static final byte TYPE_REQUEST = 2;
+    private static final byte TYPE_RECORD = 3;
+    private static final byte TYPE_END = 4;
+
+    private final SyncStore store;
+
+    /**
+     * The outcome of one sync session.
+     */
+    public static class Result {
+        private final int sent;
+        private final int received;
+        private final int conflicts;
+
+        Result(int sent, int received, int conflicts) {
+            this.sent = sent;
+            this.received = received;
+            this.conflicts = conflicts;
+        }
+
+        public int getSent() { return sent; }
+
+        public int getReceived() { return received; }
+
+        public int getConflicts() { return conflicts; }
+    }
+
+    /**
+     * Constructor for the SyncEngine class.
+     * @param store The vault to synchronize.
+     */
+    public SyncEngine(SyncStore store) {
+        this.store = store;
+    }
+
+    /**
+     * This method runs one sync session with the peer at the other end of a transport.
+     * Sending runs on a second thread, which writes each record as the store reads it, while this thread reads,
+     * so outgoing records are never all held at once and two peers sending large deltas
+     * to each other cannot both block on full buffers. Nothing is applied unless the whole delta
+     * arrived and every message in it is authenticated, and the transport is left open for the caller to close.
+     * @param transport The connection to the peer.
+     * @return What was sent, received and recorded as conflicts.
+     * @throws IOException If the connection fails, the peer is not paired with this vault, a message fails
+     * authentication, or a change cannot be applied.
+     */
+    public Result sync(SyncTransport transport) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(transport.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(transport.getInputStream()));
+
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        new SecureRandom().nextBytes(nonce);
+        String deviceId = store.getDeviceId();
+        out.writeInt(MAGIC);
+        out.writeInt(PROTOCOL_VERSION);
+        out.write(nonce);
+        out.writeUTF(deviceId);
+        out.flush();
+        if (in.readInt() != MAGIC || in.readInt() != PROTOCOL_VERSION) {
+            throw new IOException("Peer does not speak this sync protocol");
+        }
+        final byte[] peerNonce = new byte[NONCE_LENGTH];
+        in.readFully(peerNonce);
+        final String peerId = in.readUTF();
+        // A hello that matches this side's own is this side's messages sent back to it.
+        if (Arrays.equals(peerNonce, nonce) || peerId.equals(deviceId)) {
+            throw new IOException("Peer is not paired with this vault");
+        }
+
+        out.write(sign(TYPE_HELLO, nonce, peerNonce, encodeHello(deviceId, peerId)));
+        out.flush();
+        byte[] proof = readMac(in);
+        if (!MessageDigest.isEqual(proof, sign(TYPE_HELLO, peerNonce, nonce, encodeHello(peerId, deviceId)))) {
+            throw new IOException("Peer is not paired with this vault");
+        }
+
+        long lastReceived = store.getLastReceivedSeq(peerId);
+        out.writeLong(lastReceived);
+        out.write(sign(TYPE_REQUEST, nonce, peerNonce, encodeLong(lastReceived)));
+        out.flush();
+        long peerHas = in.readLong();
+        verify(in, TYPE_REQUEST, peerNonce, nonce, encodeLong(peerHas));
+
+        final long maxSeq = store.getMaxSeq();
+        FutureTask<Integer> sender = new FutureTask<>(
+                () -> writeChanges(out, peerId, peerHas, maxSeq, nonce, peerNonce));
+        new Thread(sender, "sync-sender").start();
+
+        List<SyncRecord> incoming = new ArrayList<>();
+        long peerMaxSeq = readChanges(in, incoming, peerNonce, nonce);
+        int sent;
+        try {
+            sent = sender.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sync interrupted", e);
+        }
+
+        List<SyncRecord> accepted = new ArrayList<>();
+        List<SyncRecord> conflicts = new ArrayList<>();
+        merge(peerId, peerHas, incoming, accepted, conflicts);
+        store.applyChanges(peerId, peerMaxSeq, accepted, conflicts);
+        return new Result(sent, accepted.size(), conflicts.size());
+    }
+
+    /**
+     * This method decides which incoming records replace the local version.
+     * A local version counts as changed concurrently when it is newer than what the peer has from this
+     * device and did not itself come from the peer; only then is the loser worth keeping as a conflict.
+     */
+    private void merge(String peerId, long peerHas, List<SyncRecord> incoming,
+                       List<SyncRecord> accepted, List<SyncRecord> conflicts) throws IOException {
+        for (SyncRecord remote : incoming) {
+            SyncRecord local = store.getRecord(remote.getSyncId());
+            if (local == null) {
+                accepted.add(remote);
+                continue;
+            }
+            if (local.isSameVersion(remote)) {
+                continue;
+            }
+            boolean concurrent = local.getSeq() > peerHas && !local.getOrigin().equals(peerId);
+            if (remote.isNewerThan(local)) {
+                accepted.add(remote);
+                if (concurrent && !local.isDeleted()) {
+                    conflicts.add(local);
+                }
+            } else if (concurrent && !remote.isDeleted()) {
+                conflicts.add(remote);
+            }
+        }
+    }
+
+    /**
+     * This method sends the changes the peer asked for as the store reads them, skipping those whose latest
+     * version came from the peer, so only the record being written is held at a time.
+     * @return The number of records sent.
+     */
+    private int writeChanges(final DataOutputStream out, final String peerId, long peerHas, long maxSeq,
+                             final byte[] nonce, final byte[] peerNonce) throws IOException {
+        final int[] sent = {0};
+        store.forEachChange(peerHas, maxSeq, record -> {
+            if (record.getOrigin().equals(peerId)) {
+                return;
+            }
+            byte[] encoded = encodeRecord(record);
+            out.writeByte(1);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+            out.write(sign(TYPE_RECORD, nonce, peerNonce, encodePosition(sent[0], encoded)));
+            sent[0]++;
+        });
+        out.writeByte(0);
+        out.writeLong(maxSeq);
+        out.write(sign(TYPE_END, nonce, peerNonce, encodeEnd(sent[0], maxSeq)));
+        out.flush();
+        return sent[0];
+    }
+
+    /**
+     * This method reads the peer's changes, checking each record's MAC before parsing it.
+     */
+    private long readChanges(DataInputStream in, List<SyncRecord> records, byte[] peerNonce, byte[] nonce)
+            throws IOException {
+        while (in.readByte() == 1) {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_RECORD_LENGTH) {
+                throw new IOException("Invalid record length " + length);
+            }
+            byte[] record = new byte[length];
+            in.readFully(record);
+            verify(in, TYPE_RECORD, peerNonce, nonce, encodePosition(records.size(), record));
+            records.add(decodeRecord(record));
+        }
+        long maxSeq = in.readLong();
+        verify(in, TYPE_END, peerNonce, nonce, encodeEnd(records.size(), maxSeq));
+        return maxSeq;
+    }
+
+    /**
+     * This method returns the MAC of one protocol message as sent from one side of the session to the other.
+     */
+    private byte[] sign(byte type, byte[] senderNonce, byte[] receiverNonce, byte[] message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 + 2 * NONCE_LENGTH + message.length);
+        bytes.write(type);
+        bytes.write(senderNonce);
+        bytes.write(receiverNonce);
+        bytes.write(message);
+        return store.signSyncMessage(bytes.toByteArray());
+    }
+
+    private void verify(DataInputStream in, byte type, byte[] senderNonce, byte[] receiverNonce, byte[] message)
+            throws IOException {
+        if (!MessageDigest.isEqual(readMac(in), sign(type, senderNonce, receiverNonce, message))) {
+            throw new IOException("Sync message failed authentication");
+        }
+    }
+
+    private static byte[] readMac(DataInputStream in) throws IOException {
+        byte[] mac = new byte[MAC_LENGTH];
+        in.readFully(mac);
+        return mac;
+    }
+
+    private static byte[] encodeHello(String senderId, String receiverId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(senderId);
+        out.writeUTF(receiverId);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeLong(long value) {
+        return ByteBuffer.allocate(8).putLong(value).array();
+    }
+
+    private static byte[] encodePosition(int index, byte[] record) {
+        return ByteBuffer.allocate(4 + record.length).putInt(index).put(record).array();
+    }
+
+    private static byte[] encodeEnd(int count, long maxSeq) {
+        return ByteBuffer.allocate(12).putInt(count).putLong(maxSeq).array();
+    }
+
+    private static byte[] encodeRecord(SyncRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(record.getSyncId());
+        out.writeLong(record.getSeq());
+        out.writeLong(record.getModifiedAt());
+        out.writeUTF(record.getOrigin());
+        out.writeBoolean(record.isDeleted());
+        byte[] payload = record.getPayload();
+        out.writeInt(payload == null ? 0 : payload.length);
+        if (payload != null) {
+            out.write(payload);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static SyncRecord decodeRecord(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        String syncId = in.readUTF();
+        long seq = in.readLong();
+        long modifiedAt = in.readLong();
+        String origin = in.readUTF();
+        boolean deleted = in.readBoolean();
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PAYLOAD_LENGTH) {
+            throw new IOException("Invalid payload length " + length);
+        }
+        byte[] payload = null;
+        if (!deleted) {
+            payload = new byte[length];
+            in.readFully(payload);
+        } else if (length != 0) {
+            throw new IOException("Deletion with payload");
+        }
+        if (in.available() != 0) {
+            throw new IOException("Trailing data after record");
+        }
+        return new SyncRecord(syncId, seq, modifiedAt, origin, deleted, payload);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.passwordencryptionapp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One row change as exchanged by {@link SyncEngine}: either the current version of an entry or a deletion.
+ *
+ * The entry itself travels as an opaque payload that the store has already encrypted, so the engine and
+ * the transport only ever see the metadata needed to order and merge changes.
+ */
+public class SyncRecord {
+    private final String syncId;
+    private final long seq;
+    private final long modifiedAt;
+    private final String origin;
+    private final boolean deleted;
+    private final byte[] payload;
+
+    /**
+     * Constructor for the SyncRecord class.
+     * @param syncId The id of the entry on every device.
+     * @param seq The change sequence number on the device that sends the record.
+     * @param modifiedAt When the change was made, in milliseconds since the epoch.
+     * @param origin The device that made the change.
+     * @param deleted Whether the change deletes the entry.
+     * @param payload The encrypted entry, or null for a deletion.
+     */
+    public SyncRecord(String syncId, long seq, long modifiedAt, String origin, boolean deleted, byte[] payload) {
+        this.syncId = syncId;
+        this.seq = seq;
+        this.modifiedAt = modifiedAt;
+        this.origin = origin;
+        this.deleted = deleted;
+        this.payload = payload;
+    }
+
+    public String getSyncId() { return syncId; }
+
+    public long getSeq() { return seq; }
+
+    public long getModifiedAt() { return modifiedAt; }
+
+    public String getOrigin() { return origin; }
+
+    public boolean isDeleted() { return deleted; }
+
+    public byte[] getPayload() { return payload; }
+
+    /**
+     * This method decides last-writer-wins between two versions of the same entry.
+     * The later change wins; changes made in the same millisecond are ordered by device id,
+     * so every device picks the same winner.
+     * @param other The other version.
+     * @return true if this version wins over the other.
+     */
+    public boolean isNewerThan(SyncRecord other) {
+        if (modifiedAt != other.modifiedAt) {
+            return modifiedAt > other.modifiedAt;
+        }
+        return origin.compareTo(other.origin) > 0;
+    }
+
+    /**
+     * This method returns whether two records are the same change, which happens when a change comes back
+     * from a device that received it from this one.
+     */
+    public boolean isSameVersion(SyncRecord other) {
+        return modifiedAt == other.modifiedAt && origin.equals(other.origin) && deleted == other.deleted;
+    }
+
+    /**
+     * This method serializes the synced fields of an entry, with its password in plaintext.
+     * The result must be encrypted before it leaves the store.
+     * @param entry The entry, with its password decrypted.
+     * @return The serialized fields.
+     */
+    public static byte[] encodeEntry(PasswordEntry entry) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(nullToEmpty(entry.getServiceName()));
+            out.writeUTF(nullToEmpty(entry.getUsername()));
+            out.writeUTF(nullToEmpty(entry.getPassword()));
+            out.writeUTF(entry.getFolder());
+            out.writeInt(entry.getTags().size());
+            for (String tag : entry.getTags()) {
+                out.writeUTF(tag);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * This method reads the fields written by encodeEntry into a new entry with a plaintext password and no id.
+     * @param encoded The serialized fields.
+     * @return The entry.
+     * @throws IOException If the data is truncated or malformed.
+     */
+    public static PasswordEntry decodeEntry(byte[] encoded) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        PasswordEntry entry = new PasswordEntry(0, in.readUTF(), in.readUTF(), in.readUTF());
+        entry.setEncrypted(false);
+        entry.setFolder(in.readUTF());
+        int tagCount = in.readInt();
+        List<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(in.readUTF());
+        }
+        entry.setTags(tags);
+        return entry;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
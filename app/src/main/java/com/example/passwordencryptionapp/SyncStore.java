@@ -0,0 +1,66 @@
+package com.example.passwordencryptionapp;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The storage side of {@link SyncEngine}: a vault that numbers its changes and can apply changes from peers.
+ *
+ * Every local change, including deletions and changes applied from a peer, gets the next value of a
+ * per-device sequence number, so a peer that has seen everything up to some sequence number only
+ * needs the records above it. Payloads leave and enter the store encrypted.
+ */
+public interface SyncStore {
+    /**
+     * This method returns the id of this device, recorded as the origin of its own changes.
+     */
+    String getDeviceId();
+
+    /**
+     * This method returns a MAC of a protocol message under the sync key shared by all devices paired with
+     * this vault. The key itself never leaves the store.
+     */
+    byte[] signSyncMessage(byte[] message) throws IOException;
+
+    /**
+     * This method returns the highest sequence number of the peer's that this store has applied, or 0.
+     */
+    long getLastReceivedSeq(String peerId);
+
+    /**
+     * This method returns the highest sequence number assigned so far.
+     */
+    long getMaxSeq();
+
+    /**
+     * Receives changes one at a time, as the store reads them.
+     */
+    interface ChangeVisitor {
+        void visit(SyncRecord record) throws IOException;
+    }
+
+    /**
+     * This method hands over the latest version of every entry changed after one sequence number, up to another,
+     * one record at a time, so a large delta never has to be held at once. An exception thrown by the visitor
+     * stops the iteration and is passed on.
+     * @param afterSeq The exclusive lower bound.
+     * @param upToSeq The inclusive upper bound.
+     * @param visitor Receives each record.
+     */
+    void forEachChange(long afterSeq, long upToSeq, ChangeVisitor visitor) throws IOException;
+
+    /**
+     * This method returns the current local version of an entry, a deletion record, or null if it never existed here.
+     */
+    SyncRecord getRecord(String syncId) throws IOException;
+
+    /**
+     * This method applies a peer's changes atomically and remembers how far this store has got with that peer.
+     * @param peerId The peer the changes came from.
+     * @param peerMaxSeq The peer's sequence number the changes are complete up to.
+     * @param accepted The changes that won and replace the local versions.
+     * @param conflicts The losing versions of entries changed on both sides, kept so they can be recovered.
+     */
+    void applyChanges(String peerId, long peerMaxSeq, List<SyncRecord> accepted, List<SyncRecord> conflicts)
+            throws IOException;
+}
@@ -0,0 +1,16 @@
+package com.example.passwordencryptionapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A two-way byte stream between this device and one peer, such as a local socket.
+ * {@link SyncEngine} reads and writes at the same time, so the two directions must be independent.
+ */
+public interface SyncTransport extends Closeable {
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+}
@@ -2,33 +2,78 @@ package com.example.passwordencryptionapp;
 
 import android.annotation.SuppressLint;
 import android.app.AlertDialog;
+import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
-import android.util.Log;
+import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import androidx.security.crypto.EncryptedSharedPreferences;
-import androidx.security.crypto.MasterKeys;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.google.android.material.materialswitch.MaterialSwitch;
+import com.google.android.material.progressindicator.LinearProgressIndicator;
+import com.google.android.material.slider.Slider;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.ServerSocket;
+import java.net.SocketException;
 import java.security.GeneralSecurityException;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
-import static com.example.passwordencryptionapp.SecurityUtils.hashPin;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class Vault extends AppCompatActivity implements EntryAdapter.OnEditClickListener {
+public class Vault extends AppCompatActivity implements EntryAdapter.OnEditClickListener,
+        AutoLockScheduler.Listener {
+    private static final String BREACH_INDEX_FILE = "breach_index.bin";
+    private static final String BREACH_HASH_LIST_FILE = "breached_hashes.txt";
+    private static final String PREF_SORT_MODE = "sort_mode";
+    private static final String PREF_GROUP_BY_FOLDER = "group_by_folder";
+    private static final String[] SORT_MODE_LABELS = {"Sort: Name", "Sort: Recently used", "Sort: Most used"};
+    private static final String[] STRENGTH_LABELS = {"Very weak", "Weak", "Fair", "Strong", "Very strong"};
 
     private EntryAdapter entryAdapter;
     private List<PasswordEntry> passwordEntries;
+    private final SparseArray<PasswordEntry> entriesById = new SparseArray<>();
+    private Database.SortMode sortMode = Database.SortMode.NAME;
+    private int entryOrderGeneration;
+    private boolean groupByFolder = false;
+    private String tagFilter = null;
+    private Button sortButton;
+    private Button tagFilterButton;
+    private Button encryptDatabaseButton;
+    private VaultHandle vaultHandle;
     private Database databaseHelper;
     private Encryption encryptionHelper;
     private boolean isDecryptedView = false;
     private Button toggleDecryptionButton;
+    private AutoLock autoLock;
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
+    private ServerSocket syncServerSocket;
+    private final PasswordGenerator passwordGenerator = new PasswordGenerator();
+    private PasswordStrength passwordStrength;
 
     /**
      * This method is called when the activity is first created.
@@ -39,17 +84,599 @@ public class Vault extends AppCompatActivity implements EntryAdapter.OnEditClick
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_vault);
-        databaseHelper = new Database(this);
-        encryptionHelper = new Encryption(this);
+        vaultHandle = VaultManager.getInstance(this).acquireActiveVault();
+        databaseHelper = vaultHandle.getDatabase();
+        encryptionHelper = vaultHandle.getEncryption();
+        autoLock = new AutoLock(this, this);
+        getLifecycle().addObserver(autoLock);
         RecyclerView recyclerView = findViewById(R.id.recyclerView);
         FloatingActionButton addPasswordButton = findViewById(R.id.addPasswordButton);
         toggleDecryptionButton = findViewById(R.id.toggleDecryptionButton);
+        sortButton = findViewById(R.id.sortButton);
+        tagFilterButton = findViewById(R.id.tagFilterButton);
+        MaterialSwitch groupByFolderSwitch = findViewById(R.id.groupByFolderSwitch);
+        encryptDatabaseButton = findViewById(R.id.encryptDatabaseButton);
+        encryptDatabaseButton.setVisibility(
+                Database.isPageEncryptionEnabled(this, vaultHandle.getVault()) ? View.GONE : View.VISIBLE);
+        Button vaultButton = findViewById(R.id.vaultButton);
+        vaultButton.setText("Vault: " + vaultHandle.getVault().getName());
+        vaultButton.setOnClickListener(view -> showVaultSwitcher());
         passwordEntries = databaseHelper.getAllPasswordEntries();
-        entryAdapter = new EntryAdapter(passwordEntries, this);
+        for (PasswordEntry entry : passwordEntries) {
+            entriesById.put(entry.getId(), entry);
+        }
+        SharedPreferences viewPrefs = getPreferences(MODE_PRIVATE);
+        sortMode = Database.SortMode.values()[viewPrefs.getInt(PREF_SORT_MODE, 0)];
+        groupByFolder = viewPrefs.getBoolean(PREF_GROUP_BY_FOLDER, false);
+        groupByFolderSwitch.setChecked(groupByFolder);
+        entryAdapter = new EntryAdapter(this);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
         recyclerView.setAdapter(entryAdapter);
+        refreshEntryOrder();
         addPasswordButton.setOnClickListener(view -> showAddPasswordDialog());
         toggleDecryptionButton.setOnClickListener(view -> handleToggleDecryption());
+        sortButton.setOnClickListener(view -> cycleSortMode());
+        tagFilterButton.setOnClickListener(view -> showTagFilterDialog());
+        encryptDatabaseButton.setOnClickListener(view -> confirmPageEncryption());
+        Button syncButton = findViewById(R.id.syncButton);
+        syncButton.setOnClickListener(view -> showSyncDialog());
+        groupByFolderSwitch.setOnCheckedChangeListener((button, isChecked) -> {
+            groupByFolder = isChecked;
+            getPreferences(MODE_PRIVATE).edit().putBoolean(PREF_GROUP_BY_FOLDER, isChecked).apply();
+            refreshEntryOrder();
+        });
+        passwordStrength = new PasswordStrength(this);
+        backgroundExecutor.execute(passwordStrength::warmUp);
+        checkForBreachedPasswords();
+        final Database database = databaseHelper;
+        backgroundExecutor.execute(() ->
+                database.compactHistory(Database.HISTORY_KEEP_VERSIONS, Database.HISTORY_MAX_AGE_MILLIS));
+        checkIntegrity();
+    }
+
+    /**
+     * This method checks the vault against its integrity root in the background and warns the user
+     * if entries were added, removed, swapped or edited outside the app. Nothing is decrypted.
+     */
+    private void checkIntegrity() {
+        final Database database = databaseHelper;
+        backgroundExecutor.execute(() -> {
+            try {
+                if (!database.verifyIntegrity()) {
+                    runOnUiThread(() -> new AlertDialog.Builder(this)
+                            .setTitle("Vault Integrity Warning")
+                            .setMessage("This vault's database was changed outside the app. "
+                                    + "Entries may have been altered, removed or swapped.")
+                            .setPositiveButton("OK", null)
+                            .show());
+                }
+            } catch (GeneralSecurityException | IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * This method reloads the display order from the database in the background and refreshes the RecyclerView.
+     * Only the ordered ids come from the database; the entries themselves are already loaded.
+     * When the order changes again before a query finishes, the older result is dropped.
+     */
+    private void refreshEntryOrder() {
+        sortButton.setText(SORT_MODE_LABELS[sortMode.ordinal()]);
+        tagFilterButton.setText(tagFilter == null ? "All tags" : "Tag: " + tagFilter);
+        final Database database = databaseHelper;
+        final Database.SortMode mode = sortMode;
+        final boolean grouped = groupByFolder;
+        final String tag = tagFilter;
+        final int generation = ++entryOrderGeneration;
+        backgroundExecutor.execute(() -> {
+            EntryOrder order = database.getEntryOrder(mode, grouped, tag);
+            runOnUiThread(() -> {
+                if (generation == entryOrderGeneration && !isFinishing()) {
+                    entryAdapter.setEntries(order, entriesById);
+                }
+            });
+        });
+    }
+
+    /**
+     * This method records a use of an entry for the usage-based sort orders.
+     * The loaded entry is updated here and the database in the background.
+     */
+    private void recordEntryUse(PasswordEntry entry) {
+        final long now = System.currentTimeMillis();
+        entry.setLastUsed(now);
+        entry.setUseCount(entry.getUseCount() + 1);
+        final Database database = databaseHelper;
+        final int entryId = entry.getId();
+        backgroundExecutor.execute(() -> database.recordEntryUse(entryId, now));
+    }
+
+    /**
+     * This method switches to the next sort order and remembers it for the next visit.
+     */
+    private void cycleSortMode() {
+        Database.SortMode[] modes = Database.SortMode.values();
+        sortMode = modes[(sortMode.ordinal() + 1) % modes.length];
+        getPreferences(MODE_PRIVATE).edit().putInt(PREF_SORT_MODE, sortMode.ordinal()).apply();
+        refreshEntryOrder();
+    }
+
+    /**
+     * This method shows the tags in use and limits the list to the one the user picks.
+     * The tags are read in the background and the dialog is shown once they are loaded.
+     */
+    private void showTagFilterDialog() {
+        final Database database = databaseHelper;
+        backgroundExecutor.execute(() -> {
+            List<String> tags = database.getAllTags();
+            runOnUiThread(() -> {
+                if (!isFinishing()) {
+                    showTagFilterDialog(tags);
+                }
+            });
+        });
+    }
+
+    /**
+     * This method shows the given tags to pick a filter from.
+     */
+    private void showTagFilterDialog(List<String> tags) {
+        final String[] choices = new String[tags.size() + 1];
+        choices[0] = "All tags";
+        for (int i = 0; i < tags.size(); i++) {
+            choices[i + 1] = tags.get(i);
+        }
+        int checked = tagFilter == null ? 0 : Math.max(0, tags.indexOf(tagFilter) + 1);
+        new AlertDialog.Builder(this)
+                .setTitle("Filter by Tag")
+                .setSingleChoiceItems(choices, checked, (dialog, which) -> {
+                    tagFilter = which == 0 ? null : choices[which];
+                    refreshEntryOrder();
+                    dialog.dismiss();
+                })
+                .setNegativeButton("Cancel", (dialog, which) -> dialog.cancel())
+                .show();
+    }
+
+    /**
+     * This method splits a comma-separated tag field into distinct, trimmed tags.
+     */
+    private static List<String> parseTags(String text) {
+        List<String> tags = new ArrayList<>();
+        for (String tag : text.split(",")) {
+            String trimmed = tag.trim();
+            if (!trimmed.isEmpty() && !tags.contains(trimmed)) {
+                tags.add(trimmed);
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * This method lists the vaults and switches to the one the user picks, or creates a new one.
+     * A vault that is still open and unlocked opens straight away; any other vault asks for its own PIN first.
+     */
+    private void showVaultSwitcher() {
+        final VaultManager vaultManager = VaultManager.getInstance(this);
+        final List<VaultConfig> vaults = vaultManager.getVaults();
+        String[] choices = new String[vaults.size() + 1];
+        int checked = 0;
+        for (int i = 0; i < vaults.size(); i++) {
+            choices[i] = vaults.get(i).getName();
+            if (vaults.get(i).equals(vaultHandle.getVault())) {
+                checked = i;
+            }
+        }
+        choices[vaults.size()] = "New vault...";
+        new AlertDialog.Builder(this)
+                .setTitle("Switch Vault")
+                .setSingleChoiceItems(choices, checked, (dialog, which) -> {
+                    dialog.dismiss();
+                    if (which == vaults.size()) {
+                        showCreateVaultDialog();
+                    } else if (!vaults.get(which).equals(vaultHandle.getVault())) {
+                        switchToVault(vaults.get(which));
+                    }
+                })
+                .setNegativeButton("Cancel", (dialog, which) -> dialog.cancel())
+                .show();
+    }
+
+    /**
+     * This method asks for a name and creates a new vault, which then needs its own PIN.
+     */
+    private void showCreateVaultDialog() {
+        final EditText nameInput = new EditText(this);
+        nameInput.setHint("Vault name");
+        new AlertDialog.Builder(this)
+                .setTitle("New Vault")
+                .setView(nameInput)
+                .setPositiveButton("Create", (dialog, which) -> {
+                    String name = nameInput.getText().toString().trim();
+                    if (name.isEmpty()) {
+                        Toast.makeText(this, "Please enter a vault name", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    switchToVault(VaultManager.getInstance(this).createVault(name));
+                })
+                .setNegativeButton("Cancel", (dialog, which) -> dialog.cancel())
+                .show();
+    }
+
+    /**
+     * This method makes a vault active and shows it, going through the PIN screen unless it is already unlocked.
+     * @param vault The vault to switch to.
+     */
+    private void switchToVault(VaultConfig vault) {
+        VaultManager vaultManager = VaultManager.getInstance(this);
+        vaultManager.setActiveVault(vault);
+        Class<?> next = vaultManager.isUnlocked(vault) ? Vault.class : Main.class;
+        startActivity(new Intent(this, next));
+        finish();
+    }
+
+    /**
+     * This method asks the user to confirm moving the vault to a fully encrypted database file.
+     */
+    private void confirmPageEncryption() {
+        new AlertDialog.Builder(this)
+                .setTitle("Encrypt Database")
+                .setMessage("Service names, usernames, folders and tags will be encrypted along with passwords. "
+                        + "This cannot be undone.")
+                .setPositiveButton("Encrypt", (dialog, which) -> enablePageEncryption())
+                .setNegativeButton("Cancel", (dialog, which) -> dialog.cancel())
+                .show();
+    }
+
+    /**
+     * This method converts the database to page encryption in the background.
+     * A dialog that cannot be dismissed keeps the user from changing entries while the file is copied,
+     * and the entries are reloaded from the encrypted database once it is in place.
+     */
+    private void enablePageEncryption() {
+        final AlertDialog progressDialog = new AlertDialog.Builder(this)
+                .setMessage("Encrypting database...")
+                .setCancelable(false)
+                .show();
+        backgroundExecutor.execute(() -> {
+            try {
+                VaultManager.getInstance(this).enablePageEncryption(vaultHandle.getVault());
+                runOnUiThread(() -> {
+                    progressDialog.dismiss();
+                    databaseHelper = vaultHandle.getDatabase();
+                    encryptDatabaseButton.setVisibility(View.GONE);
+                    reloadEntries();
+                    Toast.makeText(this, "Database encrypted", Toast.LENGTH_SHORT).show();
+                });
+            } catch (GeneralSecurityException | IOException e) {
+                e.printStackTrace();
+                runOnUiThread(() -> {
+                    progressDialog.dismiss();
+                    Toast.makeText(this, "Failed to encrypt database", Toast.LENGTH_SHORT).show();
+                });
+            }
+        });
+    }
+
+    /**
+     * This method reloads every entry from the database and shows them encrypted again.
+     */
+    private void reloadEntries() {
+        passwordEntries = databaseHelper.getAllPasswordEntries();
+        entriesById.clear();
+        for (PasswordEntry entry : passwordEntries) {
+            entriesById.put(entry.getId(), entry);
+        }
+        isDecryptedView = false;
+        autoLock.getScheduler().plaintextHidden();
+        toggleDecryptionButton.setText("Show Decrypted Passwords");
+        refreshEntryOrder();
+        checkForBreachedPasswords();
+    }
+
+    /**
+     * This method lets the user sync this vault with another device on the same network,
+     * either by waiting for the other device to connect or by connecting to it.
+     */
+    private void showSyncDialog() {
+        String[] choices = {"Wait for another device", "Connect to another device"};
+        new AlertDialog.Builder(this)
+                .setTitle("Sync Vault")
+                .setItems(choices, (dialog, which) -> {
+                    if (which == 0) {
+                        hostSync();
+                    } else {
+                        showJoinSyncDialog();
+                    }
+                })
+                .setNegativeButton("Cancel", (dialog, which) -> dialog.cancel())
+                .show();
+    }
+
+    /**
+     * This method shows this device's address and the vault's pairing code, then waits on the sync thread
+     * for the other device to connect. Cancelling the dialog closes the server socket, which ends the wait.
+     * The wait and the session run apart from the background executor, so list refreshes and other short
+     * tasks keep running meanwhile, and they hold their own use of the vault until they finish.
+     */
+    private void hostSync() {
+        final ServerSocket serverSocket;
+        String pairingCode;
+        try {
+            pairingCode = encryptionHelper.getSyncPairingCode();
+            serverSocket = new ServerSocket(SocketSyncTransport.DEFAULT_PORT);
+        } catch (GeneralSecurityException | IOException e) {
+            e.printStackTrace();
+            Toast.makeText(this, "Could not start sync", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final AlertDialog waitingDialog = new AlertDialog.Builder(this)
+                .setTitle("Waiting for Device")
+                .setMessage("On the other device, choose \"Connect to another device\" and enter:\n\nAddress: "
+                        + getLocalAddress() + "\nPairing code: " + pairingCode)
+                .setNegativeButton("Cancel", (dialog, which) -> dialog.cancel())
+                .setOnCancelListener(dialog -> closeQuietly(serverSocket))
+                .show();
+        syncServerSocket = serverSocket;
+        final VaultManager vaultManager = VaultManager.getInstance(this);
+        final VaultHandle syncHandle = vaultManager.acquire(vaultHandle.getVault());
+        syncExecutor.execute(() -> {
+            try (SocketSyncTransport transport = SocketSyncTransport.accept(serverSocket)) {
+                closeQuietly(serverSocket);
+                runOnUiThread(() -> waitingDialog.setMessage("Syncing..."));
+                SyncEngine.Result result = new SyncEngine(syncHandle.getDatabase()).sync(transport);
+                runOnUiThread(() -> {
+                    waitingDialog.dismiss();
+                    showSyncResult(result);
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+                closeQuietly(serverSocket);
+                runOnUiThread(() -> {
+                    if (waitingDialog.isShowing()) {
+                        waitingDialog.dismiss();
+                        Toast.makeText(this, "Sync failed", Toast.LENGTH_SHORT).show();
+                    }
+                });
+            } finally {
+                vaultManager.release(syncHandle);
+            }
+        });
+    }
+
+    /**
+     * This method asks for the address and pairing code shown on the other device and syncs with it.
+     * Entering a pairing code makes this vault use the other device's sync key from then on.
+     */
+    private void showJoinSyncDialog() {
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        final EditText addressInput = new EditText(this);
+        addressInput.setHint("Address");
+        final EditText pairingCodeInput = new EditText(this);
+        pairingCodeInput.setHint("Pairing code");
+        layout.addView(addressInput);
+        layout.addView(pairingCodeInput);
+        new AlertDialog.Builder(this)
+                .setTitle("Connect to Device")
+                .setView(layout)
+                .setPositiveButton("Sync", (dialog, which) -> {
+                    String address = addressInput.getText().toString().trim();
+                    String pairingCode = pairingCodeInput.getText().toString().trim();
+                    if (address.isEmpty() || pairingCode.isEmpty()) {
+                        Toast.makeText(this, "Please fill in all fields", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    try {
+                        encryptionHelper.setSyncPairingCode(pairingCode);
+                    } catch (GeneralSecurityException | IOException e) {
+                        e.printStackTrace();
+                        Toast.makeText(this, "Invalid pairing code", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    joinSync(address);
+                })
+                .setNegativeButton("Cancel", (dialog, which) -> dialog.cancel())
+                .show();
+    }
+
+    /**
+     * This method connects to a device that is waiting for sync and runs the session on the sync thread,
+     * which holds its own use of the vault until it finishes.
+     * @param address The other device's address.
+     */
+    private void joinSync(String address) {
+        final AlertDialog progressDialog = new AlertDialog.Builder(this)
+                .setMessage("Syncing...")
+                .setCancelable(false)
+                .show();
+        final VaultManager vaultManager = VaultManager.getInstance(this);
+        final VaultHandle syncHandle = vaultManager.acquire(vaultHandle.getVault());
+        syncExecutor.execute(() -> {
+            try (SocketSyncTransport transport = SocketSyncTransport.connect(address, SocketSyncTransport.DEFAULT_PORT)) {
+                SyncEngine.Result result = new SyncEngine(syncHandle.getDatabase()).sync(transport);
+                runOnUiThread(() -> {
+                    progressDialog.dismiss();
+                    showSyncResult(result);
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+                runOnUiThread(() -> {
+                    progressDialog.dismiss();
+                    Toast.makeText(this, "Sync failed", Toast.LENGTH_SHORT).show();
+                });
+            } finally {
+                vaultManager.release(syncHandle);
+            }
+        });
+    }
+
+    /**
+     * This method reloads the entries after a sync and tells the user what changed.
+     */
+    private void showSyncResult(SyncEngine.Result result) {
+        reloadEntries();
+        String message = "Sent " + result.getSent() + ", received " + result.getReceived();
+        if (result.getConflicts() > 0) {
+            message += ", " + result.getConflicts() + " conflicting versions kept";
+        }
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+    }
+
+    /**
+     * This method returns this device's IPv4 address on the local network, or a placeholder if it has none.
+     */
+    private static String getLocalAddress() {
+        try {
+            for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!networkInterface.isUp() || networkInterface.isLoopback()) {
+                    continue;
+                }
+                for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+                    if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                        return address.getHostAddress();
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            e.printStackTrace();
+        }
+        return "unknown";
+    }
+
+    private static void closeQuietly(ServerSocket serverSocket) {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This method is called when the activity becomes visible.
+     * If the vault was locked while the activity was in the background, it goes back to the PIN screen.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (!vaultHandle.isUnlocked()) {
+            returnToPinScreen();
+        }
+    }
+
+    /**
+     * This method is called on every touch or key press, and restarts the idle timeout for decrypted passwords.
+     */
+    @Override
+    public void onUserInteraction() {
+        super.onUserInteraction();
+        autoLock.getScheduler().userInteraction();
+    }
+
+    /**
+     * This method is called by the auto-lock when decrypted passwords have been shown for too long
+     * without user interaction, or when the app leaves the screen.
+     */
+    @Override
+    public void onPurgePlaintext() {
+        hideDecryptedPasswords();
+    }
+
+    /**
+     * This method is called by the auto-lock when the screen turns off, or when the app comes back after
+     * a while in the background. Every open vault is locked and its keys wiped straight away, so switching
+     * to another vault asks for the PIN too; if this screen is not visible, it goes back to the PIN screen
+     * when it next becomes visible.
+     */
+    @Override
+    public void onLockVault() {
+        VaultManager.getInstance(this).lockAll();
+        if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+            returnToPinScreen();
+        }
+    }
+
+    /**
+     * This method leaves the vault for the PIN screen.
+     */
+    private void returnToPinScreen() {
+        if (!isFinishing()) {
+            startActivity(new Intent(this, Main.class));
+            finish();
+        }
+    }
+
+    /**
+     * This method is called when the activity is destroyed.
+     * It stops any background work that is still running for this screen and releases the vault once that
+     * work has stopped. A sync still waiting for a device stops waiting; a running session finishes on its own
+     * use of the vault.
+     */
+    @Override
+    protected void onDestroy() {
+        if (syncServerSocket != null) {
+            closeQuietly(syncServerSocket);
+        }
+        syncExecutor.shutdown();
+        backgroundExecutor.shutdownNow();
+        VaultManager.getInstance(this).releaseAfter(backgroundExecutor, vaultHandle);
+        super.onDestroy();
+    }
+
+    /**
+     * This method checks every entry against the local breach index in the background.
+     * The index is read from the app's files directory. If only a sorted hash list has been supplied,
+     * it is converted into the index format once, and the list is deleted afterwards.
+     * Breached entries are flagged and the list is refreshed when the check finishes.
+     */
+    private void checkForBreachedPasswords() {
+        final File indexFile = new File(getFilesDir(), BREACH_INDEX_FILE);
+        final File hashListFile = new File(getFilesDir(), BREACH_HASH_LIST_FILE);
+        if (!indexFile.exists() && !hashListFile.exists()) {
+            return;
+        }
+        final List<BreachChecker.StoredPassword> snapshot = BreachChecker.snapshot(passwordEntries);
+        backgroundExecutor.execute(() -> {
+            try {
+                if (!indexFile.exists()) {
+                    File tempFile = new File(getFilesDir(), BREACH_INDEX_FILE + ".tmp");
+                    try (InputStream hashList = new FileInputStream(hashListFile)) {
+                        BreachIndex.build(hashList, tempFile);
+                    }
+                    if (!tempFile.renameTo(indexFile)) {
+                        throw new IOException("Could not move breach index into place");
+                    }
+                    hashListFile.delete();
+                }
+                Set<Integer> breachedIds;
+                try (BreachIndex breachIndex = BreachIndex.open(indexFile)) {
+                    breachedIds = new BreachChecker(databaseHelper, breachIndex).findBreachedEntries(snapshot);
+                }
+                runOnUiThread(() -> showBreachedEntries(breachedIds));
+            } catch (GeneralSecurityException | IOException e) {
+                e.printStackTrace();
+                runOnUiThread(() -> Toast.makeText(this, "Breach check failed", Toast.LENGTH_SHORT).show());
+            }
+        });
+    }
+
+    /**
+     * This method flags the entries found by the breach check and refreshes the RecyclerView.
+     * @param breachedIds The ids of the entries whose passwords were found in the breach index.
+     */
+    @SuppressLint("NotifyDataSetChanged")
+    private void showBreachedEntries(Set<Integer> breachedIds) {
+        if (isFinishing()) {
+            return;
+        }
+        for (PasswordEntry entry : passwordEntries) {
+            entry.setBreached(breachedIds.contains(entry.getId()));
+        }
+        entryAdapter.notifyDataSetChanged();
+        if (!breachedIds.isEmpty()) {
+            Toast.makeText(this, breachedIds.size() + " passwords found in known breaches", Toast.LENGTH_LONG).show();
+        }
     }
 
     /**
@@ -75,8 +702,6 @@ public class Vault extends AppCompatActivity implements EntryAdapter.OnEditClick
             String enteredPin = pinInput.getText().toString();
             if (isCorrectPin(enteredPin)) {
                 showEditPasswordDialog(entry);  // Proceed to edit if PIN is correct
-            } else {
-                Toast.makeText(Vault.this, "Incorrect PIN", Toast.LENGTH_SHORT).show();
             }
         });
         builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
@@ -86,15 +711,14 @@ public class Vault extends AppCompatActivity implements EntryAdapter.OnEditClick
     /**
      * This method handles the toggle decryption button click.
      * It prompts the user to enter their PIN before showing decrypted passwords.
-     * If the passwords are already decrypted, it hides them and reloads the encrypted data.
+     * If the passwords are already decrypted, it hides them again.
      */
     private void handleToggleDecryption() {
         if (!isDecryptedView) {
             showPinVerificationForDecryption();
         } else {
-            reloadEncryptedData();
-            toggleDecryptionButton.setText("Show Decrypted Passwords");
-            isDecryptedView = false;
+            autoLock.getScheduler().plaintextHidden();
+            hideDecryptedPasswords();
         }
     }
 
@@ -112,8 +736,6 @@ public class Vault extends AppCompatActivity implements EntryAdapter.OnEditClick
             String enteredPin = pinInput.getText().toString();
             if (isCorrectPin(enteredPin)) {
                 showDecryptedPasswords();
-            } else {
-                Toast.makeText(Vault.this, "Incorrect PIN", Toast.LENGTH_SHORT).show();
             }
         });
         builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
@@ -121,92 +743,60 @@ public class Vault extends AppCompatActivity implements EntryAdapter.OnEditClick
     }
 
     /**
-     * This method checks if the entered PIN matches the stored PIN in encrypted shared preferences.
-     * If an error occurs during this process, an error message is displayed.
+     * This method checks the entered PIN of the current vault through its attempt limiter.
+     * A wrong PIN, a lockout or an error is reported to the user.
      * @param enteredPin The PIN entered by the user.
      * @return true if the entered PIN matches the stored PIN, false otherwise.
      */
     private boolean isCorrectPin(String enteredPin) {
-        try {
-            String masterKeyAlias = MasterKeys.getOrCreate(MasterKeys.AES256_GCM_SPEC);
-            SharedPreferences encryptedPrefs = EncryptedSharedPreferences.create(
-                    "secure_prefs",
-                    masterKeyAlias,
-                    this,
-                    EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
-                    EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
-            );
-
-            String storedSalt = encryptedPrefs.getString("user_salt", null);
-            String storedPinHash = encryptedPrefs.getString("user_pin_hash", null);
-
-            if (storedSalt == null || storedPinHash == null) {
-                return false;
-            }
-
-            String enteredPinHash = hashPin(enteredPin, storedSalt);
-            return enteredPinHash.equals(storedPinHash);
-
-        } catch (GeneralSecurityException | IOException e) {
-            e.printStackTrace();
-            Toast.makeText(this, "Error verifying PIN", Toast.LENGTH_SHORT).show();
-            return false;
-        }
+        return PinLock.checkPin(this, vaultHandle.getVault(), enteredPin);
     }
 
 
     /**
      * This method decrypts all password entries and updates the RecyclerView to show the decrypted passwords.
-     * It also updates the toggle button text to indicate that the passwords are currently decrypted.
+     * The list holds no passwords, so they are read from the database in one batch and decrypted there.
+     * It also updates the toggle button text to indicate that the passwords are currently decrypted,
+     * and starts the idle timeout after which the auto-lock hides them again.
      */
     @SuppressLint("NotifyDataSetChanged")
     private void showDecryptedPasswords() {
         try {
-            for (PasswordEntry entry : passwordEntries) {
-                if (entry.isEncrypted()) {
-                    String decryptedPassword = encryptionHelper.decrypt(entry.getPassword());
-                    entry.setPassword(decryptedPassword);
-                    entry.setEncrypted(false);
-                    Log.d("EncryptionDebug", "Decrypting password for entry: " + entry.getServiceName());
-                }
+            List<String> decryptedPasswords = databaseHelper.decryptPasswords(passwordEntries);
+            for (int i = 0; i < passwordEntries.size(); i++) {
+                passwordEntries.get(i).showPassword(decryptedPasswords.get(i));
             }
             entryAdapter.notifyDataSetChanged();
             toggleDecryptionButton.setText("Hide Decrypted Passwords");
             isDecryptedView = true;
+            autoLock.getScheduler().plaintextShown();
         } catch (GeneralSecurityException | IOException e) {
             e.printStackTrace();
+            hideDecryptedPasswords();
             Toast.makeText(this, "Failed to decrypt passwords", Toast.LENGTH_SHORT).show();
         }
     }
 
     /**
-     * This method re-encrypts all password entries and updates the RecyclerView to show the encrypted passwords.
+     * This method hides all decrypted passwords and updates the RecyclerView to show the entries encrypted.
+     * Each entry goes back to holding no password, as it was loaded, so nothing is encrypted again
+     * and the plaintext is no longer referenced by the list.
      * It also updates the toggle button text to indicate that the passwords are currently encrypted.
      */
     @SuppressLint("NotifyDataSetChanged")
-    private void reloadEncryptedData() {
-        try {
-            for (PasswordEntry entry : passwordEntries) {
-                if (!entry.isEncrypted()) {
-                    String encryptedPassword = encryptionHelper.encrypt(entry.getPassword());
-                    entry.setPassword(encryptedPassword);
-                    entry.setEncrypted(true);
-                    Log.d("EncryptionDebug", "Re-encrypting password for entry: " + entry.getServiceName());
-                }
-            }
-            entryAdapter.notifyDataSetChanged();
-            toggleDecryptionButton.setText("Show Decrypted Passwords");
-            isDecryptedView = false;
-        } catch (GeneralSecurityException | IOException e) {
-            e.printStackTrace();
-            Toast.makeText(this, "Failed to re-encrypt passwords", Toast.LENGTH_SHORT).show();
+    private void hideDecryptedPasswords() {
+        for (PasswordEntry entry : passwordEntries) {
+            entry.hidePassword();
         }
+        entryAdapter.notifyDataSetChanged();
+        toggleDecryptionButton.setText("Show Decrypted Passwords");
+        isDecryptedView = false;
     }
 
     /**
      * This method shows a dialog for adding a new password entry.
-     * It collects the service name, username, and password from the user, encrypts the password,
-     * and saves the new entry to the database.
+     * It collects the service name, username, password, and an optional folder and tags from the user,
+     * and saves the new entry to the database, which encrypts the password bound to the new row.
      */
     @SuppressLint("NotifyDataSetChanged")
     private void showAddPasswordDialog() {
@@ -216,26 +806,26 @@ public class Vault extends AppCompatActivity implements EntryAdapter.OnEditClick
         final EditText inputService = viewInflated.findViewById(R.id.inputService);
         final EditText inputUsername = viewInflated.findViewById(R.id.inputUsername);
         final EditText inputPassword = viewInflated.findViewById(R.id.inputPassword);
+        final EditText inputFolder = viewInflated.findViewById(R.id.inputFolder);
+        final EditText inputTags = viewInflated.findViewById(R.id.inputTags);
+        attachPasswordTools(viewInflated, inputPassword);
         builder.setView(viewInflated);
         builder.setPositiveButton("Add", (dialog, which) -> {
             String service = inputService.getText().toString();
             String username = inputUsername.getText().toString();
             String password = inputPassword.getText().toString();
             if (!service.isEmpty() && !username.isEmpty() && !password.isEmpty()) {
-                try {
-                    String encryptedPassword = encryptionHelper.encrypt(password);
-                    Log.d("EncryptionDebug", "Encrypted new password: " + encryptedPassword);
-                    PasswordEntry newEntry = new PasswordEntry(0, service, username, encryptedPassword);
-                    long newId = databaseHelper.addPasswordEntry(newEntry);
-                    newEntry.setId((int) newId);
-                    newEntry.setEncrypted(true);
-                    passwordEntries.add(newEntry);
-                    entryAdapter.notifyDataSetChanged();
-                    Toast.makeText(this, "Password saved", Toast.LENGTH_SHORT).show();
-                } catch (GeneralSecurityException | IOException e) {
-                    e.printStackTrace();
-                    Toast.makeText(this, "Failed to encrypt password", Toast.LENGTH_SHORT).show();
+                PasswordEntry newEntry = new PasswordEntry(0, service, username, null);
+                newEntry.setFolder(inputFolder.getText().toString().trim());
+                newEntry.setTags(parseTags(inputTags.getText().toString()));
+                if (databaseHelper.addPasswordEntry(newEntry, password) == -1) {
+                    Toast.makeText(this, "Failed to save password", Toast.LENGTH_SHORT).show();
+                    return;
                 }
+                passwordEntries.add(newEntry);
+                entriesById.put(newEntry.getId(), newEntry);
+                refreshEntryOrder();
+                Toast.makeText(this, "Password saved", Toast.LENGTH_SHORT).show();
             } else {
                 Toast.makeText(Vault.this, "Please fill in all fields", Toast.LENGTH_SHORT).show();
             }
@@ -246,12 +836,21 @@ public class Vault extends AppCompatActivity implements EntryAdapter.OnEditClick
 
     /**
      * This method shows a dialog for editing an existing password entry.
-     * It allows the user to update the service name, username, and password,
+     * It allows the user to update the service name, username, password, folder and tags,
      * encrypts the updated password, and saves the changes to the database.
+     * Opening an entry for editing counts as a use for the usage-based sort orders.
      * The user can also delete the password entry from this dialog.
      */
     @SuppressLint("NotifyDataSetChanged")
     private void showEditPasswordDialog(PasswordEntry entry) {
+        String currentPassword;
+        try {
+            currentPassword = entry.isEncrypted() ? databaseHelper.decryptPassword(entry) : entry.getPassword();
+        } catch (GeneralSecurityException | IOException e) {
+            e.printStackTrace();
+            Toast.makeText(this, "Failed to decrypt password", Toast.LENGTH_SHORT).show();
+            return;
+        }
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Edit Password");
 
@@ -259,28 +858,31 @@ public class Vault extends AppCompatActivity implements EntryAdapter.OnEditClick
         final EditText inputService = viewInflated.findViewById(R.id.inputService);
         final EditText inputUsername = viewInflated.findViewById(R.id.inputUsername);
         final EditText inputPassword = viewInflated.findViewById(R.id.inputPassword);
+        final EditText inputFolder = viewInflated.findViewById(R.id.inputFolder);
+        final EditText inputTags = viewInflated.findViewById(R.id.inputTags);
         inputService.setText(entry.getServiceName());
         inputUsername.setText(entry.getUsername());
-        inputPassword.setText(entry.getPassword());
+        inputPassword.setText(currentPassword);
+        inputFolder.setText(entry.getFolder());
+        inputTags.setText(TextUtils.join(", ", entry.getTags()));
+        recordEntryUse(entry);
+        attachPasswordTools(viewInflated, inputPassword);
+        Button historyButton = viewInflated.findViewById(R.id.passwordHistoryButton);
+        historyButton.setVisibility(View.VISIBLE);
+        historyButton.setOnClickListener(view -> showPasswordHistoryDialog(entry));
         builder.setView(viewInflated);
         builder.setPositiveButton("Save", (dialog, which) -> {
             String serviceName = inputService.getText().toString();
             String username = inputUsername.getText().toString();
             String password = inputPassword.getText().toString();
 
-            try {
-                String encryptedPassword = encryptionHelper.encrypt(password);
-                entry.setServiceName(serviceName);
-                entry.setUsername(username);
-                entry.setPassword(encryptedPassword);
-                entry.setEncrypted(true);
-                databaseHelper.updatePasswordEntry(entry);
-                entryAdapter.notifyDataSetChanged();
-                Toast.makeText(Vault.this, "Password updated", Toast.LENGTH_SHORT).show();
-            } catch (GeneralSecurityException | IOException e) {
-                e.printStackTrace();
-                Toast.makeText(this, "Failed to encrypt password", Toast.LENGTH_SHORT).show();
-            }
+            entry.setServiceName(serviceName);
+            entry.setUsername(username);
+            entry.setFolder(inputFolder.getText().toString().trim());
+            entry.setTags(parseTags(inputTags.getText().toString()));
+            databaseHelper.updatePasswordEntry(entry, password);
+            refreshEntryOrder();
+            Toast.makeText(Vault.this, "Password updated", Toast.LENGTH_SHORT).show();
         });
 
         builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
@@ -291,7 +893,8 @@ public class Vault extends AppCompatActivity implements EntryAdapter.OnEditClick
                     .setPositiveButton("Yes", (confirmDialog, confirmWhich) -> {
                         databaseHelper.deletePasswordEntry(entry.getId());
                         passwordEntries.remove(entry);
-                        entryAdapter.notifyDataSetChanged();
+                        entriesById.remove(entry.getId());
+                        refreshEntryOrder();
                         Toast.makeText(Vault.this, "Password deleted", Toast.LENGTH_SHORT).show();
                     })
                     .setNegativeButton("No", null)
@@ -300,4 +903,166 @@ public class Vault extends AppCompatActivity implements EntryAdapter.OnEditClick
         builder.show();
     }
 
-}
\ No newline at end of file
+    /**
+     * This method lists the previous passwords of an entry with the date each one was replaced.
+     * It is only reachable from the edit dialog, after the PIN has been verified.
+     * @param entry The password entry whose history to show.
+     */
+    private void showPasswordHistoryDialog(PasswordEntry entry) {
+        List<PasswordVersion> versions = databaseHelper.getPasswordHistory(entry.getId());
+        if (versions.isEmpty()) {
+            Toast.makeText(this, "No previous passwords", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        try {
+            List<String> passwords = encryptionHelper.decryptHistory(versions);
+            String[] rows = new String[versions.size()];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = passwords.get(i) + "\nReplaced " + DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT)
+                        .format(new Date(versions.get(i).getReplacedAt()));
+            }
+            new AlertDialog.Builder(this)
+                    .setTitle("Password History")
+                    .setItems(rows, null)
+                    .setPositiveButton("Close", null)
+                    .show();
+        } catch (GeneralSecurityException | IOException e) {
+            e.printStackTrace();
+            Toast.makeText(this, "Failed to decrypt password history", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * This method adds the strength meter and the generator button to an add or edit password dialog.
+     * The strength estimate is refreshed on every keystroke.
+     * @param dialogView The inflated add/edit password dialog.
+     * @param inputPassword The password field of that dialog.
+     */
+    private void attachPasswordTools(View dialogView, EditText inputPassword) {
+        final LinearProgressIndicator strengthMeter = dialogView.findViewById(R.id.strengthMeter);
+        final TextView strengthText = dialogView.findViewById(R.id.strengthText);
+        Button generateButton = dialogView.findViewById(R.id.generatePasswordButton);
+        inputPassword.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) { }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                showPasswordStrength(s, strengthMeter, strengthText);
+            }
+        });
+        showPasswordStrength(inputPassword.getText(), strengthMeter, strengthText);
+        generateButton.setOnClickListener(view -> showGeneratePasswordDialog(inputPassword));
+    }
+
+    /**
+     * This method scores a password and shows the result under the password field.
+     */
+    private void showPasswordStrength(CharSequence password, LinearProgressIndicator strengthMeter, TextView strengthText) {
+        if (password.length() == 0) {
+            strengthMeter.setProgress(0);
+            strengthText.setText("");
+            return;
+        }
+        PasswordStrength.Result result = passwordStrength.estimate(password);
+        strengthMeter.setProgress(result.getScore() + 1);
+        String warning = result.getWarning();
+        String label = STRENGTH_LABELS[result.getScore()];
+        strengthText.setText(warning == null ? label : label + " - " + warning);
+    }
+
+    /**
+     * This method shows the password generator.
+     * The user can pick a length and character groups, or switch to a passphrase of random words.
+     * A new password is generated whenever an option changes, and "Use" copies it into the password field.
+     * @param inputPassword The password field to fill in.
+     */
+    private void showGeneratePasswordDialog(EditText inputPassword) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Generate Password");
+        View viewInflated = LayoutInflater.from(this).inflate(R.layout.dialog_generate_password, null);
+        final TextView generatedPasswordText = viewInflated.findViewById(R.id.generatedPasswordText);
+        final MaterialSwitch passphraseSwitch = viewInflated.findViewById(R.id.passphraseSwitch);
+        final TextView lengthLabel = viewInflated.findViewById(R.id.lengthLabel);
+        final Slider lengthSlider = viewInflated.findViewById(R.id.lengthSlider);
+        final Slider wordCountSlider = viewInflated.findViewById(R.id.wordCountSlider);
+        final View charsetOptions = viewInflated.findViewById(R.id.charsetOptions);
+        final CheckBox lowercaseCheckBox = viewInflated.findViewById(R.id.lowercaseCheckBox);
+        final CheckBox uppercaseCheckBox = viewInflated.findViewById(R.id.uppercaseCheckBox);
+        final CheckBox digitsCheckBox = viewInflated.findViewById(R.id.digitsCheckBox);
+        final CheckBox symbolsCheckBox = viewInflated.findViewById(R.id.symbolsCheckBox);
+        Button regenerateButton = viewInflated.findViewById(R.id.regenerateButton);
+
+        final Runnable generate = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (passphraseSwitch.isChecked()) {
+                        int wordCount = (int) wordCountSlider.getValue();
+                        lengthLabel.setText("Words: " + wordCount);
+                        CompactDictionary words = passwordStrength.getWords();
+                        if (words == null) {
+                            generatedPasswordText.setText("");
+                            loadPassphraseWords(this);
+                            return;
+                        }
+                        generatedPasswordText.setText(passwordGenerator.generatePassphrase(words, wordCount, "-"));
+                    } else {
+                        int length = (int) lengthSlider.getValue();
+                        lengthLabel.setText("Length: " + length);
+                        generatedPasswordText.setText(passwordGenerator.generate(length,
+                                lowercaseCheckBox.isChecked(), uppercaseCheckBox.isChecked(),
+                                digitsCheckBox.isChecked(), symbolsCheckBox.isChecked()));
+                    }
+                } catch (IllegalArgumentException e) {
+                    generatedPasswordText.setText("");
+                    Toast.makeText(Vault.this, e.getMessage(), Toast.LENGTH_SHORT).show();
+                }
+            }
+        };
+        passphraseSwitch.setOnCheckedChangeListener((button, isChecked) -> {
+            lengthSlider.setVisibility(isChecked ? View.GONE : View.VISIBLE);
+            charsetOptions.setVisibility(isChecked ? View.GONE : View.VISIBLE);
+            wordCountSlider.setVisibility(isChecked ? View.VISIBLE : View.GONE);
+            generate.run();
+        });
+        lengthSlider.addOnChangeListener((slider, value, fromUser) -> generate.run());
+        wordCountSlider.addOnChangeListener((slider, value, fromUser) -> generate.run());
+        lowercaseCheckBox.setOnCheckedChangeListener((button, isChecked) -> generate.run());
+        uppercaseCheckBox.setOnCheckedChangeListener((button, isChecked) -> generate.run());
+        digitsCheckBox.setOnCheckedChangeListener((button, isChecked) -> generate.run());
+        symbolsCheckBox.setOnCheckedChangeListener((button, isChecked) -> generate.run());
+        regenerateButton.setOnClickListener(view -> generate.run());
+        generate.run();
+
+        builder.setView(viewInflated);
+        builder.setPositiveButton("Use", (dialog, which) -> {
+            if (generatedPasswordText.length() > 0) {
+                inputPassword.setText(generatedPasswordText.getText());
+            }
+        });
+        builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
+        builder.show();
+    }
+
+    /**
+     * This method loads the word list shared with the strength meter in the background, then retries.
+     * The strength meter usually has it loaded long before the generator is opened.
+     * @param retry What to run on the main thread once the word list is ready.
+     */
+    private void loadPassphraseWords(Runnable retry) {
+        backgroundExecutor.execute(() -> {
+            passwordStrength.warmUp();
+            runOnUiThread(() -> {
+                if (passwordStrength.getWords() != null) {
+                    retry.run();
+                } else {
+                    Toast.makeText(this, "Word list not available", Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
+    }
+}
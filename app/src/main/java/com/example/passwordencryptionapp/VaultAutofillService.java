@@ -0,0 +1,356 @@
+package com.example.passwordencryptionapp;
+
+import android.app.assist.AssistStructure;
+import android.content.Context;
+import android.content.IntentSender;
+import android.content.pm.PackageManager;
+import android.content.pm.Signature;
+import android.content.pm.SigningInfo;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.service.autofill.AutofillService;
+import android.service.autofill.Dataset;
+import android.service.autofill.FillCallback;
+import android.service.autofill.FillContext;
+import android.service.autofill.FillRequest;
+import android.service.autofill.FillResponse;
+import android.service.autofill.SaveCallback;
+import android.service.autofill.SaveRequest;
+import android.text.InputType;
+import android.util.Pair;
+import android.view.View;
+import android.view.ViewStructure;
+import android.view.autofill.AutofillId;
+import android.widget.RemoteViews;
+import androidx.annotation.NonNull;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offers vault entries to other apps and browsers through Android autofill.
+ *
+ * Requests are matched against a process-wide {@link AutofillIndex} of the active vault that is built
+ * once from the service names and app links and then kept up to date by {@link Database} change
+ * notifications, so a request never scans or decrypts the table. Switching vaults rebuilds the index for
+ * the new vault. Browsers are matched on the page's domain and other apps only on the entries the user
+ * linked to them, so every response also offers to choose an entry, which links the app when it is
+ * filled. Suggestions only show the service name and username; the password of the entry the user picks
+ * is decrypted by {@link AutofillUnlockActivity} after a PIN check.
+ *
+ * Opening the vault and reading entries is blocking I/O, so requests are answered on a worker thread.
+ */
+public class VaultAutofillService extends AutofillService {
+    private static final int MAX_SUGGESTIONS = 5;
+
+    private final ExecutorService fillExecutor = Executors.newSingleThreadExecutor();
+
+    private static AutofillIndex autofillIndex;
+    private static VaultConfig indexedVault;
+
+    /**
+     * This method returns the autofill index of a vault, building it on first use.
+     * Once built, the index follows every add, update and delete made through Database in that vault.
+     * @param handle The open vault to index.
+     * @return The shared index.
+     */
+    static synchronized AutofillIndex getAutofillIndex(VaultHandle handle) {
+        if (autofillIndex == null) {
+            Database.addChangeListener(new Database.ChangeListener() {
+                @Override
+                public void onEntrySaved(VaultConfig vault, int entryId, String serviceName) {
+                    AutofillIndex index = getIndexFor(vault);
+                    if (index != null) {
+                        index.put(entryId, serviceName);
+                    }
+                }
+
+                @Override
+                public void onEntryDeleted(VaultConfig vault, int entryId) {
+                    AutofillIndex index = getIndexFor(vault);
+                    if (index != null) {
+                        index.remove(entryId);
+                    }
+                }
+
+                @Override
+                public void onAppLinked(VaultConfig vault, int entryId, String packageName, String certDigest) {
+                    AutofillIndex index = getIndexFor(vault);
+                    if (index != null) {
+                        index.link(entryId, packageName, certDigest);
+                    }
+                }
+            });
+        }
+        if (autofillIndex == null || !handle.getVault().equals(indexedVault)) {
+            autofillIndex = AutofillIndex.build(handle.getDatabase().getServiceNames(),
+                    handle.getDatabase().getAppLinks());
+            indexedVault = handle.getVault();
+        }
+        return autofillIndex;
+    }
+
+    private static synchronized AutofillIndex getIndexFor(VaultConfig vault) {
+        return vault.equals(indexedVault) ? autofillIndex : null;
+    }
+
+    /**
+     * This method is called when another app asks for autofill suggestions.
+     * It finds the username and password fields on the calling thread, which only walks the structure
+     * already handed in, then looks up the matching entries on the worker thread.
+     */
+    @Override
+    public void onFillRequest(@NonNull FillRequest request, @NonNull CancellationSignal cancellationSignal,
+                              @NonNull FillCallback callback) {
+        List<FillContext> fillContexts = request.getFillContexts();
+        AssistStructure structure = fillContexts.get(fillContexts.size() - 1).getStructure();
+        LoginFields fields = new LoginFields();
+        for (int i = 0; i < structure.getWindowNodeCount(); i++) {
+            findLoginFields(structure.getWindowNodeAt(i).getRootViewNode(), fields);
+        }
+        if (fields.usernameId == null && fields.passwordId == null) {
+            callback.onSuccess(null);
+            return;
+        }
+
+        String packageName = structure.getActivityComponent().getPackageName();
+        Future<?> lookup = fillExecutor.submit(() -> {
+            FillResponse response;
+            try {
+                response = buildResponse(packageName, fields, cancellationSignal);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                if (!cancellationSignal.isCanceled()) {
+                    callback.onFailure("Vault could not be read");
+                }
+                return;
+            }
+            if (!cancellationSignal.isCanceled()) {
+                callback.onSuccess(response);
+            }
+        });
+        cancellationSignal.setOnCancelListener(() -> lookup.cancel(false));
+    }
+
+    /**
+     * This method looks up the entries for a request and builds one locked suggestion per entry, followed
+     * by one to choose any entry. Browsers are matched by web domain and other apps by their links.
+     * It opens the vault and reads entries, so it runs on the worker thread, and keeps the vault pinned
+     * while it does so it cannot be closed by another vault opening.
+     * @return The response, or null if the request was cancelled before anything was offered.
+     */
+    private FillResponse buildResponse(String packageName, LoginFields fields, CancellationSignal cancellationSignal) {
+        String certDigest = AutofillIndex.isBrowser(packageName) ? null : getCertDigest(this, packageName);
+        VaultManager vaultManager = VaultManager.getInstance(this);
+        VaultHandle vaultHandle = vaultManager.acquireActiveVault();
+        try {
+            return buildResponse(vaultHandle, packageName, certDigest, fields, cancellationSignal);
+        } finally {
+            vaultManager.release(vaultHandle);
+        }
+    }
+
+    private FillResponse buildResponse(VaultHandle vaultHandle, String packageName, String certDigest,
+                                       LoginFields fields, CancellationSignal cancellationSignal) {
+        List<Integer> entryIds = getAutofillIndex(vaultHandle).find(packageName, certDigest, fields.webDomain);
+
+        Database database = vaultHandle.getDatabase();
+        FillResponse.Builder response = new FillResponse.Builder();
+        int suggestions = 0;
+        for (int entryId : entryIds) {
+            if (suggestions == MAX_SUGGESTIONS || cancellationSignal.isCanceled()) {
+                break;
+            }
+            PasswordEntry entry = database.getPasswordEntry(entryId);
+            if (entry == null) {
+                continue;
+            }
+            RemoteViews presentation = createPresentation(this, entry.getServiceName(), entry.getUsername());
+            IntentSender authentication = AutofillUnlockActivity.createIntentSender(
+                    this, vaultHandle.getVault(), entryId, fields.usernameId, fields.passwordId);
+            response.addDataset(createDataset(presentation, authentication, fields));
+            suggestions++;
+        }
+        if (cancellationSignal.isCanceled()) {
+            return null;
+        }
+        RemoteViews presentation = createPresentation(this, "Choose from vault", vaultHandle.getVault().getName());
+        IntentSender authentication = AutofillUnlockActivity.createChooserIntentSender(
+                this, vaultHandle.getVault(), packageName, fields.usernameId, fields.passwordId);
+        response.addDataset(createDataset(presentation, authentication, fields));
+        return response.build();
+    }
+
+    private static Dataset createDataset(RemoteViews presentation, IntentSender authentication, LoginFields fields) {
+        Dataset.Builder dataset = new Dataset.Builder(presentation);
+        if (fields.usernameId != null) {
+            dataset.setValue(fields.usernameId, null, presentation);
+        }
+        if (fields.passwordId != null) {
+            dataset.setValue(fields.passwordId, null, presentation);
+        }
+        dataset.setAuthentication(authentication);
+        return dataset.build();
+    }
+
+    /**
+     * This method is called when the service is unbound. Lookups still queued are dropped.
+     */
+    @Override
+    public void onDestroy() {
+        fillExecutor.shutdownNow();
+        super.onDestroy();
+    }
+
+    /**
+     * This method is called when the user asks to save credentials.
+     * This service never requests saving, so there is nothing to do.
+     */
+    @Override
+    public void onSaveRequest(@NonNull SaveRequest request, @NonNull SaveCallback callback) {
+        callback.onSuccess();
+    }
+
+    /**
+     * This method builds the suggestion row shown in the autofill popup.
+     */
+    static RemoteViews createPresentation(Context context, String title, String subtitle) {
+        RemoteViews presentation = new RemoteViews(context.getPackageName(), R.layout.item_autofill_suggestion);
+        presentation.setTextViewText(R.id.autofillServiceName, title);
+        presentation.setTextViewText(R.id.autofillUsername, subtitle);
+        return presentation;
+    }
+
+    /**
+     * This method returns the SHA-256 digest of an app's current signing certificates, which is what app
+     * links are keyed by. With several signers, their digests are sorted and joined.
+     * @param context Any context.
+     * @param packageName The app's package name.
+     * @return The digest in hex, or null if the app is not installed or has no signatures.
+     */
+    static String getCertDigest(Context context, String packageName) {
+        try {
+            PackageManager packageManager = context.getPackageManager();
+            Signature[] signatures;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                SigningInfo signingInfo = packageManager.getPackageInfo(packageName,
+                        PackageManager.GET_SIGNING_CERTIFICATES).signingInfo;
+                signatures = signingInfo == null ? null : signingInfo.getApkContentsSigners();
+            } else {
+                signatures = packageManager.getPackageInfo(packageName, PackageManager.GET_SIGNATURES).signatures;
+            }
+            if (signatures == null || signatures.length == 0) {
+                return null;
+            }
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            String[] digests = new String[signatures.length];
+            for (int i = 0; i < signatures.length; i++) {
+                StringBuilder hex = new StringBuilder();
+                for (byte b : sha256.digest(signatures[i].toByteArray())) {
+                    hex.append(String.format("%02x", b));
+                }
+                digests[i] = hex.toString();
+            }
+            Arrays.sort(digests);
+            return String.join(",", digests);
+        } catch (PackageManager.NameNotFoundException | NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * The fields of a login form, as found in the view structure of the app being filled.
+     */
+    private static class LoginFields {
+        AutofillId usernameId;
+        AutofillId passwordId;
+        String webDomain;
+    }
+
+    private static void findLoginFields(AssistStructure.ViewNode node, LoginFields fields) {
+        if (fields.webDomain == null && node.getWebDomain() != null) {
+            fields.webDomain = node.getWebDomain();
+        }
+        if (node.getAutofillId() != null && node.getAutofillType() == View.AUTOFILL_TYPE_TEXT) {
+            if (fields.passwordId == null && isPasswordField(node)) {
+                fields.passwordId = node.getAutofillId();
+            } else if (fields.usernameId == null && isUsernameField(node)) {
+                fields.usernameId = node.getAutofillId();
+            }
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            findLoginFields(node.getChildAt(i), fields);
+        }
+    }
+
+    private static boolean isPasswordField(AssistStructure.ViewNode node) {
+        if (hasHint(node, View.AUTOFILL_HINT_PASSWORD)) {
+            return true;
+        }
+        int inputType = node.getInputType();
+        int variation = inputType & InputType.TYPE_MASK_VARIATION;
+        switch (inputType & InputType.TYPE_MASK_CLASS) {
+            case InputType.TYPE_CLASS_TEXT:
+                if (variation == InputType.TYPE_TEXT_VARIATION_PASSWORD
+                        || variation == InputType.TYPE_TEXT_VARIATION_WEB_PASSWORD
+                        || variation == InputType.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD) {
+                    return true;
+                }
+                break;
+            case InputType.TYPE_CLASS_NUMBER:
+                if (variation == InputType.TYPE_NUMBER_VARIATION_PASSWORD) {
+                    return true;
+                }
+                break;
+        }
+        ViewStructure.HtmlInfo htmlInfo = node.getHtmlInfo();
+        if (htmlInfo != null && htmlInfo.getAttributes() != null) {
+            for (Pair<String, String> attribute : htmlInfo.getAttributes()) {
+                if ("type".equals(attribute.first) && "password".equalsIgnoreCase(attribute.second)) {
+                    return true;
+                }
+            }
+        }
+        return mentions(node, "pass");
+    }
+
+    private static boolean isUsernameField(AssistStructure.ViewNode node) {
+        if (hasHint(node, View.AUTOFILL_HINT_USERNAME) || hasHint(node, View.AUTOFILL_HINT_EMAIL_ADDRESS)) {
+            return true;
+        }
+        int inputType = node.getInputType();
+        if ((inputType & InputType.TYPE_MASK_CLASS) == InputType.TYPE_CLASS_TEXT
+                && (inputType & InputType.TYPE_MASK_VARIATION) == InputType.TYPE_TEXT_VARIATION_EMAIL_ADDRESS) {
+            return true;
+        }
+        return mentions(node, "user") || mentions(node, "email") || mentions(node, "login");
+    }
+
+    private static boolean hasHint(AssistStructure.ViewNode node, String hint) {
+        String[] hints = node.getAutofillHints();
+        if (hints == null) {
+            return false;
+        }
+        for (String candidate : hints) {
+            if (hint.equalsIgnoreCase(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean mentions(AssistStructure.ViewNode node, String word) {
+        return contains(node.getIdEntry(), word) || contains(node.getHint(), word);
+    }
+
+    private static boolean contains(CharSequence text, String word) {
+        return text != null && text.toString().toLowerCase(Locale.ROOT).contains(word);
+    }
+}
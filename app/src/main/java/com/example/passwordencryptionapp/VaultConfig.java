@@ -0,0 +1,69 @@
+package com.example.passwordencryptionapp;
+
+/**
+ * Identifies one vault and the files that belong to it.
+ *
+ * Every vault has its own database file, its own key preferences and its own PIN preferences,
+ * so vaults share nothing but the keystore master key that protects those preferences.
+ * The default vault keeps the original file names, which makes existing installs its data.
+ */
+public class VaultConfig {
+    public static final String DEFAULT_ID = "default";
+
+    private final String id;
+    private final String name;
+
+    /**
+     * Constructor for the VaultConfig class.
+     * @param id The stable identifier used in file names.
+     * @param name The name shown to the user.
+     */
+    public VaultConfig(String id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public String getId() { return id; }
+
+    public String getName() { return name; }
+
+    public boolean isDefault() { return DEFAULT_ID.equals(id); }
+
+    /**
+     * This method returns the name of the vault's SQLite database file.
+     */
+    public String getDatabaseName() {
+        return isDefault() ? "passwords.db" : "passwords_" + id + ".db";
+    }
+
+    /**
+     * This method returns the name of the encrypted preferences holding the vault's data keys.
+     */
+    public String getKeyPrefsName() {
+        return isDefault() ? "encryption_prefs" : "encryption_prefs_" + id;
+    }
+
+    /**
+     * This method returns the name of the encrypted preferences holding the vault's PIN hash and salt.
+     */
+    public String getPinPrefsName() {
+        return isDefault() ? "secure_prefs" : "secure_prefs_" + id;
+    }
+
+    /**
+     * This method returns the name of the plain preferences holding the vault's database settings.
+     */
+    public String getDatabasePrefsName() {
+        return isDefault() ? "database_prefs" : "database_prefs_" + id;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof VaultConfig && id.equals(((VaultConfig) other).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.passwordencryptionapp;
+
+import android.content.Context;
+
+/**
+ * An open vault: its database helper, its encryption helper and whether the user has unlocked it.
+ *
+ * Handles are created and closed by {@link VaultManager}. While a handle stays open its database
+ * connection and keys stay loaded, so switching back to the vault skips opening the file and
+ * reading the keys from the keystore-backed preferences again. Closing a handle closes the
+ * connection and wipes the keys, after which it must not be used. A handle is pinned from
+ * {@link VaultManager#acquire} until the matching {@link VaultManager#release}, and only handles
+ * nobody has pinned are closed to make room for others.
+ */
+public class VaultHandle {
+    private final VaultConfig vault;
+    private final Encryption encryption;
+    private Database database;
+    private volatile boolean unlocked;
+    private boolean closed;
+    private int pins;
+
+    VaultHandle(Context context, VaultConfig vault) {
+        this.vault = vault;
+        this.encryption = new Encryption(context, vault);
+        this.database = new Database(context, vault, encryption);
+    }
+
+    /**
+     * Constructor for a handle over an already opened database, used by the JVM tests.
+     * @param vault The vault.
+     * @param encryption The encryption helper holding the vault's keys.
+     * @param database The vault's database helper.
+     */
+    VaultHandle(VaultConfig vault, Encryption encryption, Database database) {
+        this.vault = vault;
+        this.encryption = encryption;
+        this.database = database;
+    }
+
+    public VaultConfig getVault() { return vault; }
+
+    public Encryption getEncryption() { return encryption; }
+
+    /**
+     * This method returns the vault's database helper.
+     * The connection is opened by the first query and then kept open until the handle is closed.
+     */
+    public synchronized Database getDatabase() {
+        if (closed) {
+            throw new IllegalStateException("Vault " + vault.getName() + " is closed");
+        }
+        return database;
+    }
+
+    /**
+     * This method replaces the database helper, for when the vault's file was rewritten in another mode.
+     * @param context The application context.
+     */
+    synchronized void reopenDatabase(Context context) {
+        database.close();
+        database = new Database(context, vault, encryption);
+    }
+
+    public boolean isUnlocked() { return unlocked; }
+
+    public void setUnlocked(boolean unlocked) { this.unlocked = unlocked; }
+
+    /**
+     * This method locks the vault and wipes its keys, leaving the handle open for tasks still using it.
+     */
+    synchronized void lock() {
+        unlocked = false;
+        encryption.wipeKeys();
+    }
+
+    /**
+     * These methods count the users holding the handle. VaultManager calls them with its lock held.
+     */
+    void pin() { pins++; }
+
+    void unpin() {
+        if (pins == 0) {
+            throw new IllegalStateException("Vault " + vault.getName() + " was released more often than acquired");
+        }
+        pins--;
+    }
+
+    boolean isPinned() { return pins > 0; }
+
+    synchronized boolean isClosed() { return closed; }
+
+    /**
+     * This method closes the database connection, wipes the keys and locks the vault.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        unlocked = false;
+        database.close();
+        encryption.wipeKeys();
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.passwordencryptionapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the user's vaults and which of them are open.
+ *
+ * The list of vaults and the active vault are stored in plain shared preferences; they hold only
+ * ids and names. A vault is opened lazily, the first time something asks for its handle, and a
+ * small LRU keeps the most recently used handles open so switching between two vaults reuses their
+ * connections and keys. Users pin a handle with {@link #acquire} for as long as they use it and
+ * unpin it with {@link #release}. When the LRU is over its size, the least recently used handles
+ * that nobody has pinned are closed, which wipes their keys and locks them; a pinned handle is never
+ * closed under its user, so the LRU can briefly hold more handles until they are released. Locking
+ * wipes the keys of every open vault without closing it. Vaults that are not open cost nothing beyond
+ * their entry in the list.
+ */
+public class VaultManager {
+    private static final String PREFS_NAME = "vaults";
+    private static final String PREF_VAULT_IDS = "vault_ids";
+    private static final String PREF_VAULT_NAME = "vault_name_";
+    private static final String PREF_ACTIVE_VAULT = "active_vault";
+    private static final String PREF_NEXT_ID = "next_vault_id";
+    private static final String DEFAULT_NAME = "Personal";
+    private static final int MAX_OPEN_VAULTS = 2;
+
+    private static VaultManager instance;
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final HandleFactory handleFactory;
+    private final Map<String, VaultHandle> openVaults = new LinkedHashMap<>(4, 0.75f, true);
+
+    /**
+     * Interface for opening a vault's handle. The app opens the real files and keys; the JVM tests
+     * pass in handles over test databases.
+     */
+    interface HandleFactory {
+        VaultHandle open(VaultConfig vault);
+    }
+
+    private VaultManager(Context context) {
+        this(context, vault -> new VaultHandle(context, vault));
+    }
+
+    VaultManager(Context context, HandleFactory handleFactory) {
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.handleFactory = handleFactory;
+    }
+
+    /**
+     * This method returns the process-wide vault manager.
+     * @param context Any context; only its application context is kept.
+     */
+    public static synchronized VaultManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new VaultManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * This method returns every vault, the default vault first and the rest in creation order.
+     */
+    public synchronized List<VaultConfig> getVaults() {
+        List<VaultConfig> vaults = new ArrayList<>();
+        vaults.add(getVault(VaultConfig.DEFAULT_ID));
+        for (String id : preferences.getString(PREF_VAULT_IDS, "").split(",")) {
+            if (!id.isEmpty()) {
+                vaults.add(getVault(id));
+            }
+        }
+        return vaults;
+    }
+
+    /**
+     * This method adds a new, empty vault. Its database and keys are created when it is first opened.
+     * @param name The name shown to the user.
+     * @return The new vault.
+     */
+    public synchronized VaultConfig createVault(String name) {
+        long nextId = preferences.getLong(PREF_NEXT_ID, 1);
+        String id = "vault" + nextId;
+        String ids = preferences.getString(PREF_VAULT_IDS, "");
+        preferences.edit()
+                .putLong(PREF_NEXT_ID, nextId + 1)
+                .putString(PREF_VAULT_IDS, ids.isEmpty() ? id : ids + "," + id)
+                .putString(PREF_VAULT_NAME + id, name)
+                .commit();
+        return new VaultConfig(id, name);
+    }
+
+    /**
+     * This method returns the vault the app opens into.
+     */
+    public synchronized VaultConfig getActiveVault() {
+        VaultConfig vault = getVault(preferences.getString(PREF_ACTIVE_VAULT, VaultConfig.DEFAULT_ID));
+        return vault == null ? getVault(VaultConfig.DEFAULT_ID) : vault;
+    }
+
+    /**
+     * This method makes a vault the one the app opens into. It does not open the vault.
+     * @param vault The vault to make active.
+     */
+    public synchronized void setActiveVault(VaultConfig vault) {
+        preferences.edit().putString(PREF_ACTIVE_VAULT, vault.getId()).apply();
+    }
+
+    /**
+     * This method returns the open handle for a vault, opening it if needed, and pins it.
+     * The handle stays open until it is released, so every acquire must be matched by one release.
+     * Opening may close the least recently used other vault that nobody has pinned.
+     * @param vault The vault to open.
+     * @return The vault's handle.
+     */
+    public synchronized VaultHandle acquire(VaultConfig vault) {
+        VaultHandle handle = openVaults.get(vault.getId());
+        if (handle == null) {
+            handle = handleFactory.open(vault);
+            openVaults.put(vault.getId(), handle);
+        }
+        handle.pin();
+        closeIdleHandles();
+        return handle;
+    }
+
+    /**
+     * This method pins and returns the handle for the active vault, opening it if needed.
+     */
+    public VaultHandle acquireActiveVault() {
+        return acquire(getActiveVault());
+    }
+
+    /**
+     * This method unpins a handle returned by acquire. The handle stays open while it fits in the LRU.
+     * @param handle The handle to release; it must not be used afterwards.
+     */
+    public synchronized void release(VaultHandle handle) {
+        handle.unpin();
+        closeIdleHandles();
+    }
+
+    /**
+     * This method releases a handle once an executor that uses it has run its last task, so a task still
+     * running when its screen is destroyed keeps the vault open. Call it after shutting the executor down.
+     * @param executor The executor, already shut down.
+     * @param handle The handle to release.
+     */
+    public void releaseAfter(ExecutorService executor, VaultHandle handle) {
+        new Thread(() -> {
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    // Keep waiting; the task has to finish before the keys can be wiped.
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release(handle);
+        }, "vault-release").start();
+    }
+
+    /**
+     * This method closes the least recently used handles nobody has pinned until the LRU is back to its size.
+     */
+    private void closeIdleHandles() {
+        Iterator<VaultHandle> handles = openVaults.values().iterator();
+        while (openVaults.size() > MAX_OPEN_VAULTS && handles.hasNext()) {
+            VaultHandle handle = handles.next();
+            if (!handle.isPinned()) {
+                handle.close();
+                handles.remove();
+            }
+        }
+    }
+
+    /**
+     * This method returns whether a vault is open and unlocked, without opening it.
+     * @param vault The vault to check.
+     */
+    public synchronized boolean isUnlocked(VaultConfig vault) {
+        VaultHandle handle = openVaults.get(vault.getId());
+        return handle != null && handle.isUnlocked();
+    }
+
+    /**
+     * This method locks every open vault and wipes the keys they hold in memory, so the PIN must be entered
+     * again before any of them is shown. The handles stay open, since tasks may still be using them; a task
+     * that needs a key after this reads it from the keystore-backed preferences again.
+     */
+    public synchronized void lockAll() {
+        for (VaultHandle handle : openVaults.values()) {
+            handle.lock();
+        }
+    }
+
+    /**
+     * This method converts a vault's database to page encryption, closing and reopening its connection around the copy.
+     * This runs blocking I/O, so call it off the main thread.
+     * @param vault The vault to convert.
+     * @throws GeneralSecurityException If the database key or a password cannot be decrypted.
+     * @throws IOException If the key cannot be stored or the file cannot be replaced.
+     */
+    public synchronized void enablePageEncryption(VaultConfig vault) throws GeneralSecurityException, IOException {
+        VaultHandle handle = acquire(vault);
+        handle.getDatabase().close();
+        try {
+            Database.enablePageEncryption(context, vault, handle.getEncryption());
+        } finally {
+            handle.reopenDatabase(context);
+            release(handle);
+        }
+    }
+
+    /**
+     * This method looks up a vault by id.
+     * @param id The vault id.
+     * @return The vault, or null if there is no vault with that id.
+     */
+    public synchronized VaultConfig getVault(String id) {
+        if (VaultConfig.DEFAULT_ID.equals(id)) {
+            return new VaultConfig(id, DEFAULT_NAME);
+        }
+        String name = preferences.getString(PREF_VAULT_NAME + id, null);
+        return name == null ? null : new VaultConfig(id, name);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.passwordencryptionapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the auto-lock decisions, with a fake clock and a fake timer.
+ */
+public class AutoLockSchedulerTest {
+    private static final long IDLE = AutoLockScheduler.IDLE_PURGE_MILLIS;
+    private static final long BACKGROUND = AutoLockScheduler.BACKGROUND_LOCK_MILLIS;
+
+    private FakeTimer timer;
+    private int purges;
+    private int locks;
+    private AutoLockScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        timer = new FakeTimer();
+        scheduler = new AutoLockScheduler(() -> timer.now, timer, new AutoLockScheduler.Listener() {
+            @Override
+            public void onPurgePlaintext() {
+                purges++;
+            }
+
+            @Override
+            public void onLockVault() {
+                locks++;
+            }
+        });
+    }
+
+    @Test
+    public void idlePlaintextIsPurged() {
+        scheduler.plaintextShown();
+
+        timer.advance(IDLE - 1);
+        assertEquals(0, purges);
+        timer.advance(1);
+
+        assertEquals(1, purges);
+        assertFalse(scheduler.isPlaintextShown());
+        assertEquals(0, locks);
+        assertTrue(timer.tasks.isEmpty());
+    }
+
+    @Test
+    public void interactionPostponesPurgeWithoutRescheduling() {
+        scheduler.plaintextShown();
+        for (int i = 0; i < 1000; i++) {
+            timer.advance(IDLE / 2000);
+            scheduler.userInteraction();
+        }
+        assertEquals(1, timer.schedules);
+
+        timer.advance(IDLE / 2);
+        assertEquals(0, purges);
+        assertEquals(2, timer.schedules);
+        timer.advance(IDLE / 2);
+        assertEquals(1, purges);
+    }
+
+    @Test
+    public void hiddenPlaintextIsNotPurgedAgain() {
+        scheduler.plaintextShown();
+        scheduler.plaintextHidden();
+
+        timer.advance(10 * IDLE);
+        scheduler.movedToBackground();
+
+        assertEquals(0, purges);
+        assertTrue(timer.tasks.isEmpty());
+    }
+
+    @Test
+    public void backgroundPurgesAtOnceAndLocksAfterTimeout() {
+        scheduler.plaintextShown();
+        scheduler.movedToBackground();
+        assertEquals(1, purges);
+        assertTrue(timer.tasks.isEmpty());
+
+        timer.advance(BACKGROUND - 1);
+        scheduler.movedToForeground();
+        assertEquals(0, locks);
+
+        scheduler.movedToBackground();
+        timer.advance(BACKGROUND);
+        scheduler.movedToForeground();
+        assertEquals(1, locks);
+        assertEquals(1, purges);
+    }
+
+    @Test
+    public void foregroundWithoutBackgroundDoesNotLock() {
+        timer.advance(10 * BACKGROUND);
+        scheduler.movedToForeground();
+        scheduler.movedToForeground();
+
+        assertEquals(0, locks);
+    }
+
+    @Test
+    public void screenOffPurgesAndLocks() {
+        scheduler.plaintextShown();
+
+        scheduler.screenOff();
+
+        assertEquals(1, purges);
+        assertEquals(1, locks);
+        assertTrue(timer.tasks.isEmpty());
+    }
+
+    @Test
+    public void stopCancelsIdleCheck() {
+        scheduler.plaintextShown();
+        scheduler.movedToBackground();
+        scheduler.plaintextShown();
+
+        scheduler.stop();
+        timer.advance(10 * IDLE);
+        scheduler.movedToForeground();
+
+        assertEquals(1, purges);
+        assertEquals(0, locks);
+    }
+
+    /**
+     * A timer that runs tasks when the test moves its clock forward.
+     */
+    private static class FakeTimer implements AutoLockScheduler.Timer {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Long> dueTimes = new ArrayList<>();
+        long now = 1_000;
+        int schedules;
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            schedules++;
+            tasks.add(task);
+            dueTimes.add(now + delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            int index;
+            while ((index = tasks.indexOf(task)) >= 0) {
+                tasks.remove(index);
+                dueTimes.remove(index);
+            }
+        }
+
+        void advance(long millis) {
+            long target = now + millis;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < dueTimes.size(); i++) {
+                    if (dueTimes.get(i) <= target && (next < 0 || dueTimes.get(i) < dueTimes.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                now = dueTimes.remove(next);
+                tasks.remove(next).run();
+            }
+            now = target;
+        }
+    }
+}
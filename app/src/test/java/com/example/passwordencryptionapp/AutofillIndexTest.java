@@ -0,0 +1,101 @@
+package com.example.passwordencryptionapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the autofill matching rules and incremental index updates.
+ */
+public class AutofillIndexTest {
+    private static final String CHROME = "com.android.chrome";
+    private static final String GITHUB_APP = "com.github.android";
+    private static final String GITHUB_DIGEST = "1f2e3d4c";
+    private static final String OTHER_DIGEST = "9a8b7c6d";
+
+    private AutofillIndex index;
+
+    @Before
+    public void setUp() {
+        Map<Integer, String> serviceNames = new HashMap<>();
+        serviceNames.put(1, "GitHub");
+        serviceNames.put(2, "https://accounts.google.com/signin");
+        serviceNames.put(3, "www.bbc.co.uk");
+        serviceNames.put(4, "Bank of America");
+        index = AutofillIndex.build(serviceNames,
+                Collections.singletonList(new AppLink(1, GITHUB_APP, GITHUB_DIGEST)));
+    }
+
+    @Test
+    public void matchesLinkedAppsBySignature() {
+        assertEquals(Collections.singletonList(1), index.find(GITHUB_APP, GITHUB_DIGEST, null));
+        // The same package name signed by someone else is another app.
+        assertTrue(index.find(GITHUB_APP, OTHER_DIGEST, null).isEmpty());
+        assertTrue(index.find(GITHUB_APP, null, null).isEmpty());
+    }
+
+    @Test
+    public void neverMatchesAppsByName() {
+        assertTrue(index.find("com.evil.github", OTHER_DIGEST, null).isEmpty());
+        assertTrue(index.find("com.github.evil", OTHER_DIGEST, null).isEmpty());
+        assertTrue(index.find("com.infonow.bofa", OTHER_DIGEST, null).isEmpty());
+    }
+
+    @Test
+    public void ignoresWebDomainsFromApps() {
+        assertTrue(index.find("com.evil.app", OTHER_DIGEST, "accounts.google.com").isEmpty());
+        assertTrue(index.find(null, null, "accounts.google.com").isEmpty());
+        assertEquals(Collections.singletonList(1), index.find(GITHUB_APP, GITHUB_DIGEST, "accounts.google.com"));
+    }
+
+    @Test
+    public void matchesSubdomainsThroughRegistrableDomain() {
+        assertEquals(Collections.singletonList(2), index.find(CHROME, null, "mail.google.com"));
+        assertEquals(Collections.singletonList(3), index.find("org.mozilla.firefox", null, "news.bbc.co.uk"));
+    }
+
+    @Test
+    public void prefersExactHostOverRegistrableDomain() {
+        index.put(5, "mail.google.com");
+        assertEquals(Arrays.asList(5, 2), index.find(CHROME, null, "mail.google.com"));
+        assertEquals(Arrays.asList(2, 5), index.find(CHROME, null, "accounts.google.com"));
+    }
+
+    @Test
+    public void neverMatchesDomainsByName() {
+        assertTrue(index.find(CHROME, null, "github.com").isEmpty());
+        assertTrue(index.find(CHROME, null, "bankofamerica.com").isEmpty());
+        // Same site label, different registrable domain.
+        assertTrue(index.find(CHROME, null, "google.evil.com").isEmpty());
+        assertTrue(index.find(CHROME, null, "bbc.co.evil").isEmpty());
+    }
+
+    @Test
+    public void browsersAreNeverMatchedByLink() {
+        index.link(4, CHROME, OTHER_DIGEST);
+        assertTrue(index.find(CHROME, OTHER_DIGEST, null).isEmpty());
+        assertTrue(index.find(CHROME, OTHER_DIGEST, "example.org").isEmpty());
+    }
+
+    @Test
+    public void followsRenamesLinksAndDeletes() {
+        index.put(1, "gitlab.com");
+        assertEquals(Collections.singletonList(1), index.find(CHROME, null, "gitlab.com"));
+        assertEquals(Collections.singletonList(1), index.find(GITHUB_APP, GITHUB_DIGEST, null));
+
+        index.link(4, "com.infonow.bofa", OTHER_DIGEST);
+        assertEquals(Collections.singletonList(4), index.find("com.infonow.bofa", OTHER_DIGEST, null));
+        assertEquals(4, index.size());
+
+        index.remove(1);
+        assertTrue(index.find(CHROME, null, "gitlab.com").isEmpty());
+        assertTrue(index.find(GITHUB_APP, GITHUB_DIGEST, null).isEmpty());
+        assertEquals(3, index.size());
+    }
+}
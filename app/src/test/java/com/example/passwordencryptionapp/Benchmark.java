@@ -0,0 +1,8 @@
+package com.example.passwordencryptionapp;
+
+/**
+ * JUnit category for tests that measure time. They are left out of the default unit test run, since timings
+ * are unreliable on shared machines, and run on their own with {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+ */
+public interface Benchmark {
+}
@@ -0,0 +1,302 @@
+package com.example.passwordencryptionapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for building, opening and searching the breach index, on small hash lists written to
+ * temporary files.
+ */
+public class BreachIndexTest {
+    private static final int HEADER_SIZE = 16;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private File indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        indexFile = File.createTempFile("breach", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        indexFile.delete();
+    }
+
+    @Test
+    public void findsListedPasswordsOnly() throws IOException {
+        build(sortedLines("password", "123456", "letmein") + "\n");
+
+        try (BreachIndex index = BreachIndex.open(indexFile)) {
+            assertEquals(3, index.size());
+            assertTrue(index.containsPassword("password"));
+            assertTrue(index.containsPassword("123456"));
+            assertTrue(index.containsPassword("letmein"));
+            assertFalse(index.containsPassword("Password"));
+            assertFalse(index.containsPassword("correct horse battery staple"));
+        }
+    }
+
+    @Test
+    public void acceptsCountsLowerCaseAndBlankLines() throws IOException {
+        String password = hex(BreachIndex.sha1("password"));
+        build("\n" + password.toLowerCase() + ":3861493\n\n");
+
+        try (BreachIndex index = BreachIndex.open(indexFile)) {
+            assertEquals(1, index.size());
+            assertTrue(index.containsHash(BreachIndex.sha1("password")));
+        }
+    }
+
+    @Test
+    public void emptyListGivesEmptyIndex() throws IOException {
+        build("");
+
+        try (BreachIndex index = BreachIndex.open(indexFile)) {
+            assertEquals(0, index.size());
+            assertFalse(index.containsPassword("password"));
+            assertFalse(index.containsHash(hash("0000", "0000000000000000")));
+            assertFalse(index.containsHash(hash("FFFF", "FFFFFFFFFFFFFFFF")));
+        }
+    }
+
+    @Test
+    public void searchesFirstAndLastBucketsAndTheirEdges() throws IOException {
+        build(line("0000", "0000000000000000")
+                + line("0000", "FFFFFFFFFFFFFFFF")
+                + line("00FF", "8000000000000000")
+                + line("0100", "0000000000000001")
+                + line("FFFF", "0000000000000000")
+                + line("FFFF", "FFFFFFFFFFFFFFFF"));
+
+        try (BreachIndex index = BreachIndex.open(indexFile)) {
+            assertEquals(6, index.size());
+            assertTrue(index.containsHash(hash("0000", "0000000000000000")));
+            assertTrue(index.containsHash(hash("0000", "FFFFFFFFFFFFFFFF")));
+            assertTrue(index.containsHash(hash("00FF", "8000000000000000")));
+            assertTrue(index.containsHash(hash("0100", "0000000000000001")));
+            assertTrue(index.containsHash(hash("FFFF", "0000000000000000")));
+            assertTrue(index.containsHash(hash("FFFF", "FFFFFFFFFFFFFFFF")));
+
+            // Neighbours of each record, including keys that only differ in the sign bit.
+            assertFalse(index.containsHash(hash("0000", "0000000000000001")));
+            assertFalse(index.containsHash(hash("0000", "7FFFFFFFFFFFFFFF")));
+            assertFalse(index.containsHash(hash("0001", "0000000000000000")));
+            assertFalse(index.containsHash(hash("00FF", "7FFFFFFFFFFFFFFF")));
+            assertFalse(index.containsHash(hash("0100", "0000000000000000")));
+            assertFalse(index.containsHash(hash("FFFE", "FFFFFFFFFFFFFFFF")));
+            assertFalse(index.containsHash(hash("FFFF", "FFFFFFFFFFFFFFFE")));
+        }
+    }
+
+    @Test
+    public void onlyTheIndexedPrefixIsCompared() throws IOException {
+        build(line("1234", "0123456789ABCDEF"));
+
+        byte[] samePrefix = hash("1234", "0123456789ABCDEF");
+        Arrays.fill(samePrefix, 10, 20, (byte) 0x5A);
+        try (BreachIndex index = BreachIndex.open(indexFile)) {
+            assertTrue(index.containsHash(samePrefix));
+        }
+    }
+
+    @Test
+    public void duplicatesAreStoredOnce() throws IOException {
+        String password = hex(BreachIndex.sha1("password"));
+        String other = hex(BreachIndex.sha1("123456"));
+        String first = password.compareTo(other) < 0 ? password : other;
+        String second = first.equals(password) ? other : password;
+        build(first + ":1\n" + first + ":7\n" + first.toLowerCase() + "\n" + second + "\n" + second + "\n");
+
+        try (BreachIndex index = BreachIndex.open(indexFile)) {
+            assertEquals(2, index.size());
+            assertTrue(index.containsPassword("password"));
+            assertTrue(index.containsPassword("123456"));
+        }
+    }
+
+    @Test
+    public void rejectsMalformedLines() {
+        String valid = hex(BreachIndex.sha1("password"));
+        assertBuildFails(valid.substring(0, 39) + "\n");
+        assertBuildFails(valid.substring(0, 10) + "G" + valid.substring(11) + "\n");
+        assertBuildFails("not a hash at all, just some forty chars\n");
+    }
+
+    @Test
+    public void rejectsUnsortedLists() {
+        assertBuildFails(line("0001", "0000000000000000") + line("0000", "FFFFFFFFFFFFFFFF"));
+        assertBuildFails(line("0000", "FFFFFFFFFFFFFFFF") + line("0000", "7FFFFFFFFFFFFFFF"));
+    }
+
+    @Test
+    public void openRejectsOtherAndDamagedFiles() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(indexFile)) {
+            out.write("not an index".getBytes(StandardCharsets.US_ASCII));
+        }
+        assertOpenFails();
+
+        build(sortedLines("password", "123456"));
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertOpenFails();
+
+        build(sortedLines("password"));
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+            raf.seek(4);
+            raf.writeInt(2);
+        }
+        assertOpenFails();
+
+        build(sortedLines("password"));
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+            raf.seek(8);
+            raf.writeLong(2);
+        }
+        assertOpenFails();
+    }
+
+    @Test
+    public void indexSizeIsHeaderFanOutAndEightBytesPerHash() throws IOException {
+        build(sortedLines("a", "b", "c", "d", "e"));
+
+        assertEquals(HEADER_SIZE + 65537 * 8 + 5 * 8, indexFile.length());
+    }
+
+    /**
+     * Lookups into a one million hash index, half of them for listed hashes, must average under a microsecond.
+     * Being timing-based, it only runs with the benchmarks.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void lookupsTakeUnderAMicrosecond() throws IOException {
+        int count = 1_000_000;
+        Random random = new Random(26);
+        byte[][] hashes = new byte[count][20];
+        for (byte[] hash : hashes) {
+            random.nextBytes(hash);
+        }
+        Arrays.sort(hashes, BreachIndexTest::compareUnsigned);
+        StringBuilder list = new StringBuilder(count * 41);
+        for (byte[] hash : hashes) {
+            list.append(hex(hash)).append('\n');
+        }
+        build(list.toString());
+
+        byte[][] probes = new byte[200_000][];
+        for (int i = 0; i < probes.length; i++) {
+            if (i % 2 == 0) {
+                probes[i] = hashes[random.nextInt(count)];
+            } else {
+                probes[i] = new byte[20];
+                random.nextBytes(probes[i]);
+            }
+        }
+        try (BreachIndex index = BreachIndex.open(indexFile)) {
+            int found = 0;
+            for (int round = 0; round < 5; round++) {
+                found = 0;
+                for (byte[] probe : probes) {
+                    if (index.containsHash(probe)) {
+                        found++;
+                    }
+                }
+            }
+            long start = System.nanoTime();
+            for (byte[] probe : probes) {
+                index.containsHash(probe);
+            }
+            double nanosPerLookup = (System.nanoTime() - start) / (double) probes.length;
+
+            assertTrue(found >= probes.length / 2);
+            assertTrue("Lookup took " + nanosPerLookup + " ns", nanosPerLookup < 1_000);
+        }
+    }
+
+    private void build(String hashList) throws IOException {
+        try (InputStream in = new ByteArrayInputStream(hashList.getBytes(StandardCharsets.US_ASCII))) {
+            BreachIndex.build(in, indexFile);
+        }
+    }
+
+    private void assertBuildFails(String hashList) {
+        try {
+            build(hashList);
+            fail("Expected the hash list to be rejected: " + hashList);
+        } catch (IOException expected) {
+            // Rejected.
+        }
+    }
+
+    private void assertOpenFails() {
+        try {
+            BreachIndex.open(indexFile).close();
+            fail("Expected the file to be rejected");
+        } catch (IOException expected) {
+            // Rejected.
+        }
+    }
+
+    private static String sortedLines(String... passwords) {
+        String[] lines = new String[passwords.length];
+        for (int i = 0; i < passwords.length; i++) {
+            lines[i] = hex(BreachIndex.sha1(passwords[i]));
+        }
+        Arrays.sort(lines);
+        StringBuilder list = new StringBuilder();
+        for (String line : lines) {
+            list.append(line).append('\n');
+        }
+        return list.toString();
+    }
+
+    /**
+     * This method returns a hash list line for the given bucket and key, padded with zeros to a full hash.
+     */
+    private static String line(String bucket, String key) {
+        return bucket + key + "00000000000000000000" + "\n";
+    }
+
+    private static byte[] hash(String bucket, String key) {
+        String hex = bucket + key + "00000000000000000000";
+        byte[] hash = new byte[20];
+        for (int i = 0; i < 20; i++) {
+            hash[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return hash;
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length; i++) {
+            int comparison = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+}
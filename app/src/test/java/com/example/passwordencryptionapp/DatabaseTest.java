@@ -0,0 +1,531 @@
+package com.example.passwordencryptionapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests for Database and Encryption on the platform SQLite, through the same code paths the Vault uses.
+ */
+@RunWith(RobolectricTestRunner.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class DatabaseTest {
+    private VaultFixtures.Fixture fixture;
+
+    @After
+    public void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    public void addedEntryLoadsAndDecrypts() throws Exception {
+        fixture = VaultFixtures.open("add");
+        PasswordEntry entry = new PasswordEntry(0, "Mail", "me@example.com", null);
+        entry.setFolder("Personal");
+        entry.getTags().add("email");
+
+        long id = fixture.database.addPasswordEntry(entry, "s3cret");
+
+        List<PasswordEntry> entries = fixture.database.getAllPasswordEntries();
+        assertEquals(1, entries.size());
+        PasswordEntry loaded = entries.get(0);
+        assertEquals(id, loaded.getId());
+        assertEquals("Personal", loaded.getFolder());
+        assertEquals(Arrays.asList("email"), loaded.getTags());
+        assertEquals("s3cret", fixture.database.decryptPassword(loaded));
+        assertEquals(id, entry.getId());
+        assertNull(loaded.getPassword());
+        assertEquals(fixture.database.getPasswordEntry((int) id).getPassword(), entry.getPassword());
+        assertTrue(fixture.database.verifyIntegrity());
+    }
+
+    @Test
+    public void editKeepsPreviousPasswordInHistory() throws Exception {
+        fixture = VaultFixtures.open("edit");
+        PasswordEntry entry = new PasswordEntry(0, "Bank", "me", null);
+        fixture.database.addPasswordEntry(entry, "first");
+
+        fixture.database.updatePasswordEntry(entry, "second");
+        entry.setServiceName("Bank (old)");
+        fixture.database.updatePasswordEntry(entry, null);
+
+        List<PasswordVersion> history = fixture.database.getPasswordHistory(entry.getId());
+        assertEquals(1, history.size());
+        assertEquals(Arrays.asList("first"), fixture.encryption.decryptHistory(history));
+        PasswordEntry stored = fixture.database.getPasswordEntry(entry.getId());
+        assertEquals("second", fixture.encryption.decryptForRow(stored.getPassword(), stored.getId(), "Bank (old)"));
+        assertTrue(fixture.database.verifyEntry(entry.getId()));
+    }
+
+    @Test
+    public void deleteLeavesTombstoneAndValidTree() throws Exception {
+        fixture = VaultFixtures.create("delete", 20, 1);
+
+        fixture.database.deletePasswordEntry(7);
+
+        assertNull(fixture.database.getPasswordEntry(7));
+        List<SyncRecord> changes = new ArrayList<>();
+        fixture.database.forEachChange(20, fixture.database.getMaxSeq(), changes::add);
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0).isDeleted());
+        assertTrue(fixture.database.verifyEntry(7));
+        assertTrue(fixture.database.verifyIntegrity());
+    }
+
+    @Test
+    public void changesAreStreamedInOrderWithTheirTags() throws Exception {
+        fixture = VaultFixtures.create("stream", 40, 8);
+        Map<Integer, PasswordEntry> entries = new HashMap<>();
+        for (PasswordEntry entry : fixture.database.getAllPasswordEntries()) {
+            entries.put(entry.getId(), entry);
+        }
+        Map<String, Integer> idsBySyncId = new HashMap<>();
+        Cursor cursor = fixture.database.getReadableDatabase().query("SELECT sync_id, id FROM password_entries");
+        while (cursor.moveToNext()) {
+            idsBySyncId.put(cursor.getString(0), cursor.getInt(1));
+        }
+        cursor.close();
+
+        List<SyncRecord> changes = new ArrayList<>();
+        fixture.database.forEachChange(0, fixture.database.getMaxSeq(), changes::add);
+
+        assertEquals(40, changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            SyncRecord record = changes.get(i);
+            assertTrue(i == 0 || changes.get(i - 1).getSeq() < record.getSeq());
+            PasswordEntry expected = entries.get(idsBySyncId.get(record.getSyncId()));
+            PasswordEntry sealed = SyncRecord.decodeEntry(
+                    fixture.encryption.openSyncPayload(record.getPayload(), record.getSyncId()));
+            assertEquals(expected.getServiceName(), sealed.getServiceName());
+            assertEquals(fixture.database.decryptPassword(expected), sealed.getPassword());
+            List<String> expectedTags = new ArrayList<>(expected.getTags());
+            Collections.sort(expectedTags);
+            assertEquals(expectedTags, sealed.getTags());
+        }
+
+        // A visitor that fails, as a closed connection does, stops the read.
+        List<SyncRecord> visited = new ArrayList<>();
+        try {
+            fixture.database.forEachChange(0, fixture.database.getMaxSeq(), record -> {
+                visited.add(record);
+                throw new IOException("Connection closed");
+            });
+            fail("Expected the visitor's exception");
+        } catch (IOException expected) {
+            assertEquals(1, visited.size());
+        }
+    }
+
+    @Test
+    public void appLinksAreKeptOnceAndRemovedWithTheirEntry() throws Exception {
+        fixture = VaultFixtures.create("links", 3, 9);
+
+        fixture.database.linkApp(1, "com.github.android", "1f2e3d4c");
+        fixture.database.linkApp(1, "com.github.android", "1f2e3d4c");
+        fixture.database.linkApp(2, "com.github.android", "9a8b7c6d");
+
+        List<AppLink> links = fixture.database.getAppLinks();
+        assertEquals(2, links.size());
+        AutofillIndex index = AutofillIndex.build(fixture.database.getServiceNames(), links);
+        assertEquals(Collections.singletonList(1), index.find("com.github.android", "1f2e3d4c", null));
+
+        fixture.database.deletePasswordEntry(1);
+
+        links = fixture.database.getAppLinks();
+        assertEquals(1, links.size());
+        assertEquals(2, links.get(0).getEntryId());
+        assertEquals("9a8b7c6d", links.get(0).getCertDigest());
+    }
+
+    @Test
+    public void detectsEntriesChangedOutsideTheApp() throws Exception {
+        fixture = VaultFixtures.create("tamper", 50, 2);
+        SupportSQLiteDatabase db = fixture.database.getWritableDatabase();
+
+        db.execSQL("UPDATE password_entries SET username = 'attacker' WHERE id = 12");
+
+        assertFalse(fixture.database.verifyEntry(12));
+        assertTrue(fixture.database.verifyEntry(13));
+        assertFalse(fixture.database.verifyIntegrity());
+    }
+
+    @Test
+    public void passwordMovedToAnotherEntryDoesNotDecrypt() throws Exception {
+        fixture = VaultFixtures.create("swap", 2, 3);
+        SupportSQLiteDatabase db = fixture.database.getWritableDatabase();
+        db.execSQL("UPDATE password_entries SET password = (SELECT password FROM password_entries WHERE id = 1) WHERE id = 2");
+
+        PasswordEntry moved = fixture.database.getPasswordEntry(2);
+        try {
+            fixture.encryption.decryptForRow(moved.getPassword(), moved.getId(), moved.getServiceName());
+            fail("Expected the moved password to be rejected");
+        } catch (GeneralSecurityException expected) {
+            assertFalse(fixture.database.verifyIntegrity());
+        }
+    }
+
+    @Test
+    public void unboundAndPlaintextPasswordsAreRejected() throws Exception {
+        fixture = VaultFixtures.create("downgrade", 3, 7);
+        SupportSQLiteDatabase db = fixture.database.getWritableDatabase();
+        db.execSQL("UPDATE password_entries SET password = ? WHERE id = 1", new Object[]{fixture.encryption.encrypt("chosen")});
+        db.execSQL("UPDATE password_entries SET password = 'chosen' WHERE id = 2");
+
+        for (int id = 1; id <= 2; id++) {
+            PasswordEntry downgraded = fixture.database.getPasswordEntry(id);
+            try {
+                fixture.database.decryptPassword(downgraded);
+                fail("Expected the downgraded password of entry " + id + " to be rejected");
+            } catch (GeneralSecurityException expected) {
+                assertFalse(fixture.database.verifyEntry(id));
+            }
+        }
+        assertFalse(fixture.database.decryptPassword(fixture.database.getPasswordEntry(3)).isEmpty());
+    }
+
+    @Test
+    public void historyValuesOnlyDecryptWhereTheyWereWritten() throws Exception {
+        fixture = VaultFixtures.open("history_binding");
+        PasswordEntry first = new PasswordEntry(0, "Mail", "me", null);
+        PasswordEntry second = new PasswordEntry(0, "Bank", "me", null);
+        fixture.database.addPasswordEntry(first, "mail-1");
+        fixture.database.addPasswordEntry(second, "bank-1");
+        fixture.database.updatePasswordEntry(first, "mail-2");
+        fixture.database.updatePasswordEntry(first, "mail-3");
+        fixture.database.updatePasswordEntry(second, "bank-2");
+        SupportSQLiteDatabase db = fixture.database.getWritableDatabase();
+        List<PasswordVersion> mailHistory = fixture.database.getPasswordHistory(first.getId());
+        assertEquals(Arrays.asList("mail-2", "mail-1"), fixture.encryption.decryptHistory(mailHistory));
+
+        // An old password copied over the current one.
+        db.execSQL("UPDATE password_entries SET password = ? WHERE id = ?",
+                new Object[]{mailHistory.get(1).getEncryptedPassword(), first.getId()});
+        try {
+            fixture.database.decryptPassword(fixture.database.getPasswordEntry(first.getId()));
+            fail("Expected a history value to be rejected as a password");
+        } catch (GeneralSecurityException expected) {
+            assertFalse(fixture.database.verifyEntry(first.getId()));
+        }
+
+        // A version moved to another entry's history, and two versions of one entry swapped.
+        db.execSQL("UPDATE entry_history SET password = ? WHERE entry_id = ?",
+                new Object[]{mailHistory.get(0).getEncryptedPassword(), second.getId()});
+        db.execSQL("UPDATE entry_history SET password = ? WHERE id = ?",
+                new Object[]{mailHistory.get(0).getEncryptedPassword(), mailHistory.get(1).getId()});
+        for (PasswordEntry entry : Arrays.asList(first, second)) {
+            try {
+                fixture.encryption.decryptHistory(fixture.database.getPasswordHistory(entry.getId()));
+                fail("Expected a moved history value to be rejected");
+            } catch (GeneralSecurityException expected) {
+                // Rejected.
+            }
+        }
+    }
+
+    @Test
+    public void entryOrderMatchesEverySortGroupingAndTag() throws Exception {
+        fixture = VaultFixtures.create("order", 300, 8);
+        // Names that only differ in case, and uses recorded through the app, on top of the synthetic ones.
+        for (String serviceName : Arrays.asList("mail 7", "MAIL 7", "Mail 7")) {
+            PasswordEntry entry = new PasswordEntry(0, serviceName, "me", null);
+            entry.setFolder("Work");
+            entry.getTags().add("shared");
+            fixture.database.addPasswordEntry(entry, "s3cret");
+        }
+        long now = System.currentTimeMillis();
+        fixture.database.recordEntryUse(301, now);
+        fixture.database.recordEntryUse(302, now);
+        fixture.database.recordEntryUse(302, now);
+        fixture.database.recordEntryUse(5, now);
+
+        List<PasswordEntry> entries = fixture.database.getAllPasswordEntries();
+        List<String> tags = new ArrayList<>(fixture.database.getAllTags());
+        tags.add(null);
+        tags.add("unused");
+        for (Database.SortMode sortMode : Database.SortMode.values()) {
+            for (boolean groupByFolder : new boolean[]{false, true}) {
+                for (String tag : tags) {
+                    String combination = sortMode + ", grouped " + groupByFolder + ", tag " + tag;
+                    List<PasswordEntry> expected = expectedOrder(entries, sortMode, groupByFolder, tag);
+                    EntryOrder order = fixture.database.getEntryOrder(sortMode, groupByFolder, tag);
+
+                    assertEquals(combination, expected.size(), order.size());
+                    assertEquals(combination, groupByFolder, order.isGrouped());
+                    for (int position = 0; position < expected.size(); position++) {
+                        assertEquals(combination, expected.get(position).getId(), order.getId(position));
+                        if (groupByFolder) {
+                            assertEquals(combination, expected.get(position).getFolder(), order.getFolder(position));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void entryOrderIsReadFromACoveringIndexWithoutSorting() throws Exception {
+        fixture = VaultFixtures.create("order_plan", 200, 12);
+        SupportSQLiteDatabase db = fixture.database.getReadableDatabase();
+        String tag = fixture.database.getAllTags().get(0);
+
+        for (Database.SortMode sortMode : Database.SortMode.values()) {
+            for (boolean groupByFolder : new boolean[]{false, true}) {
+                for (String filter : Arrays.asList(null, tag)) {
+                    String combination = sortMode + ", grouped " + groupByFolder + ", tag " + filter;
+                    String sql = Database.entryOrderQuery(sortMode, groupByFolder, filter).getSql();
+                    Cursor plan = db.query("EXPLAIN QUERY PLAN " + sql,
+                            filter == null ? new Object[0] : new Object[]{filter});
+                    List<String> steps = new ArrayList<>();
+                    while (plan.moveToNext()) {
+                        steps.add(plan.getString(3));
+                    }
+                    plan.close();
+
+                    assertTrue(combination + ": " + steps,
+                            steps.get(0).matches("SCAN (TABLE )?password_entries USING COVERING INDEX idx_entries_\\w+"));
+                    for (String step : steps) {
+                        assertFalse(combination + ": " + steps, step.contains("TEMP B-TREE"));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void entryLabelsAreInNameOrderWithoutPasswords() throws Exception {
+        fixture = VaultFixtures.create("labels", 50, 13);
+        List<PasswordEntry> expected = fixture.database.getAllPasswordEntries();
+        expected.sort(Comparator.comparing(PasswordEntry::getServiceName, String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(PasswordEntry::getId));
+
+        List<PasswordEntry> labels = fixture.database.getEntryLabels();
+
+        assertEquals(expected.size(), labels.size());
+        for (int i = 0; i < labels.size(); i++) {
+            assertEquals(expected.get(i).getId(), labels.get(i).getId());
+            assertEquals(expected.get(i).getServiceName(), labels.get(i).getServiceName());
+            assertEquals(expected.get(i).getUsername(), labels.get(i).getUsername());
+            assertNull(labels.get(i).getPassword());
+        }
+    }
+
+    @Test
+    public void versionOneVaultUpgradesWithEmptyFoldersTagsAndUsage() throws Exception {
+        VaultConfig vault = new VaultConfig("version1", "version1");
+        Context context = RuntimeEnvironment.getApplication();
+        Encryption encryption =
+                new Encryption(context.getSharedPreferences(vault.getKeyPrefsName(), Context.MODE_PRIVATE));
+        File databaseFile = context.getDatabasePath(vault.getDatabaseName());
+        databaseFile.getParentFile().mkdirs();
+        SQLiteDatabase versionOne = SQLiteDatabase.openOrCreateDatabase(databaseFile, null);
+        versionOne.execSQL("CREATE TABLE password_entries(id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "service_name TEXT, username TEXT, password TEXT, salt TEXT)");
+        for (String serviceName : Arrays.asList("bank", "Mail", "alpha")) {
+            versionOne.execSQL("INSERT INTO password_entries(service_name, username, password) VALUES (?, ?, ?)",
+                    new Object[]{serviceName, "me", encryption.encrypt(serviceName + "-password")});
+        }
+        versionOne.setVersion(1);
+        versionOne.close();
+
+        fixture = VaultFixtures.open("version1");
+
+        assertEquals(Arrays.asList(3, 1, 2), order(Database.SortMode.NAME));
+        EntryOrder grouped = fixture.database.getEntryOrder(Database.SortMode.NAME, true, null);
+        assertEquals(Arrays.asList(3, 1, 2), ids(grouped));
+        for (int position = 0; position < grouped.size(); position++) {
+            assertEquals("", grouped.getFolder(position));
+        }
+        assertEquals(Arrays.asList(1, 2, 3), order(Database.SortMode.RECENTLY_USED));
+        assertEquals(Arrays.asList(1, 2, 3), order(Database.SortMode.MOST_USED));
+        assertEquals(0, fixture.database.getEntryOrder(Database.SortMode.NAME, false, "email").size());
+        assertTrue(fixture.database.getAllTags().isEmpty());
+
+        fixture.database.recordEntryUse(2, 1_000);
+        fixture.database.recordEntryUse(3, 2_000);
+        fixture.database.recordEntryUse(2, 500);
+        assertEquals(Arrays.asList(3, 2, 1), order(Database.SortMode.RECENTLY_USED));
+        assertEquals(Arrays.asList(2, 3, 1), order(Database.SortMode.MOST_USED));
+
+        Cursor cursor = fixture.database.getReadableDatabase().query(
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name LIKE 'idx_entries_%'");
+        assertTrue(cursor.moveToFirst());
+        assertTrue(cursor.getInt(0) >= 6);
+        cursor.close();
+        assertEquals("Mail-password", fixture.database.decryptPassword(fixture.database.getPasswordEntry(2)));
+        assertTrue(fixture.database.verifyIntegrity());
+    }
+
+    @Test
+    public void storageModeIsReadFromTheFileHeader() throws Exception {
+        fixture = VaultFixtures.create("header", 3, 10);
+        Context context = RuntimeEnvironment.getApplication();
+        File databaseFile = context.getDatabasePath(fixture.vault.getDatabaseName());
+        assertFalse(Database.isPageEncrypted(databaseFile));
+        assertFalse(Database.isPageEncryptionEnabled(context, fixture.vault));
+
+        File missing = new File(databaseFile.getParentFile(), "missing.db");
+        assertFalse(Database.isPageEncrypted(missing));
+        File empty = File.createTempFile("empty", ".db");
+        assertFalse(Database.isPageEncrypted(empty));
+
+        // SQLCipher files start with their random salt instead of the SQLite header.
+        byte[] salt = new byte[4096];
+        new Random(11).nextBytes(salt);
+        File encrypted = File.createTempFile("encrypted", ".db");
+        try (FileOutputStream out = new FileOutputStream(encrypted)) {
+            out.write(salt);
+        }
+        assertTrue(Database.isPageEncrypted(encrypted));
+        empty.delete();
+        encrypted.delete();
+    }
+
+    @Test
+    public void hidingShownPasswordRestoresStoredCiphertext() throws Exception {
+        fixture = VaultFixtures.create("hide", 3, 6);
+        PasswordEntry entry = fixture.database.getPasswordEntry(2);
+        String stored = entry.getPassword();
+
+        entry.showPassword(fixture.database.decryptPassword(entry));
+        assertFalse(entry.isEncrypted());
+        entry.hidePassword();
+
+        assertTrue(entry.isEncrypted());
+        assertSame(stored, entry.getPassword());
+        fixture.database.updatePasswordEntry(entry, null);
+        assertTrue(fixture.database.getPasswordHistory(entry.getId()).isEmpty());
+        assertTrue(fixture.database.verifyEntry(entry.getId()));
+    }
+
+    @Test
+    public void pageModeListLoadHoldsNoPlaintext() throws Exception {
+        fixture = VaultFixtures.open("page_list", true);
+        PasswordEntry mail = new PasswordEntry(0, "Mail", "me", null);
+        fixture.database.addPasswordEntry(mail, "mail-secret");
+        fixture.database.addPasswordEntry(new PasswordEntry(0, "Bank", "me", null), "bank-secret");
+        assertNull(mail.getPassword());
+        // Page mode keeps the plaintext in the column; only reading that one entry returns it.
+        assertEquals("mail-secret", fixture.database.getPasswordEntry(mail.getId()).getPassword());
+
+        List<PasswordEntry> entries = fixture.database.getAllPasswordEntries();
+        assertEquals(2, entries.size());
+        for (PasswordEntry entry : entries) {
+            assertNull(entry.getPassword());
+            assertNull(entry.getStoredPassword());
+            assertTrue(entry.isEncrypted());
+        }
+        PasswordEntry listed = entries.get(0).getId() == mail.getId() ? entries.get(0) : entries.get(1);
+
+        // Showing reads the password from the row; hiding drops it again.
+        listed.showPassword(fixture.database.decryptPassword(listed));
+        assertEquals("mail-secret", listed.getPassword());
+        assertNull(listed.getStoredPassword());
+        listed.hidePassword();
+        assertTrue(listed.isEncrypted());
+        assertNull(listed.getPassword());
+
+        List<String> passwords = fixture.database.decryptPasswords(entries);
+        assertEquals(Arrays.asList("mail-secret", "bank-secret"),
+                entries.get(0) == listed ? passwords : Arrays.asList(passwords.get(1), passwords.get(0)));
+        listed.setFolder("Personal");
+        fixture.database.updatePasswordEntry(listed, null);
+        assertNull(listed.getPassword());
+        assertTrue(fixture.database.verifyIntegrity());
+    }
+
+    @Test
+    public void syntheticVaultsAreConsistentAndRepeatable() throws Exception {
+        fixture = VaultFixtures.create("synthetic", 1000, 4);
+        VaultFixtures.Fixture again = VaultFixtures.create("synthetic_again", 1000, 4);
+        try {
+            List<PasswordEntry> entries = fixture.database.getAllPasswordEntries();
+            assertEquals(1000, entries.size());
+            assertEquals(fixture.database.getServiceNames(), again.database.getServiceNames());
+            assertEquals(1000, fixture.database.decryptPasswords(entries).size());
+            assertTrue(fixture.database.verifyIntegrity());
+            assertEquals(1000, fixture.database.getEntryOrder(Database.SortMode.NAME, true, null).size());
+            assertEquals(fixture.database.getAllTags(), again.database.getAllTags());
+
+            Cursor cursor = fixture.database.getReadableDatabase().query("SELECT COUNT(*) FROM integrity_nodes WHERE level = 0");
+            assertTrue(cursor.moveToFirst());
+            assertEquals(1000, cursor.getInt(0));
+            cursor.close();
+
+            long added = fixture.database.addPasswordEntry(VaultFixtures.newEntry(new Random(5)), "added");
+            assertEquals(1001, added);
+            assertTrue(fixture.database.verifyIntegrity());
+        } finally {
+            again.close();
+        }
+    }
+
+    /**
+     * This method sorts the loaded entries the way getEntryOrder documents, to check the database's answer.
+     * NOCASE folds ASCII letters only, which matches the case-insensitive order for the ASCII test names.
+     */
+    private static List<PasswordEntry> expectedOrder(List<PasswordEntry> entries, Database.SortMode sortMode,
+                                                     boolean groupByFolder, String tag) {
+        List<PasswordEntry> expected = new ArrayList<>();
+        for (PasswordEntry entry : entries) {
+            if (tag == null || entry.getTags().contains(tag)) {
+                expected.add(entry);
+            }
+        }
+        Comparator<PasswordEntry> order;
+        switch (sortMode) {
+            case NAME:
+                order = (a, b) -> String.CASE_INSENSITIVE_ORDER.compare(a.getServiceName(), b.getServiceName());
+                break;
+            case RECENTLY_USED:
+                order = (a, b) -> Long.compare(b.getLastUsed(), a.getLastUsed());
+                break;
+            default:
+                order = (a, b) -> Integer.compare(b.getUseCount(), a.getUseCount());
+                break;
+        }
+        order = order.thenComparing((a, b) -> Integer.compare(a.getId(), b.getId()));
+        if (groupByFolder) {
+            order = ((Comparator<PasswordEntry>) (a, b) -> a.getFolder().compareTo(b.getFolder())).thenComparing(order);
+        }
+        Collections.sort(expected, order);
+        return expected;
+    }
+
+    private List<Integer> order(Database.SortMode sortMode) {
+        return ids(fixture.database.getEntryOrder(sortMode, false, null));
+    }
+
+    private static List<Integer> ids(EntryOrder order) {
+        List<Integer> ids = new ArrayList<>();
+        for (int position = 0; position < order.size(); position++) {
+            ids.add(order.getId(position));
+        }
+        return ids;
+    }
+}
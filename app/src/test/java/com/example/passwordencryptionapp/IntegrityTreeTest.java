@@ -0,0 +1,177 @@
+package com.example.passwordencryptionapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the incremental integrity tree and single-leaf verification.
+ */
+public class IntegrityTreeTest {
+    private MemoryNodes nodes;
+    private IntegrityTree tree;
+
+    @Before
+    public void setUp() {
+        nodes = new MemoryNodes();
+        tree = new IntegrityTree(nodes);
+    }
+
+    @Test
+    public void incrementalUpdatesMatchFullRebuild() {
+        Map<Long, byte[]> leaves = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            long position = 1 + random.nextInt(700);
+            if (random.nextInt(4) == 0) {
+                tree.update(position, null);
+                leaves.remove(position);
+            } else {
+                byte[] leaf = leaf(position, "value" + i);
+                tree.update(position, leaf);
+                leaves.put(position, leaf);
+            }
+        }
+
+        MemoryNodes rebuilt = new MemoryNodes();
+        byte[] root = IntegrityTree.buildRoot(leaves, tree.getDepth(), rebuilt);
+
+        assertArrayEquals(root, tree.getRoot());
+        assertEquals(nodes.hashes.keySet(), rebuilt.hashes.keySet());
+    }
+
+    @Test
+    public void verifiesUnchangedLeavesAndRejectsEditedOnes() {
+        for (long position = 1; position <= 100; position++) {
+            tree.update(position, leaf(position, "password" + position));
+        }
+        byte[] root = tree.getRoot();
+
+        assertTrue(tree.verify(37, leaf(37, "password37"), root));
+        assertFalse(tree.verify(37, leaf(37, "edited"), root));
+        assertFalse(tree.verify(37, null, root));
+        assertFalse(tree.verify(500, leaf(500, "inserted"), root));
+        assertTrue(tree.verify(500, null, root));
+    }
+
+    @Test
+    public void rejectsSwappedLeavesAndTamperedSiblings() {
+        tree.update(1, leaf(1, "first"));
+        tree.update(2, leaf(2, "second"));
+        byte[] root = tree.getRoot();
+
+        assertFalse(tree.verify(1, leaf(2, "second"), root));
+        assertFalse(tree.verify(2, leaf(1, "first"), root));
+        nodes.hashes.put("1:1", leaf(2, "edited"));
+        assertFalse(tree.verify(1, leaf(1, "first"), root));
+    }
+
+    @Test
+    public void deletedLeavesVerifyAsEmpty() {
+        tree.update(5, leaf(5, "gone"));
+        tree.update(6, leaf(6, "kept"));
+        tree.update(5, null);
+        byte[] root = tree.getRoot();
+
+        assertTrue(tree.verify(5, null, root));
+        assertFalse(tree.verify(5, leaf(5, "gone"), root));
+        assertTrue(tree.verify(6, leaf(6, "kept"), root));
+    }
+
+    @Test
+    public void singleUpdateTouchesOnlyOnePath() {
+        for (long position = 1; position <= 10000; position++) {
+            tree.update(position, leaf(position, "value"));
+        }
+        int depth = tree.getDepth();
+        nodes.reads = 0;
+        nodes.writes = 0;
+
+        tree.update(4321, leaf(4321, "changed"));
+        assertEquals(depth, nodes.reads);
+        assertEquals(depth + 1, nodes.writes);
+
+        nodes.reads = 0;
+        assertTrue(tree.verify(4321, leaf(4321, "changed"), tree.getRoot()));
+        assertEquals(depth + 1, nodes.reads);
+    }
+
+    @Test
+    public void storesOnlyNonEmptyNodes() {
+        tree.update(3, leaf(3, "a"));
+        tree.update(900, leaf(900, "b"));
+        tree.update(3, null);
+        tree.update(900, null);
+
+        assertTrue(nodes.hashes.isEmpty());
+        assertArrayEquals(IntegrityTree.buildRoot(new HashMap<>(), tree.getDepth(), null), tree.getRoot());
+    }
+
+    @Test
+    public void leafHashSeparatesFields() {
+        byte[] joined = IntegrityTree.hashLeaf(1, Arrays.asList("ab", "c"));
+        byte[] split = IntegrityTree.hashLeaf(1, Arrays.asList("a", "bc"));
+        byte[] moved = IntegrityTree.hashLeaf(2, Arrays.asList("ab", "c"));
+
+        assertFalse(Arrays.equals(joined, split));
+        assertFalse(Arrays.equals(joined, moved));
+        assertArrayEquals(IntegrityTree.hashLeaf(1, Arrays.asList("", "c")), IntegrityTree.hashLeaf(1, Arrays.asList(null, "c")));
+    }
+
+    @Test
+    public void depthGrowsWithHighestPosition() {
+        assertEquals(0, IntegrityTree.depthFor(0));
+        assertEquals(1, IntegrityTree.depthFor(1));
+        assertEquals(2, IntegrityTree.depthFor(2));
+        assertEquals(10, IntegrityTree.depthFor(1023));
+        assertEquals(11, IntegrityTree.depthFor(1024));
+
+        tree.update(1023, leaf(1023, "a"));
+        assertEquals(10, tree.getDepth());
+        tree.update(1024, leaf(1024, "b"));
+        assertEquals(11, tree.getDepth());
+    }
+
+    private static byte[] leaf(long position, String password) {
+        return IntegrityTree.hashLeaf(position, Arrays.asList("sync-" + position, "service", "user", password, ""));
+    }
+
+    private static class MemoryNodes implements IntegrityTree.NodeStore {
+        final Map<String, byte[]> hashes = new HashMap<>();
+        int depth;
+        int reads;
+        int writes;
+
+        @Override
+        public byte[] getNode(int level, long position) {
+            reads++;
+            return hashes.get(level + ":" + position);
+        }
+
+        @Override
+        public void putNode(int level, long position, byte[] hash) {
+            writes++;
+            if (hash == null) {
+                hashes.remove(level + ":" + position);
+            } else {
+                hashes.put(level + ":" + position, hash);
+            }
+        }
+
+        @Override
+        public int getDepth() {
+            return depth;
+        }
+
+        @Override
+        public void setDepth(int depth) {
+            this.depth = depth;
+        }
+    }
+}
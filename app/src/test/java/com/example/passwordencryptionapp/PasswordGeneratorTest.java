@@ -0,0 +1,133 @@
+package com.example.passwordencryptionapp;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for generated passwords and passphrases.
+ */
+public class PasswordGeneratorTest {
+    private static CompactDictionary words;
+    private static PasswordStrength strength;
+
+    private final PasswordGenerator generator = new PasswordGenerator();
+
+    @BeforeClass
+    public static void loadDictionaries() throws IOException {
+        words = PasswordStrengthTest.dictionary(PasswordStrength.WORDLIST_ASSET);
+        strength = new PasswordStrength(PasswordStrengthTest.dictionary(PasswordStrength.COMMON_PASSWORDS_ASSET),
+                words);
+    }
+
+    @Test
+    public void passwordsHaveTheLengthAndEverySelectedGroup() {
+        for (int length = 4; length <= 64; length++) {
+            String password = generator.generate(length, true, true, true, true);
+
+            assertEquals(length, password.length());
+            assertTrue(password, containsAny(password, PasswordGenerator.LOWERCASE));
+            assertTrue(password, containsAny(password, PasswordGenerator.UPPERCASE));
+            assertTrue(password, containsAny(password, PasswordGenerator.DIGITS));
+            assertTrue(password, containsAny(password, PasswordGenerator.SYMBOLS));
+        }
+    }
+
+    @Test
+    public void passwordsOnlyUseSelectedGroups() {
+        for (int i = 0; i < 200; i++) {
+            String password = generator.generate(16, false, true, true, false);
+
+            for (char c : password.toCharArray()) {
+                assertTrue(password,
+                        PasswordGenerator.UPPERCASE.indexOf(c) >= 0 || PasswordGenerator.DIGITS.indexOf(c) >= 0);
+            }
+        }
+    }
+
+    @Test
+    public void guaranteedCharactersAreShuffled() {
+        // Without the shuffle, the one guaranteed digit would always come first.
+        Set<Integer> digitPositions = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            String password = generator.generate(8, false, false, true, true);
+            for (int j = 0; j < password.length(); j++) {
+                if (Character.isDigit(password.charAt(j))) {
+                    digitPositions.add(j);
+                    break;
+                }
+            }
+        }
+        assertTrue(digitPositions.size() > 1);
+    }
+
+    @Test
+    public void passwordsDoNotRepeat() {
+        Set<String> passwords = new HashSet<>();
+        for (int i = 0; i < 1_000; i++) {
+            passwords.add(generator.generate(12, true, true, true, false));
+        }
+        assertEquals(1_000, passwords.size());
+    }
+
+    @Test
+    public void generatedPasswordsScoreFour() {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(4, strength.estimate(generator.generate(16, true, true, true, true)).getScore());
+        }
+    }
+
+    @Test
+    public void rejectsNoGroupsAndTooShortLengths() {
+        try {
+            generator.generate(16, false, false, false, false);
+            fail("Expected no character groups to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("Select at least one character group", expected.getMessage());
+        }
+        try {
+            generator.generate(3, true, true, true, true);
+            fail("Expected a length below the group count to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("Length must be at least 4", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void passphrasesAreWordsFromTheList() {
+        for (int wordCount = 1; wordCount <= 8; wordCount++) {
+            String passphrase = generator.generatePassphrase(words, wordCount, "-");
+
+            String[] parts = passphrase.split("-");
+            assertEquals(passphrase, wordCount, parts.length);
+            for (String part : parts) {
+                assertTrue(part, words.rank(part, 0, part.length()) > 0);
+            }
+        }
+        assertEquals(4, strength.estimate(generator.generatePassphrase(words, 5, "-")).getScore());
+    }
+
+    @Test
+    public void passphraseNeedsAWord() {
+        try {
+            generator.generatePassphrase(words, 0, "-");
+            fail("Expected an empty passphrase to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("Passphrase needs at least one word", expected.getMessage());
+        }
+    }
+
+    private static boolean containsAny(String password, String group) {
+        for (char c : password.toCharArray()) {
+            if (group.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.passwordencryptionapp;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests for the password history: the migration that adds it, archiving on save and compaction.
+ */
+@RunWith(RobolectricTestRunner.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class PasswordHistoryTest {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private VaultFixtures.Fixture fixture;
+
+    @After
+    public void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    public void versionTwoVaultUpgradesWithAnEmptyHistory() throws Exception {
+        VaultConfig vault = new VaultConfig("version2", "version2");
+        Context context = RuntimeEnvironment.getApplication();
+        Encryption encryption =
+                new Encryption(context.getSharedPreferences(vault.getKeyPrefsName(), Context.MODE_PRIVATE));
+        File databaseFile = context.getDatabasePath(vault.getDatabaseName());
+        databaseFile.getParentFile().mkdirs();
+        SQLiteDatabase versionTwo = SQLiteDatabase.openOrCreateDatabase(databaseFile, null);
+        versionTwo.execSQL("CREATE TABLE password_entries(id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "service_name TEXT, username TEXT, password TEXT, salt TEXT, "
+                + "folder TEXT NOT NULL DEFAULT '', last_used INTEGER NOT NULL DEFAULT 0, "
+                + "use_count INTEGER NOT NULL DEFAULT 0)");
+        versionTwo.execSQL("CREATE TABLE entry_tags(tag TEXT NOT NULL, "
+                + "entry_id INTEGER NOT NULL REFERENCES password_entries(id) ON DELETE CASCADE, "
+                + "PRIMARY KEY (tag, entry_id)) WITHOUT ROWID");
+        for (String serviceName : Arrays.asList("Mail", "Bank")) {
+            versionTwo.execSQL("INSERT INTO password_entries(service_name, username, password, folder, use_count) "
+                            + "VALUES (?, 'me', ?, 'Personal', 3)",
+                    new Object[]{serviceName, encryption.encrypt(serviceName + "-password")});
+        }
+        versionTwo.execSQL("INSERT INTO entry_tags VALUES ('email', 1)");
+        versionTwo.setVersion(2);
+        versionTwo.close();
+
+        fixture = VaultFixtures.open("version2");
+
+        Cursor cursor = fixture.database.getReadableDatabase().query(
+                "SELECT name FROM sqlite_master WHERE tbl_name = 'entry_history' ORDER BY name");
+        List<String> names = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            names.add(cursor.getString(0));
+        }
+        cursor.close();
+        assertEquals(Arrays.asList("entry_history", "idx_history_age", "idx_history_entry"), names);
+        assertTrue(fixture.database.getPasswordHistory(1).isEmpty());
+        assertTrue(fixture.database.getPasswordHistory(2).isEmpty());
+
+        // Version 2 data is kept, and the first change archives the password stored before the upgrade.
+        PasswordEntry mail = fixture.database.getPasswordEntry(1);
+        assertEquals("Personal", mail.getFolder());
+        assertEquals(Arrays.asList("email"), fixture.database.getAllTags());
+        mail.getTags().add("email");
+        fixture.database.updatePasswordEntry(mail, "Mail-new");
+
+        List<PasswordVersion> history = fixture.database.getPasswordHistory(1);
+        assertEquals(Arrays.asList("Mail-password"), fixture.encryption.decryptHistory(history));
+        assertEquals("Mail-new", fixture.database.decryptPassword(fixture.database.getPasswordEntry(1)));
+        assertTrue(fixture.database.getPasswordHistory(2).isEmpty());
+        assertTrue(fixture.database.verifyIntegrity());
+    }
+
+    @Test
+    public void changedPasswordsAreArchivedNewestFirst() throws Exception {
+        fixture = VaultFixtures.open("archive");
+        PasswordEntry entry = new PasswordEntry(0, "Bank", "me", null);
+        fixture.database.addPasswordEntry(entry, "one");
+        assertTrue(fixture.database.getPasswordHistory(entry.getId()).isEmpty());
+
+        long before = System.currentTimeMillis();
+        fixture.database.updatePasswordEntry(entry, "two");
+        fixture.database.updatePasswordEntry(entry, "three");
+        fixture.database.updatePasswordEntry(entry, "one");
+
+        List<PasswordVersion> history = fixture.database.getPasswordHistory(entry.getId());
+        assertEquals(Arrays.asList("three", "two", "one"), fixture.encryption.decryptHistory(history));
+        for (PasswordVersion version : history) {
+            assertEquals(entry.getId(), version.getEntryId());
+            assertTrue(version.getReplacedAt() >= before);
+        }
+        assertTrue(history.get(0).getId() > history.get(1).getId());
+        assertEquals("one", fixture.database.decryptPassword(fixture.database.getPasswordEntry(entry.getId())));
+    }
+
+    @Test
+    public void unchangedPasswordIsNotArchived() throws Exception {
+        fixture = VaultFixtures.open("unchanged");
+        PasswordEntry entry = new PasswordEntry(0, "Bank", "me", null);
+        fixture.database.addPasswordEntry(entry, "same");
+
+        // Other fields change, and the same password is passed again or left out.
+        entry.setServiceName("Bank (joint)");
+        entry.setUsername("us");
+        fixture.database.updatePasswordEntry(entry, "same");
+        entry.setFolder("Finance");
+        fixture.database.updatePasswordEntry(entry, null);
+
+        assertTrue(fixture.database.getPasswordHistory(entry.getId()).isEmpty());
+        PasswordEntry stored = fixture.database.getPasswordEntry(entry.getId());
+        assertEquals("Bank (joint)", stored.getServiceName());
+        assertEquals("same", fixture.database.decryptPassword(stored));
+    }
+
+    @Test
+    public void compactionKeepsNewestVersionsAndDropsOldOnesAcrossBatches() throws Exception {
+        fixture = VaultFixtures.create("compact", 4, 12);
+        int keepVersions = 10;
+        long maxAgeMillis = 30 * DAY_MILLIS;
+        long now = System.currentTimeMillis();
+
+        // Three entries with 700 versions each, interleaved so every batch holds all three, and a fourth
+        // entry with a few recent versions. Every seventh version is past the maximum age, including some
+        // among the newest of their entry.
+        List<long[]> rows = new ArrayList<>();
+        SupportSQLiteDatabase db = fixture.database.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            int version = 0;
+            for (int i = 0; i < 700; i++) {
+                for (int entryId = 1; entryId <= 3; entryId++) {
+                    long replacedAt = version % 7 == 0 ? now - 2 * maxAgeMillis : now - DAY_MILLIS;
+                    rows.add(new long[]{insertVersion(db, entryId, replacedAt), entryId, replacedAt});
+                    version++;
+                }
+            }
+            for (int i = 0; i < 5; i++) {
+                rows.add(new long[]{insertVersion(db, 4, now), 4, now});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        Set<Long> expected = new HashSet<>();
+        int[] newer = new int[5];
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            long[] row = rows.get(i);
+            int entryId = (int) row[1];
+            if (newer[entryId] < keepVersions && row[2] >= now - maxAgeMillis) {
+                expected.add(row[0]);
+            }
+            newer[entryId]++;
+        }
+
+        int deleted = fixture.database.compactHistory(keepVersions, maxAgeMillis);
+
+        assertEquals(rows.size() - expected.size(), deleted);
+        assertEquals(expected, remainingVersionIds(db));
+        for (int entryId = 1; entryId <= 3; entryId++) {
+            int kept = fixture.database.getPasswordHistory(entryId).size();
+            assertTrue(kept > 0 && kept < keepVersions);
+        }
+        assertEquals(5, fixture.database.getPasswordHistory(4).size());
+        assertEquals(0, fixture.database.compactHistory(keepVersions, maxAgeMillis));
+    }
+
+    private static long insertVersion(SupportSQLiteDatabase db, int entryId, long replacedAt) {
+        ContentValues values = new ContentValues();
+        values.put("entry_id", entryId);
+        values.put("password", "");
+        values.put("replaced_at", replacedAt);
+        return db.insert("entry_history", SQLiteDatabase.CONFLICT_NONE, values);
+    }
+
+    private static Set<Long> remainingVersionIds(SupportSQLiteDatabase db) {
+        Set<Long> ids = new HashSet<>();
+        Cursor cursor = db.query("SELECT id FROM entry_history");
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getLong(0));
+        }
+        cursor.close();
+        return ids;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.passwordencryptionapp;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the strength estimate, with the bundled word lists built into dictionaries once for the
+ * whole class.
+ */
+public class PasswordStrengthTest {
+    private static PasswordStrength strength;
+
+    @BeforeClass
+    public static void loadDictionaries() throws IOException {
+        strength = new PasswordStrength(dictionary(PasswordStrength.COMMON_PASSWORDS_ASSET),
+                dictionary(PasswordStrength.WORDLIST_ASSET));
+    }
+
+    @Test
+    public void commonPasswordsScoreZero() {
+        assertWeakest("password", PasswordStrength.Pattern.COMMON_PASSWORD, 0);
+        assertWeakest("123456", PasswordStrength.Pattern.COMMON_PASSWORD, 0);
+        assertWeakest("qwerty", PasswordStrength.Pattern.COMMON_PASSWORD, 0);
+    }
+
+    @Test
+    public void commonPasswordsAreFoundDisguised() {
+        assertWeakest("P@ssw0rd", PasswordStrength.Pattern.COMMON_PASSWORD, 0);
+        assertWeakest("drowssap", PasswordStrength.Pattern.COMMON_PASSWORD, 0);
+        assertWeakest("PASSWORD", PasswordStrength.Pattern.COMMON_PASSWORD, 0);
+        assertEquals(PasswordStrength.Pattern.COMMON_PASSWORD, strength.estimate("dragon2024!").getWeakestPattern());
+    }
+
+    @Test
+    public void disguisesCostOnlyAFewBits() {
+        double plain = strength.estimate("password").getGuessesLog2();
+
+        assertTrue(strength.estimate("Password").getGuessesLog2() > plain);
+        assertTrue(strength.estimate("P@ssw0rd").getGuessesLog2() < plain + 4);
+    }
+
+    @Test
+    public void findsDictionaryWords() {
+        assertWeakest("elephant", PasswordStrength.Pattern.DICTIONARY_WORD, 1);
+        assertWeakest("Elephant", PasswordStrength.Pattern.DICTIONARY_WORD, 1);
+        assertEquals(PasswordStrength.Pattern.DICTIONARY_WORD,
+                strength.estimate("elephantguitarhorse").getWeakestPattern());
+    }
+
+    @Test
+    public void findsKeyboardWalks() {
+        assertWeakest("hjkl;'", PasswordStrength.Pattern.KEYBOARD_WALK, 1);
+    }
+
+    @Test
+    public void findsSequences() {
+        assertWeakest("abcdefgh", PasswordStrength.Pattern.SEQUENCE, 0);
+        assertWeakest("98765432", PasswordStrength.Pattern.SEQUENCE, 0);
+    }
+
+    @Test
+    public void findsRepeats() {
+        assertWeakest("aaaaaaaaaa", PasswordStrength.Pattern.REPEAT, 0);
+        assertWeakest("abcabcabcabc", PasswordStrength.Pattern.REPEAT, 0);
+    }
+
+    @Test
+    public void findsDates() {
+        assertWeakest("1987", PasswordStrength.Pattern.DATE, 0);
+        assertWeakest("12251987", PasswordStrength.Pattern.DATE, 1);
+        assertWeakest("19871225", PasswordStrength.Pattern.DATE, 1);
+        // 13/13 is no day and month, so only the year counts as a date.
+        assertTrue(strength.estimate("13131987").getGuessesLog2() > strength.estimate("12251987").getGuessesLog2());
+    }
+
+    @Test
+    public void randomAndLongPasswordsScoreFour() {
+        assertEquals(4, strength.estimate("xK9#mQ2$vL7!pR4&").getScore());
+        assertEquals(4, strength.estimate("Tr0ub4dor&3").getScore());
+        assertEquals(4, strength.estimate("correct-horse-battery-staple").getScore());
+        assertNull(strength.estimate("xK9#mQ2$vL7!pR4&").getWarning());
+    }
+
+    @Test
+    public void weakPasswordsGetAWarning() {
+        assertEquals("This is a commonly used password", strength.estimate("password").getWarning());
+        assertEquals("Repeated characters are easy to guess", strength.estimate("aaaaaaaaaa").getWarning());
+    }
+
+    @Test
+    public void emptyAndOverlongPasswordsAreScored() {
+        assertEquals(0, strength.estimate("").getScore());
+
+        StringBuilder longPassword = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            longPassword.append("password");
+        }
+        PasswordStrength.Result result = strength.estimate(longPassword);
+        assertEquals(4, result.getScore());
+        assertTrue(result.getGuessesLog2() > strength.estimate(longPassword.substring(0, 64)).getGuessesLog2());
+    }
+
+    @Test
+    public void scoresWithoutDictionaries() {
+        PasswordStrength withoutWords = new PasswordStrength(null, null);
+
+        assertEquals(PasswordStrength.Pattern.SEQUENCE, withoutWords.estimate("abcdefgh").getWeakestPattern());
+        assertTrue(withoutWords.estimate("password").getScore() > strength.estimate("password").getScore());
+    }
+
+    /**
+     * Estimates are meant to run on every keystroke, so a typical password must take under a millisecond on
+     * average. Being timing-based, it only runs with the benchmarks.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void estimateTakesUnderAMillisecond() {
+        String[] passwords = {"password", "P@ssw0rd2024!", "elephant-guitar-horse-almond", "xK9#mQ2$vL7!pR4&",
+                "qwertyuiop1234567890", "Summer1987!", "abcabcabcabcabc", "correct horse battery staple"};
+        for (int i = 0; i < 2_000; i++) {
+            strength.estimate(passwords[i % passwords.length]);
+        }
+
+        int runs = 10_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            strength.estimate(passwords[i % passwords.length]);
+        }
+        double millisPerEstimate = (System.nanoTime() - start) / 1e6 / runs;
+
+        assertTrue("Estimate took " + millisPerEstimate + " ms", millisPerEstimate < 1);
+    }
+
+    private static void assertWeakest(String password, PasswordStrength.Pattern pattern, int score) {
+        PasswordStrength.Result result = strength.estimate(password);
+        assertEquals(password, pattern, result.getWeakestPattern());
+        assertEquals(password, score, result.getScore());
+    }
+
+    /**
+     * This method builds a bundled asset into a temporary dictionary file. Local tests run in the module
+     * directory, so the assets are read from the source tree.
+     */
+    static CompactDictionary dictionary(String assetName) throws IOException {
+        File dictionaryFile = File.createTempFile(assetName, ".dict");
+        dictionaryFile.deleteOnExit();
+        try (InputStream words = new FileInputStream(new File("src/main/assets", assetName))) {
+            CompactDictionary.build(words, dictionaryFile);
+        }
+        return CompactDictionary.open(dictionaryFile);
+    }
+}
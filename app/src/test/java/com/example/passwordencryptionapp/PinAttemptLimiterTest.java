@@ -0,0 +1,178 @@
+package com.example.passwordencryptionapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for PIN attempt limiting, with a fake clock and an in-memory store.
+ */
+public class PinAttemptLimiterTest {
+    private static final PinAttemptLimiter.PinCheck WRONG = () -> false;
+    private static final PinAttemptLimiter.PinCheck RIGHT = () -> true;
+
+    private MemoryStore store;
+    private FakeClock clock;
+    private PinAttemptLimiter limiter;
+
+    @Before
+    public void setUp() {
+        store = new MemoryStore();
+        clock = new FakeClock();
+        limiter = new PinAttemptLimiter(store, clock);
+    }
+
+    @Test
+    public void freeAttemptsThenDoublingLockouts() throws Exception {
+        for (int i = 0; i < PinAttemptLimiter.FREE_ATTEMPTS; i++) {
+            assertEquals(0, limiter.attempt(WRONG).getRetryAfterMillis());
+        }
+        long expected = PinAttemptLimiter.BASE_LOCKOUT_MILLIS;
+        for (int i = 0; i < 4; i++) {
+            PinAttemptLimiter.Result result = limiter.attempt(WRONG);
+            assertTrue(result.wasChecked());
+            assertEquals(expected, result.getRetryAfterMillis());
+            clock.now += expected;
+            expected *= 2;
+        }
+    }
+
+    @Test
+    public void lockoutIsCapped() {
+        assertEquals(0, PinAttemptLimiter.lockoutFor(PinAttemptLimiter.FREE_ATTEMPTS));
+        assertEquals(PinAttemptLimiter.MAX_LOCKOUT_MILLIS, PinAttemptLimiter.lockoutFor(30));
+        assertEquals(PinAttemptLimiter.MAX_LOCKOUT_MILLIS, PinAttemptLimiter.lockoutFor(Integer.MAX_VALUE));
+        long previous = 0;
+        for (int failures = 1; failures < 100; failures++) {
+            long lockout = PinAttemptLimiter.lockoutFor(failures);
+            assertTrue(lockout >= previous);
+            previous = lockout;
+        }
+    }
+
+    @Test
+    public void lockedAttemptsAreRefusedWithoutChecking() throws Exception {
+        failUntilLocked();
+        int[] checks = {0};
+
+        PinAttemptLimiter.Result result = limiter.attempt(() -> {
+            checks[0]++;
+            return true;
+        });
+
+        assertFalse(result.isCorrect());
+        assertFalse(result.wasChecked());
+        assertEquals(0, checks[0]);
+        clock.now += 10_000;
+        assertEquals(PinAttemptLimiter.BASE_LOCKOUT_MILLIS - 10_000, limiter.getRetryAfterMillis());
+        clock.now += PinAttemptLimiter.BASE_LOCKOUT_MILLIS;
+        assertTrue(limiter.attempt(RIGHT).isCorrect());
+    }
+
+    @Test
+    public void correctPinClearsCountAndOnlyFailuresWrite() throws Exception {
+        assertTrue(limiter.attempt(RIGHT).isCorrect());
+        assertTrue(limiter.attempt(RIGHT).isCorrect());
+        assertEquals(0, store.writes);
+
+        limiter.attempt(WRONG);
+        limiter.attempt(WRONG);
+        assertEquals(2, store.writes);
+        assertEquals(2, store.failedAttempts);
+
+        assertTrue(limiter.attempt(RIGHT).isCorrect());
+        assertEquals(3, store.writes);
+        assertEquals(0, store.failedAttempts);
+        assertTrue(limiter.attempt(RIGHT).isCorrect());
+        assertEquals(3, store.writes);
+    }
+
+    @Test
+    public void stateSurvivesRestart() throws Exception {
+        failUntilLocked();
+        clock.now += 5_000;
+
+        PinAttemptLimiter restarted = new PinAttemptLimiter(store, clock);
+
+        assertEquals(PinAttemptLimiter.BASE_LOCKOUT_MILLIS - 5_000, restarted.getRetryAfterMillis());
+        assertFalse(restarted.attempt(RIGHT).wasChecked());
+        clock.now += PinAttemptLimiter.BASE_LOCKOUT_MILLIS;
+        assertEquals(2 * PinAttemptLimiter.BASE_LOCKOUT_MILLIS, restarted.attempt(WRONG).getRetryAfterMillis());
+    }
+
+    @Test
+    public void storeIsReadOnce() throws Exception {
+        limiter.attempt(WRONG);
+        limiter.attempt(RIGHT);
+        limiter.getRetryAfterMillis();
+
+        assertEquals(1, store.reads);
+    }
+
+    @Test
+    public void clockSetBackCannotExtendLockout() throws Exception {
+        failUntilLocked();
+        clock.now -= 10L * 24 * 60 * 60 * 1000;
+
+        assertEquals(PinAttemptLimiter.BASE_LOCKOUT_MILLIS, limiter.getRetryAfterMillis());
+    }
+
+    @Test
+    public void failedWriteIsReported() throws Exception {
+        store.failWrites = true;
+        try {
+            limiter.attempt(WRONG);
+            fail("Expected the failed write to be reported");
+        } catch (IOException expected) {
+            assertEquals(0, store.failedAttempts);
+        }
+    }
+
+    private void failUntilLocked() throws Exception {
+        for (int i = 0; i <= PinAttemptLimiter.FREE_ATTEMPTS; i++) {
+            limiter.attempt(WRONG);
+        }
+        assertEquals(PinAttemptLimiter.BASE_LOCKOUT_MILLIS, limiter.getRetryAfterMillis());
+    }
+
+    private static class FakeClock implements PinAttemptLimiter.Clock {
+        long now = 1_700_000_000_000L;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    private static class MemoryStore implements PinAttemptLimiter.Store {
+        int failedAttempts;
+        long lockedUntil;
+        int reads;
+        int writes;
+        boolean failWrites;
+
+        @Override
+        public int getFailedAttempts() {
+            reads++;
+            return failedAttempts;
+        }
+
+        @Override
+        public long getLockedUntil() {
+            return lockedUntil;
+        }
+
+        @Override
+        public void save(int failedAttempts, long lockedUntil) throws IOException {
+            if (failWrites) {
+                throw new IOException("Disk full");
+            }
+            writes++;
+            this.failedAttempts = failedAttempts;
+            this.lockedUntil = lockedUntil;
+        }
+    }
+}
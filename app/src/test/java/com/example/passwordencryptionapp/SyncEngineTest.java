@@ -0,0 +1,425 @@
+package com.example.passwordencryptionapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SyncEngineTest {
+    private ExecutorService peerExecutor;
+    private ServerSocket serverSocket;
+
+    @Before
+    public void setUp() throws IOException {
+        peerExecutor = Executors.newSingleThreadExecutor();
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        serverSocket.close();
+        peerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void firstSyncCopiesEntriesBothWays() throws Exception {
+        MemoryStore phone = new MemoryStore("phone", "group");
+        MemoryStore tablet = new MemoryStore("tablet", "group");
+        phone.put("a", "mail", 100);
+        phone.put("b", "bank", 110);
+        tablet.put("c", "work", 120);
+
+        SyncEngine.Result[] results = sync(phone, tablet);
+
+        assertEquals(2, results[0].getSent());
+        assertEquals(1, results[0].getReceived());
+        assertEquals(1, results[1].getSent());
+        assertEquals(2, results[1].getReceived());
+        assertEquals(Arrays.asList("a", "b", "c"), phone.liveIds());
+        assertEquals(Arrays.asList("a", "b", "c"), tablet.liveIds());
+        assertEquals("work", phone.text("c"));
+    }
+
+    @Test
+    public void laterSyncsSendOnlyChanges() throws Exception {
+        MemoryStore phone = new MemoryStore("phone", "group");
+        MemoryStore tablet = new MemoryStore("tablet", "group");
+        for (int i = 0; i < 50; i++) {
+            phone.put("entry" + i, "value" + i, i);
+        }
+        sync(phone, tablet);
+        phone.put("entry7", "changed", 1000);
+
+        SyncEngine.Result[] results = sync(phone, tablet);
+
+        assertEquals(1, results[0].getSent());
+        assertEquals(0, results[1].getSent());
+        assertEquals("changed", tablet.text("entry7"));
+        assertEquals(1, phone.lastChangesReturned);
+    }
+
+    @Test
+    public void concurrentEditsKeepLatestAndRecordLoser() throws Exception {
+        MemoryStore phone = new MemoryStore("phone", "group");
+        MemoryStore tablet = new MemoryStore("tablet", "group");
+        phone.put("a", "original", 100);
+        sync(phone, tablet);
+        phone.put("a", "from phone", 200);
+        tablet.put("a", "from tablet", 300);
+
+        SyncEngine.Result[] results = sync(phone, tablet);
+
+        assertEquals("from tablet", phone.text("a"));
+        assertEquals("from tablet", tablet.text("a"));
+        assertEquals(1, results[0].getConflicts());
+        assertEquals(1, results[1].getConflicts());
+        assertEquals("from phone", new String(phone.conflicts.get(0).getPayload(), StandardCharsets.UTF_8));
+        assertEquals("from phone", new String(tablet.conflicts.get(0).getPayload(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void deletionsPropagate() throws Exception {
+        MemoryStore phone = new MemoryStore("phone", "group");
+        MemoryStore tablet = new MemoryStore("tablet", "group");
+        phone.put("a", "mail", 100);
+        phone.put("b", "bank", 110);
+        sync(phone, tablet);
+        tablet.delete("a", 200);
+
+        sync(phone, tablet);
+
+        assertEquals(Arrays.asList("b"), phone.liveIds());
+        assertTrue(phone.rows.get("a").isDeleted());
+        assertNull(phone.rows.get("a").getPayload());
+    }
+
+    @Test
+    public void changesPassThroughToThirdDevice() throws Exception {
+        MemoryStore phone = new MemoryStore("phone", "group");
+        MemoryStore tablet = new MemoryStore("tablet", "group");
+        MemoryStore laptop = new MemoryStore("laptop", "group");
+        phone.put("a", "mail", 100);
+        sync(phone, tablet);
+
+        sync(tablet, laptop);
+
+        assertEquals("mail", laptop.text("a"));
+        assertEquals("phone", laptop.rows.get("a").getOrigin());
+    }
+
+    @Test
+    public void refusesPeerFromAnotherGroup() throws Exception {
+        MemoryStore phone = new MemoryStore("phone", "group");
+        MemoryStore stranger = new MemoryStore("stranger", "other");
+        phone.put("a", "mail", 100);
+        stranger.delete("a", 200);
+        try {
+            sync(phone, stranger);
+            fail("Expected the sync to be refused");
+        } catch (IOException expected) {
+            assertTrue(stranger.rows.get("a").isDeleted());
+            assertEquals(Arrays.asList("a"), phone.liveIds());
+        }
+    }
+
+    @Test
+    public void strangerLearnsNothingBeforeProvingTheKey() throws Exception {
+        MemoryStore phone = new MemoryStore("phone", "group");
+        phone.put("a", "mail", 100);
+        Future<SyncEngine.Result> victim = peerExecutor.submit(() -> {
+            try (SocketSyncTransport transport = SocketSyncTransport.accept(serverSocket)) {
+                return new SyncEngine(phone).sync(transport);
+            }
+        });
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        try (Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            // The phone's hello: magic, version, nonce and device id.
+            in.readFully(new byte[4 + 4 + 32]);
+            assertEquals("phone", in.readUTF());
+            out.write(helloFrom("stranger"));
+            out.write(new byte[32]);
+            out.flush();
+            byte[] buffer = new byte[256];
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                received.write(buffer, 0, read);
+            }
+        }
+
+        try {
+            victim.get();
+            fail("Expected the sync to be refused");
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        // Only the phone's proof, which is bound to both nonces and useless anywhere else.
+        assertEquals(32, received.size());
+        assertEquals(Arrays.asList("a"), phone.liveIds());
+    }
+
+    @Test
+    public void refusesItsOwnHelloSentBack() throws Exception {
+        MemoryStore phone = new MemoryStore("phone", "group");
+        phone.put("a", "mail", 100);
+        PipedInputStream echoIn = new PipedInputStream(1 << 16);
+        PipedOutputStream echoOut = new PipedOutputStream(echoIn);
+        SyncTransport mirror = new SyncTransport() {
+            @Override
+            public InputStream getInputStream() {
+                return echoIn;
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return echoOut;
+            }
+
+            @Override
+            public void close() throws IOException {
+                echoOut.close();
+            }
+        };
+
+        try {
+            new SyncEngine(phone).sync(mirror);
+            fail("Expected the sync to be refused");
+        } catch (IOException expected) {
+            assertEquals(Arrays.asList("a"), phone.liveIds());
+            assertTrue(phone.receivedSeqs.isEmpty());
+        }
+    }
+
+    @Test
+    public void tamperedRecordHeaderIsRejected() throws Exception {
+        MemoryStore phone = new MemoryStore("phone", "group");
+        MemoryStore tablet = new MemoryStore("tablet", "group");
+        phone.put("a", "mail", 100);
+        sync(phone, tablet);
+        phone.delete("a", 200);
+        // Hello 47, proof 32, request 40, then the record: marker 1, length 4, sync id 3, seq 8, modified at 8.
+        // The last byte of the tombstone's modified at time is changed on the way.
+        int modifiedAtOffset = 47 + 32 + 40 + 1 + 4 + 3 + 8 + 7;
+
+        try {
+            sync(phone, tablet, modifiedAtOffset);
+            fail("Expected the tampered record to be rejected");
+        } catch (IOException expected) {
+            assertEquals(Arrays.asList("a"), tablet.liveIds());
+            assertEquals(100, tablet.rows.get("a").getModifiedAt());
+        }
+    }
+
+    @Test
+    public void entryEncodingRoundTrips() throws Exception {
+        PasswordEntry entry = new PasswordEntry(5, "Mail", "me@example.com", "s3cret");
+        entry.setFolder("Personal");
+        entry.setTags(new ArrayList<>(Arrays.asList("email", "daily")));
+
+        PasswordEntry decoded = SyncRecord.decodeEntry(SyncRecord.encodeEntry(entry));
+
+        assertEquals("Mail", decoded.getServiceName());
+        assertEquals("me@example.com", decoded.getUsername());
+        assertEquals("s3cret", decoded.getPassword());
+        assertEquals("Personal", decoded.getFolder());
+        assertEquals(Arrays.asList("email", "daily"), decoded.getTags());
+        assertFalse(decoded.isEncrypted());
+    }
+
+    /**
+     * Runs one session between two stores over a loopback socket and returns both results, first store first.
+     */
+    private SyncEngine.Result[] sync(MemoryStore first, final MemoryStore second) throws Exception {
+        return sync(first, second, -1);
+    }
+
+    /**
+     * Runs one session like sync, flipping one byte of what the first store sends, or none if the offset is negative.
+     */
+    private SyncEngine.Result[] sync(MemoryStore first, final MemoryStore second, int tamperedOffset) throws Exception {
+        Future<SyncEngine.Result> peer = peerExecutor.submit(() -> {
+            try (SocketSyncTransport transport = SocketSyncTransport.accept(serverSocket)) {
+                return new SyncEngine(second).sync(transport);
+            }
+        });
+        SyncEngine.Result result;
+        try (SocketSyncTransport transport = SocketSyncTransport.connect(
+                serverSocket.getInetAddress().getHostAddress(), serverSocket.getLocalPort())) {
+            result = new SyncEngine(first).sync(tamperedOffset < 0 ? transport : tampering(transport, tamperedOffset));
+        }
+        try {
+            return new SyncEngine.Result[]{result, peer.get()};
+        } catch (java.util.concurrent.ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private static byte[] helloFrom(String deviceId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x5053594E);
+        out.writeInt(2);
+        out.write(new byte[32]);
+        out.writeUTF(deviceId);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Wraps a transport so one byte it sends, counted from the start of the session, arrives changed.
+     */
+    private static SyncTransport tampering(final SyncTransport transport, final int offset) {
+        return new SyncTransport() {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return transport.getInputStream();
+            }
+
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return new FilterOutputStream(transport.getOutputStream()) {
+                    private int position;
+
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(position++ == offset ? b ^ 1 : b);
+                    }
+                };
+            }
+
+            @Override
+            public void close() throws IOException {
+                transport.close();
+            }
+        };
+    }
+
+    /**
+     * A store that keeps the latest record per sync id in memory, with the entry text as its payload
+     * and its group name as its sync key.
+     */
+    private static class MemoryStore implements SyncStore {
+        final String deviceId;
+        final String groupId;
+        final Map<String, SyncRecord> rows = new LinkedHashMap<>();
+        final Map<String, Long> receivedSeqs = new HashMap<>();
+        final List<SyncRecord> conflicts = new ArrayList<>();
+        long seq;
+        int lastChangesReturned;
+
+        MemoryStore(String deviceId, String groupId) {
+            this.deviceId = deviceId;
+            this.groupId = groupId;
+        }
+
+        void put(String syncId, String text, long modifiedAt) {
+            rows.put(syncId, new SyncRecord(syncId, ++seq, modifiedAt, deviceId, false,
+                    text.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        void delete(String syncId, long modifiedAt) {
+            rows.put(syncId, new SyncRecord(syncId, ++seq, modifiedAt, deviceId, true, null));
+        }
+
+        String text(String syncId) {
+            return new String(rows.get(syncId).getPayload(), StandardCharsets.UTF_8);
+        }
+
+        List<String> liveIds() {
+            List<String> ids = new ArrayList<>();
+            for (SyncRecord record : rows.values()) {
+                if (!record.isDeleted()) {
+                    ids.add(record.getSyncId());
+                }
+            }
+            java.util.Collections.sort(ids);
+            return ids;
+        }
+
+        @Override
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        @Override
+        public byte[] signSyncMessage(byte[] message) throws IOException {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(groupId.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+                return mac.doFinal(message);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public synchronized long getLastReceivedSeq(String peerId) {
+            Long received = receivedSeqs.get(peerId);
+            return received == null ? 0 : received;
+        }
+
+        @Override
+        public synchronized long getMaxSeq() {
+            return seq;
+        }
+
+        @Override
+        public synchronized void forEachChange(long afterSeq, long upToSeq, ChangeVisitor visitor) throws IOException {
+            lastChangesReturned = 0;
+            for (SyncRecord record : new ArrayList<>(rows.values())) {
+                if (record.getSeq() > afterSeq && record.getSeq() <= upToSeq) {
+                    lastChangesReturned++;
+                    visitor.visit(record);
+                }
+            }
+        }
+
+        @Override
+        public synchronized SyncRecord getRecord(String syncId) {
+            return rows.get(syncId);
+        }
+
+        @Override
+        public synchronized void applyChanges(String peerId, long peerMaxSeq, List<SyncRecord> accepted,
+                                              List<SyncRecord> conflicts) {
+            for (SyncRecord record : accepted) {
+                rows.put(record.getSyncId(), new SyncRecord(record.getSyncId(), ++seq, record.getModifiedAt(),
+                        record.getOrigin(), record.isDeleted(), record.getPayload()));
+            }
+            this.conflicts.addAll(conflicts);
+            receivedSeqs.put(peerId, peerMaxSeq);
+        }
+    }
+}
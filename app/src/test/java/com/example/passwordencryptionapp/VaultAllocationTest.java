@@ -0,0 +1,44 @@
+package com.example.passwordencryptionapp;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.SQLiteMode;
+
+/**
+ * Scaling checks on heap allocation for the Vault's data paths, on synthetic 1k and 10k entry vaults.
+ *
+ * Allocation per thread barely varies between runs or machines, so unlike time it is checked on every build:
+ * whole-vault operations must allocate about the same per entry at both sizes, and single-entry operations
+ * about the same in total. A whole-vault copy hiding inside a single-entry operation, or a quadratic load,
+ * fails by an order of magnitude. {@link VaultScalingTest} checks time, and 100k entries, with the benchmarks.
+ */
+@RunWith(RobolectricTestRunner.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class VaultAllocationTest {
+    private static final int SMALL = 1_000;
+    private static final int MEDIUM = 10_000;
+    private static final double MAX_PER_ENTRY_ALLOCATION_GROWTH = 1.5;
+    private static final double MAX_SINGLE_ENTRY_ALLOCATION_GROWTH = 3.0;
+
+    @Test
+    public void wholeVaultOperationsAllocateLinearly() throws Exception {
+        VaultWorkloads.WholeVault small = VaultWorkloads.measureWholeVault("allocation_whole_" + SMALL, SMALL);
+        VaultWorkloads.WholeVault medium = VaultWorkloads.measureWholeVault("allocation_whole_" + MEDIUM, MEDIUM);
+
+        VaultWorkloads.assertAllocationScales("load", small.load, medium.load, MAX_PER_ENTRY_ALLOCATION_GROWTH);
+        VaultWorkloads.assertAllocationScales("decrypt-all", small.decryptAll, medium.decryptAll,
+                MAX_PER_ENTRY_ALLOCATION_GROWTH);
+        VaultWorkloads.assertAllocationScales("verify", small.verify, medium.verify, MAX_PER_ENTRY_ALLOCATION_GROWTH);
+    }
+
+    @Test
+    public void singleEntryOperationsAllocateTheSameAtAnySize() throws Exception {
+        VaultWorkloads.SingleEntry small = VaultWorkloads.measureSingleEntry("allocation_single_" + SMALL, SMALL);
+        VaultWorkloads.SingleEntry medium = VaultWorkloads.measureSingleEntry("allocation_single_" + MEDIUM, MEDIUM);
+
+        VaultWorkloads.assertAllocationScales("add", small.add, medium.add, MAX_SINGLE_ENTRY_ALLOCATION_GROWTH);
+        VaultWorkloads.assertAllocationScales("edit", small.edit, medium.edit, MAX_SINGLE_ENTRY_ALLOCATION_GROWTH);
+        VaultWorkloads.assertAllocationScales("delete", small.delete, medium.delete, MAX_SINGLE_ENTRY_ALLOCATION_GROWTH);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.passwordencryptionapp;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Builds vaults for the JVM tests, which run under Robolectric: a Database on the platform SQLite instead of
+ * SQLCipher, and an Encryption whose keys live in plain preferences instead of the keystore-backed ones.
+ * Everything above those two seams is the app's own code.
+ */
+final class VaultFixtures {
+    private static final String[] SERVICES = {"Mail", "Bank", "Shop", "Forum", "Cloud", "Social", "News", "Games"};
+    private static final String[] FOLDERS = {"", "Personal", "Work", "Finance", "Shopping"};
+    private static final String[] TAGS = {"email", "bank", "social", "2fa", "shared", "old"};
+    private static final String PASSWORD_CHARACTERS =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789!@#$%^&*";
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private VaultFixtures() {
+    }
+
+    /**
+     * One open test vault. Each id gets its own database file and preferences.
+     */
+    static final class Fixture {
+        final VaultConfig vault;
+        final Encryption encryption;
+        final Database database;
+
+        private Fixture(VaultConfig vault, Encryption encryption, Database database) {
+            this.vault = vault;
+            this.encryption = encryption;
+            this.database = database;
+        }
+
+        void close() {
+            database.close();
+        }
+    }
+
+    /**
+     * This method opens an empty vault with the given id.
+     */
+    static Fixture open(String vaultId) {
+        return open(vaultId, false);
+    }
+
+    /**
+     * This method opens an empty vault with the given id, storing passwords as page mode does if asked.
+     * The platform SQLite does not encrypt the file, so this only stands in for page mode's storage layout.
+     */
+    static Fixture open(String vaultId, boolean pageEncrypted) {
+        Context context = RuntimeEnvironment.getApplication();
+        VaultConfig vault = new VaultConfig(vaultId, vaultId);
+        Encryption encryption = new Encryption(context.getSharedPreferences(vault.getKeyPrefsName(), Context.MODE_PRIVATE));
+        Database database = new Database(context, vault, vault.getDatabaseName(), pageEncrypted, encryption,
+                new FrameworkSQLiteOpenHelperFactory());
+        return new Fixture(vault, encryption, database);
+    }
+
+    /**
+     * This method opens a new vault and fills it with synthetic entries.
+     * @see #populate
+     */
+    static Fixture create(String vaultId, int entryCount, long seed) throws Exception {
+        Fixture fixture = open(vaultId);
+        populate(fixture, entryCount, seed);
+        return fixture;
+    }
+
+    /**
+     * This method fills an empty vault with entries shaped like a long-used one: passwords bound to their rows,
+     * repeating service names, a spread of folders, zero to two tags, a year of usage statistics and sync
+     * bookkeeping. The rows are written in one transaction and the integrity tree is built once at the end,
+     * rather than through addPasswordEntry, which rehashes a tree path per entry; a 100k vault then takes
+     * seconds instead of minutes. The same seed always gives the same entries.
+     * @param fixture The vault to fill; it must have no entries yet.
+     * @param entryCount The number of entries, which get ids 1 to entryCount.
+     * @param seed The seed for the random content.
+     */
+    static void populate(Fixture fixture, int entryCount, long seed) throws Exception {
+        Random random = new Random(seed);
+        long now = System.currentTimeMillis();
+        SupportSQLiteDatabase db = fixture.database.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            ContentValues tag = new ContentValues();
+            for (int id = 1; id <= entryCount; id++) {
+                String serviceName = serviceName(random);
+                long modifiedAt = now - random.nextInt(365) * DAY_MILLIS;
+                values.put("id", id);
+                values.put("service_name", serviceName);
+                values.put("username", "user" + random.nextInt(entryCount) + "@example.com");
+                values.put("password", fixture.encryption.encryptForRow(password(random), id, serviceName));
+                values.put("folder", FOLDERS[random.nextInt(FOLDERS.length)]);
+                values.put("last_used", random.nextInt(4) == 0 ? 0 : modifiedAt + random.nextInt((int) DAY_MILLIS));
+                values.put("use_count", random.nextInt(50));
+                values.put("sync_id", new UUID(random.nextLong(), random.nextLong()).toString());
+                values.put("change_seq", id);
+                values.put("modified_at", modifiedAt);
+                values.put("origin", fixture.database.getDeviceId());
+                db.insert("password_entries", SQLiteDatabase.CONFLICT_NONE, values);
+                int tagCount = random.nextInt(3);
+                for (int i = 0; i < tagCount; i++) {
+                    tag.put("tag", TAGS[random.nextInt(TAGS.length)]);
+                    tag.put("entry_id", id);
+                    db.insert("entry_tags", SQLiteDatabase.CONFLICT_IGNORE, tag);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        fixture.database.rebuildIntegrityTree();
+    }
+
+    /**
+     * This method returns a new unsaved entry with random content, the way the Vault's add dialog builds one.
+     * Like there, the password is passed to addPasswordEntry separately.
+     */
+    static PasswordEntry newEntry(Random random) {
+        PasswordEntry entry = new PasswordEntry(0, serviceName(random), "new" + random.nextInt(1000) + "@example.com",
+                null);
+        entry.setFolder(FOLDERS[random.nextInt(FOLDERS.length)]);
+        entry.getTags().add(TAGS[random.nextInt(TAGS.length)]);
+        return entry;
+    }
+
+    static String serviceName(Random random) {
+        return SERVICES[random.nextInt(SERVICES.length)] + " " + random.nextInt(5000);
+    }
+
+    static String password(Random random) {
+        char[] password = new char[12 + random.nextInt(13)];
+        for (int i = 0; i < password.length; i++) {
+            password[i] = PASSWORD_CHARACTERS.charAt(random.nextInt(PASSWORD_CHARACTERS.length()));
+        }
+        return new String(password);
+    }
+}
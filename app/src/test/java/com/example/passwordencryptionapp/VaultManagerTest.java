@@ -0,0 +1,184 @@
+package com.example.passwordencryptionapp;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests for the LRU of open vaults: which handle is closed when, that pinned handles stay open,
+ * and that closing a handle or locking the vaults wipes their keys. Handles are opened over test vaults from {@link VaultFixtures}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class VaultManagerTest {
+    private final List<VaultFixtures.Fixture> fixtures = new ArrayList<>();
+    private VaultManager manager;
+    private VaultConfig first;
+    private VaultConfig second;
+    private VaultConfig third;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        manager = new VaultManager(context, vault -> {
+            VaultFixtures.Fixture fixture = VaultFixtures.open("manager_" + vault.getId());
+            fixtures.add(fixture);
+            return new VaultHandle(vault, fixture.encryption, fixture.database);
+        });
+        first = manager.getVault(VaultConfig.DEFAULT_ID);
+        second = manager.createVault("Second");
+        third = manager.createVault("Third");
+    }
+
+    @After
+    public void tearDown() {
+        for (VaultFixtures.Fixture fixture : fixtures) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedIdleHandleIsClosed() {
+        VaultHandle firstHandle = use(first);
+        VaultHandle secondHandle = use(second);
+        // Using the first vault again makes the second the least recently used.
+        assertSame(firstHandle, use(first));
+
+        VaultHandle thirdHandle = use(third);
+
+        assertFalse(firstHandle.isClosed());
+        assertTrue(secondHandle.isClosed());
+        assertFalse(thirdHandle.isClosed());
+
+        VaultHandle reopened = use(second);
+        assertNotSame(secondHandle, reopened);
+        assertTrue(firstHandle.isClosed());
+        assertFalse(thirdHandle.isClosed());
+        assertFalse(reopened.isClosed());
+    }
+
+    @Test
+    public void pinnedHandlesAreNotClosed() {
+        VaultHandle firstHandle = manager.acquire(first);
+        VaultHandle secondHandle = manager.acquire(second);
+        VaultHandle thirdHandle = manager.acquire(third);
+
+        // All three are in use, so the LRU holds one more than its size.
+        assertFalse(firstHandle.isClosed());
+        assertFalse(secondHandle.isClosed());
+        assertFalse(thirdHandle.isClosed());
+        assertTrue(firstHandle.getDatabase().getAllPasswordEntries().isEmpty());
+
+        // The first is the least recently used but still pinned, so the second goes once it is released.
+        manager.release(secondHandle);
+        assertFalse(firstHandle.isClosed());
+        assertTrue(secondHandle.isClosed());
+
+        manager.release(firstHandle);
+        manager.release(thirdHandle);
+        assertFalse(firstHandle.isClosed());
+        assertFalse(thirdHandle.isClosed());
+    }
+
+    @Test
+    public void handleStaysPinnedUntilEveryUserReleasesIt() {
+        VaultHandle firstHandle = manager.acquire(first);
+        assertSame(firstHandle, manager.acquire(first));
+        manager.release(firstHandle);
+
+        VaultHandle secondHandle = use(second);
+        use(third);
+
+        // The first vault is the least recently used, but one of its two users still holds it.
+        assertFalse(firstHandle.isClosed());
+        assertTrue(secondHandle.isClosed());
+
+        manager.release(firstHandle);
+        assertFalse(firstHandle.isClosed());
+        use(second);
+        assertTrue(firstHandle.isClosed());
+    }
+
+    @Test
+    public void closingWipesKeysAndLocks() throws Exception {
+        VaultHandle firstHandle = manager.acquire(first);
+        firstHandle.setUnlocked(true);
+        firstHandle.getDatabase().addPasswordEntry(new PasswordEntry(0, "Mail", "me", null), "s3cret");
+        assertTrue(firstHandle.getEncryption().holdsKeys());
+        manager.release(firstHandle);
+        assertTrue(manager.isUnlocked(first));
+
+        use(second);
+        use(third);
+
+        assertTrue(firstHandle.isClosed());
+        assertFalse(firstHandle.getEncryption().holdsKeys());
+        assertFalse(firstHandle.isUnlocked());
+        assertFalse(manager.isUnlocked(first));
+        try {
+            firstHandle.getDatabase();
+            fail("Expected a closed handle to refuse use");
+        } catch (IllegalStateException expected) {
+            // Closed.
+        }
+    }
+
+    @Test
+    public void lockingWipesKeysOfEveryOpenVault() throws Exception {
+        VaultHandle firstHandle = manager.acquire(first);
+        firstHandle.setUnlocked(true);
+        firstHandle.getDatabase().addPasswordEntry(new PasswordEntry(0, "Mail", "me", null), "s3cret");
+        VaultHandle secondHandle = manager.acquire(second);
+        secondHandle.setUnlocked(true);
+        secondHandle.getDatabase().addPasswordEntry(new PasswordEntry(0, "Bank", "me", null), "hunter2");
+        manager.release(secondHandle);
+
+        manager.lockAll();
+
+        for (VaultHandle handle : new VaultHandle[]{firstHandle, secondHandle}) {
+            assertFalse(handle.isUnlocked());
+            assertFalse(handle.getEncryption().holdsKeys());
+            assertFalse(handle.isClosed());
+        }
+        assertFalse(manager.isUnlocked(first));
+        assertFalse(manager.isUnlocked(second));
+
+        // A task still holding the handle keeps working; the keys are read again when it needs them.
+        Database database = firstHandle.getDatabase();
+        assertEquals("s3cret", database.decryptPassword(database.getAllPasswordEntries().get(0)));
+        assertTrue(firstHandle.getEncryption().holdsKeys());
+        manager.release(firstHandle);
+    }
+
+    @Test
+    public void releaseMustMatchAcquire() {
+        VaultHandle firstHandle = manager.acquire(first);
+        manager.release(firstHandle);
+        try {
+            manager.release(firstHandle);
+            fail("Expected an unmatched release to be rejected");
+        } catch (IllegalStateException expected) {
+            // Rejected.
+        }
+    }
+
+    /**
+     * This method acquires and releases a vault, the way a short task uses it.
+     */
+    private VaultHandle use(VaultConfig vault) {
+        VaultHandle handle = manager.acquire(vault);
+        manager.release(handle);
+        return handle;
+    }
+}
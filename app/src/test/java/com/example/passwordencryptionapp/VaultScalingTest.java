@@ -0,0 +1,50 @@
+package com.example.passwordencryptionapp;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.SQLiteMode;
+
+/**
+ * Timing checks for the Vault's data paths on synthetic 1k, 10k and 100k entry vaults.
+ *
+ * Absolute times depend on the machine, so each check compares the same operation across vault sizes instead:
+ * whole-vault operations must stay linear, costing about the same per entry at every size, and single-entry
+ * operations must cost about the same whatever the vault size. The bounds leave room for noise and for the
+ * O(log n) integrity tree path, but a quadratic load or a linear save fails by an order of magnitude.
+ * Being timing-based, it only runs with the benchmarks; {@link VaultAllocationTest} checks allocation on
+ * every build.
+ */
+@Category(Benchmark.class)
+@RunWith(RobolectricTestRunner.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class VaultScalingTest {
+    private static final int SMALL = 1_000;
+    private static final int MEDIUM = 10_000;
+    private static final int LARGE = 100_000;
+    private static final double MAX_PER_ENTRY_TIME_GROWTH = 3.0;
+    private static final double MAX_SINGLE_ENTRY_TIME_GROWTH = 5.0;
+
+    @Test
+    public void wholeVaultOperationsStayLinear() throws Exception {
+        // The 1k run mostly measures warm-up, so linearity is judged from 10k to 100k.
+        VaultWorkloads.measureWholeVault("whole_" + SMALL, SMALL);
+        VaultWorkloads.WholeVault medium = VaultWorkloads.measureWholeVault("whole_" + MEDIUM, MEDIUM);
+        VaultWorkloads.WholeVault large = VaultWorkloads.measureWholeVault("whole_" + LARGE, LARGE);
+
+        VaultWorkloads.assertTimeScales("load", medium.load, large.load, MAX_PER_ENTRY_TIME_GROWTH);
+        VaultWorkloads.assertTimeScales("decrypt-all", medium.decryptAll, large.decryptAll, MAX_PER_ENTRY_TIME_GROWTH);
+        VaultWorkloads.assertTimeScales("verify", medium.verify, large.verify, MAX_PER_ENTRY_TIME_GROWTH);
+    }
+
+    @Test
+    public void singleEntryOperationsDoNotDependOnVaultSize() throws Exception {
+        VaultWorkloads.SingleEntry small = VaultWorkloads.measureSingleEntry("single_" + SMALL, SMALL);
+        VaultWorkloads.SingleEntry large = VaultWorkloads.measureSingleEntry("single_" + LARGE, LARGE);
+
+        VaultWorkloads.assertTimeScales("add", small.add, large.add, MAX_SINGLE_ENTRY_TIME_GROWTH);
+        VaultWorkloads.assertTimeScales("edit", small.edit, large.edit, MAX_SINGLE_ENTRY_TIME_GROWTH);
+        VaultWorkloads.assertTimeScales("delete", small.delete, large.delete, MAX_SINGLE_ENTRY_TIME_GROWTH);
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.passwordencryptionapp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The Vault's data paths run against synthetic vaults of a given size, with their median time and heap
+ * allocation. {@link VaultAllocationTest} compares the allocation across sizes on every build and
+ * {@link VaultScalingTest} compares the time, with the benchmarks.
+ */
+final class VaultWorkloads {
+    private static final int WHOLE_VAULT_RUNS = 3;
+    private static final int SINGLE_ENTRY_RUNS = 40;
+
+    private VaultWorkloads() {
+    }
+
+    /**
+     * An operation that may throw, measured by {@link #measure}.
+     */
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * The median time and heap allocation of an operation over several runs.
+     */
+    static final class Cost {
+        final double nanos;
+        final double bytes;
+
+        Cost(double nanos, double bytes) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        Cost perEntry(int entryCount) {
+            return new Cost(nanos / entryCount, bytes / entryCount);
+        }
+    }
+
+    /**
+     * The per-entry cost of what the Vault does on unlock, on showing passwords, and in its background
+     * integrity check, on one vault.
+     */
+    static final class WholeVault {
+        final Cost load;
+        final Cost decryptAll;
+        final Cost verify;
+
+        WholeVault(Cost load, Cost decryptAll, Cost verify) {
+            this.load = load;
+            this.decryptAll = decryptAll;
+            this.verify = verify;
+        }
+    }
+
+    /**
+     * The cost of the database side of the Vault's add, edit and delete dialogs, on one vault.
+     */
+    static final class SingleEntry {
+        final Cost add;
+        final Cost edit;
+        final Cost delete;
+
+        SingleEntry(Cost add, Cost edit, Cost delete) {
+            this.add = add;
+            this.edit = edit;
+            this.delete = delete;
+        }
+    }
+
+    /**
+     * This method creates a vault of the given size and measures the whole-vault operations on it.
+     */
+    static WholeVault measureWholeVault(String vaultId, int size) throws Exception {
+        VaultFixtures.Fixture fixture = VaultFixtures.create(vaultId, size, size);
+        try {
+            Cost load = measure(WHOLE_VAULT_RUNS, () -> {
+                List<PasswordEntry> entries = fixture.database.getAllPasswordEntries();
+                assertEquals(size, entries.size());
+                fixture.database.getEntryOrder(Database.SortMode.NAME, false, null);
+            }).perEntry(size);
+            List<PasswordEntry> entries = fixture.database.getAllPasswordEntries();
+            Cost decryptAll = measure(WHOLE_VAULT_RUNS, () -> fixture.database.decryptPasswords(entries))
+                    .perEntry(size);
+            Cost verify = measure(WHOLE_VAULT_RUNS, () -> assertTrue(fixture.database.verifyIntegrity()))
+                    .perEntry(size);
+            return new WholeVault(load, decryptAll, verify);
+        } finally {
+            fixture.close();
+        }
+    }
+
+    /**
+     * This method creates a vault of the given size and measures the single-entry operations on it.
+     * The list reorder that follows each of them is a linear index scan by design and is covered by the load.
+     */
+    static SingleEntry measureSingleEntry(String vaultId, int size) throws Exception {
+        VaultFixtures.Fixture fixture = VaultFixtures.create(vaultId, size, size);
+        try {
+            Random random = new Random(size);
+            Cost add = measure(SINGLE_ENTRY_RUNS, () -> {
+                PasswordEntry entry = VaultFixtures.newEntry(random);
+                assertTrue(fixture.database.addPasswordEntry(entry, VaultFixtures.password(random)) > size);
+            });
+            Cost edit = measure(SINGLE_ENTRY_RUNS, () -> {
+                PasswordEntry entry = fixture.database.getPasswordEntry(1 + random.nextInt(size));
+                fixture.database.recordEntryUse(entry.getId(), System.currentTimeMillis());
+                entry.setUsername("edited@example.com");
+                fixture.database.updatePasswordEntry(entry, VaultFixtures.password(random));
+            });
+            List<Integer> ids = new ArrayList<>();
+            for (int id = 1; id <= size; id++) {
+                ids.add(id);
+            }
+            Collections.shuffle(ids, random);
+            int[] next = {0};
+            Cost delete = measure(SINGLE_ENTRY_RUNS, () -> fixture.database.deletePasswordEntry(ids.get(next[0]++)));
+            assertTrue(fixture.database.verifyIntegrity());
+            return new SingleEntry(add, edit, delete);
+        } finally {
+            fixture.close();
+        }
+    }
+
+    /**
+     * This method fails if an operation's time grew by more than the given factor between two vault sizes.
+     */
+    static void assertTimeScales(String operation, Cost smaller, Cost larger, double maxGrowth) {
+        assertTrue(String.format(Locale.US, "%s time grew from %.0f ns to %.0f ns, more than %.1fx",
+                        operation, smaller.nanos, larger.nanos, maxGrowth),
+                larger.nanos <= smaller.nanos * maxGrowth);
+    }
+
+    /**
+     * This method fails if an operation's allocation grew by more than the given factor between two vault sizes.
+     */
+    static void assertAllocationScales(String operation, Cost smaller, Cost larger, double maxGrowth) {
+        assertTrue(String.format(Locale.US, "%s allocation grew from %.0f bytes to %.0f bytes, more than %.1fx",
+                        operation, smaller.bytes, larger.bytes, maxGrowth),
+                larger.bytes <= smaller.bytes * maxGrowth);
+    }
+
+    /**
+     * This method runs an operation once to warm up and then the given number of times, and returns the median
+     * time and allocation of those runs. Allocation is measured for the current thread only and is reported as
+     * zero on JVMs that cannot measure it, which turns the allocation checks into no-ops.
+     */
+    private static Cost measure(int runs, Operation operation) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long threadId = Thread.currentThread().getId();
+        operation.run();
+        double[] nanos = new double[runs];
+        double[] bytes = new double[runs];
+        for (int run = 0; run < runs; run++) {
+            long allocatedBefore = allocations == null ? 0 : allocations.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            operation.run();
+            nanos[run] = System.nanoTime() - start;
+            bytes[run] = allocations == null ? 0 : allocations.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        }
+        return new Cost(median(nanos), median(bytes));
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}